@@ -0,0 +1,76 @@
+package _lib;
+
+/**
+ * packs two integer ids into a single <code>long</code> key so that pairs of
+ * objects can be stored in primitive hash structures without boxing. the pair
+ * is unordered: the key for ( a , b ) is the same as the key for ( b , a )
+ */
+final public class PairKey {
+
+	/**
+	 * a key that can never be produced by <code>pack(int, int)</code> for ids
+	 * greater than <code>Integer.MIN_VALUE</code>. it marks empty slots in
+	 * open-addressing tables
+	 */
+	final public static long EMPTY = Long.MIN_VALUE;
+
+	private PairKey() {
+
+	}
+
+	/**
+	 * packs the two given ids into one key. the smaller id is stored in the
+	 * upper 32 bits and the larger id in the lower 32 bits
+	 *
+	 * @param id1			an id
+	 * @param id2			another id
+	 * @return				the unordered key of the pair ( <code>id1</code> , <code>id2</code> )
+	 */
+	public static long pack( int id1 , int id2 ) {
+		int lowId = id1 < id2 ? id1 : id2;
+		int highId = id1 < id2 ? id2 : id1;
+		return ( ( long ) lowId << 32 ) | ( highId & 0xFFFFFFFFL );
+	}
+
+	/**
+	 * packs the two given ids into one key that keeps their order, for pairs
+	 * whose members play different roles. the first id is stored in the upper
+	 * 32 bits and the second id in the lower 32 bits, so <code>getFirstId(long)</code>
+	 * and <code>getSecondId(long)</code> return them in the order given
+	 *
+	 * @param firstId		a non-negative id
+	 * @param secondId		another non-negative id
+	 * @return				the ordered key of the pair ( <code>firstId</code> , <code>secondId</code> )
+	 */
+	public static long packOrdered( int firstId , int secondId ) {
+		return ( ( long ) firstId << 32 ) | ( secondId & 0xFFFFFFFFL );
+	}
+
+	/**
+	 * @param key			a key created by <code>pack(int, int)</code> or <code>packOrdered(int, int)</code>
+	 * @return				the smaller id in the pair, or the first id of an ordered pair
+	 */
+	public static int getFirstId( long key ) {
+		return ( int ) ( key >> 32 );
+	}
+
+	/**
+	 * @param key			a key created by <code>pack(int, int)</code> or <code>packOrdered(int, int)</code>
+	 * @return				the larger id in the pair, or the second id of an ordered pair
+	 */
+	public static int getSecondId( long key ) {
+		return ( int ) key;
+	}
+
+	/**
+	 * mixes the bits of the given key so that keys with similar ids spread out
+	 * evenly over a power-of-two table
+	 *
+	 * @param key			a key
+	 * @return				a well-distributed hash of <code>key</code>
+	 */
+	public static int hash( long key ) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return ( int ) ( mixed ^ ( mixed >>> 32 ) );
+	}
+}
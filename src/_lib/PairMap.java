@@ -0,0 +1,245 @@
+package _lib;
+
+import java.util.Arrays;
+
+import util.ErrorMessages;
+
+/**
+ * maps unordered pairs of integer ids to values. keys are packed into a
+ * <code>long</code> by <code>PairKey</code> and stored in a primitive
+ * open-addressing table with linear probing, so no keys are boxed.
+ * <p>
+ * entries can be visited without allocating an iterator:
+ * <pre>
+ * for ( int slot = 0 ; slot &lt; map.capacity() ; slot ++ ) {
+ *     if ( map.isOccupied( slot ) ) { ... map.keyAt( slot ) ... map.valueAt( slot ) ... }
+ * }
+ * </pre>
+ *
+ * @param <V>			type of value stored for each pair
+ * @see					PairKey
+ */
+public class PairMap < V > {
+
+	/**
+	 * the default number of slots in a new <code>PairMap</code>
+	 */
+	final public static int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * the table is grown once it becomes more full than this
+	 */
+	final private static float MAXIMUM_LOAD = 0.5f;
+
+	/**
+	 * the packed keys. empty slots hold <code>PairKey.EMPTY</code>
+	 */
+	private long[] m_keys;
+
+	/**
+	 * the value stored for the key in the same slot
+	 */
+	private Object[] m_values;
+
+	/**
+	 * the number of pairs stored in this <code>PairMap</code>
+	 */
+	private int m_size = 0;
+
+	/**
+	 * <code>m_keys.length - 1</code>. the capacity is always a power of two
+	 */
+	private int m_mask;
+
+	public PairMap() {
+		this( DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * creates a <code>PairMap</code> with room for at least the given number of slots
+	 *
+	 * @param initialCapacity		the number of slots to allocate
+	 */
+	public PairMap( int initialCapacity ) {
+		int capacity = 2;
+		while ( capacity < initialCapacity ) {
+			capacity <<= 1;
+		}
+		allocate( capacity );
+	}
+
+	private void allocate( int capacity ) {
+		this.m_keys = new long[ capacity ];
+		Arrays.fill( this.m_keys , PairKey.EMPTY );
+		this.m_values = new Object[ capacity ];
+		this.m_mask = capacity - 1;
+	}
+
+	/**
+	 * @param key			a packed key
+	 * @return				the slot holding <code>key</code>, or the empty slot where it would be inserted
+	 */
+	private int findSlot( long key ) {
+		int slot = PairKey.hash( key ) & this.m_mask;
+		while ( this.m_keys[ slot ] != PairKey.EMPTY && this.m_keys[ slot ] != key ) {
+			slot = ( slot + 1 ) & this.m_mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @param key			a key created by <code>PairKey.pack(int, int)</code>
+	 * @return				the value stored for <code>key</code>, or <code>null</code> if there is none
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V get( long key ) {
+		int slot = findSlot( key );
+		if ( this.m_keys[ slot ] == key ) {
+			return ( V ) this.m_values[ slot ];
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * @param id1			an id
+	 * @param id2			another id
+	 * @return				the value stored for the pair, or <code>null</code> if there is none
+	 */
+	public V get( int id1 , int id2 ) {
+		return get( PairKey.pack( id1 , id2 ) );
+	}
+
+	/**
+	 * @param key			a packed key
+	 * @return				if a value is stored for <code>key</code>
+	 */
+	public boolean containsKey( long key ) {
+		return this.m_keys[ findSlot( key ) ] == key;
+	}
+
+	/**
+	 * stores the given value for the given key, replacing any existing value
+	 *
+	 * @param key							a key created by <code>PairKey.pack(int, int)</code>
+	 * @param value							the value to store
+	 * @return								the value previously stored for <code>key</code>, or <code>null</code>
+	 * @throws IllegalArgumentException		if <code>key</code> is <code>PairKey.EMPTY</code>
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V put( long key , V value ) throws IllegalArgumentException {
+		if ( key == PairKey.EMPTY ) {
+			throw new IllegalArgumentException( ErrorMessages.Lib.INVALID_PAIR_KEY );
+		}
+		int slot = findSlot( key );
+		if ( this.m_keys[ slot ] == key ) {
+			V previous = ( V ) this.m_values[ slot ];
+			this.m_values[ slot ] = value;
+			return previous;
+		}
+		this.m_keys[ slot ] = key;
+		this.m_values[ slot ] = value;
+		this.m_size ++;
+		if ( this.m_size > this.m_keys.length * MAXIMUM_LOAD ) {
+			rehash( this.m_keys.length << 1 );
+		}
+		return null;
+	}
+
+	/**
+	 * removes the value stored for the given key. the following entries in the
+	 * probe sequence are shifted back so no tombstones are left behind
+	 *
+	 * @param key			a packed key
+	 * @return				the value that was removed, or <code>null</code> if there was none
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V remove( long key ) {
+		int slot = findSlot( key );
+		if ( this.m_keys[ slot ] != key ) {
+			return null;
+		}
+		V removed = ( V ) this.m_values[ slot ];
+		int hole = slot;
+		int next = ( hole + 1 ) & this.m_mask;
+		while ( this.m_keys[ next ] != PairKey.EMPTY ) {
+			int home = PairKey.hash( this.m_keys[ next ] ) & this.m_mask;
+
+			//move the entry into the hole if its home slot does not lie
+			//cyclically between the hole and its current slot
+			if ( ( ( next - home ) & this.m_mask ) >= ( ( next - hole ) & this.m_mask ) ) {
+				this.m_keys[ hole ] = this.m_keys[ next ];
+				this.m_values[ hole ] = this.m_values[ next ];
+				hole = next;
+			}
+			next = ( next + 1 ) & this.m_mask;
+		}
+		this.m_keys[ hole ] = PairKey.EMPTY;
+		this.m_values[ hole ] = null;
+		this.m_size --;
+		return removed;
+	}
+
+	private void rehash( int newCapacity ) {
+		long[] oldKeys = this.m_keys;
+		Object[] oldValues = this.m_values;
+		allocate( newCapacity );
+		for ( int oldSlot = 0 ; oldSlot < oldKeys.length ; oldSlot ++ ) {
+			if ( oldKeys[ oldSlot ] != PairKey.EMPTY ) {
+				int slot = findSlot( oldKeys[ oldSlot ] );
+				this.m_keys[ slot ] = oldKeys[ oldSlot ];
+				this.m_values[ slot ] = oldValues[ oldSlot ];
+			}
+		}
+	}
+
+	/**
+	 * removes all pairs from this <code>PairMap</code> without shrinking it
+	 */
+	public void clear() {
+		if ( this.m_size > 0 ) {
+			Arrays.fill( this.m_keys , PairKey.EMPTY );
+			Arrays.fill( this.m_values , null );
+			this.m_size = 0;
+		}
+	}
+
+	/**
+	 * @return			the number of pairs stored in this <code>PairMap</code>
+	 */
+	public int size() {
+		return this.m_size;
+	}
+
+	/**
+	 * @return			the number of slots in this <code>PairMap</code>. used to visit every entry
+	 */
+	public int capacity() {
+		return this.m_keys.length;
+	}
+
+	/**
+	 * @param slot		a slot index less than <code>capacity()</code>
+	 * @return			if the given slot holds a pair
+	 */
+	public boolean isOccupied( int slot ) {
+		return this.m_keys[ slot ] != PairKey.EMPTY;
+	}
+
+	/**
+	 * @param slot		an occupied slot index
+	 * @return			the packed key stored in the given slot
+	 */
+	public long keyAt( int slot ) {
+		return this.m_keys[ slot ];
+	}
+
+	/**
+	 * @param slot		an occupied slot index
+	 * @return			the value stored in the given slot
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V valueAt( int slot ) {
+		return ( V ) this.m_values[ slot ];
+	}
+}
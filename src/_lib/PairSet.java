@@ -0,0 +1,183 @@
+package _lib;
+
+import java.util.Arrays;
+
+import util.ErrorMessages;
+
+/**
+ * a set of unordered pairs of integer ids. keys are packed into a
+ * <code>long</code> by <code>PairKey</code> and stored in a primitive
+ * open-addressing table with linear probing, so adding and checking pairs
+ * never allocates
+ *
+ * @see					PairKey
+ * @see					PairMap
+ */
+public class PairSet {
+
+	/**
+	 * the table is grown once it becomes more full than this
+	 */
+	final private static float MAXIMUM_LOAD = 0.5f;
+
+	/**
+	 * the packed keys. empty slots hold <code>PairKey.EMPTY</code>
+	 */
+	private long[] m_keys;
+
+	/**
+	 * the number of pairs in this <code>PairSet</code>
+	 */
+	private int m_size = 0;
+
+	/**
+	 * <code>m_keys.length - 1</code>. the capacity is always a power of two
+	 */
+	private int m_mask;
+
+	public PairSet() {
+		this( PairMap.DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * creates a <code>PairSet</code> with room for at least the given number of slots
+	 *
+	 * @param initialCapacity		the number of slots to allocate
+	 */
+	public PairSet( int initialCapacity ) {
+		int capacity = 2;
+		while ( capacity < initialCapacity ) {
+			capacity <<= 1;
+		}
+		allocate( capacity );
+	}
+
+	private void allocate( int capacity ) {
+		this.m_keys = new long[ capacity ];
+		Arrays.fill( this.m_keys , PairKey.EMPTY );
+		this.m_mask = capacity - 1;
+	}
+
+	private int findSlot( long key ) {
+		int slot = PairKey.hash( key ) & this.m_mask;
+		while ( this.m_keys[ slot ] != PairKey.EMPTY && this.m_keys[ slot ] != key ) {
+			slot = ( slot + 1 ) & this.m_mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * adds the given pair to this <code>PairSet</code>
+	 *
+	 * @param key							a key created by <code>PairKey.pack(int, int)</code>
+	 * @return								<code>true</code> if the pair was not already in this set
+	 * @throws IllegalArgumentException		if <code>key</code> is <code>PairKey.EMPTY</code>
+	 */
+	public boolean add( long key ) throws IllegalArgumentException {
+		if ( key == PairKey.EMPTY ) {
+			throw new IllegalArgumentException( ErrorMessages.Lib.INVALID_PAIR_KEY );
+		}
+		int slot = findSlot( key );
+		if ( this.m_keys[ slot ] == key ) {
+			return false;
+		}
+		this.m_keys[ slot ] = key;
+		this.m_size ++;
+		if ( this.m_size > this.m_keys.length * MAXIMUM_LOAD ) {
+			long[] oldKeys = this.m_keys;
+			allocate( oldKeys.length << 1 );
+			for ( long oldKey : oldKeys ) {
+				if ( oldKey != PairKey.EMPTY ) {
+					this.m_keys[ findSlot( oldKey ) ] = oldKey;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * adds the pair ( <code>id1</code> , <code>id2</code> ) to this <code>PairSet</code>
+	 *
+	 * @param id1			an id
+	 * @param id2			another id
+	 * @return				<code>true</code> if the pair was not already in this set
+	 */
+	public boolean add( int id1 , int id2 ) {
+		return add( PairKey.pack( id1 , id2 ) );
+	}
+
+	/**
+	 * @param key			a packed key
+	 * @return				if the given pair is in this <code>PairSet</code>
+	 */
+	public boolean contains( long key ) {
+		return this.m_keys[ findSlot( key ) ] == key;
+	}
+
+	/**
+	 * removes the given pair from this <code>PairSet</code>, shifting back the
+	 * following entries in the probe sequence
+	 *
+	 * @param key			a packed key
+	 * @return				<code>true</code> if the pair was in this set
+	 */
+	public boolean remove( long key ) {
+		int slot = findSlot( key );
+		if ( this.m_keys[ slot ] != key ) {
+			return false;
+		}
+		int hole = slot;
+		int next = ( hole + 1 ) & this.m_mask;
+		while ( this.m_keys[ next ] != PairKey.EMPTY ) {
+			int home = PairKey.hash( this.m_keys[ next ] ) & this.m_mask;
+			if ( ( ( next - home ) & this.m_mask ) >= ( ( next - hole ) & this.m_mask ) ) {
+				this.m_keys[ hole ] = this.m_keys[ next ];
+				hole = next;
+			}
+			next = ( next + 1 ) & this.m_mask;
+		}
+		this.m_keys[ hole ] = PairKey.EMPTY;
+		this.m_size --;
+		return true;
+	}
+
+	/**
+	 * removes all pairs from this <code>PairSet</code> without shrinking it
+	 */
+	public void clear() {
+		if ( this.m_size > 0 ) {
+			Arrays.fill( this.m_keys , PairKey.EMPTY );
+			this.m_size = 0;
+		}
+	}
+
+	/**
+	 * @return			the number of pairs in this <code>PairSet</code>
+	 */
+	public int size() {
+		return this.m_size;
+	}
+
+	/**
+	 * @return			the number of slots in this <code>PairSet</code>. used to visit every pair
+	 */
+	public int capacity() {
+		return this.m_keys.length;
+	}
+
+	/**
+	 * @param slot		a slot index less than <code>capacity()</code>
+	 * @return			if the given slot holds a pair
+	 */
+	public boolean isOccupied( int slot ) {
+		return this.m_keys[ slot ] != PairKey.EMPTY;
+	}
+
+	/**
+	 * @param slot		an occupied slot index
+	 * @return			the packed key stored in the given slot
+	 */
+	public long keyAt( int slot ) {
+		return this.m_keys[ slot ];
+	}
+}
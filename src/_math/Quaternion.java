@@ -247,6 +247,45 @@ public class Quaternion {
 		return new Matrix3( matrixData );
 	}
 	
+	/**
+	 * writes the same matrix as <code>toOrientationMatrix()</code> into the given
+	 * array in row-major order, without creating any intermediate objects. used
+	 * by collision code that transforms many points with the same orientation
+	 *
+	 * @param result			an array of at least 9 elements to receive the matrix
+	 * @see						#toOrientationMatrix()
+	 */
+	public void toOrientationData( double[] result ) {
+		toOrientationData( result , 0 );
+	}
+
+	/**
+	 * writes the orientation matrix into the given array starting at the given
+	 * position, e.g. to keep the matrices of many objects in one array
+	 *
+	 * @param result			an array to receive the matrix
+	 * @param offset			where the 9 elements of the matrix start in the array
+	 * @see						#toOrientationData(double[])
+	 */
+	public void toOrientationData( double[] result , int offset ) {
+		double w = this.m_w.value();
+		double x = this.m_x.value();
+		double y = this.m_y.value();
+		double z = this.m_z.value();
+
+		result[ offset ] = 1 - ( 2 * y * y + 2 * z * z );
+		result[ offset + 1 ] = 2 * x * y + 2 * z * w;
+		result[ offset + 2 ] = 2 * x * z - 2 * y * w;
+
+		result[ offset + 3 ] = 2 * x * y - 2 * z * w;
+		result[ offset + 4 ] = 1 - ( 2 * x * x + 2 * z * z );
+		result[ offset + 5 ] = 2 * y * z + 2 * x * w;
+
+		result[ offset + 6 ] = 2 * x * z + 2 * y * w;
+		result[ offset + 7 ] = 2 * y * z - 2 * x * w;
+		result[ offset + 8 ] = 1 - ( 2 * x * x + 2 * y * y );
+	}
+
 	/**
 	 * converts this <code>Quaternion</code> into a <code>Matrix4</code> in world
 	 * coordinates. it also factors in a <code>Vector3D</code> position
@@ -0,0 +1,41 @@
+package force;
+
+import _math.Real;
+
+/**
+ * the factor by which damping scales a velocity over a step, damping^duration. the
+ * factor only changes when the damping or the duration of the step does, so it is kept
+ * and reused until one of them changes rather than recomputed every step
+ */
+public class DampingFactor {
+
+	/**
+	 * the damping and duration the factor was last computed for
+	 */
+	private float m_damping = Float.NaN;
+
+	private float m_duration = Float.NaN;
+
+	/**
+	 * damping^duration
+	 */
+	private Real m_factor = Real.ONE;
+
+	public DampingFactor() {
+
+	}
+
+	/**
+	 * @param damping			the fraction of the velocity kept after one unit of time
+	 * @param duration			the duration of the step
+	 * @return					damping^duration
+	 */
+	public Real get( Real damping , Real duration ) {
+		if ( damping.value() != this.m_damping || duration.value() != this.m_duration ) {
+			this.m_damping = damping.value();
+			this.m_duration = duration.value();
+			this.m_factor = damping.pow( duration );
+		}
+		return this.m_factor;
+	}
+}
@@ -1,7 +1,6 @@
 package force;
 
 import _lib.LinkedList;
-import _math.Real;
 
 /**
  * generates forces on objects
@@ -62,6 +61,13 @@ abstract public class ForceGenerator < T extends MassedObject > {
 		this.m_objects.add( toAdd );
 	}
 	
+	/**
+	 * @return				the objects to which this <code>ForceGenerator</code>'s force is applied
+	 */
+	public LinkedList < T > getObjects() {
+		return this.m_objects;
+	}
+	
 	/**
 	 * removes the given <code>MassedObject</code> from this <code>ForceGenerator</code>.
 	 * 
@@ -78,7 +84,7 @@ abstract public class ForceGenerator < T extends MassedObject > {
 	 */
 	public void generateForce() {
 		for ( T object : this.m_objects ) {
-			if ( !object.getInverseMass().equals( Real.ZERO ) ) {
+			if ( object.hasFiniteMass() ) {
 				object.addForceVector( this.getForce().getVector() );
 			}
 		}
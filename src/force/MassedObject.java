@@ -18,6 +18,12 @@ abstract public class MassedObject {
 	 */
 	private Real m_inverseMass;
 	
+	/**
+	 * if the inverse mass is not zero. it is kept with the inverse mass so that
+	 * objects that cannot be moved by forces are skipped without comparing <code>Real</code>s
+	 */
+	private boolean m_hasFiniteMass;
+	
 	/**
 	 * position of the <code>MassedObject</code>
 	 */
@@ -54,6 +60,7 @@ abstract public class MassedObject {
 		}
 		this.m_mass = mass;
 		this.m_inverseMass = Real.ONE.divide( mass );
+		this.m_hasFiniteMass = !this.m_inverseMass.equals( Real.ZERO );
 		this.m_position = position;
 		this.m_velocity = velocity;
 		this.m_acceleration = acceleration;
@@ -74,6 +81,7 @@ abstract public class MassedObject {
 	public void setMass( Real newMass ) {
 		this.m_mass = newMass;
 		this.m_inverseMass = newMass.inverse();
+		this.m_hasFiniteMass = !this.m_inverseMass.equals( Real.ZERO );
 	}
 	
 	/**
@@ -90,6 +98,7 @@ abstract public class MassedObject {
 	 */
 	public void setInverseMass( Real newInverseMass ) {
 		this.m_inverseMass = newInverseMass;
+		this.m_hasFiniteMass = !newInverseMass.equals( Real.ZERO );
 		
 		//also modify the mass of this MassedObject if the inverse mass is not zero
 		if ( newInverseMass.equals( Real.ZERO ) ) {
@@ -97,6 +106,14 @@ abstract public class MassedObject {
 		}
 	}
 	
+	/**
+	 * @return			if this <code>MassedObject</code> has finite mass, i.e. if it can be
+	 * 					moved by forces
+	 */
+	public boolean hasFiniteMass() {
+		return this.m_hasFiniteMass;
+	}
+	
 	/**
 	 * @return			the position of this <code>MassedObject</code>
 	 */
@@ -191,4 +208,76 @@ abstract public class MassedObject {
 	 * @param duration			the amount to move forward in time
 	 */
 	abstract public void act( Real duration );
+	
+	/**
+	 * @return			the number of values that describe the motion of this <code>MassedObject</code>
+	 * 					for an <code>Integrator</code>: its position, then its velocity
+	 * @see				#getState(double[], int)
+	 */
+	public int getStateSize() {
+		return 6;
+	}
+	
+	/**
+	 * @return			the number of values at the start of the state that describe where the
+	 * 					object is, rather than how fast it is moving
+	 */
+	public int getPositionStateSize() {
+		return 3;
+	}
+	
+	/**
+	 * writes the state of this <code>MassedObject</code> into the given array
+	 * 
+	 * @param state			the array
+	 * @param offset		where the state starts in the array
+	 */
+	public void getState( double[] state , int offset ) {
+		state[ offset ] = this.getPosition().getX().value();
+		state[ offset + 1 ] = this.getPosition().getY().value();
+		state[ offset + 2 ] = this.getPosition().getZ().value();
+		state[ offset + 3 ] = this.getVelocity().getX().value();
+		state[ offset + 4 ] = this.getVelocity().getY().value();
+		state[ offset + 5 ] = this.getVelocity().getZ().value();
+	}
+	
+	/**
+	 * moves this <code>MassedObject</code> into the state in the given array
+	 * 
+	 * @param state			the array
+	 * @param offset		where the state starts in the array
+	 * @see					#getState(double[], int)
+	 */
+	public void setState( double[] state , int offset ) {
+		this.setPosition( new Vector3D( new Real( state[ offset ] ) , new Real( state[ offset + 1 ] ) , new Real( state[ offset + 2 ] ) ) );
+		this.setVelocity( new Vector3D( new Real( state[ offset + 3 ] ) , new Real( state[ offset + 4 ] ) , new Real( state[ offset + 5 ] ) ) );
+	}
+	
+	/**
+	 * writes how fast each value of the state is changing, given the net force, into the
+	 * given array
+	 * 
+	 * @param derivative	the array
+	 * @param offset		where the derivative starts in the array
+	 * @see					#getState(double[], int)
+	 */
+	public void getDerivative( double[] derivative , int offset ) {
+		double inverseMass = this.getInverseMass().value();
+		derivative[ offset ] = this.getVelocity().getX().value();
+		derivative[ offset + 1 ] = this.getVelocity().getY().value();
+		derivative[ offset + 2 ] = this.getVelocity().getZ().value();
+		derivative[ offset + 3 ] = this.getNetForce().getX().value() * inverseMass;
+		derivative[ offset + 4 ] = this.getNetForce().getY().value() * inverseMass;
+		derivative[ offset + 5 ] = this.getNetForce().getZ().value() * inverseMass;
+	}
+	
+	/**
+	 * finishes a step taken by an <code>Integrator</code>, doing everything <code>act()</code>
+	 * does besides moving the object, e.g. applying damping and clearing the net force
+	 * 
+	 * @param duration			the duration of the step
+	 */
+	public void endStep( Real duration ) {
+		this.resetNetForce();
+	}
 }
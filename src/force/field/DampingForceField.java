@@ -0,0 +1,40 @@
+package force.field;
+
+import _math.Real;
+
+/**
+ * a field that slows every object down, e.g. a zone of thick fluid, with an acceleration
+ * against the object's velocity proportional to its speed
+ */
+public class DampingForceField extends ForceField {
+
+	/**
+	 * the deceleration per unit of speed
+	 */
+	private double m_damping;
+
+	/**
+	 * @param damping		the deceleration per unit of speed
+	 */
+	public DampingForceField( Real damping ) {
+		super();
+		this.m_damping = damping.value();
+	}
+
+	@Override
+	public void addForces( ForceFieldSet objects ) {
+		double[] x = objects.getX() , y = objects.getY() , z = objects.getZ();
+		double[] velocityX = objects.getVelocityX() , velocityY = objects.getVelocityY() , velocityZ = objects.getVelocityZ();
+		double[] mass = objects.getMass();
+		double[] forceX = objects.getForceX() , forceY = objects.getForceY() , forceZ = objects.getForceZ();
+		int count = objects.getNumObjects();
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( contains( x[ idx ] , y[ idx ] , z[ idx ] ) ) {
+				double scale = -mass[ idx ] * this.m_damping;
+				forceX[ idx ] += scale * velocityX[ idx ];
+				forceY[ idx ] += scale * velocityY[ idx ];
+				forceZ[ idx ] += scale * velocityZ[ idx ];
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package force.field;
+
+import _math.Vector3D;
+
+/**
+ * a force that acts on every object of a world, rather than on a list of objects like a
+ * <code>ForceGenerator</code>. the objects are gathered once per step by a <code>ForceFieldSet</code>
+ * into arrays of their positions, velocities and masses, and each field adds its forces to
+ * the force array in a single pass over those arrays.
+ * <p>
+ * a field may be given bounds, an axis-aligned box outside of which it has no effect
+ */
+abstract public class ForceField {
+
+	/**
+	 * if this field only acts inside its bounds
+	 */
+	private boolean m_isBounded = false;
+
+	/**
+	 * the corners of the bounds with the lowest and highest coordinates
+	 */
+	private double m_minX;
+
+	private double m_minY;
+
+	private double m_minZ;
+
+	private double m_maxX;
+
+	private double m_maxY;
+
+	private double m_maxZ;
+
+	/**
+	 * creates a field that acts everywhere
+	 */
+	public ForceField() {
+
+	}
+
+	/**
+	 * limits this field to the given axis-aligned box
+	 *
+	 * @param min			the corner of the box with the lowest coordinates
+	 * @param max			the corner of the box with the highest coordinates
+	 */
+	public void setBounds( Vector3D min , Vector3D max ) {
+		this.m_isBounded = true;
+		this.m_minX = min.getX().value();
+		this.m_minY = min.getY().value();
+		this.m_minZ = min.getZ().value();
+		this.m_maxX = max.getX().value();
+		this.m_maxY = max.getY().value();
+		this.m_maxZ = max.getZ().value();
+	}
+
+	/**
+	 * lets this field act everywhere again
+	 */
+	public void clearBounds() {
+		this.m_isBounded = false;
+	}
+
+	public boolean isBounded() {
+		return this.m_isBounded;
+	}
+
+	/**
+	 * @return				if this field acts at the given point
+	 */
+	final protected boolean contains( double x , double y , double z ) {
+		return !this.m_isBounded || ( x >= this.m_minX && x <= this.m_maxX && y >= this.m_minY && y <= this.m_maxY && z >= this.m_minZ && z <= this.m_maxZ );
+	}
+
+	/**
+	 * moves this field forward in time. called once per step, before the forces are added.
+	 * fields that do not change over time do nothing
+	 *
+	 * @param duration		the duration of the step
+	 */
+	public void advance( double duration ) {
+
+	}
+
+	/**
+	 * adds the force of this field on each object gathered by the given set to the set's
+	 * force arrays. only objects with finite mass are gathered
+	 *
+	 * @param objects		the objects, as arrays
+	 */
+	abstract public void addForces( ForceFieldSet objects );
+}
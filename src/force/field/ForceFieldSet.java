@@ -0,0 +1,200 @@
+package force.field;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import _math.Real;
+import _math.Vector3D;
+import force.MassedObject;
+
+/**
+ * the <code>ForceField</code>s of a world. once per step, the world gathers the objects
+ * the fields act on with <code>gather()</code>, which copies their positions, velocities
+ * and masses into arrays. <code>apply()</code> then moves each field forward in time, has
+ * it add its forces to the force arrays in one pass over all objects, and adds the total
+ * force of all fields to each object with a single <code>addForceVector()</code>.
+ * <p>
+ * no object is registered with a field: a field acts on everything the world gathers,
+ * within the field's bounds
+ */
+public class ForceFieldSet {
+
+	/**
+	 * the fields in this set
+	 */
+	final private ArrayList < ForceField > m_fields = new ArrayList < ForceField > ();
+
+	/**
+	 * the objects gathered in this step
+	 */
+	private MassedObject[] m_objects = new MassedObject[ 0 ];
+
+	private int m_numObjects = 0;
+
+	/**
+	 * the positions, velocities and masses of the gathered objects
+	 */
+	private double[] m_x = new double[ 0 ];
+
+	private double[] m_y = new double[ 0 ];
+
+	private double[] m_z = new double[ 0 ];
+
+	private double[] m_velocityX = new double[ 0 ];
+
+	private double[] m_velocityY = new double[ 0 ];
+
+	private double[] m_velocityZ = new double[ 0 ];
+
+	private double[] m_mass = new double[ 0 ];
+
+	/**
+	 * the total force of the fields on each gathered object
+	 */
+	private double[] m_forceX = new double[ 0 ];
+
+	private double[] m_forceY = new double[ 0 ];
+
+	private double[] m_forceZ = new double[ 0 ];
+
+	public ForceFieldSet() {
+
+	}
+
+	public void addField( ForceField toAdd ) {
+		this.m_fields.add( toAdd );
+	}
+
+	public void removeField( ForceField toRemove ) {
+		this.m_fields.remove( toRemove );
+	}
+
+	/**
+	 * @return			the number of fields in this set
+	 */
+	public int getNumFields() {
+		return this.m_fields.size();
+	}
+
+	/**
+	 * gathers an object for the fields to act on in this step. objects with
+	 * infinite mass are ignored
+	 *
+	 * @param object		the object to gather
+	 */
+	public void gather( MassedObject object ) {
+		if ( this.m_fields.isEmpty() || !object.hasFiniteMass() ) {
+			return;
+		}
+		int idx = this.m_numObjects;
+		if ( idx == this.m_objects.length ) {
+			grow();
+		}
+		Vector3D position = object.getPosition();
+		Vector3D velocity = object.getVelocity();
+		this.m_objects[ idx ] = object;
+		this.m_x[ idx ] = position.getX().value();
+		this.m_y[ idx ] = position.getY().value();
+		this.m_z[ idx ] = position.getZ().value();
+		this.m_velocityX[ idx ] = velocity.getX().value();
+		this.m_velocityY[ idx ] = velocity.getY().value();
+		this.m_velocityZ[ idx ] = velocity.getZ().value();
+		this.m_mass[ idx ] = object.getMass().value();
+		this.m_numObjects ++;
+	}
+
+	private void grow() {
+		int capacity = Math.max( 16 , 2 * this.m_objects.length );
+		this.m_objects = Arrays.copyOf( this.m_objects , capacity );
+		this.m_x = Arrays.copyOf( this.m_x , capacity );
+		this.m_y = Arrays.copyOf( this.m_y , capacity );
+		this.m_z = Arrays.copyOf( this.m_z , capacity );
+		this.m_velocityX = Arrays.copyOf( this.m_velocityX , capacity );
+		this.m_velocityY = Arrays.copyOf( this.m_velocityY , capacity );
+		this.m_velocityZ = Arrays.copyOf( this.m_velocityZ , capacity );
+		this.m_mass = Arrays.copyOf( this.m_mass , capacity );
+		this.m_forceX = Arrays.copyOf( this.m_forceX , capacity );
+		this.m_forceY = Arrays.copyOf( this.m_forceY , capacity );
+		this.m_forceZ = Arrays.copyOf( this.m_forceZ , capacity );
+	}
+
+	/**
+	 * moves every field forward by the duration of the step, has every field act on the
+	 * gathered objects, adds the total force to each object, and forgets the objects,
+	 * ready for the next step
+	 *
+	 * @param duration		the duration of the step
+	 */
+	public void apply( Real duration ) {
+		int count = this.m_numObjects;
+		Arrays.fill( this.m_forceX , 0 , count , 0 );
+		Arrays.fill( this.m_forceY , 0 , count , 0 );
+		Arrays.fill( this.m_forceZ , 0 , count , 0 );
+		for ( int idx = 0 ; idx < this.m_fields.size() ; idx ++ ) {
+			this.m_fields.get( idx ).advance( duration.value() );
+			this.m_fields.get( idx ).addForces( this );
+		}
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( this.m_forceX[ idx ] != 0 || this.m_forceY[ idx ] != 0 || this.m_forceZ[ idx ] != 0 ) {
+				this.m_objects[ idx ].addForceVector( new Vector3D( new Real( this.m_forceX[ idx ] ) , new Real( this.m_forceY[ idx ] ) , new Real( this.m_forceZ[ idx ] ) ) );
+			}
+		}
+		Arrays.fill( this.m_objects , 0 , count , null );
+		this.m_numObjects = 0;
+	}
+
+	/**
+	 * @return			the number of objects gathered in this step
+	 */
+	public int getNumObjects() {
+		return this.m_numObjects;
+	}
+
+	/**
+	 * @return			the x coordinates of the gathered objects. only the first
+	 * 					<code>getNumObjects()</code> entries are used
+	 */
+	public double[] getX() {
+		return this.m_x;
+	}
+
+	public double[] getY() {
+		return this.m_y;
+	}
+
+	public double[] getZ() {
+		return this.m_z;
+	}
+
+	public double[] getVelocityX() {
+		return this.m_velocityX;
+	}
+
+	public double[] getVelocityY() {
+		return this.m_velocityY;
+	}
+
+	public double[] getVelocityZ() {
+		return this.m_velocityZ;
+	}
+
+	public double[] getMass() {
+		return this.m_mass;
+	}
+
+	/**
+	 * @return			the force of the fields on the gathered objects so far, to which
+	 * 					each field adds its own
+	 */
+	public double[] getForceX() {
+		return this.m_forceX;
+	}
+
+	public double[] getForceY() {
+		return this.m_forceY;
+	}
+
+	public double[] getForceZ() {
+		return this.m_forceZ;
+	}
+}
@@ -0,0 +1,188 @@
+package force.field;
+
+import util.ErrorMessages;
+import _math.Real;
+
+/**
+ * a field whose strength varies over space as given by a <code>VectorGrid</code>, e.g.
+ * measured or precomputed wind and water currents. the grid can be animated by giving
+ * several grids as frames: the field then blends between consecutive frames as it moves
+ * forward in time, and loops back to the first frame after the last.
+ * <p>
+ * the grid holds either an acceleration given to objects, or the velocity of the air or
+ * water around them. in the second case objects are dragged towards the local velocity
+ * with the same drag law as <code>ParticleDragGenerator</code>, applied to their velocity
+ * relative to the air or water.
+ * <p>
+ * the grid is sampled for all objects at once, one frame at a time
+ */
+public class GridForceField extends ForceField {
+
+	/**
+	 * the grid holds the acceleration given to objects
+	 */
+	final public static int ACCELERATION = 0;
+
+	/**
+	 * the grid holds the velocity of the air or water that drags objects
+	 */
+	final public static int VELOCITY = 1;
+
+	/**
+	 * the frames of the field
+	 */
+	final private VectorGrid[] m_frames;
+
+	/**
+	 * the duration of each frame
+	 */
+	final private double m_frameDuration;
+
+	/**
+	 * what the grid holds: <code>ACCELERATION</code> or <code>VELOCITY</code>
+	 */
+	final private int m_mode;
+
+	/**
+	 * the velocity and velocity-squared drag constants, for <code>VELOCITY</code> grids
+	 */
+	private double m_k1 = 0;
+
+	private double m_k2 = 0;
+
+	/**
+	 * the time since the first frame
+	 */
+	private double m_time = 0;
+
+	/**
+	 * the sampled vector at each object
+	 */
+	private double[] m_sampleX = new double[ 0 ];
+
+	private double[] m_sampleY = new double[ 0 ];
+
+	private double[] m_sampleZ = new double[ 0 ];
+
+	/**
+	 * creates a field that does not change over time
+	 *
+	 * @param grid							the grid
+	 * @param mode							what the grid holds: <code>ACCELERATION</code> or <code>VELOCITY</code>
+	 * @throws IllegalArgumentException		if the mode is unknown
+	 */
+	public GridForceField( VectorGrid grid , int mode ) throws IllegalArgumentException {
+		this( new VectorGrid[] { grid } , Real.ONE , mode );
+	}
+
+	/**
+	 * creates a field animated by the given frames
+	 *
+	 * @param frames						the grids of the frames, in order
+	 * @param frameDuration					the time between consecutive frames
+	 * @param mode							what the grids hold: <code>ACCELERATION</code> or <code>VELOCITY</code>
+	 * @throws IllegalArgumentException		if there are no frames, the duration is not positive or the mode is unknown
+	 */
+	public GridForceField( VectorGrid[] frames , Real frameDuration , int mode ) throws IllegalArgumentException {
+		super();
+		if ( frames.length == 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Field.NO_FRAMES );
+		}
+		if ( frameDuration.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Field.INVALID_FRAME_DURATION );
+		}
+		if ( mode != ACCELERATION && mode != VELOCITY ) {
+			throw new IllegalArgumentException( ErrorMessages.Field.INVALID_MODE );
+		}
+		this.m_frames = frames.clone();
+		this.m_frameDuration = frameDuration.value();
+		this.m_mode = mode;
+	}
+
+	/**
+	 * sets the drag constants used with <code>VELOCITY</code> grids, as in <code>ParticleDragGenerator</code>
+	 *
+	 * @param k1			the velocity drag constant
+	 * @param k2			the velocity-squared drag constant
+	 */
+	public void setDrag( Real k1 , Real k2 ) {
+		this.m_k1 = k1.value();
+		this.m_k2 = k2.value();
+	}
+
+	/**
+	 * @param time			the time since the first frame
+	 */
+	public void setTime( Real time ) {
+		this.m_time = time.value();
+	}
+
+	public Real getTime() {
+		return new Real( this.m_time );
+	}
+
+	@Override
+	public void advance( double duration ) {
+		this.m_time += duration;
+	}
+
+	@Override
+	public void addForces( ForceFieldSet objects ) {
+		int count = objects.getNumObjects();
+		if ( this.m_sampleX.length < count ) {
+			this.m_sampleX = new double[ objects.getX().length ];
+			this.m_sampleY = new double[ objects.getX().length ];
+			this.m_sampleZ = new double[ objects.getX().length ];
+		}
+		sample( objects , count );
+
+		double[] x = objects.getX() , y = objects.getY() , z = objects.getZ();
+		double[] mass = objects.getMass();
+		double[] velocityX = objects.getVelocityX() , velocityY = objects.getVelocityY() , velocityZ = objects.getVelocityZ();
+		double[] forceX = objects.getForceX() , forceY = objects.getForceY() , forceZ = objects.getForceZ();
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( !contains( x[ idx ] , y[ idx ] , z[ idx ] ) ) {
+				continue;
+			}
+			if ( this.m_mode == ACCELERATION ) {
+				forceX[ idx ] += mass[ idx ] * this.m_sampleX[ idx ];
+				forceY[ idx ] += mass[ idx ] * this.m_sampleY[ idx ];
+				forceZ[ idx ] += mass[ idx ] * this.m_sampleZ[ idx ];
+
+			//f_drag = -unit( v )( k1*|v| + k2*|v|^2 ) = -v( k1 + k2*|v| ), with v relative
+			//to the sampled velocity
+			} else {
+				double relativeX = velocityX[ idx ] - this.m_sampleX[ idx ];
+				double relativeY = velocityY[ idx ] - this.m_sampleY[ idx ];
+				double relativeZ = velocityZ[ idx ] - this.m_sampleZ[ idx ];
+				double speed = Math.sqrt( relativeX * relativeX + relativeY * relativeY + relativeZ * relativeZ );
+				double dragCoefficient = this.m_k1 + this.m_k2 * speed;
+				forceX[ idx ] -= dragCoefficient * relativeX;
+				forceY[ idx ] -= dragCoefficient * relativeY;
+				forceZ[ idx ] -= dragCoefficient * relativeZ;
+			}
+		}
+	}
+
+	/**
+	 * samples the field at every object into <code>m_sampleX</code>, <code>m_sampleY</code>
+	 * and <code>m_sampleZ</code>, blending the two frames around the current time
+	 */
+	private void sample( ForceFieldSet objects , int count ) {
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			this.m_sampleX[ idx ] = 0;
+			this.m_sampleY[ idx ] = 0;
+			this.m_sampleZ[ idx ] = 0;
+		}
+		int numFrames = this.m_frames.length;
+		double frame = this.m_time / this.m_frameDuration;
+		double loopedFrame = frame - numFrames * Math.floor( frame / numFrames );
+		int current = Math.min( ( int ) loopedFrame , numFrames - 1 );
+		int next = ( current + 1 ) % numFrames;
+		double blend = numFrames > 1 ? loopedFrame - current : 0;
+		this.m_frames[ current ].sample( objects.getX() , objects.getY() , objects.getZ() , 0 , count , 1 - blend , this.m_sampleX , this.m_sampleY , this.m_sampleZ );
+		if ( blend > 0 ) {
+			this.m_frames[ next ].sample( objects.getX() , objects.getY() , objects.getZ() , 0 , count , blend , this.m_sampleX , this.m_sampleY , this.m_sampleZ );
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package force.field;
+
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a field that pulls every object towards a center, or pushes it away, with an
+ * acceleration that falls off with the square of the distance. closer than the
+ * minimum radius, the acceleration no longer grows
+ */
+public class RadialForceField extends ForceField {
+
+	/**
+	 * the center of the field
+	 */
+	private double m_centerX;
+
+	private double m_centerY;
+
+	private double m_centerZ;
+
+	/**
+	 * the acceleration towards the center at a distance of one. negative strengths push
+	 * objects away from the center
+	 */
+	private double m_strength;
+
+	/**
+	 * the square of the distance within which the acceleration no longer grows
+	 */
+	private double m_minimumRadiusSquared;
+
+	/**
+	 * @param center			the center of the field
+	 * @param strength			the acceleration towards the center at a distance of one, negative to push objects away
+	 * @param minimumRadius		the distance within which the acceleration no longer grows
+	 */
+	public RadialForceField( Vector3D center , Real strength , Real minimumRadius ) {
+		super();
+		setCenter( center );
+		this.m_strength = strength.value();
+		this.m_minimumRadiusSquared = ( double ) minimumRadius.value() * minimumRadius.value();
+	}
+
+	public void setCenter( Vector3D center ) {
+		this.m_centerX = center.getX().value();
+		this.m_centerY = center.getY().value();
+		this.m_centerZ = center.getZ().value();
+	}
+
+	@Override
+	public void addForces( ForceFieldSet objects ) {
+		double[] x = objects.getX() , y = objects.getY() , z = objects.getZ();
+		double[] mass = objects.getMass();
+		double[] forceX = objects.getForceX() , forceY = objects.getForceY() , forceZ = objects.getForceZ();
+		int count = objects.getNumObjects();
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( contains( x[ idx ] , y[ idx ] , z[ idx ] ) ) {
+				double dx = this.m_centerX - x[ idx ];
+				double dy = this.m_centerY - y[ idx ];
+				double dz = this.m_centerZ - z[ idx ];
+				double distanceSquared = Math.max( dx * dx + dy * dy + dz * dz , this.m_minimumRadiusSquared );
+				if ( distanceSquared > 0 ) {
+					double scale = mass[ idx ] * this.m_strength / ( distanceSquared * Math.sqrt( distanceSquared ) );
+					forceX[ idx ] += scale * dx;
+					forceY[ idx ] += scale * dy;
+					forceZ[ idx ] += scale * dz;
+				}
+			}
+		}
+	}
+}
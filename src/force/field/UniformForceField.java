@@ -0,0 +1,47 @@
+package force.field;
+
+import _math.Vector3D;
+
+/**
+ * a field that gives every object the same acceleration, e.g. gravity
+ */
+public class UniformForceField extends ForceField {
+
+	/**
+	 * the acceleration given to every object
+	 */
+	private double m_accelerationX;
+
+	private double m_accelerationY;
+
+	private double m_accelerationZ;
+
+	/**
+	 * @param acceleration		the acceleration given to every object
+	 */
+	public UniformForceField( Vector3D acceleration ) {
+		super();
+		setAcceleration( acceleration );
+	}
+
+	public void setAcceleration( Vector3D acceleration ) {
+		this.m_accelerationX = acceleration.getX().value();
+		this.m_accelerationY = acceleration.getY().value();
+		this.m_accelerationZ = acceleration.getZ().value();
+	}
+
+	@Override
+	public void addForces( ForceFieldSet objects ) {
+		double[] x = objects.getX() , y = objects.getY() , z = objects.getZ();
+		double[] mass = objects.getMass();
+		double[] forceX = objects.getForceX() , forceY = objects.getForceY() , forceZ = objects.getForceZ();
+		int count = objects.getNumObjects();
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( contains( x[ idx ] , y[ idx ] , z[ idx ] ) ) {
+				forceX[ idx ] += mass[ idx ] * this.m_accelerationX;
+				forceY[ idx ] += mass[ idx ] * this.m_accelerationY;
+				forceZ[ idx ] += mass[ idx ] * this.m_accelerationZ;
+			}
+		}
+	}
+}
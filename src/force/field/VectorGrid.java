@@ -0,0 +1,192 @@
+package force.field;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import util.ErrorMessages;
+import _math.Vector3D;
+
+/**
+ * a vector at each node of a regular 3D grid, e.g. the velocity of the wind or of a
+ * water current, sampled between nodes by trilinear interpolation. outside the grid,
+ * the nearest vector on the grid's boundary is used.
+ * <p>
+ * the vectors are kept as floats, three per node, with x varying fastest, then y, then z.
+ * they are either kept in a <code>float</code> array or memory-mapped from a file, so a
+ * large grid is only read from disk as it is sampled
+ */
+public class VectorGrid {
+
+	/**
+	 * the corner of the grid with the lowest coordinates
+	 */
+	final private double m_originX;
+
+	final private double m_originY;
+
+	final private double m_originZ;
+
+	/**
+	 * the distance between neighboring nodes
+	 */
+	final private double m_spacing;
+
+	/**
+	 * the number of nodes along each axis
+	 */
+	final private int m_numX;
+
+	final private int m_numY;
+
+	final private int m_numZ;
+
+	/**
+	 * the vectors at the nodes
+	 */
+	final private FloatBuffer m_vectors;
+
+	/**
+	 * creates a grid of vectors kept in the given array
+	 *
+	 * @param origin						the corner of the grid with the lowest coordinates
+	 * @param spacing						the distance between neighboring nodes
+	 * @param numX							the number of nodes along x
+	 * @param numY							the number of nodes along y
+	 * @param numZ							the number of nodes along z
+	 * @param vectors						the x, y and z of the vector at each node, with x varying fastest,
+	 * 										then y, then z. the array is used, not copied
+	 * @throws IllegalArgumentException		if the spacing or a number of nodes is not positive, or the
+	 * 										array does not have three floats per node
+	 */
+	public VectorGrid( Vector3D origin , double spacing , int numX , int numY , int numZ , float[] vectors ) throws IllegalArgumentException {
+		this( origin , spacing , numX , numY , numZ , FloatBuffer.wrap( vectors ) );
+	}
+
+	private VectorGrid( Vector3D origin , double spacing , int numX , int numY , int numZ , FloatBuffer vectors ) throws IllegalArgumentException {
+		if ( spacing <= 0 || numX < 1 || numY < 1 || numZ < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.Field.INVALID_GRID );
+		}
+		if ( vectors.capacity() != 3L * numX * numY * numZ ) {
+			throw new IllegalArgumentException( ErrorMessages.Field.INVALID_GRID_DATA );
+		}
+		this.m_originX = origin.getX().value();
+		this.m_originY = origin.getY().value();
+		this.m_originZ = origin.getZ().value();
+		this.m_spacing = spacing;
+		this.m_numX = numX;
+		this.m_numY = numY;
+		this.m_numZ = numZ;
+		this.m_vectors = vectors;
+	}
+
+	/**
+	 * creates a grid of vectors memory-mapped from a file of raw floats, laid out as for
+	 * the array constructor
+	 *
+	 * @param file							the file
+	 * @param offset						the position in the file, in bytes, of the first float
+	 * @param order							the byte order of the floats in the file
+	 * @param origin						the corner of the grid with the lowest coordinates
+	 * @param spacing						the distance between neighboring nodes
+	 * @param numX							the number of nodes along x
+	 * @param numY							the number of nodes along y
+	 * @param numZ							the number of nodes along z
+	 * @return								the grid
+	 * @throws IOException					if the file cannot be mapped
+	 * @throws IllegalArgumentException		if the spacing or a number of nodes is not positive
+	 */
+	public static VectorGrid map( File file , long offset , ByteOrder order , Vector3D origin , double spacing , int numX , int numY , int numZ ) throws IOException , IllegalArgumentException {
+		long size = 4L * 3 * numX * numY * numZ;
+		RandomAccessFile input = new RandomAccessFile( file , "r" );
+		try {
+
+			//the mapping stays valid once the file is closed
+			MappedByteBuffer bytes = input.getChannel().map( FileChannel.MapMode.READ_ONLY , offset , size );
+			bytes.order( order );
+			return new VectorGrid( origin , spacing , numX , numY , numZ , bytes.asFloatBuffer() );
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * samples the grid at many points at once
+	 *
+	 * @param x				the x coordinates of the points
+	 * @param y				the y coordinates of the points
+	 * @param z				the z coordinates of the points
+	 * @param start			the first point to sample
+	 * @param end			one past the last point to sample
+	 * @param weight		how much of each sample to add to the output
+	 * @param outX			where to add the x of each sample
+	 * @param outY			where to add the y of each sample
+	 * @param outZ			where to add the z of each sample
+	 */
+	public void sample( double[] x , double[] y , double[] z , int start , int end , double weight , double[] outX , double[] outY , double[] outZ ) {
+		FloatBuffer vectors = this.m_vectors;
+		int strideY = 3 * this.m_numX;
+		int strideZ = strideY * this.m_numY;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+
+			//the cell holding the point, and where the point is in it, clamped to the grid
+			double gridX = clamp( ( x[ idx ] - this.m_originX ) / this.m_spacing , this.m_numX );
+			double gridY = clamp( ( y[ idx ] - this.m_originY ) / this.m_spacing , this.m_numY );
+			double gridZ = clamp( ( z[ idx ] - this.m_originZ ) / this.m_spacing , this.m_numZ );
+			int cellX = Math.min( ( int ) gridX , Math.max( this.m_numX - 2 , 0 ) );
+			int cellY = Math.min( ( int ) gridY , Math.max( this.m_numY - 2 , 0 ) );
+			int cellZ = Math.min( ( int ) gridZ , Math.max( this.m_numZ - 2 , 0 ) );
+			double u = gridX - cellX;
+			double v = gridY - cellY;
+			double w = gridZ - cellZ;
+
+			//grids one node thick along an axis do not step along it
+			int stepX = this.m_numX > 1 ? 3 : 0;
+			int stepY = this.m_numY > 1 ? strideY : 0;
+			int stepZ = this.m_numZ > 1 ? strideZ : 0;
+			int node = 3 * cellX + strideY * cellY + strideZ * cellZ;
+
+			//blend the eight corners, one component at a time
+			for ( int component = 0 ; component < 3 ; component ++ ) {
+				int corner = node + component;
+				double c00 = vectors.get( corner ) + u * ( vectors.get( corner + stepX ) - vectors.get( corner ) );
+				double c10 = vectors.get( corner + stepY ) + u * ( vectors.get( corner + stepY + stepX ) - vectors.get( corner + stepY ) );
+				double c01 = vectors.get( corner + stepZ ) + u * ( vectors.get( corner + stepZ + stepX ) - vectors.get( corner + stepZ ) );
+				double c11 = vectors.get( corner + stepZ + stepY ) + u * ( vectors.get( corner + stepZ + stepY + stepX ) - vectors.get( corner + stepZ + stepY ) );
+				double c0 = c00 + v * ( c10 - c00 );
+				double c1 = c01 + v * ( c11 - c01 );
+				double value = weight * ( c0 + w * ( c1 - c0 ) );
+				if ( component == 0 ) {
+					outX[ idx ] += value;
+				} else if ( component == 1 ) {
+					outY[ idx ] += value;
+				} else {
+					outZ[ idx ] += value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return			the given grid coordinate, moved onto the grid if it is off it
+	 */
+	private static double clamp( double coordinate , int numNodes ) {
+		return Math.max( 0 , Math.min( coordinate , numNodes - 1 ) );
+	}
+
+	public int getNumX() {
+		return this.m_numX;
+	}
+
+	public int getNumY() {
+		return this.m_numY;
+	}
+
+	public int getNumZ() {
+		return this.m_numZ;
+	}
+}
@@ -0,0 +1,56 @@
+package force.field;
+
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a field of moving air that drags every object towards the velocity of the wind,
+ * with a force proportional to the velocity of the object relative to the wind
+ */
+public class WindForceField extends ForceField {
+
+	/**
+	 * the velocity of the wind
+	 */
+	private double m_windX;
+
+	private double m_windY;
+
+	private double m_windZ;
+
+	/**
+	 * the force per unit of velocity relative to the wind
+	 */
+	private double m_dragCoefficient;
+
+	/**
+	 * @param windVelocity			the velocity of the wind
+	 * @param dragCoefficient		the force per unit of velocity relative to the wind
+	 */
+	public WindForceField( Vector3D windVelocity , Real dragCoefficient ) {
+		super();
+		setWindVelocity( windVelocity );
+		this.m_dragCoefficient = dragCoefficient.value();
+	}
+
+	public void setWindVelocity( Vector3D windVelocity ) {
+		this.m_windX = windVelocity.getX().value();
+		this.m_windY = windVelocity.getY().value();
+		this.m_windZ = windVelocity.getZ().value();
+	}
+
+	@Override
+	public void addForces( ForceFieldSet objects ) {
+		double[] x = objects.getX() , y = objects.getY() , z = objects.getZ();
+		double[] velocityX = objects.getVelocityX() , velocityY = objects.getVelocityY() , velocityZ = objects.getVelocityZ();
+		double[] forceX = objects.getForceX() , forceY = objects.getForceY() , forceZ = objects.getForceZ();
+		int count = objects.getNumObjects();
+		for ( int idx = 0 ; idx < count ; idx ++ ) {
+			if ( contains( x[ idx ] , y[ idx ] , z[ idx ] ) ) {
+				forceX[ idx ] += this.m_dragCoefficient * ( this.m_windX - velocityX[ idx ] );
+				forceY[ idx ] += this.m_dragCoefficient * ( this.m_windY - velocityY[ idx ] );
+				forceZ[ idx ] += this.m_dragCoefficient * ( this.m_windZ - velocityZ[ idx ] );
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package force.integrate;
+
+import _math.Real;
+
+/**
+ * recomputes the forces on the objects being integrated, e.g. by running the force
+ * generators of a world again. <code>Integrator</code>s that look at the forces in more
+ * than one state per step call it after moving the objects into each new state
+ */
+public interface ForceEvaluator {
+
+	/**
+	 * replaces the net force, and torque, on every object being integrated with the
+	 * forces for the objects' current states
+	 *
+	 * @param duration			the duration of the step being taken
+	 */
+	public void evaluateForces( Real duration );
+}
@@ -0,0 +1,135 @@
+package force.integrate;
+
+import java.util.Arrays;
+
+import _math.Real;
+import force.MassedObject;
+
+/**
+ * moves <code>MassedObject</code>s forward in time by their net forces, in place of
+ * each object's own <code>act()</code>. integrators differ in how often they evaluate
+ * the forces in a step and how they combine them: the more evaluations, the longer the
+ * step can be before the motion becomes inaccurate or unstable.
+ * <p>
+ * an integrator sees an object only through its state, e.g. position and velocity, and
+ * the derivative of that state given the net force. when a step begins, the net forces
+ * must already have been computed for the objects' current states. when it ends, each
+ * object's <code>endStep()</code> is called to apply damping and clear its forces
+ */
+abstract public class Integrator {
+
+	/**
+	 * the objects being integrated in this step
+	 */
+	protected MassedObject[] m_objects = new MassedObject[ 0 ];
+
+	protected int m_numObjects = 0;
+
+	/**
+	 * where the state of each object starts in the state arrays, and how many
+	 * values at the start of each state describe where the object is
+	 */
+	protected int[] m_offsets = new int[ 1 ];
+
+	protected int[] m_positionSizes = new int[ 0 ];
+
+	/**
+	 * the combined size of the states of the objects
+	 */
+	protected int m_stateSize = 0;
+
+	public Integrator() {
+
+	}
+
+	/**
+	 * moves the given objects forward in time by the given duration
+	 *
+	 * @param objects			the objects to move, whose net forces have been computed
+	 * @param forces			recomputes the net forces on the objects for their current states
+	 * @param duration			the duration of the step
+	 */
+	abstract public void integrate( Iterable < ? extends MassedObject > objects , ForceEvaluator forces , Real duration );
+
+	/**
+	 * gathers the objects of a step and lays out their states
+	 */
+	protected void load( Iterable < ? extends MassedObject > objects ) {
+		int count = 0;
+		int size = 0;
+		for ( MassedObject object : objects ) {
+			if ( count == this.m_objects.length ) {
+				int capacity = Math.max( 16 , 2 * count );
+				this.m_objects = Arrays.copyOf( this.m_objects , capacity );
+				this.m_offsets = Arrays.copyOf( this.m_offsets , capacity + 1 );
+				this.m_positionSizes = Arrays.copyOf( this.m_positionSizes , capacity );
+			}
+			this.m_objects[ count ] = object;
+			this.m_offsets[ count ] = size;
+			this.m_positionSizes[ count ] = object.getPositionStateSize();
+			size += object.getStateSize();
+			count ++;
+		}
+		this.m_offsets[ count ] = size;
+		this.m_numObjects = count;
+		this.m_stateSize = size;
+	}
+
+	/**
+	 * @return			the given array if it can hold the states of the objects, or a new one
+	 */
+	protected double[] ensureSize( double[] array ) {
+		return array.length >= this.m_stateSize ? array : new double[ this.m_stateSize ];
+	}
+
+	protected void readState( double[] state ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			this.m_objects[ idx ].getState( state , this.m_offsets[ idx ] );
+		}
+	}
+
+	protected void writeState( double[] state ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			this.m_objects[ idx ].setState( state , this.m_offsets[ idx ] );
+		}
+	}
+
+	protected void readDerivative( double[] derivative ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			this.m_objects[ idx ].getDerivative( derivative , this.m_offsets[ idx ] );
+		}
+	}
+
+	/**
+	 * adds a multiple of the derivative to the velocity values of every state
+	 */
+	protected void addToVelocities( double[] state , double[] derivative , double scale ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			for ( int value = this.m_offsets[ idx ] + this.m_positionSizes[ idx ] ; value < this.m_offsets[ idx + 1 ] ; value ++ ) {
+				state[ value ] += scale * derivative[ value ];
+			}
+		}
+	}
+
+	/**
+	 * adds a multiple of the derivative to the position values of every state
+	 */
+	protected void addToPositions( double[] state , double[] derivative , double scale ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			for ( int value = this.m_offsets[ idx ] ; value < this.m_offsets[ idx ] + this.m_positionSizes[ idx ] ; value ++ ) {
+				state[ value ] += scale * derivative[ value ];
+			}
+		}
+	}
+
+	/**
+	 * finishes the step for every object and forgets the objects
+	 */
+	protected void endStep( Real duration ) {
+		for ( int idx = 0 ; idx < this.m_numObjects ; idx ++ ) {
+			this.m_objects[ idx ].endStep( duration );
+		}
+		Arrays.fill( this.m_objects , 0 , this.m_numObjects , null );
+		this.m_numObjects = 0;
+	}
+}
@@ -0,0 +1,74 @@
+package force.integrate;
+
+import _math.Real;
+import force.MassedObject;
+
+/**
+ * the classic fourth-order Runge-Kutta method. the derivative of the state is evaluated
+ * at the start of the step, twice halfway through it and once at the end, with the forces
+ * recomputed for each of those states, and the step takes their weighted average:
+ * <p>
+ * y( t + dt ) = y( t ) + dt/6 * ( k1 + 2*k2 + 2*k3 + k4 )
+ * <p>
+ * it evaluates the forces four times per step, and is by far the most accurate for smooth
+ * forces, but unlike the symplectic integrators it slowly loses energy
+ */
+public class RungeKuttaIntegrator extends Integrator {
+
+	/**
+	 * the states at the start of the step and in the current stage, the derivative
+	 * in the current stage, and the weighted sum of the derivatives so far
+	 */
+	private double[] m_initialState = new double[ 0 ];
+
+	private double[] m_state = new double[ 0 ];
+
+	private double[] m_derivative = new double[ 0 ];
+
+	private double[] m_sum = new double[ 0 ];
+
+	public RungeKuttaIntegrator() {
+		super();
+	}
+
+	@Override
+	public void integrate( Iterable < ? extends MassedObject > objects , ForceEvaluator forces , Real duration ) {
+		load( objects );
+		double dt = duration.value();
+		double[] initialState = this.m_initialState = ensureSize( this.m_initialState );
+		double[] state = this.m_state = ensureSize( this.m_state );
+		double[] derivative = this.m_derivative = ensureSize( this.m_derivative );
+		double[] sum = this.m_sum = ensureSize( this.m_sum );
+		int size = this.m_stateSize;
+		readState( initialState );
+
+		//k1, with the forces already computed
+		readDerivative( derivative );
+		for ( int idx = 0 ; idx < size ; idx ++ ) {
+			sum[ idx ] = derivative[ idx ];
+			state[ idx ] = initialState[ idx ] + 0.5 * dt * derivative[ idx ];
+		}
+
+		//k2 and k3, halfway through the step
+		for ( int stage = 0 ; stage < 2 ; stage ++ ) {
+			writeState( state );
+			forces.evaluateForces( duration );
+			readDerivative( derivative );
+			double stageDuration = stage == 0 ? 0.5 * dt : dt;
+			for ( int idx = 0 ; idx < size ; idx ++ ) {
+				sum[ idx ] += 2 * derivative[ idx ];
+				state[ idx ] = initialState[ idx ] + stageDuration * derivative[ idx ];
+			}
+		}
+
+		//k4, at the end of the step
+		writeState( state );
+		forces.evaluateForces( duration );
+		readDerivative( derivative );
+		for ( int idx = 0 ; idx < size ; idx ++ ) {
+			state[ idx ] = initialState[ idx ] + dt / 6 * ( sum[ idx ] + derivative[ idx ] );
+		}
+		writeState( state );
+		endStep( duration );
+	}
+}
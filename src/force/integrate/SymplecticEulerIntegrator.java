@@ -0,0 +1,44 @@
+package force.integrate;
+
+import _math.Real;
+import force.MassedObject;
+
+/**
+ * semi-implicit Euler: the velocity is updated with the current forces first, and the
+ * position is then moved with the new velocity. it evaluates the forces once per step,
+ * like <code>Particle.act()</code>, but conserves energy over time, so springs and
+ * orbits do not gain energy and blow up
+ */
+public class SymplecticEulerIntegrator extends Integrator {
+
+	/**
+	 * the states of the objects and their derivatives
+	 */
+	private double[] m_state = new double[ 0 ];
+
+	private double[] m_derivative = new double[ 0 ];
+
+	public SymplecticEulerIntegrator() {
+		super();
+	}
+
+	@Override
+	public void integrate( Iterable < ? extends MassedObject > objects , ForceEvaluator forces , Real duration ) {
+		load( objects );
+		double dt = duration.value();
+		double[] state = this.m_state = ensureSize( this.m_state );
+		double[] derivative = this.m_derivative = ensureSize( this.m_derivative );
+		readState( state );
+
+		//v += a * dt
+		readDerivative( derivative );
+		addToVelocities( state , derivative , dt );
+		writeState( state );
+
+		//x += v * dt , with the new velocity
+		readDerivative( derivative );
+		addToPositions( state , derivative , dt );
+		writeState( state );
+		endStep( duration );
+	}
+}
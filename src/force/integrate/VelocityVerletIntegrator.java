@@ -0,0 +1,53 @@
+package force.integrate;
+
+import _math.Real;
+import force.MassedObject;
+
+/**
+ * velocity Verlet: half of the velocity change is applied with the forces at the start
+ * of the step and half with the forces at the end, with the position moved in between.
+ * it evaluates the forces twice per step and is second-order accurate, and like
+ * <code>SymplecticEulerIntegrator</code> does not gain energy over time.
+ * <p>
+ * forces that depend on velocity are evaluated at the end of the step with the velocity
+ * halfway through it
+ */
+public class VelocityVerletIntegrator extends Integrator {
+
+	/**
+	 * the states of the objects and their derivatives
+	 */
+	private double[] m_state = new double[ 0 ];
+
+	private double[] m_derivative = new double[ 0 ];
+
+	public VelocityVerletIntegrator() {
+		super();
+	}
+
+	@Override
+	public void integrate( Iterable < ? extends MassedObject > objects , ForceEvaluator forces , Real duration ) {
+		load( objects );
+		double dt = duration.value();
+		double[] state = this.m_state = ensureSize( this.m_state );
+		double[] derivative = this.m_derivative = ensureSize( this.m_derivative );
+		readState( state );
+
+		//v += a( t ) * dt/2
+		readDerivative( derivative );
+		addToVelocities( state , derivative , 0.5 * dt );
+		writeState( state );
+
+		//x += v * dt
+		readDerivative( derivative );
+		addToPositions( state , derivative , dt );
+		writeState( state );
+
+		//v += a( t + dt ) * dt/2
+		forces.evaluateForces( duration );
+		readDerivative( derivative );
+		addToVelocities( state , derivative , 0.5 * dt );
+		writeState( state );
+		endStep( duration );
+	}
+}
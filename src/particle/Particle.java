@@ -3,6 +3,7 @@ package particle;
 import util.ErrorMessages;
 import _math.Real;
 import _math.Vector3D;
+import force.DampingFactor;
 import force.MassedObject;
 
 /**
@@ -15,6 +16,11 @@ public class Particle extends MassedObject {
 	 */
 	private Real m_damping = new Real( 0.999 );
 	
+	/**
+	 * the damping factor raised to the duration of the step, kept between steps
+	 */
+	final private DampingFactor m_dampingFactor = new DampingFactor();
+	
 	/**
 	 * creates a <code>Particle</code> with an initial mass and position. all
 	 * other properties are set to their defaults:
@@ -94,6 +100,15 @@ public class Particle extends MassedObject {
 		this.m_damping = newDamping;
 	}
 	
+	/**
+	 * @param duration			the duration of a step
+	 * @return					the factor by which damping scales the velocity of this
+	 * 							<code>Particle</code> over the step
+	 */
+	public Real getDampingFactor( Real duration ) {
+		return this.m_dampingFactor.get( this.m_damping , duration );
+	}
+	
 	/**
 	 * moves this <code>Particle</code> forward in time by the given duration. the position,
 	 * velocity, acceleration, etc. are all modified
@@ -124,11 +139,22 @@ public class Particle extends MassedObject {
 		this.setVelocity( this.getVelocity().add( dv ) );
 		
 		//apply damping
-		Real dampingFactor = this.m_damping.pow( duration );
+		Real dampingFactor = getDampingFactor( duration );
 		this.setVelocity( this.getVelocity().multiply( dampingFactor ) );
 		
 	}
 	
+	@Override
+	public void endStep( Real duration ) {
+		
+		//keep the acceleration of the last stage, as act() would
+		this.setAcceleration( this.getNetForce().multiply( this.getInverseMass() ) );
+		this.resetNetForce();
+		
+		//apply damping
+		this.setVelocity( this.getVelocity().multiply( getDampingFactor( duration ) ) );
+	}
+	
 	@Override
 	public String toString() {
 		String rtn = "";
@@ -43,6 +43,27 @@ abstract public class ParticleLink extends ParticleContactGenerator {
 		this.m_elasticity = elasticity;
 	}
 	
+	/**
+	 * @return			the head of this <code>ParticleLink</code>
+	 */
+	public Particle getHead() {
+		return this.m_head;
+	}
+	
+	/**
+	 * @return			the tail of this <code>ParticleLink</code>
+	 */
+	public Particle getTail() {
+		return this.m_tail;
+	}
+	
+	/**
+	 * @return			the length of this <code>ParticleLink</code> when it is not stretched or compressed
+	 */
+	public Real getRestLength() {
+		return this.m_restLength;
+	}
+	
 	/**
 	 * @return			the current length of this <code>ParticleLink</code> based
 	 * 					on the position of its head and tail
@@ -0,0 +1,549 @@
+package particle.collision.link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import particle.Particle;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * keeps <code>ParticleLink</code>s at their lengths by moving the linked <code>Particle</code>s
+ * directly, instead of generating <code>ParticleContact</code>s. a <code>ParticleRod</code> keeps
+ * its particles exactly its rest length apart, a <code>ParticleCable</code> keeps them at most its
+ * rest length apart, and a bend keeps the two outer particles of three at the distance they had
+ * when the bend was added, which stops a chain from folding. tethers from each particle back
+ * to a fixed particle keep long ropes from stretching.
+ * <p>
+ * each step, the links are solved a fixed number of times. in each iteration, every particle
+ * sums the corrections asked for by all of its links, measured from the positions left by the
+ * previous iteration, and moves by their average. since no particle reads a position written in
+ * the same iteration, the particles are split over several threads, and the result does not
+ * depend on the number of threads. the positions, masses and links are kept in flat arrays so
+ * that the iterations do not touch the <code>Particle</code>s at all. once the iterations are
+ * done, each particle's velocity is changed by its total correction over the duration of the step
+ */
+public class ParticleLinkSolver {
+
+	/**
+	 * the default number of iterations per step
+	 */
+	final public static int DEFAULT_ITERATIONS = 20;
+
+	/**
+	 * the default factor on the averaged correction of each particle. values above 1
+	 * make up for the averaging, which otherwise slows convergence down
+	 */
+	final public static double DEFAULT_RELAXATION = 1.5;
+
+	/**
+	 * fewer particles than this are solved on the calling thread
+	 */
+	final public static int MINIMUM_PARALLEL_PARTICLES = 512;
+
+	//the types of constraint. bends hold their particles at a distance like rods, and
+	//tethers hold them at most a distance apart like cables, but neither is a link
+	final private static byte DISTANCE = 0;
+	final private static byte MAXIMUM_DISTANCE = 1;
+	final private static byte BEND = 2;
+	final private static byte TETHER = 3;
+
+	/**
+	 * the particles solved, in the order they were first linked
+	 */
+	final private ArrayList < Particle > m_particles = new ArrayList < Particle > ();
+
+	/**
+	 * the index of each particle in <code>m_particles</code>
+	 */
+	final private IdentityHashMap < Particle , Integer > m_indices = new IdentityHashMap < Particle , Integer > ();
+
+	//the particles, one entry per particle. positions are double buffered: each
+	//iteration reads one buffer and writes the other
+	private double[] m_x = new double[ 0 ];
+	private double[] m_y = new double[ 0 ];
+	private double[] m_z = new double[ 0 ];
+	private double[] m_nextX = new double[ 0 ];
+	private double[] m_nextY = new double[ 0 ];
+	private double[] m_nextZ = new double[ 0 ];
+	private double[] m_startX = new double[ 0 ];
+	private double[] m_startY = new double[ 0 ];
+	private double[] m_startZ = new double[ 0 ];
+	private double[] m_inverseMass = new double[ 0 ];
+
+	//the constraints, one entry per constraint
+	private int m_numConstraints = 0;
+	private int[] m_first = new int[ 0 ];
+	private int[] m_second = new int[ 0 ];
+	private double[] m_restLength = new double[ 0 ];
+	private double[] m_stiffness = new double[ 0 ];
+	private double[] m_iterationStiffness = new double[ 0 ];
+	private byte[] m_type = new byte[ 0 ];
+
+	//the constraints of each particle, in compressed rows: the constraints of particle
+	//i are m_adjacentConstraints[ m_adjacencyStart[ i ] ] up to m_adjacencyStart[ i + 1 ]
+	private int[] m_adjacencyStart = new int[ 1 ];
+	private int[] m_adjacentConstraints = new int[ 0 ];
+
+	/**
+	 * if particles, constraints or the number of iterations changed since the arrays were last built
+	 */
+	private boolean m_isDirty = false;
+
+	private int m_iterations = DEFAULT_ITERATIONS;
+
+	private double m_relaxation = DEFAULT_RELAXATION;
+
+	/**
+	 * the share of the particles solved by each worker
+	 */
+	final private ArrayList < Batch > m_batches = new ArrayList < Batch > ();
+
+	/**
+	 * the threads running the workers, or <code>null</code> if everything runs on the calling thread
+	 */
+	private ExecutorService m_executor;
+
+	/**
+	 * creates a solver that runs on the calling thread
+	 */
+	public ParticleLinkSolver() {
+		this( 1 );
+	}
+
+	/**
+	 * creates a solver that splits the particles over the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public ParticleLinkSolver( int numThreads ) throws IllegalArgumentException {
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.COLLISION.INVALID_THREAD_COUNT );
+		}
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			this.m_batches.add( new Batch() );
+		}
+		if ( numThreads > 1 ) {
+
+			//daemon threads, so that an idle pool does not keep the program running
+			this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+				@Override
+				public Thread newThread( Runnable task ) {
+					Thread thread = new Thread( task , "particle link solver" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param iterations					the number of times the links are solved in each step
+	 * @throws IllegalArgumentException		if the number of iterations is negative
+	 */
+	public void setIterations( int iterations ) throws IllegalArgumentException {
+		if ( iterations < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.COLLISION.INVALID_ITERATION_QUANTITY );
+		}
+		this.m_iterations = iterations;
+		this.m_isDirty = true;
+	}
+
+	public int getIterations() {
+		return this.m_iterations;
+	}
+
+	/**
+	 * @param relaxation		the factor on the averaged correction of each particle, usually between 1 and 2
+	 */
+	public void setRelaxation( Real relaxation ) {
+		this.m_relaxation = relaxation.value();
+	}
+
+	/**
+	 * adds a <code>ParticleRod</code> or a <code>ParticleCable</code>. the link should not also
+	 * be added to the <code>ParticleWorld</code> as a contact generator
+	 *
+	 * @param link							the link to solve
+	 * @throws IllegalArgumentException		if the link is neither a rod nor a cable
+	 */
+	public void addLink( ParticleLink link ) throws IllegalArgumentException {
+		byte type;
+		if ( link instanceof ParticleRod ) {
+			type = DISTANCE;
+		} else if ( link instanceof ParticleCable ) {
+			type = MAXIMUM_DISTANCE;
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.Particle.COLLISION.UNSUPPORTED_LINK );
+		}
+		addConstraint( link.getHead() , link.getTail() , link.getRestLength().value() , 1 , type );
+	}
+
+	/**
+	 * adds a bend between three particles, which keeps the two outer particles at
+	 * their current distance, so the angle at the middle particle resists changing.
+	 * a chain of links with a bend at each joint behaves like a stiff wire
+	 *
+	 * @param first							one end of the bend
+	 * @param middle						the particle at which the bend is
+	 * @param last							the other end of the bend
+	 * @param stiffness						how strongly the bend resists, from 0 to 1
+	 * @throws IllegalArgumentException		if the stiffness is not between 0 and 1
+	 */
+	public void addBend( Particle first , Particle middle , Particle last , Real stiffness ) throws IllegalArgumentException {
+		if ( stiffness.compareTo( Real.ZERO ) < 0 || stiffness.compareTo( Real.ONE ) > 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.COLLISION.INVALID_STIFFNESS );
+		}
+
+		//the middle particle takes part so that it is moved with the rest of the chain,
+		//but only the outer particles are held apart
+		indexOf( middle );
+		double restLength = first.getPosition().subtract( last.getPosition() ).magnitude().value();
+		addConstraint( first , last , restLength , stiffness.value() , BEND );
+	}
+	
+	/**
+	 * ties each particle linked, directly or through other particles, to a particle
+	 * of infinite mass back to the nearest such particle with a tether as long as the
+	 * shortest path of links between them. a tether only pulls when the particle is
+	 * farther from the fixed particle than the links could reach, which is the stretch
+	 * the iterations are slowest to remove: the iterations move a correction along a
+	 * chain by one link each, so without tethers a long rope hanging from a fixed end
+	 * stretches. should be called once all links are added
+	 */
+	public void addTethers() {
+		int numParticles = this.m_particles.size();
+		int numLinks = this.m_numConstraints;
+		
+		//list the links of each particle
+		int[] start = new int[ numParticles + 1 ];
+		for ( int constraint = 0 ; constraint < numLinks ; constraint ++ ) {
+			if ( isLink( constraint ) ) {
+				start[ this.m_first[ constraint ] + 1 ] ++;
+				start[ this.m_second[ constraint ] + 1 ] ++;
+			}
+		}
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			start[ idx + 1 ] += start[ idx ];
+		}
+		int[] links = new int[ start[ numParticles ] ];
+		int[] next = Arrays.copyOf( start , numParticles );
+		for ( int constraint = 0 ; constraint < numLinks ; constraint ++ ) {
+			if ( isLink( constraint ) ) {
+				links[ next[ this.m_first[ constraint ] ] ++ ] = constraint;
+				links[ next[ this.m_second[ constraint ] ] ++ ] = constraint;
+			}
+		}
+		
+		//find the shortest path from every particle to a fixed particle, starting from all of them at once
+		final double[] distance = new double[ numParticles ];
+		int[] anchor = new int[ numParticles ];
+		Arrays.fill( distance , Double.POSITIVE_INFINITY );
+		PriorityQueue < Integer > queue = new PriorityQueue < Integer > ( Math.max( 1 , numParticles ) , new Comparator < Integer > () {
+
+			@Override
+			public int compare( Integer particle1 , Integer particle2 ) {
+				return Double.compare( distance[ particle1 ] , distance[ particle2 ] );
+			}
+		});
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			if ( !this.m_particles.get( idx ).hasFiniteMass() ) {
+				distance[ idx ] = 0;
+				anchor[ idx ] = idx;
+				queue.add( idx );
+			}
+		}
+		boolean[] isDone = new boolean[ numParticles ];
+		while ( !queue.isEmpty() ) {
+			int particle = queue.poll();
+			if ( isDone[ particle ] ) {
+				continue;
+			}
+			isDone[ particle ] = true;
+			for ( int idx = start[ particle ] ; idx < start[ particle + 1 ] ; idx ++ ) {
+				int constraint = links[ idx ];
+				int other = this.m_first[ constraint ] == particle ? this.m_second[ constraint ] : this.m_first[ constraint ];
+				double pathLength = distance[ particle ] + this.m_restLength[ constraint ];
+				if ( pathLength < distance[ other ] ) {
+					distance[ other ] = pathLength;
+					anchor[ other ] = anchor[ particle ];
+					queue.add( other );
+				}
+			}
+		}
+		
+		//tie each particle to its nearest fixed particle, unless it is fixed itself
+		//or already linked to it directly
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			if ( distance[ idx ] > 0 && distance[ idx ] < Double.POSITIVE_INFINITY && !isLinked( idx , anchor[ idx ] , start , links ) ) {
+				addConstraint( this.m_particles.get( idx ) , this.m_particles.get( anchor[ idx ] ) , distance[ idx ] , 1 , TETHER );
+			}
+		}
+	}
+	
+	private boolean isLink( int constraint ) {
+		return this.m_type[ constraint ] == DISTANCE || this.m_type[ constraint ] == MAXIMUM_DISTANCE;
+	}
+	
+	private boolean isLinked( int particle , int other , int[] start , int[] links ) {
+		for ( int idx = start[ particle ] ; idx < start[ particle + 1 ] ; idx ++ ) {
+			int constraint = links[ idx ];
+			if ( this.m_first[ constraint ] == other || this.m_second[ constraint ] == other ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addConstraint( Particle first , Particle second , double restLength , double stiffness , byte type ) {
+		if ( this.m_numConstraints == this.m_first.length ) {
+			int capacity = Math.max( 16 , 2 * this.m_numConstraints );
+			this.m_first = Arrays.copyOf( this.m_first , capacity );
+			this.m_second = Arrays.copyOf( this.m_second , capacity );
+			this.m_restLength = Arrays.copyOf( this.m_restLength , capacity );
+			this.m_stiffness = Arrays.copyOf( this.m_stiffness , capacity );
+			this.m_type = Arrays.copyOf( this.m_type , capacity );
+		}
+		int constraint = this.m_numConstraints ++;
+		this.m_first[ constraint ] = indexOf( first );
+		this.m_second[ constraint ] = indexOf( second );
+		this.m_restLength[ constraint ] = restLength;
+		this.m_stiffness[ constraint ] = stiffness;
+		this.m_type[ constraint ] = type;
+		this.m_isDirty = true;
+	}
+
+	private int indexOf( Particle particle ) {
+		Integer index = this.m_indices.get( particle );
+		if ( index == null ) {
+			index = this.m_particles.size();
+			this.m_particles.add( particle );
+			this.m_indices.put( particle , index );
+			this.m_isDirty = true;
+		}
+		return index;
+	}
+
+	/**
+	 * @return			the number of constraints, counting each link and each bend once
+	 */
+	public int getNumConstraints() {
+		return this.m_numConstraints;
+	}
+
+	/**
+	 * sizes the particle arrays and lists the constraints of each particle
+	 */
+	private void rebuild() {
+		int numParticles = this.m_particles.size();
+		if ( this.m_x.length != numParticles ) {
+			this.m_x = new double[ numParticles ];
+			this.m_y = new double[ numParticles ];
+			this.m_z = new double[ numParticles ];
+			this.m_nextX = new double[ numParticles ];
+			this.m_nextY = new double[ numParticles ];
+			this.m_nextZ = new double[ numParticles ];
+			this.m_startX = new double[ numParticles ];
+			this.m_startY = new double[ numParticles ];
+			this.m_startZ = new double[ numParticles ];
+			this.m_inverseMass = new double[ numParticles ];
+		}
+
+		//count the constraints of each particle, then list them
+		this.m_adjacencyStart = new int[ numParticles + 1 ];
+		for ( int constraint = 0 ; constraint < this.m_numConstraints ; constraint ++ ) {
+			this.m_adjacencyStart[ this.m_first[ constraint ] + 1 ] ++;
+			this.m_adjacencyStart[ this.m_second[ constraint ] + 1 ] ++;
+		}
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			this.m_adjacencyStart[ idx + 1 ] += this.m_adjacencyStart[ idx ];
+		}
+		this.m_adjacentConstraints = new int[ 2 * this.m_numConstraints ];
+		this.m_iterationStiffness = new double[ this.m_numConstraints ];
+		int[] next = Arrays.copyOf( this.m_adjacencyStart , numParticles );
+		for ( int constraint = 0 ; constraint < this.m_numConstraints ; constraint ++ ) {
+			this.m_adjacentConstraints[ next[ this.m_first[ constraint ] ] ++ ] = constraint;
+			this.m_adjacentConstraints[ next[ this.m_second[ constraint ] ] ++ ] = constraint;
+
+			//a stiffness below 1 is applied each iteration, so it is spread over the
+			//iterations to give the same result however many there are
+			this.m_iterationStiffness[ constraint ] = 1 - Math.pow( 1 - this.m_stiffness[ constraint ] , 1.0 / Math.max( 1 , this.m_iterations ) );
+		}
+		this.m_isDirty = false;
+	}
+
+	/**
+	 * moves the linked particles so that their links hold, and changes their
+	 * velocities by the distance moved over the duration. should be called right
+	 * after the particles have been integrated
+	 *
+	 * @param duration			the duration of the step just integrated
+	 */
+	public void solve( Real duration ) {
+		if ( this.m_isDirty ) {
+			rebuild();
+		}
+		int numParticles = this.m_particles.size();
+
+		//load the particles
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			Particle particle = this.m_particles.get( idx );
+			Vector3D position = particle.getPosition();
+			this.m_x[ idx ] = this.m_startX[ idx ] = position.getX().value();
+			this.m_y[ idx ] = this.m_startY[ idx ] = position.getY().value();
+			this.m_z[ idx ] = this.m_startZ[ idx ] = position.getZ().value();
+			this.m_inverseMass[ idx ] = particle.getInverseMass().value();
+		}
+
+		//iterate, swapping the position buffers after each iteration
+		for ( int iteration = 0 ; iteration < this.m_iterations ; iteration ++ ) {
+			if ( this.m_executor == null || numParticles < MINIMUM_PARALLEL_PARTICLES ) {
+				solveParticles( 0 , numParticles );
+			} else {
+				solveInParallel( numParticles );
+			}
+			double[] swap = this.m_x;
+			this.m_x = this.m_nextX;
+			this.m_nextX = swap;
+			swap = this.m_y;
+			this.m_y = this.m_nextY;
+			this.m_nextY = swap;
+			swap = this.m_z;
+			this.m_z = this.m_nextZ;
+			this.m_nextZ = swap;
+		}
+
+		//store the new positions, and turn the distance moved into velocity
+		double inverseDuration = 1 / ( double ) duration.value();
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			double dx = this.m_x[ idx ] - this.m_startX[ idx ];
+			double dy = this.m_y[ idx ] - this.m_startY[ idx ];
+			double dz = this.m_z[ idx ] - this.m_startZ[ idx ];
+			if ( dx == 0 && dy == 0 && dz == 0 ) {
+				continue;
+			}
+			Particle particle = this.m_particles.get( idx );
+			particle.setPosition( new Vector3D( new Real( this.m_x[ idx ] ) , new Real( this.m_y[ idx ] ) , new Real( this.m_z[ idx ] ) ) );
+			Vector3D deltaVelocity = new Vector3D( new Real( dx * inverseDuration ) , new Real( dy * inverseDuration ) , new Real( dz * inverseDuration ) );
+			particle.setVelocity( particle.getVelocity().add( deltaVelocity ) );
+		}
+	}
+
+	/**
+	 * solves one iteration for a range of particles, reading the current positions and
+	 * writing the next ones
+	 *
+	 * @param start		the first particle
+	 * @param end		one past the last particle
+	 */
+	private void solveParticles( int start , int end ) {
+		double[] x = this.m_x , y = this.m_y , z = this.m_z;
+		double[] inverseMass = this.m_inverseMass;
+		for ( int particle = start ; particle < end ; particle ++ ) {
+			double sumX = 0 , sumY = 0 , sumZ = 0;
+			int numCorrections = 0;
+			if ( inverseMass[ particle ] > 0 ) {
+				for ( int idx = this.m_adjacencyStart[ particle ] ; idx < this.m_adjacencyStart[ particle + 1 ] ; idx ++ ) {
+					int constraint = this.m_adjacentConstraints[ idx ];
+					int other = this.m_first[ constraint ] == particle ? this.m_second[ constraint ] : this.m_first[ constraint ];
+					double inverseMassSum = inverseMass[ particle ] + inverseMass[ other ];
+
+					//the constraint pulls or pushes along the line between the particles
+					double dx = x[ particle ] - x[ other ];
+					double dy = y[ particle ] - y[ other ];
+					double dz = z[ particle ] - z[ other ];
+					double length = Math.sqrt( dx * dx + dy * dy + dz * dz );
+					double error = length - this.m_restLength[ constraint ];
+					byte type = this.m_type[ constraint ];
+					if ( length == 0 || ( ( type == MAXIMUM_DISTANCE || type == TETHER ) && error <= 0 ) ) {
+						continue;
+					}
+
+					//this particle takes its share of the correction by inverse mass
+					double scale = -this.m_iterationStiffness[ constraint ] * error * inverseMass[ particle ] / ( inverseMassSum * length );
+					sumX += scale * dx;
+					sumY += scale * dy;
+					sumZ += scale * dz;
+					numCorrections ++;
+				}
+			}
+
+			//move by the average correction
+			if ( numCorrections > 0 ) {
+				double factor = this.m_relaxation / numCorrections;
+				this.m_nextX[ particle ] = x[ particle ] + factor * sumX;
+				this.m_nextY[ particle ] = y[ particle ] + factor * sumY;
+				this.m_nextZ[ particle ] = z[ particle ] + factor * sumZ;
+			} else {
+				this.m_nextX[ particle ] = x[ particle ];
+				this.m_nextY[ particle ] = y[ particle ];
+				this.m_nextZ[ particle ] = z[ particle ];
+			}
+		}
+	}
+
+	/**
+	 * splits one iteration evenly over the workers and waits for all of them
+	 */
+	private void solveInParallel( int numParticles ) {
+		int numBatches = this.m_batches.size();
+		for ( int idx = 0 ; idx < numBatches ; idx ++ ) {
+			Batch batch = this.m_batches.get( idx );
+			batch.m_start = ( int ) ( ( long ) numParticles * idx / numBatches );
+			batch.m_end = ( int ) ( ( long ) numParticles * ( idx + 1 ) / numBatches );
+		}
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( this.m_batches ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the solver should not be used afterwards
+	 */
+	public void shutdown() {
+		if ( this.m_executor != null ) {
+			this.m_executor.shutdown();
+		}
+	}
+
+	/**
+	 * the share of the particles solved by one worker
+	 */
+	private class Batch implements Callable < Object > {
+
+		private int m_start;
+
+		private int m_end;
+
+		public Batch() {
+
+		}
+
+		@Override
+		public Object call() {
+			solveParticles( this.m_start , this.m_end );
+			return null;
+		}
+	}
+}
@@ -0,0 +1,771 @@
+package particle.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import particle.Particle;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * applies the mutual gravitation of its <code>Particle</code>s to each other, approximated
+ * with a Barnes-Hut octree so that each step costs O(n log n) rather than O(n^2).
+ * <p>
+ * each step, the particles are sorted along a Morton curve over their bounding cube and an
+ * octree is built over the sorted order. the cells two levels below the root are built as
+ * independent subtrees on the worker threads, then joined under the top two levels. every
+ * cell stores its mass and center of mass. a particle is attracted by a whole cell, as if its
+ * mass were at its center of mass, once it is far enough away that the cell's size over its
+ * distance is below the opening angle; otherwise the cell is opened and its children are tested.
+ * the forces on the particles are also computed on the worker threads.
+ * <p>
+ * the cells are stored in depth-first order, with each cell followed by its children, so the
+ * tree is walked without a stack: opening a cell moves to the next cell, and accepting a cell
+ * skips over all of its descendants.
+ * <p>
+ * particles with infinite mass neither attract nor are attracted
+ */
+public class ParticleBarnesHutGravityGenerator extends ParticleForceGenerator {
+
+	/**
+	 * the gravitational constant, in SI units
+	 */
+	final public static Real GRAVITATIONAL_CONSTANT = new Real( 6.674e-11 );
+
+	/**
+	 * the default opening angle. smaller angles open more cells and are more accurate
+	 */
+	final public static Real DEFAULT_OPENING_ANGLE = Real.ONE_HALF;
+
+	/**
+	 * cells with at most this many particles are not split further
+	 */
+	final public static int LEAF_CAPACITY = 8;
+
+	/**
+	 * with fewer particles than this, the tree is built and walked on the calling thread,
+	 * since handing the work to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_PARTICLES = 2048;
+
+	/**
+	 * the number of bits of each coordinate in a Morton key, which is also the
+	 * deepest level of the tree
+	 */
+	final private static int BITS_PER_AXIS = 10;
+
+	/**
+	 * the level of the cells built as independent subtrees
+	 */
+	final private static int SUBTREE_LEVEL = 2;
+
+	/**
+	 * the number of cells at <code>SUBTREE_LEVEL</code>
+	 */
+	final private static int NUM_SUBTREES = 1 << ( 3 * SUBTREE_LEVEL );
+
+	/**
+	 * the gravitational constant used
+	 */
+	private double m_gravitationalConstant = GRAVITATIONAL_CONSTANT.value();
+
+	/**
+	 * the opening angle used
+	 */
+	private double m_openingAngle = DEFAULT_OPENING_ANGLE.value();
+
+	/**
+	 * the square of the softening length, added to every squared distance so that
+	 * close particles are not flung apart
+	 */
+	private double m_softeningSquared = 0;
+
+	/**
+	 * the particles with finite mass gathered in this step
+	 */
+	private Particle[] m_particles = new Particle[ 0 ];
+
+	/**
+	 * the number of particles gathered in this step
+	 */
+	private int m_numParticles = 0;
+
+	/**
+	 * the positions and masses of the gathered particles
+	 */
+	private double[] m_x = new double[ 0 ];
+
+	private double[] m_y = new double[ 0 ];
+
+	private double[] m_z = new double[ 0 ];
+
+	private double[] m_mass = new double[ 0 ];
+
+	/**
+	 * the Morton key of each particle in the high bits and its index in the low bits,
+	 * sorted by key once the tree is built
+	 */
+	private long[] m_sorted = new long[ 0 ];
+
+	/**
+	 * the positions and masses of the particles in sorted order, so that the particles
+	 * of a cell are next to each other in memory
+	 */
+	private double[] m_sortedX = new double[ 0 ];
+
+	private double[] m_sortedY = new double[ 0 ];
+
+	private double[] m_sortedZ = new double[ 0 ];
+
+	private double[] m_sortedMass = new double[ 0 ];
+
+	/**
+	 * scratch space for sorting the keys by subtree
+	 */
+	private long[] m_unsorted = new long[ 0 ];
+
+	/**
+	 * the index in <code>m_sorted</code> of the first particle of each subtree.
+	 * the last entry is the number of particles
+	 */
+	final private int[] m_subtreeStarts = new int[ NUM_SUBTREES + 1 ];
+
+	/**
+	 * the corner of the bounding cube with the lowest coordinates, and its edge length
+	 */
+	private double m_minX;
+
+	private double m_minY;
+
+	private double m_minZ;
+
+	private double m_size;
+
+	/**
+	 * the cells of each subtree, built by the workers
+	 */
+	final private Cells[] m_subtrees = new Cells[ NUM_SUBTREES ];
+
+	/**
+	 * the whole tree, in depth-first order
+	 */
+	final private Cells m_tree = new Cells();
+
+	/**
+	 * the work done by the workers
+	 */
+	final private ArrayList < Callable < Object > > m_buildTasks = new ArrayList < Callable < Object > > ();
+
+	final private ArrayList < Callable < Object > > m_keyTasks = new ArrayList < Callable < Object > > ();
+
+	final private ArrayList < Callable < Object > > m_forceTasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates a generator that builds its tree and computes its forces on the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public ParticleBarnesHutGravityGenerator( int numThreads ) throws IllegalArgumentException {
+		super();
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Gravity.INVALID_THREAD_COUNT );
+		}
+		for ( int idx = 0 ; idx < NUM_SUBTREES ; idx ++ ) {
+			final int subtree = idx;
+			this.m_subtrees[ idx ] = new Cells();
+			this.m_buildTasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					buildSubtree( subtree );
+					return null;
+				}
+			});
+		}
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			final int worker = idx;
+			final int numWorkers = numThreads;
+			this.m_keyTasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					computeKeys( share( worker , numWorkers ) , share( worker + 1 , numWorkers ) );
+					return null;
+				}
+			});
+			this.m_forceTasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					applyForces( share( worker , numWorkers ) , share( worker + 1 , numWorkers ) );
+					return null;
+				}
+			});
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "barnes-hut gravity" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param gravitationalConstant		the gravitational constant to use, e.g. to work in units other than SI
+	 */
+	public void setGravitationalConstant( Real gravitationalConstant ) {
+		this.m_gravitationalConstant = gravitationalConstant.value();
+	}
+
+	public Real getGravitationalConstant() {
+		return new Real( this.m_gravitationalConstant );
+	}
+
+	/**
+	 * sets the opening angle: a cell is opened if its size over its distance is at least
+	 * this angle. an angle of zero opens every cell and gives the exact forces
+	 *
+	 * @param openingAngle					the new opening angle
+	 * @throws IllegalArgumentException		if the angle is negative
+	 */
+	public void setOpeningAngle( Real openingAngle ) throws IllegalArgumentException {
+		if ( openingAngle.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Gravity.INVALID_OPENING_ANGLE );
+		}
+		this.m_openingAngle = openingAngle.value();
+	}
+
+	public Real getOpeningAngle() {
+		return new Real( this.m_openingAngle );
+	}
+
+	/**
+	 * sets the softening length, which limits the force between particles closer than about
+	 * this distance
+	 *
+	 * @param softening						the new softening length
+	 * @throws IllegalArgumentException		if the length is negative
+	 */
+	public void setSoftening( Real softening ) throws IllegalArgumentException {
+		if ( softening.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Gravity.INVALID_SOFTENING );
+		}
+		this.m_softeningSquared = ( double ) softening.value() * softening.value();
+	}
+
+	/**
+	 * @return			the number of cells in the tree of the last step
+	 */
+	public int getNumCells() {
+		return this.m_tree.m_size;
+	}
+
+	@Override
+	public void generateForce() {
+		gatherParticles();
+		if ( this.m_numParticles < 2 ) {
+			return;
+		}
+		boolean isParallel = this.m_numParticles >= MINIMUM_PARALLEL_PARTICLES;
+
+		//sort the particles into the subtrees, then build each subtree
+		if ( isParallel ) {
+			run( this.m_keyTasks );
+		} else {
+			computeKeys( 0 , this.m_numParticles );
+		}
+		sortIntoSubtrees();
+		if ( isParallel ) {
+			run( this.m_buildTasks );
+		} else {
+			for ( int idx = 0 ; idx < NUM_SUBTREES ; idx ++ ) {
+				buildSubtree( idx );
+			}
+		}
+		joinSubtrees();
+
+		//then walk the tree for each particle
+		if ( isParallel ) {
+			run( this.m_forceTasks );
+		} else {
+			applyForces( 0 , this.m_numParticles );
+		}
+	}
+
+	/**
+	 * copies the positions and masses of the particles with finite mass, and
+	 * finds their bounding cube
+	 */
+	private void gatherParticles() {
+		int capacity = this.m_objects.size();
+		if ( this.m_particles.length < capacity ) {
+			this.m_particles = new Particle[ capacity ];
+			this.m_x = new double[ capacity ];
+			this.m_y = new double[ capacity ];
+			this.m_z = new double[ capacity ];
+			this.m_mass = new double[ capacity ];
+			this.m_sorted = new long[ capacity ];
+			this.m_unsorted = new long[ capacity ];
+			this.m_sortedX = new double[ capacity ];
+			this.m_sortedY = new double[ capacity ];
+			this.m_sortedZ = new double[ capacity ];
+			this.m_sortedMass = new double[ capacity ];
+		}
+		double minX = Double.POSITIVE_INFINITY , minY = Double.POSITIVE_INFINITY , minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY , maxY = Double.NEGATIVE_INFINITY , maxZ = Double.NEGATIVE_INFINITY;
+		int count = 0;
+		for ( Particle particle : this.m_objects ) {
+			if ( !particle.hasFiniteMass() ) {
+				continue;
+			}
+			Vector3D position = particle.getPosition();
+			double x = position.getX().value();
+			double y = position.getY().value();
+			double z = position.getZ().value();
+			this.m_particles[ count ] = particle;
+			this.m_x[ count ] = x;
+			this.m_y[ count ] = y;
+			this.m_z[ count ] = z;
+			this.m_mass[ count ] = particle.getMass().value();
+			minX = Math.min( minX , x );
+			minY = Math.min( minY , y );
+			minZ = Math.min( minZ , z );
+			maxX = Math.max( maxX , x );
+			maxY = Math.max( maxY , y );
+			maxZ = Math.max( maxZ , z );
+			count ++;
+		}
+		this.m_numParticles = count;
+		this.m_minX = minX;
+		this.m_minY = minY;
+		this.m_minZ = minZ;
+
+		//a cube, slightly larger than the particles, so that none fall on its far faces
+		double size = Math.max( maxX - minX , Math.max( maxY - minY , maxZ - minZ ) );
+		this.m_size = size > 0 ? size * ( 1 + 1e-6 ) : 1;
+	}
+
+	/**
+	 * @return			the start of the given worker's share of the particles
+	 */
+	private int share( int worker , int numWorkers ) {
+		return ( int ) ( ( long ) this.m_numParticles * worker / numWorkers );
+	}
+
+	/**
+	 * computes the Morton keys of a range of particles into <code>m_unsorted</code>
+	 */
+	private void computeKeys( int start , int end ) {
+		double scale = ( 1 << BITS_PER_AXIS ) / this.m_size;
+		int maximum = ( 1 << BITS_PER_AXIS ) - 1;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			int x = Math.min( ( int ) ( ( this.m_x[ idx ] - this.m_minX ) * scale ) , maximum );
+			int y = Math.min( ( int ) ( ( this.m_y[ idx ] - this.m_minY ) * scale ) , maximum );
+			int z = Math.min( ( int ) ( ( this.m_z[ idx ] - this.m_minZ ) * scale ) , maximum );
+			long key = ( spread( x ) << 2 ) | ( spread( y ) << 1 ) | spread( z );
+			this.m_unsorted[ idx ] = ( key << 32 ) | idx;
+		}
+	}
+
+	/**
+	 * spreads the bits of a coordinate out so that there are two zero bits between each one
+	 */
+	private static long spread( int coordinate ) {
+		long bits = coordinate;
+		bits = ( bits | ( bits << 16 ) ) & 0x030000FFL;
+		bits = ( bits | ( bits << 8 ) ) & 0x0300F00FL;
+		bits = ( bits | ( bits << 4 ) ) & 0x030C30C3L;
+		bits = ( bits | ( bits << 2 ) ) & 0x09249249L;
+		return bits;
+	}
+
+	/**
+	 * @return			the octant, from 0 to 7, of the child of a cell at the given level that contains the given key
+	 */
+	private static int octant( long sortedKey , int level ) {
+		return ( int ) ( sortedKey >>> ( 32 + 3 * ( BITS_PER_AXIS - level - 1 ) ) ) & 7;
+	}
+
+	/**
+	 * counting sorts the keys by the subtree they fall in. each subtree then sorts its own keys
+	 */
+	private void sortIntoSubtrees() {
+		int shift = 32 + 3 * ( BITS_PER_AXIS - SUBTREE_LEVEL );
+		Arrays.fill( this.m_subtreeStarts , 0 );
+		for ( int idx = 0 ; idx < this.m_numParticles ; idx ++ ) {
+			this.m_subtreeStarts[ ( int ) ( this.m_unsorted[ idx ] >>> shift ) ] ++;
+		}
+		int start = 0;
+		for ( int subtree = 0 ; subtree <= NUM_SUBTREES ; subtree ++ ) {
+			int count = subtree < NUM_SUBTREES ? this.m_subtreeStarts[ subtree ] : 0;
+			this.m_subtreeStarts[ subtree ] = start;
+			start += count;
+		}
+		int[] next = this.m_subtreeStarts.clone();
+		for ( int idx = 0 ; idx < this.m_numParticles ; idx ++ ) {
+			long key = this.m_unsorted[ idx ];
+			this.m_sorted[ next[ ( int ) ( key >>> shift ) ] ++ ] = key;
+		}
+	}
+
+	/**
+	 * sorts the keys of one subtree and builds its cells
+	 *
+	 * @param subtree		the index of the subtree, which is also its Morton code at <code>SUBTREE_LEVEL</code>
+	 */
+	private void buildSubtree( int subtree ) {
+		Cells cells = this.m_subtrees[ subtree ];
+		cells.clear();
+		int start = this.m_subtreeStarts[ subtree ];
+		int end = this.m_subtreeStarts[ subtree + 1 ];
+		if ( start == end ) {
+			return;
+		}
+		Arrays.sort( this.m_sorted , start , end );
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			int particle = ( int ) this.m_sorted[ idx ];
+			this.m_sortedX[ idx ] = this.m_x[ particle ];
+			this.m_sortedY[ idx ] = this.m_y[ particle ];
+			this.m_sortedZ[ idx ] = this.m_z[ particle ];
+			this.m_sortedMass[ idx ] = this.m_mass[ particle ];
+		}
+
+		//the corner of the subtree's cell, from its Morton code
+		double cellSize = this.m_size / ( 1 << SUBTREE_LEVEL );
+		double minX = this.m_minX , minY = this.m_minY , minZ = this.m_minZ;
+		for ( int level = 0 ; level < SUBTREE_LEVEL ; level ++ ) {
+			int octant = ( subtree >> ( 3 * ( SUBTREE_LEVEL - level - 1 ) ) ) & 7;
+			double childSize = this.m_size / ( 2 << level );
+			minX += ( ( octant >> 2 ) & 1 ) * childSize;
+			minY += ( ( octant >> 1 ) & 1 ) * childSize;
+			minZ += ( octant & 1 ) * childSize;
+		}
+		buildCell( cells , start , end , SUBTREE_LEVEL , minX , minY , minZ , cellSize );
+	}
+
+	/**
+	 * adds a cell holding a sorted range of particles, followed by its descendants
+	 *
+	 * @return			the index of the new cell
+	 */
+	private int buildCell( Cells cells , int start , int end , int level , double minX , double minY , double minZ , double cellSize ) {
+		int cell = cells.add();
+		double mass = 0 , x = 0 , y = 0 , z = 0;
+
+		//a small or deepest cell holds its particles directly
+		if ( end - start <= LEAF_CAPACITY || level == BITS_PER_AXIS ) {
+			for ( int idx = start ; idx < end ; idx ++ ) {
+				double particleMass = this.m_sortedMass[ idx ];
+				mass += particleMass;
+				x += particleMass * this.m_sortedX[ idx ];
+				y += particleMass * this.m_sortedY[ idx ];
+				z += particleMass * this.m_sortedZ[ idx ];
+			}
+			cells.m_isLeaf[ cell ] = true;
+
+		//otherwise, the sorted range splits into a run of particles for each octant
+		} else {
+			double childSize = cellSize / 2;
+			int childStart = start;
+			while ( childStart < end ) {
+				int octant = octant( this.m_sorted[ childStart ] , level );
+				int childEnd = childStart + 1;
+				while ( childEnd < end && octant( this.m_sorted[ childEnd ] , level ) == octant ) {
+					childEnd ++;
+				}
+				int child = buildCell( cells , childStart , childEnd , level + 1 ,
+						minX + ( ( octant >> 2 ) & 1 ) * childSize , minY + ( ( octant >> 1 ) & 1 ) * childSize , minZ + ( octant & 1 ) * childSize , childSize );
+				mass += cells.m_mass[ child ];
+				x += cells.m_mass[ child ] * cells.m_x[ child ];
+				y += cells.m_mass[ child ] * cells.m_y[ child ];
+				z += cells.m_mass[ child ] * cells.m_z[ child ];
+				childStart = childEnd;
+			}
+			cells.m_isLeaf[ cell ] = false;
+		}
+		finishCell( cells , cell , start , end , mass , x , y , z , minX , minY , minZ , cellSize );
+		return cell;
+	}
+
+	/**
+	 * stores the mass, center of mass, particles and opening distance of a cell
+	 * whose descendants have all been added
+	 */
+	private void finishCell( Cells cells , int cell , int start , int end , double mass , double x , double y , double z ,
+			double minX , double minY , double minZ , double cellSize ) {
+		if ( mass > 0 ) {
+			x /= mass;
+			y /= mass;
+			z /= mass;
+		} else {
+			x = minX + cellSize / 2;
+			y = minY + cellSize / 2;
+			z = minZ + cellSize / 2;
+		}
+		cells.m_mass[ cell ] = mass;
+		cells.m_x[ cell ] = x;
+		cells.m_y[ cell ] = y;
+		cells.m_z[ cell ] = z;
+		cells.m_start[ cell ] = start;
+		cells.m_end[ cell ] = end;
+		cells.m_numDescendants[ cell ] = cells.m_size - cell - 1;
+
+		//a cell is accepted beyond its size over the opening angle, pushed out by how far
+		//its center of mass is from its center. no particle inside the cell is ever that far
+		//from the center of mass, so a particle never accepts a cell that holds it
+		double offsetX = x - ( minX + cellSize / 2 );
+		double offsetY = y - ( minY + cellSize / 2 );
+		double offsetZ = z - ( minZ + cellSize / 2 );
+		double offset = Math.sqrt( offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ );
+		double distance = this.m_openingAngle > 0 ? Math.max( cellSize / this.m_openingAngle , cellSize * Math.sqrt( 3 ) / 2 ) + offset : Double.POSITIVE_INFINITY;
+		cells.m_openingDistanceSquared[ cell ] = distance * distance;
+	}
+
+	/**
+	 * puts the root and the cells above the subtrees in front of the subtrees, giving
+	 * the whole tree in depth-first order
+	 */
+	private void joinSubtrees() {
+		this.m_tree.clear();
+		joinCell( 0 , 0 , this.m_minX , this.m_minY , this.m_minZ , this.m_size );
+	}
+
+	/**
+	 * adds a cell above the subtrees, followed by its descendants
+	 *
+	 * @param level			the level of the cell
+	 * @param code			the Morton code of the cell at its level
+	 * @return				the index of the new cell, or -1 if the cell holds no particles
+	 */
+	private int joinCell( int level , int code , double minX , double minY , double minZ , double cellSize ) {
+		int firstSubtree = code << ( 3 * ( SUBTREE_LEVEL - level ) );
+		int lastSubtree = ( code + 1 ) << ( 3 * ( SUBTREE_LEVEL - level ) );
+		int start = this.m_subtreeStarts[ firstSubtree ];
+		int end = this.m_subtreeStarts[ lastSubtree ];
+		if ( start == end ) {
+			return -1;
+		}
+
+		//the subtrees are copied in whole
+		if ( level == SUBTREE_LEVEL ) {
+			int cell = this.m_tree.m_size;
+			this.m_tree.append( this.m_subtrees[ code ] );
+			return cell;
+		}
+		int cell = this.m_tree.add();
+		double mass = 0 , x = 0 , y = 0 , z = 0;
+		double childSize = cellSize / 2;
+		for ( int octant = 0 ; octant < 8 ; octant ++ ) {
+			int child = joinCell( level + 1 , ( code << 3 ) | octant ,
+					minX + ( ( octant >> 2 ) & 1 ) * childSize , minY + ( ( octant >> 1 ) & 1 ) * childSize , minZ + ( octant & 1 ) * childSize , childSize );
+			if ( child >= 0 ) {
+				mass += this.m_tree.m_mass[ child ];
+				x += this.m_tree.m_mass[ child ] * this.m_tree.m_x[ child ];
+				y += this.m_tree.m_mass[ child ] * this.m_tree.m_y[ child ];
+				z += this.m_tree.m_mass[ child ] * this.m_tree.m_z[ child ];
+			}
+		}
+		this.m_tree.m_isLeaf[ cell ] = false;
+		finishCell( this.m_tree , cell , start , end , mass , x , y , z , minX , minY , minZ , cellSize );
+		return cell;
+	}
+
+	/**
+	 * walks the tree for a range of sorted particles and adds the resulting forces to them.
+	 * the particles are taken in sorted order, so that consecutive walks visit mostly
+	 * the same cells
+	 */
+	private void applyForces( int start , int end ) {
+		Cells tree = this.m_tree;
+		int numCells = tree.m_size;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			double px = this.m_sortedX[ idx ];
+			double py = this.m_sortedY[ idx ];
+			double pz = this.m_sortedZ[ idx ];
+			double ax = 0 , ay = 0 , az = 0;
+			int cell = 0;
+			while ( cell < numCells ) {
+				double dx = tree.m_x[ cell ] - px;
+				double dy = tree.m_y[ cell ] - py;
+				double dz = tree.m_z[ cell ] - pz;
+				double distanceSquared = dx * dx + dy * dy + dz * dz;
+
+				//a far cell attracts as a whole, and its descendants are skipped
+				if ( distanceSquared > tree.m_openingDistanceSquared[ cell ] ) {
+					double scale = attraction( tree.m_mass[ cell ] , distanceSquared );
+					ax += scale * dx;
+					ay += scale * dy;
+					az += scale * dz;
+					cell += tree.m_numDescendants[ cell ] + 1;
+
+				//a near leaf attracts with each of its particles
+				} else if ( tree.m_isLeaf[ cell ] ) {
+					for ( int other = tree.m_start[ cell ] ; other < tree.m_end[ cell ] ; other ++ ) {
+						if ( other == idx ) {
+							continue;
+						}
+						dx = this.m_sortedX[ other ] - px;
+						dy = this.m_sortedY[ other ] - py;
+						dz = this.m_sortedZ[ other ] - pz;
+						double scale = attraction( this.m_sortedMass[ other ] , dx * dx + dy * dy + dz * dz );
+						ax += scale * dx;
+						ay += scale * dy;
+						az += scale * dz;
+					}
+					cell ++;
+
+				//a near cell is opened: its first child comes next
+				} else {
+					cell ++;
+				}
+			}
+
+			//each particle is only written by the worker that owns it
+			double scale = this.m_gravitationalConstant * this.m_sortedMass[ idx ];
+			this.m_particles[ ( int ) this.m_sorted[ idx ] ].addForceVector( new Vector3D( new Real( scale * ax ) , new Real( scale * ay ) , new Real( scale * az ) ) );
+		}
+	}
+
+	/**
+	 * @return			the attraction, per unit of distance and without the gravitational constant,
+	 * 					towards the given mass at the given squared distance
+	 */
+	private double attraction( double mass , double distanceSquared ) {
+		distanceSquared += this.m_softeningSquared;
+		if ( distanceSquared == 0 ) {
+			return 0;
+		}
+		return mass / ( distanceSquared * Math.sqrt( distanceSquared ) );
+	}
+
+	/**
+	 * runs the given tasks on the workers and waits for all of them
+	 */
+	private void run( ArrayList < Callable < Object > > tasks ) {
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( tasks ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the generator should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+
+	/**
+	 * cells of the tree, stored as parallel arrays and in depth-first order
+	 */
+	private static class Cells {
+
+		private int m_size = 0;
+
+		/**
+		 * the total mass of each cell and its center of mass
+		 */
+		private double[] m_mass = new double[ 16 ];
+
+		private double[] m_x = new double[ 16 ];
+
+		private double[] m_y = new double[ 16 ];
+
+		private double[] m_z = new double[ 16 ];
+
+		/**
+		 * the squared distance from its center of mass beyond which each cell is not opened
+		 */
+		private double[] m_openingDistanceSquared = new double[ 16 ];
+
+		/**
+		 * the range of sorted particles in each cell
+		 */
+		private int[] m_start = new int[ 16 ];
+
+		private int[] m_end = new int[ 16 ];
+
+		/**
+		 * the number of cells following each cell that are inside it
+		 */
+		private int[] m_numDescendants = new int[ 16 ];
+
+		private boolean[] m_isLeaf = new boolean[ 16 ];
+
+		public Cells() {
+
+		}
+
+		public void clear() {
+			this.m_size = 0;
+		}
+
+		/**
+		 * @return			the index of a new cell at the end
+		 */
+		public int add() {
+			ensureCapacity( this.m_size + 1 );
+			return this.m_size ++;
+		}
+
+		/**
+		 * copies all the cells of the given cells to the end. the numbers of descendants
+		 * are relative, so they stay valid
+		 */
+		public void append( Cells toAppend ) {
+			int size = toAppend.m_size;
+			ensureCapacity( this.m_size + size );
+			System.arraycopy( toAppend.m_mass , 0 , this.m_mass , this.m_size , size );
+			System.arraycopy( toAppend.m_x , 0 , this.m_x , this.m_size , size );
+			System.arraycopy( toAppend.m_y , 0 , this.m_y , this.m_size , size );
+			System.arraycopy( toAppend.m_z , 0 , this.m_z , this.m_size , size );
+			System.arraycopy( toAppend.m_openingDistanceSquared , 0 , this.m_openingDistanceSquared , this.m_size , size );
+			System.arraycopy( toAppend.m_start , 0 , this.m_start , this.m_size , size );
+			System.arraycopy( toAppend.m_end , 0 , this.m_end , this.m_size , size );
+			System.arraycopy( toAppend.m_numDescendants , 0 , this.m_numDescendants , this.m_size , size );
+			System.arraycopy( toAppend.m_isLeaf , 0 , this.m_isLeaf , this.m_size , size );
+			this.m_size += size;
+		}
+
+		private void ensureCapacity( int capacity ) {
+			if ( this.m_mass.length < capacity ) {
+				int newCapacity = Math.max( capacity , 2 * this.m_mass.length );
+				this.m_mass = Arrays.copyOf( this.m_mass , newCapacity );
+				this.m_x = Arrays.copyOf( this.m_x , newCapacity );
+				this.m_y = Arrays.copyOf( this.m_y , newCapacity );
+				this.m_z = Arrays.copyOf( this.m_z , newCapacity );
+				this.m_openingDistanceSquared = Arrays.copyOf( this.m_openingDistanceSquared , newCapacity );
+				this.m_start = Arrays.copyOf( this.m_start , newCapacity );
+				this.m_end = Arrays.copyOf( this.m_end , newCapacity );
+				this.m_numDescendants = Arrays.copyOf( this.m_numDescendants , newCapacity );
+				this.m_isLeaf = Arrays.copyOf( this.m_isLeaf , newCapacity );
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package particle.force;
 
 import particle.Particle;
+import _math.Real;
 import force.Force;
 import force.ForceGenerator;
 
@@ -24,4 +25,15 @@ abstract public class ParticleForceGenerator extends ForceGenerator < Particle >
 	public ParticleForceGenerator( Force aForce ) {
 		super( aForce );
 	}
+	
+	/**
+	 * adds the force of this generator for a step of the given duration. most forces do not
+	 * depend on the duration, so this simply calls <code>generateForce()</code>. generators
+	 * that predict where their objects will be at the end of the step override it
+	 * 
+	 * @param duration		the duration of the step about to be taken
+	 */
+	public void generateForce( Real duration ) {
+		generateForce();
+	}
 }
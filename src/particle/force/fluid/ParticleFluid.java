@@ -0,0 +1,454 @@
+package particle.force.fluid;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import particle.Particle;
+import particle.force.ParticleForceGenerator;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * treats its <code>Particle</code>s as a fluid, using smoothed particle hydrodynamics. each
+ * particle carries a share of the fluid's mass, and the fluid's density, pressure and velocity
+ * at a particle are smoothed over the neighbors within the smoothing radius. add the fluid to a
+ * <code>ParticleWorld</code> as a force generator; the particles are then moved by the world like
+ * any other particle, so walls and floors are the world's usual contacts.
+ * <p>
+ * each step runs these passes, each spread over the worker threads:
+ * <ol>
+ * <li>the positions and velocities of the particles are copied into arrays and sorted by
+ * cell of a <code>ParticleNeighborGrid</code>, so that neighbors are near each other in memory</li>
+ * <li>the neighbors of each particle are listed</li>
+ * <li>the density at each particle is summed over its neighbors, and its pressure follows
+ * from how far the density is above the rest density</li>
+ * <li>the pressure and viscosity forces are summed over the neighbors and added to the particle</li>
+ * </ol>
+ * the kernels are those of M&uuml;ller et al., "Particle-Based Fluid Simulation for Interactive
+ * Applications" (2003): poly6 for density, the gradient of spiky for pressure and the laplacian
+ * of the viscosity kernel for viscosity. particles with infinite mass are not part of the fluid
+ */
+public class ParticleFluid extends ParticleForceGenerator {
+
+	/**
+	 * with fewer particles than this, each pass runs on the calling thread,
+	 * since handing the work to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_PARTICLES = 2048;
+
+	/**
+	 * the radius over which the fluid is smoothed
+	 */
+	final private double m_smoothingRadius;
+
+	/**
+	 * the density at which the fluid has no pressure
+	 */
+	final private double m_restDensity;
+
+	/**
+	 * the pressure per unit of density above the rest density
+	 */
+	final private double m_stiffness;
+
+	/**
+	 * the dynamic viscosity of the fluid
+	 */
+	final private double m_viscosity;
+
+	/**
+	 * the constant factors of the kernels for the smoothing radius
+	 */
+	final private double m_poly6;
+
+	final private double m_spikyGradient;
+
+	final private double m_viscosityLaplacian;
+
+	/**
+	 * finds the neighbors of the particles
+	 */
+	final private ParticleNeighborGrid m_grid;
+
+	/**
+	 * the particles of the fluid gathered in this step, in the order they were gathered
+	 */
+	private Particle[] m_particles = new Particle[ 0 ];
+
+	private int m_numParticles = 0;
+
+	/**
+	 * the positions, velocities and masses of the particles, first in the order they
+	 * were gathered, then in the order of the grid
+	 */
+	private double[] m_x = new double[ 0 ];
+
+	private double[] m_y = new double[ 0 ];
+
+	private double[] m_z = new double[ 0 ];
+
+	private double[] m_vx = new double[ 0 ];
+
+	private double[] m_vy = new double[ 0 ];
+
+	private double[] m_vz = new double[ 0 ];
+
+	private double[] m_mass = new double[ 0 ];
+
+	/**
+	 * the particle data in the order of the grid
+	 */
+	private double[] m_sortedX = new double[ 0 ];
+
+	private double[] m_sortedY = new double[ 0 ];
+
+	private double[] m_sortedZ = new double[ 0 ];
+
+	private double[] m_sortedVx = new double[ 0 ];
+
+	private double[] m_sortedVy = new double[ 0 ];
+
+	private double[] m_sortedVz = new double[ 0 ];
+
+	private double[] m_sortedMass = new double[ 0 ];
+
+	/**
+	 * the density and pressure at each particle, in the order of the grid
+	 */
+	private double[] m_density = new double[ 0 ];
+
+	private double[] m_pressure = new double[ 0 ];
+
+	/**
+	 * the pass being run by the workers
+	 */
+	private int m_pass;
+
+	final private static int SORT_PASS = 0;
+
+	final private static int COUNT_PASS = 1;
+
+	final private static int LIST_PASS = 2;
+
+	final private static int DENSITY_PASS = 3;
+
+	final private static int FORCE_PASS = 4;
+
+	/**
+	 * the task run by each worker
+	 */
+	final private ArrayList < Callable < Object > > m_tasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates a fluid whose passes run on the given number of threads
+	 *
+	 * @param smoothingRadius				the radius over which the fluid is smoothed, about twice the spacing of the particles at rest
+	 * @param restDensity					the density at which the fluid has no pressure, e.g. 1000 for water
+	 * @param stiffness						the pressure per unit of density above the rest density
+	 * @param viscosity						the dynamic viscosity of the fluid
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the smoothing radius, rest density or number of threads is
+	 * 										not positive, or the stiffness or viscosity is negative
+	 */
+	public ParticleFluid( Real smoothingRadius , Real restDensity , Real stiffness , Real viscosity , int numThreads ) throws IllegalArgumentException {
+		super();
+		if ( smoothingRadius.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Fluid.INVALID_SMOOTHING_RADIUS );
+		}
+		if ( restDensity.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Fluid.INVALID_REST_DENSITY );
+		}
+		if ( stiffness.compareTo( Real.ZERO ) < 0 || viscosity.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Fluid.INVALID_COEFFICIENT );
+		}
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Fluid.INVALID_THREAD_COUNT );
+		}
+		this.m_smoothingRadius = smoothingRadius.value();
+		this.m_restDensity = restDensity.value();
+		this.m_stiffness = stiffness.value();
+		this.m_viscosity = viscosity.value();
+		double h = this.m_smoothingRadius;
+		this.m_poly6 = 315 / ( 64 * Math.PI * Math.pow( h , 9 ) );
+		this.m_spikyGradient = 45 / ( Math.PI * Math.pow( h , 6 ) );
+		this.m_viscosityLaplacian = 45 / ( Math.PI * Math.pow( h , 6 ) );
+		this.m_grid = new ParticleNeighborGrid( h );
+
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			final int worker = idx;
+			final int numWorkers = numThreads;
+			this.m_tasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					runPass( share( worker , numWorkers ) , share( worker + 1 , numWorkers ) );
+					return null;
+				}
+			});
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "fluid" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	public Real getSmoothingRadius() {
+		return new Real( this.m_smoothingRadius );
+	}
+
+	public Real getRestDensity() {
+		return new Real( this.m_restDensity );
+	}
+
+	public Real getStiffness() {
+		return new Real( this.m_stiffness );
+	}
+
+	public Real getViscosity() {
+		return new Real( this.m_viscosity );
+	}
+
+	/**
+	 * @return			the number of particles in the fluid in the last step
+	 */
+	public int getNumParticles() {
+		return this.m_numParticles;
+	}
+
+	/**
+	 * @return			the average density at the particles in the last step, e.g. to tune the stiffness
+	 * 					until the fluid is only slightly compressed
+	 */
+	public Real getAverageDensity() {
+		double total = 0;
+		for ( int idx = 0 ; idx < this.m_numParticles ; idx ++ ) {
+			total += this.m_density[ idx ];
+		}
+		return new Real( this.m_numParticles > 0 ? total / this.m_numParticles : 0 );
+	}
+
+	@Override
+	public void generateForce() {
+		gatherParticles();
+		if ( this.m_numParticles == 0 ) {
+			return;
+		}
+		this.m_grid.sort( this.m_x , this.m_y , this.m_z , this.m_numParticles );
+		runPass( SORT_PASS );
+		runPass( COUNT_PASS );
+		this.m_grid.countsDone();
+		runPass( LIST_PASS );
+		runPass( DENSITY_PASS );
+		runPass( FORCE_PASS );
+	}
+
+	/**
+	 * copies the positions, velocities and masses of the particles with finite mass
+	 */
+	private void gatherParticles() {
+		int capacity = this.m_objects.size();
+		if ( this.m_particles.length < capacity ) {
+			this.m_particles = new Particle[ capacity ];
+			this.m_x = new double[ capacity ];
+			this.m_y = new double[ capacity ];
+			this.m_z = new double[ capacity ];
+			this.m_vx = new double[ capacity ];
+			this.m_vy = new double[ capacity ];
+			this.m_vz = new double[ capacity ];
+			this.m_mass = new double[ capacity ];
+			this.m_sortedX = new double[ capacity ];
+			this.m_sortedY = new double[ capacity ];
+			this.m_sortedZ = new double[ capacity ];
+			this.m_sortedVx = new double[ capacity ];
+			this.m_sortedVy = new double[ capacity ];
+			this.m_sortedVz = new double[ capacity ];
+			this.m_sortedMass = new double[ capacity ];
+			this.m_density = new double[ capacity ];
+			this.m_pressure = new double[ capacity ];
+		}
+		int count = 0;
+		for ( Particle particle : this.m_objects ) {
+			if ( !particle.hasFiniteMass() ) {
+				continue;
+			}
+			Vector3D position = particle.getPosition();
+			Vector3D velocity = particle.getVelocity();
+			this.m_particles[ count ] = particle;
+			this.m_x[ count ] = position.getX().value();
+			this.m_y[ count ] = position.getY().value();
+			this.m_z[ count ] = position.getZ().value();
+			this.m_vx[ count ] = velocity.getX().value();
+			this.m_vy[ count ] = velocity.getY().value();
+			this.m_vz[ count ] = velocity.getZ().value();
+			this.m_mass[ count ] = particle.getMass().value();
+			count ++;
+		}
+		this.m_numParticles = count;
+	}
+
+	/**
+	 * runs a pass over all particles, on the workers if there are enough particles
+	 */
+	private void runPass( int pass ) {
+		this.m_pass = pass;
+		if ( this.m_numParticles < MINIMUM_PARALLEL_PARTICLES ) {
+			runPass( 0 , this.m_numParticles );
+			return;
+		}
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( this.m_tasks ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * @return			the start of the given worker's share of the particles
+	 */
+	private int share( int worker , int numWorkers ) {
+		return ( int ) ( ( long ) this.m_numParticles * worker / numWorkers );
+	}
+
+	/**
+	 * runs the current pass over a range of particles in the order of the grid
+	 */
+	private void runPass( int start , int end ) {
+		switch ( this.m_pass ) {
+			case SORT_PASS :
+				sortParticles( start , end );
+				break;
+			case COUNT_PASS :
+				this.m_grid.countNeighbors( this.m_sortedX , this.m_sortedY , this.m_sortedZ , start , end );
+				break;
+			case LIST_PASS :
+				this.m_grid.listNeighbors( this.m_sortedX , this.m_sortedY , this.m_sortedZ , start , end );
+				break;
+			case DENSITY_PASS :
+				computeDensities( start , end );
+				break;
+			case FORCE_PASS :
+				applyForces( start , end );
+				break;
+		}
+	}
+
+	private void sortParticles( int start , int end ) {
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			int original = this.m_grid.getOriginalIndex( idx );
+			this.m_sortedX[ idx ] = this.m_x[ original ];
+			this.m_sortedY[ idx ] = this.m_y[ original ];
+			this.m_sortedZ[ idx ] = this.m_z[ original ];
+			this.m_sortedVx[ idx ] = this.m_vx[ original ];
+			this.m_sortedVy[ idx ] = this.m_vy[ original ];
+			this.m_sortedVz[ idx ] = this.m_vz[ original ];
+			this.m_sortedMass[ idx ] = this.m_mass[ original ];
+		}
+	}
+
+	/**
+	 * sums the density at each particle over itself and its neighbors, then finds its pressure.
+	 * fluid below the rest density has no pressure, rather than pulling particles together
+	 */
+	private void computeDensities( int start , int end ) {
+		int[] neighbors = this.m_grid.getNeighbors();
+		double radiusSquared = this.m_smoothingRadius * this.m_smoothingRadius;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			double px = this.m_sortedX[ idx ];
+			double py = this.m_sortedY[ idx ];
+			double pz = this.m_sortedZ[ idx ];
+			double density = this.m_sortedMass[ idx ] * radiusSquared * radiusSquared * radiusSquared;
+			int neighborEnd = this.m_grid.getNeighborStart( idx + 1 );
+			for ( int neighbor = this.m_grid.getNeighborStart( idx ) ; neighbor < neighborEnd ; neighbor ++ ) {
+				int other = neighbors[ neighbor ];
+				double dx = this.m_sortedX[ other ] - px;
+				double dy = this.m_sortedY[ other ] - py;
+				double dz = this.m_sortedZ[ other ] - pz;
+				double difference = radiusSquared - ( dx * dx + dy * dy + dz * dz );
+				density += this.m_sortedMass[ other ] * difference * difference * difference;
+			}
+			density *= this.m_poly6;
+			this.m_density[ idx ] = density;
+			this.m_pressure[ idx ] = this.m_stiffness * Math.max( density - this.m_restDensity , 0 );
+		}
+	}
+
+	/**
+	 * sums the pressure and viscosity forces on each particle over its neighbors, and adds
+	 * them to the particle. each particle is only written by the worker that owns it
+	 */
+	private void applyForces( int start , int end ) {
+		int[] neighbors = this.m_grid.getNeighbors();
+		double h = this.m_smoothingRadius;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			double px = this.m_sortedX[ idx ];
+			double py = this.m_sortedY[ idx ];
+			double pz = this.m_sortedZ[ idx ];
+			double vx = this.m_sortedVx[ idx ];
+			double vy = this.m_sortedVy[ idx ];
+			double vz = this.m_sortedVz[ idx ];
+			double pressure = this.m_pressure[ idx ];
+			double fx = 0 , fy = 0 , fz = 0;
+			int neighborEnd = this.m_grid.getNeighborStart( idx + 1 );
+			for ( int neighbor = this.m_grid.getNeighborStart( idx ) ; neighbor < neighborEnd ; neighbor ++ ) {
+				int other = neighbors[ neighbor ];
+				double dx = px - this.m_sortedX[ other ];
+				double dy = py - this.m_sortedY[ other ];
+				double dz = pz - this.m_sortedZ[ other ];
+				double distance = Math.sqrt( dx * dx + dy * dy + dz * dz );
+				double volume = this.m_sortedMass[ other ] / this.m_density[ other ];
+				double falloff = h - distance;
+
+				//pressure pushes the particles apart, along the line between them
+				if ( distance > 0 ) {
+					double push = volume * ( pressure + this.m_pressure[ other ] ) / 2 * this.m_spikyGradient * falloff * falloff / distance;
+					fx += push * dx;
+					fy += push * dy;
+					fz += push * dz;
+				}
+
+				//viscosity pulls the velocity of the particle towards that of its neighbor
+				double drag = volume * this.m_viscosity * this.m_viscosityLaplacian * falloff;
+				fx += drag * ( this.m_sortedVx[ other ] - vx );
+				fy += drag * ( this.m_sortedVy[ other ] - vy );
+				fz += drag * ( this.m_sortedVz[ other ] - vz );
+			}
+
+			//the sums are forces per unit of volume, so they are scaled by the particle's volume
+			double volume = this.m_sortedMass[ idx ] / this.m_density[ idx ];
+			Particle particle = this.m_particles[ this.m_grid.getOriginalIndex( idx ) ];
+			particle.addForceVector( new Vector3D( new Real( fx * volume ) , new Real( fy * volume ) , new Real( fz * volume ) ) );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the fluid should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+}
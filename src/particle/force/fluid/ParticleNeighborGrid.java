@@ -0,0 +1,254 @@
+package particle.force.fluid;
+
+import java.util.Arrays;
+
+/**
+ * finds the neighbors within a fixed radius of many points, using a grid of cubic cells
+ * as wide as the radius. the cells are hashed into a table, so the grid is unbounded and
+ * its memory only depends on the number of points.
+ * <p>
+ * the grid is used in three stages. <code>sort()</code> sorts the points by cell. the caller
+ * then puts its point data in the sorted order, so that the points of a cell are next to
+ * each other in memory. finally, the neighbors of each sorted point are listed by
+ * <code>countNeighbors()</code> and then <code>listNeighbors()</code>, with <code>countsDone()</code>
+ * in between. these take a range of points, so different ranges can be given to different
+ * threads. the neighbors of all points are kept together, in sorted order, with the neighbors of
+ * point <code>i</code> from <code>getNeighborStart( i )</code> up to <code>getNeighborStart( i + 1 )</code>
+ */
+public class ParticleNeighborGrid {
+
+	/**
+	 * large primes for hashing the coordinates of a cell
+	 */
+	final private static int PRIME_X = 73856093;
+
+	final private static int PRIME_Y = 19349663;
+
+	final private static int PRIME_Z = 83492791;
+
+	/**
+	 * the width of a cell, which is also the radius within which points are neighbors
+	 */
+	private double m_radius;
+
+	/**
+	 * the number of buckets in the hash table, minus one. the number of buckets is a power of two
+	 */
+	private int m_mask = 0;
+
+	/**
+	 * the bucket of each point, in the order given to <code>sort()</code>
+	 */
+	private int[] m_buckets = new int[ 0 ];
+
+	/**
+	 * the index in sorted order of the first point of each bucket. the last entry is the number of points
+	 */
+	private int[] m_bucketStarts = new int[ 1 ];
+
+	/**
+	 * the original index of each sorted point
+	 */
+	private int[] m_order = new int[ 0 ];
+
+	/**
+	 * the number of points sorted
+	 */
+	private int m_numPoints = 0;
+
+	/**
+	 * the index in <code>m_neighbors</code> of the first neighbor of each sorted point.
+	 * the last entry is the number of neighbors listed
+	 */
+	private int[] m_neighborStarts = new int[ 1 ];
+
+	/**
+	 * the sorted index of each neighbor, grouped by point
+	 */
+	private int[] m_neighbors = new int[ 0 ];
+
+	/**
+	 * creates a grid for finding neighbors within the given radius
+	 *
+	 * @param radius		the radius
+	 */
+	public ParticleNeighborGrid( double radius ) {
+		this.m_radius = radius;
+	}
+
+	public double getRadius() {
+		return this.m_radius;
+	}
+
+	/**
+	 * sorts the given points by cell
+	 *
+	 * @param x					the x coordinates of the points
+	 * @param y					the y coordinates of the points
+	 * @param z					the z coordinates of the points
+	 * @param numPoints			the number of points
+	 */
+	public void sort( double[] x , double[] y , double[] z , int numPoints ) {
+		this.m_numPoints = numPoints;
+		if ( this.m_buckets.length < numPoints ) {
+			this.m_buckets = new int[ numPoints ];
+			this.m_order = new int[ numPoints ];
+			this.m_neighborStarts = new int[ numPoints + 1 ];
+		}
+
+		//at least two buckets per point keeps collisions between cells rare
+		int numBuckets = Integer.highestOneBit( Math.max( numPoints , 1 ) ) << 2;
+		if ( this.m_bucketStarts.length != numBuckets + 1 ) {
+			this.m_bucketStarts = new int[ numBuckets + 1 ];
+		} else {
+			Arrays.fill( this.m_bucketStarts , 0 );
+		}
+		this.m_mask = numBuckets - 1;
+
+		//counting sort by bucket
+		for ( int idx = 0 ; idx < numPoints ; idx ++ ) {
+			int bucket = bucket( cell( x[ idx ] ) , cell( y[ idx ] ) , cell( z[ idx ] ) );
+			this.m_buckets[ idx ] = bucket;
+			this.m_bucketStarts[ bucket + 1 ] ++;
+		}
+		for ( int bucket = 0 ; bucket < numBuckets ; bucket ++ ) {
+			this.m_bucketStarts[ bucket + 1 ] += this.m_bucketStarts[ bucket ];
+		}
+		int[] next = Arrays.copyOf( this.m_bucketStarts , numBuckets );
+		for ( int idx = 0 ; idx < numPoints ; idx ++ ) {
+			this.m_order[ next[ this.m_buckets[ idx ] ] ++ ] = idx;
+		}
+	}
+
+	/**
+	 * @param sortedIndex		the index of a point in sorted order
+	 * @return					the index the point had when it was given to <code>sort()</code>
+	 */
+	public int getOriginalIndex( int sortedIndex ) {
+		return this.m_order[ sortedIndex ];
+	}
+
+	/**
+	 * counts the neighbors of a range of sorted points
+	 *
+	 * @param x					the x coordinates of the points, in sorted order
+	 * @param y					the y coordinates of the points, in sorted order
+	 * @param z					the z coordinates of the points, in sorted order
+	 * @param start				the first point
+	 * @param end				one past the last point
+	 */
+	public void countNeighbors( double[] x , double[] y , double[] z , int start , int end ) {
+		int[] buckets = new int[ 27 ];
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			this.m_neighborStarts[ idx + 1 ] = visitNeighbors( x , y , z , idx , buckets , -1 );
+		}
+	}
+
+	/**
+	 * makes room for the neighbors counted by <code>countNeighbors()</code>. must be called
+	 * once every point has been counted and before any are listed
+	 */
+	public void countsDone() {
+		this.m_neighborStarts[ 0 ] = 0;
+		for ( int idx = 0 ; idx < this.m_numPoints ; idx ++ ) {
+			this.m_neighborStarts[ idx + 1 ] += this.m_neighborStarts[ idx ];
+		}
+		int numNeighbors = this.m_neighborStarts[ this.m_numPoints ];
+		if ( this.m_neighbors.length < numNeighbors ) {
+			this.m_neighbors = new int[ numNeighbors + numNeighbors / 4 ];
+		}
+	}
+
+	/**
+	 * lists the neighbors of a range of sorted points, after they were counted
+	 *
+	 * @param x					the x coordinates of the points, in sorted order
+	 * @param y					the y coordinates of the points, in sorted order
+	 * @param z					the z coordinates of the points, in sorted order
+	 * @param start				the first point
+	 * @param end				one past the last point
+	 */
+	public void listNeighbors( double[] x , double[] y , double[] z , int start , int end ) {
+		int[] buckets = new int[ 27 ];
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			visitNeighbors( x , y , z , idx , buckets , this.m_neighborStarts[ idx ] );
+		}
+	}
+
+	/**
+	 * @param sortedIndex		the index of a point in sorted order
+	 * @return					the index in <code>getNeighbors()</code> of the first neighbor of the point
+	 */
+	public int getNeighborStart( int sortedIndex ) {
+		return this.m_neighborStarts[ sortedIndex ];
+	}
+
+	/**
+	 * @return					the sorted indices of the neighbors of all points, grouped by point.
+	 * 							this array is reused by the next search
+	 */
+	public int[] getNeighbors() {
+		return this.m_neighbors;
+	}
+
+	/**
+	 * goes through the points within the radius of a point, other than the point itself
+	 *
+	 * @param point				the sorted index of the point
+	 * @param buckets			scratch space for the buckets searched
+	 * @param output			where to list the neighbors in <code>m_neighbors</code>, or -1 to only count them
+	 * @return					the number of neighbors
+	 */
+	private int visitNeighbors( double[] x , double[] y , double[] z , int point , int[] buckets , int output ) {
+		double px = x[ point ];
+		double py = y[ point ];
+		double pz = z[ point ];
+		double radiusSquared = this.m_radius * this.m_radius;
+		int cellX = cell( px );
+		int cellY = cell( py );
+		int cellZ = cell( pz );
+
+		//the buckets of the 27 surrounding cells, each searched once even if cells share a bucket
+		int numBuckets = 0;
+		for ( int dx = -1 ; dx <= 1 ; dx ++ ) {
+			for ( int dy = -1 ; dy <= 1 ; dy ++ ) {
+				for ( int dz = -1 ; dz <= 1 ; dz ++ ) {
+					int bucket = bucket( cellX + dx , cellY + dy , cellZ + dz );
+					boolean isNew = true;
+					for ( int idx = 0 ; idx < numBuckets && isNew ; idx ++ ) {
+						isNew = buckets[ idx ] != bucket;
+					}
+					if ( isNew ) {
+						buckets[ numBuckets ++ ] = bucket;
+					}
+				}
+			}
+		}
+
+		//buckets can hold points of other cells, so every point is checked by distance
+		int count = 0;
+		for ( int idx = 0 ; idx < numBuckets ; idx ++ ) {
+			int end = this.m_bucketStarts[ buckets[ idx ] + 1 ];
+			for ( int other = this.m_bucketStarts[ buckets[ idx ] ] ; other < end ; other ++ ) {
+				double dx = x[ other ] - px;
+				double dy = y[ other ] - py;
+				double dz = z[ other ] - pz;
+				if ( other != point && dx * dx + dy * dy + dz * dz < radiusSquared ) {
+					if ( output >= 0 ) {
+						this.m_neighbors[ output + count ] = other;
+					}
+					count ++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private int cell( double coordinate ) {
+		return ( int ) Math.floor( coordinate / this.m_radius );
+	}
+
+	private int bucket( int cellX , int cellY , int cellZ ) {
+		return ( cellX * PRIME_X ^ cellY * PRIME_Y ^ cellZ * PRIME_Z ) & this.m_mask;
+	}
+}
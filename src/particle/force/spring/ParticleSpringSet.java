@@ -0,0 +1,497 @@
+package particle.force.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import particle.Particle;
+import particle.force.ParticleForceGenerator;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * many damped springs between <code>Particle</code>s, or between a particle and a fixed
+ * anchor, evaluated together. a world with many springs can hold all of them in one set rather
+ * than one <code>ParticleSpring</code> generator each.
+ * <p>
+ * the springs are kept in arrays, one per property, and the particles they join are numbered
+ * as they are added. each step runs these passes, each spread over the worker threads:
+ * <ol>
+ * <li>the position and velocity of every particle are copied into arrays</li>
+ * <li>the springs are split into one contiguous block per worker, and each worker sums the
+ * forces of its springs into its own arrays, indexed by particle</li>
+ * <li>the particles are split between the workers, and each worker adds up the sums of all
+ * workers for its particles, in worker order</li>
+ * </ol>
+ * each particle then receives its total with a single <code>addForceVector()</code>. the
+ * passes allocate nothing, and the forces on a particle are summed in the same order every
+ * step for a given number of threads.
+ * <p>
+ * the force of a spring on its first particle is
+ * <p>
+ * F = -( k * ( l - l0 ) + c * v ) * d
+ * <p>
+ * where d is the direction from the second end to the first, l the distance between the
+ * ends, l0 the rest length, and v how fast the ends are moving apart. the second particle
+ * receives the opposite force
+ */
+public class ParticleSpringSet extends ParticleForceGenerator {
+
+	/**
+	 * with fewer springs than this, each pass runs on the calling thread,
+	 * since handing the work to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_SPRINGS = 4096;
+
+	/**
+	 * the particles joined by the springs, and the number of each particle
+	 */
+	final private ArrayList < Particle > m_particles = new ArrayList < Particle > ();
+
+	final private IdentityHashMap < Particle , Integer > m_particleNumbers = new IdentityHashMap < Particle , Integer > ();
+
+	/**
+	 * the position and velocity of each particle, copied at the start of each step
+	 */
+	private double[] m_x = new double[ 0 ];
+
+	private double[] m_y = new double[ 0 ];
+
+	private double[] m_z = new double[ 0 ];
+
+	private double[] m_vx = new double[ 0 ];
+
+	private double[] m_vy = new double[ 0 ];
+
+	private double[] m_vz = new double[ 0 ];
+
+	/**
+	 * the force of the springs on each particle summed by each worker, three entries
+	 * per particle, and the total of all workers
+	 */
+	private double[][] m_workerForces;
+
+	private double[] m_totalForces = new double[ 0 ];
+
+	/**
+	 * the number of springs in this set
+	 */
+	private int m_numSprings = 0;
+
+	/**
+	 * the particle at each end of each spring. the second end of an anchored spring is -1
+	 */
+	private int[] m_first = new int[ 0 ];
+
+	private int[] m_second = new int[ 0 ];
+
+	/**
+	 * the anchor of each anchored spring
+	 */
+	private double[] m_anchorX = new double[ 0 ];
+
+	private double[] m_anchorY = new double[ 0 ];
+
+	private double[] m_anchorZ = new double[ 0 ];
+
+	/**
+	 * the spring constant, rest length and damping of each spring
+	 */
+	private double[] m_stiffness = new double[ 0 ];
+
+	private double[] m_restLength = new double[ 0 ];
+
+	private double[] m_damping = new double[ 0 ];
+
+	/**
+	 * the pass being run by the workers
+	 */
+	private int m_pass;
+
+	final private static int GATHER_PASS = 0;
+
+	final private static int SPRING_PASS = 1;
+
+	final private static int REDUCE_PASS = 2;
+
+	/**
+	 * the task run by each worker
+	 */
+	final private ArrayList < Callable < Object > > m_tasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates an empty spring set whose passes run on the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public ParticleSpringSet( int numThreads ) throws IllegalArgumentException {
+		super();
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_THREAD_COUNT );
+		}
+		this.m_workerForces = new double[ numThreads ][ 0 ];
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			final int worker = idx;
+			this.m_tasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					runPass( worker , ParticleSpringSet.this.m_tasks.size() );
+					return null;
+				}
+			});
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "spring set" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * adds a spring between two particles
+	 *
+	 * @param first							the particle at the first end
+	 * @param second						the particle at the second end
+	 * @param springConstant				the spring constant
+	 * @param restLength					the unstretched, uncompressed length
+	 * @param damping						the force per unit of speed at which the ends move apart
+	 * @return								the index of the spring
+	 * @throws IllegalArgumentException		if a particle is <code>null</code>, the spring constant is not
+	 * 										positive, or the rest length or damping is negative
+	 */
+	public int addSpring( Particle first , Particle second , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		if ( second == null ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_REFERENCE );
+		}
+		return addSpring( first , number( second ) , Vector3D.ZERO , springConstant , restLength , damping );
+	}
+
+	/**
+	 * adds a spring between a particle and a fixed anchor
+	 *
+	 * @param particle						the particle at the first end
+	 * @param anchor						the anchor at the second end
+	 * @param springConstant				the spring constant
+	 * @param restLength					the unstretched, uncompressed length
+	 * @param damping						the force per unit of speed at which the ends move apart
+	 * @return								the index of the spring
+	 * @throws IllegalArgumentException		if the particle is <code>null</code>, the spring constant is not
+	 * 										positive, or the rest length or damping is negative
+	 */
+	public int addAnchoredSpring( Particle particle , Vector3D anchor , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		return addSpring( particle , -1 , anchor , springConstant , restLength , damping );
+	}
+
+	/**
+	 * adds the springs of a <code>ParticleSpring</code> generator, one for each particle it acts on,
+	 * without damping. the generator should then no longer be run
+	 *
+	 * @param spring						the generator
+	 */
+	public void addSprings( ParticleSpring spring ) {
+		for ( Particle particle : spring.getObjects() ) {
+			if ( spring instanceof ParticleUnanchoredSpring ) {
+				addSpring( particle , ( ( ParticleUnanchoredSpring ) spring ).getReference() , spring.getSpringConstant() , spring.getRestLength() , Real.ZERO );
+			} else {
+				addAnchoredSpring( particle , spring.getReferencePosition() , spring.getSpringConstant() , spring.getRestLength() , Real.ZERO );
+			}
+		}
+	}
+
+	private int addSpring( Particle first , int second , Vector3D anchor , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		if ( first == null ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_REFERENCE );
+		}
+		if ( springConstant.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_SPRING_CONSTANT );
+		}
+		if ( restLength.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_REST_LENGTH );
+		}
+		if ( damping.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_DAMPING );
+		}
+		int idx = this.m_numSprings;
+		if ( idx == this.m_first.length ) {
+			growSprings();
+		}
+		this.m_first[ idx ] = number( first );
+		this.m_second[ idx ] = second;
+		this.m_anchorX[ idx ] = anchor.getX().value();
+		this.m_anchorY[ idx ] = anchor.getY().value();
+		this.m_anchorZ[ idx ] = anchor.getZ().value();
+		this.m_stiffness[ idx ] = springConstant.value();
+		this.m_restLength[ idx ] = restLength.value();
+		this.m_damping[ idx ] = damping.value();
+		this.m_numSprings ++;
+		return idx;
+	}
+
+	/**
+	 * @return			the number of the given particle, numbering it if it is new
+	 */
+	private int number( Particle particle ) {
+		Integer number = this.m_particleNumbers.get( particle );
+		if ( number == null ) {
+			number = Integer.valueOf( this.m_particles.size() );
+			this.m_particles.add( particle );
+			this.m_particleNumbers.put( particle , number );
+		}
+		return number.intValue();
+	}
+
+	private void growSprings() {
+		int capacity = Math.max( 16 , 2 * this.m_first.length );
+		this.m_first = Arrays.copyOf( this.m_first , capacity );
+		this.m_second = Arrays.copyOf( this.m_second , capacity );
+		this.m_anchorX = Arrays.copyOf( this.m_anchorX , capacity );
+		this.m_anchorY = Arrays.copyOf( this.m_anchorY , capacity );
+		this.m_anchorZ = Arrays.copyOf( this.m_anchorZ , capacity );
+		this.m_stiffness = Arrays.copyOf( this.m_stiffness , capacity );
+		this.m_restLength = Arrays.copyOf( this.m_restLength , capacity );
+		this.m_damping = Arrays.copyOf( this.m_damping , capacity );
+	}
+
+	/**
+	 * removes a spring. the last spring takes its index
+	 *
+	 * @param idx			the index of the spring to remove
+	 */
+	public void removeSpring( int idx ) {
+		int last = -- this.m_numSprings;
+		this.m_first[ idx ] = this.m_first[ last ];
+		this.m_second[ idx ] = this.m_second[ last ];
+		this.m_anchorX[ idx ] = this.m_anchorX[ last ];
+		this.m_anchorY[ idx ] = this.m_anchorY[ last ];
+		this.m_anchorZ[ idx ] = this.m_anchorZ[ last ];
+		this.m_stiffness[ idx ] = this.m_stiffness[ last ];
+		this.m_restLength[ idx ] = this.m_restLength[ last ];
+		this.m_damping[ idx ] = this.m_damping[ last ];
+	}
+
+	/**
+	 * @return			the number of springs in this set
+	 */
+	public int getNumSprings() {
+		return this.m_numSprings;
+	}
+
+	public void setSpringConstant( int idx , Real springConstant ) throws IllegalArgumentException {
+		if ( springConstant.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_SPRING_CONSTANT );
+		}
+		this.m_stiffness[ idx ] = springConstant.value();
+	}
+
+	public Real getSpringConstant( int idx ) {
+		return new Real( this.m_stiffness[ idx ] );
+	}
+
+	public void setRestLength( int idx , Real restLength ) throws IllegalArgumentException {
+		if ( restLength.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_REST_LENGTH );
+		}
+		this.m_restLength[ idx ] = restLength.value();
+	}
+
+	public Real getRestLength( int idx ) {
+		return new Real( this.m_restLength[ idx ] );
+	}
+
+	public void setDamping( int idx , Real damping ) throws IllegalArgumentException {
+		if ( damping.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_DAMPING );
+		}
+		this.m_damping[ idx ] = damping.value();
+	}
+
+	public Real getDamping( int idx ) {
+		return new Real( this.m_damping[ idx ] );
+	}
+
+	@Override
+	public void generateForce() {
+		if ( this.m_numSprings == 0 ) {
+			return;
+		}
+		ensureParticleCapacity();
+		runPass( GATHER_PASS );
+		runPass( SPRING_PASS );
+		runPass( REDUCE_PASS );
+
+		//the particles are given their totals on the calling thread
+		double[] total = this.m_totalForces;
+		for ( int particle = 0 ; particle < this.m_particles.size() ; particle ++ ) {
+			int offset = 3 * particle;
+			if ( total[ offset ] != 0 || total[ offset + 1 ] != 0 || total[ offset + 2 ] != 0 ) {
+				this.m_particles.get( particle ).addForceVector( new Vector3D( new Real( total[ offset ] ) , new Real( total[ offset + 1 ] ) , new Real( total[ offset + 2 ] ) ) );
+			}
+		}
+	}
+
+	private void ensureParticleCapacity() {
+		int count = this.m_particles.size();
+		if ( this.m_x.length >= count ) {
+			return;
+		}
+		this.m_x = new double[ count ];
+		this.m_y = new double[ count ];
+		this.m_z = new double[ count ];
+		this.m_vx = new double[ count ];
+		this.m_vy = new double[ count ];
+		this.m_vz = new double[ count ];
+		this.m_totalForces = new double[ 3 * count ];
+		for ( int worker = 0 ; worker < this.m_workerForces.length ; worker ++ ) {
+			this.m_workerForces[ worker ] = new double[ 3 * count ];
+		}
+	}
+
+	/**
+	 * runs a pass, on the workers if there are enough springs
+	 */
+	private void runPass( int pass ) {
+		this.m_pass = pass;
+		if ( this.m_numSprings < MINIMUM_PARALLEL_SPRINGS ) {
+			runPass( 0 , 1 );
+			return;
+		}
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( this.m_tasks ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * runs the given worker's share of the current pass
+	 */
+	private void runPass( int worker , int numWorkers ) {
+		int numParticles = this.m_particles.size();
+		if ( this.m_pass == GATHER_PASS ) {
+			gatherParticles( share( numParticles , worker , numWorkers ) , share( numParticles , worker + 1 , numWorkers ) );
+		} else if ( this.m_pass == SPRING_PASS ) {
+			double[] forces = this.m_workerForces[ worker ];
+			Arrays.fill( forces , 0 , 3 * numParticles , 0 );
+			evaluateSprings( share( this.m_numSprings , worker , numWorkers ) , share( this.m_numSprings , worker + 1 , numWorkers ) , forces );
+		} else {
+			reduce( share( numParticles , worker , numWorkers ) , share( numParticles , worker + 1 , numWorkers ) , numWorkers );
+		}
+	}
+
+	/**
+	 * @return			the start of the given worker's share of a number of items
+	 */
+	private static int share( int numItems , int worker , int numWorkers ) {
+		return ( int ) ( ( long ) numItems * worker / numWorkers );
+	}
+
+	/**
+	 * copies the state of a range of particles
+	 */
+	private void gatherParticles( int start , int end ) {
+		for ( int particle = start ; particle < end ; particle ++ ) {
+			Vector3D position = this.m_particles.get( particle ).getPosition();
+			Vector3D velocity = this.m_particles.get( particle ).getVelocity();
+			this.m_x[ particle ] = position.getX().value();
+			this.m_y[ particle ] = position.getY().value();
+			this.m_z[ particle ] = position.getZ().value();
+			this.m_vx[ particle ] = velocity.getX().value();
+			this.m_vy[ particle ] = velocity.getY().value();
+			this.m_vz[ particle ] = velocity.getZ().value();
+		}
+	}
+
+	/**
+	 * sums the forces of a range of springs
+	 */
+	private void evaluateSprings( int start , int end , double[] forces ) {
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			int first = this.m_first[ idx ];
+			int second = this.m_second[ idx ];
+			double dx , dy , dz , vx , vy , vz;
+			if ( second < 0 ) {
+				dx = this.m_x[ first ] - this.m_anchorX[ idx ];
+				dy = this.m_y[ first ] - this.m_anchorY[ idx ];
+				dz = this.m_z[ first ] - this.m_anchorZ[ idx ];
+				vx = this.m_vx[ first ];
+				vy = this.m_vy[ first ];
+				vz = this.m_vz[ first ];
+			} else {
+				dx = this.m_x[ first ] - this.m_x[ second ];
+				dy = this.m_y[ first ] - this.m_y[ second ];
+				dz = this.m_z[ first ] - this.m_z[ second ];
+				vx = this.m_vx[ first ] - this.m_vx[ second ];
+				vy = this.m_vy[ first ] - this.m_vy[ second ];
+				vz = this.m_vz[ first ] - this.m_vz[ second ];
+			}
+
+			//a spring of no length pulls in no direction
+			double length = Math.sqrt( dx * dx + dy * dy + dz * dz );
+			if ( length == 0 ) {
+				continue;
+			}
+			dx /= length;
+			dy /= length;
+			dz /= length;
+			double magnitude = -( this.m_stiffness[ idx ] * ( length - this.m_restLength[ idx ] ) + this.m_damping[ idx ] * ( vx * dx + vy * dy + vz * dz ) );
+			int offset = 3 * first;
+			forces[ offset ] += magnitude * dx;
+			forces[ offset + 1 ] += magnitude * dy;
+			forces[ offset + 2 ] += magnitude * dz;
+			if ( second >= 0 ) {
+				offset = 3 * second;
+				forces[ offset ] -= magnitude * dx;
+				forces[ offset + 1 ] -= magnitude * dy;
+				forces[ offset + 2 ] -= magnitude * dz;
+			}
+		}
+	}
+
+	/**
+	 * adds up the sums of every worker for a range of particles, in worker order
+	 */
+	private void reduce( int start , int end , int numWorkers ) {
+		double[] total = this.m_totalForces;
+		for ( int idx = 3 * start ; idx < 3 * end ; idx ++ ) {
+			double sum = 0;
+			for ( int worker = 0 ; worker < numWorkers ; worker ++ ) {
+				sum += this.m_workerForces[ worker ][ idx ];
+			}
+			total[ idx ] = sum;
+		}
+	}
+
+	/**
+	 * stops the worker threads. the spring set should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+}
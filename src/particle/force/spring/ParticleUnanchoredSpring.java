@@ -37,6 +37,13 @@ public class ParticleUnanchoredSpring extends ParticleSpring {
 		this.m_reference = reference;
 	}
 
+	/**
+	 * @return			the <code>Particle</code> at the other end of this spring
+	 */
+	public Particle getReference() {
+		return this.m_reference;
+	}
+	
 	@Override
 	protected Vector3D getStretchVector(Particle target) {
 		return target.getPosition().subtract( this.m_reference.getPosition() );
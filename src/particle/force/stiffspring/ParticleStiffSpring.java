@@ -22,6 +22,23 @@ public class ParticleStiffSpring extends ParticleAnchoredSpring {
 	 */
 	private Real m_integrationDuration;
 	
+	/**
+	 * the spring constant, damping and duration the coefficients were last computed for
+	 */
+	private double m_cachedSpringConstant = Double.NaN;
+	
+	private double m_cachedDamping = Double.NaN;
+	
+	private double m_cachedDuration = Double.NaN;
+	
+	/**
+	 * the coefficients of p_i and v_i in the predicted position p(t), which depend only on
+	 * the spring constant, damping and duration
+	 */
+	private double m_positionCoefficient;
+	
+	private double m_velocityCoefficient;
+	
 	/**
 	 * constructs a "faked" <code>ParticleStiffSpring</code> that fakes simple harmonic
 	 * motion with a stiff spring. the spring rest length is always limited to zero.
@@ -40,18 +57,77 @@ public class ParticleStiffSpring extends ParticleAnchoredSpring {
 		this.m_integrationDuration = deltaT;
 	}
 	
+	/**
+	 * @return			the damping on the simple harmonic motion of this spring
+	 */
+	public Real getDamping() {
+		return this.m_damping;
+	}
+	
+	/**
+	 * @return			the dt used when the duration of the step is not given
+	 */
+	public Real getIntegrationDuration() {
+		return this.m_integrationDuration;
+	}
+	
+	/**
+	 * sets the dt used when the duration of the step is not given
+	 * 
+	 * @param deltaT			the dt used in integrating to update particle data
+	 */
+	public void setIntegrationDuration( Real deltaT ) {
+		this.m_integrationDuration = deltaT;
+	}
+	
 	@Override
 	public void generateForce() {
+		generateForce( this.m_integrationDuration );
+	}
+	
+	/**
+	 * adds the force that brings each particle to where the damped motion would take
+	 * it by the end of a step of the given duration
+	 * 
+	 * @param duration			the duration of the step about to be taken
+	 */
+	@Override
+	public void generateForce( Real duration ) {
 		for ( Particle aParticle : this.m_objects ) {
 			
 			//calculate the spring force on each particle
-			Vector3D springForce = calculateSpringForce( aParticle , this.m_integrationDuration );
+			Vector3D springForce = calculateSpringForce( aParticle , duration );
 			
 			//apply the force
 			aParticle.addForceVector( springForce );
 		}
 	}
 	
+	/**
+	 * recomputes the constants of the position formula if the spring constant, damping
+	 * or duration have changed since they were last computed
+	 */
+	private void updateCoefficients( Real duration ) {
+		double springConstant = this.getSpringConstant().value();
+		double damping = this.m_damping.value();
+		double t = duration.value();
+		if ( springConstant == this.m_cachedSpringConstant && damping == this.m_cachedDamping && t == this.m_cachedDuration ) {
+			return;
+		}
+		this.m_cachedSpringConstant = springConstant;
+		this.m_cachedDamping = damping;
+		this.m_cachedDuration = t;
+		
+		//gamma = 1/2 * sqrt( 4*k - d^2 )
+		double gamma = 0.5 * Math.sqrt( 4 * springConstant - damping * damping );
+		double scale = Math.exp( -0.5 * damping * t ) * Math.sin( gamma * t );
+		
+		//c = d/(2 * gamma ) * p_i + 1/gamma * v_i , so the position formula is a
+		//multiple of p_i plus a multiple of v_i
+		this.m_positionCoefficient = scale * ( 1 + damping / ( 2 * gamma ) );
+		this.m_velocityCoefficient = scale / gamma;
+	}
+	
 	/**
 	 * assumes the particle attached to this spring is undergoing damped simple harmonic 
 	 * motion and calculates an average force to apply to get the particle to get it
@@ -68,7 +144,9 @@ public class ParticleStiffSpring extends ParticleAnchoredSpring {
 	 * <p>
 	 * c = d/(2 * gamma ) * p_i + 1/gamma * v_i
 	 * <p>
-	 * and v_i is the velocity of the particle when it is at p_i
+	 * and v_i is the velocity of the particle when it is at p_i. everything but p_i and
+	 * v_i depends only on the spring and the duration, so it is computed once for as
+	 * long as they stay the same
 	 * 
 	 */
 	protected Vector3D calculateSpringForce( Particle particle , Real duration ) {
@@ -79,35 +157,31 @@ public class ParticleStiffSpring extends ParticleAnchoredSpring {
 		if ( inverseMass.equals( Real.ZERO ) ) {
 			throw new IllegalArgumentException( ErrorMessages.Particle.Spring.INVALID_MASS );
 		}
+		updateCoefficients( duration );
 		
 		//calculate the distance of this particle from the anchor
-		Vector3D particlePosition = particle.getPosition().subtract( this.getReferencePosition() );
-		Vector3D particleVelocity = particle.getVelocity();
-		
-		//calculate the constants in the position formula
-		
-		//calculate gamma
-		Real gammaRadicand = Real.FOUR.multiply( this.getSpringConstant() ).subtract( this.m_damping.squared() );
-		Real gamma = Real.ONE_HALF.multiply( Real.sqrt( gammaRadicand ) );
-		
-		//calculate c
-		Vector3D cFirstAugend = this.m_damping.divide( Real.TWO.multiply( gamma ) ).multiply( particlePosition );
-		Vector3D cSecondAugend = Real.ONE.divide( gamma ).multiply( particleVelocity );
-		Vector3D c = cFirstAugend.add( cSecondAugend );
+		Vector3D anchor = this.getReferencePosition();
+		Vector3D position = particle.getPosition();
+		Vector3D velocity = particle.getVelocity();
+		double x = position.getX().value() - anchor.getX().value();
+		double y = position.getY().value() - anchor.getY().value();
+		double z = position.getZ().value() - anchor.getZ().value();
+		double vx = velocity.getX().value();
+		double vy = velocity.getY().value();
+		double vz = velocity.getZ().value();
 		
 		//calculate the position as a function of time
-		Real positionScalar = Real.E.pow( Real.NEGATIVE_ONE.multiply( Real.ONE_HALF ).multiply( this.m_damping ).multiply( duration ) );
-		Vector3D positionVector = particlePosition.multiply( Real.sin( gamma.multiply( duration ) ) ).add( c.multiply( Real.sin( gamma.multiply( duration ) ) ) );
-		Vector3D targetPosition = positionVector.multiply( positionScalar );
+		double targetX = this.m_positionCoefficient * x + this.m_velocityCoefficient * vx;
+		double targetY = this.m_positionCoefficient * y + this.m_velocityCoefficient * vy;
+		double targetZ = this.m_positionCoefficient * z + this.m_velocityCoefficient * vz;
 		
 		//calculate the acceleration needed
 		//we use the kinematic equation delta(x) = v_i*t + 1/2*a*t^2
 		//so rearranging gives a = 2*( dx - v_i*t )/t^2
-		Vector3D deltaX = targetPosition.subtract( particlePosition );
-		Vector3D acceleration = Real.TWO.multiply( deltaX.subtract( particleVelocity ).multiply( duration ) ).divide( duration.squared() );
+		double t = duration.value();
+		double scale = 2 * particle.getMass().value() * t / ( t * t );
 		
 		//get the force
-		Vector3D force = particle.getMass().multiply( acceleration );
-		return force;
+		return new Vector3D( new Real( scale * ( targetX - x - vx ) ) , new Real( scale * ( targetY - y - vy ) ) , new Real( scale * ( targetZ - z - vz ) ) );
 	}
 }
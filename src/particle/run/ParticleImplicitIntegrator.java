@@ -0,0 +1,519 @@
+package particle.run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import particle.Particle;
+import particle.force.bungee.ParticleAnchoredBungee;
+import particle.force.bungee.ParticleUnanchoredBungee;
+import particle.force.spring.ParticleAnchoredSpring;
+import particle.force.spring.ParticleSpring;
+import particle.force.spring.ParticleUnanchoredSpring;
+import particle.force.stiffspring.ParticleStiffSpring;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * integrates a network of <code>ParticleSpring</code>s with backward Euler, so that
+ * stiff springs stay stable at ordinary step sizes. the change in velocity of every
+ * particle in the network over a step, dv, is found from
+ * <p>
+ * ( M + h * C + h^2 * K ) * dv = h * ( f + h * J * v )
+ * <p>
+ * where h is the duration, M holds the masses, f the spring and external forces,
+ * J = -K is the change of the spring forces with position, and C the damping of
+ * <code>ParticleStiffSpring</code>s. the system is built as one 3 by 3 block per spring,
+ * which is symmetric and never indefinite because springs shorter than their rest length
+ * only resist along their length, and it is solved with conjugate gradients preconditioned
+ * by its diagonal, starting from the change in velocity of the previous step.
+ * <p>
+ * springs handed to the integrator should not also be added to the <code>ParticleWorld</code>
+ * as force generators. the particles of the network are moved by the integrator instead of
+ * by <code>Particle.act()</code>, but other force generators still apply to them. particles
+ * with infinite mass do not move
+ * <p>
+ * by default a <code>ParticleUnanchoredSpring</code> only pushes and pulls the particles
+ * it was added to. its reference particle is treated as an anchor that moves with its
+ * current velocity over the step, and is only moved by springs of its own. with
+ * <code>setReactionForces( true )</code> the opposite force is also applied to the
+ * reference particle, as <code>ParticleSpring.generateForce()</code> does, and the two
+ * ends are solved together
+ */
+public class ParticleImplicitIntegrator {
+
+	/**
+	 * the default most conjugate gradient iterations in a step
+	 */
+	final public static int DEFAULT_MAXIMUM_ITERATIONS = 100;
+
+	/**
+	 * the default size of the remaining error, relative to the right hand side, at
+	 * which the iterations stop
+	 */
+	final public static double DEFAULT_TOLERANCE = 1e-6;
+
+	/**
+	 * the particles in the network
+	 */
+	final private ArrayList < Particle > m_particles = new ArrayList < Particle > ();
+
+	/**
+	 * the index of each particle in <code>m_particles</code>
+	 */
+	final private IdentityHashMap < Particle , Integer > m_indices = new IdentityHashMap < Particle , Integer > ();
+
+	//the springs, one entry per spring. springs anchored at a point have no second particle.
+	//the spring constants and rest lengths are read from the spring each step
+	private int m_numSprings = 0;
+	final private ArrayList < ParticleSpring > m_springs = new ArrayList < ParticleSpring > ();
+	private int[] m_first = new int[ 0 ];
+	private int[] m_second = new int[ 0 ];
+	private boolean[] m_isTensionOnly = new boolean[ 0 ];
+	private double[] m_damping = new double[ 0 ];
+
+	/**
+	 * the 3 by 3 stiffness block of each spring for the current step, packed as
+	 * xx , xy , xz , yy , yz , zz
+	 */
+	private double[] m_stiffness = new double[ 0 ];
+
+	//the particles, 3 entries per particle. the masses are repeated for each coordinate
+	private double[] m_mass = new double[ 0 ];
+	private double[] m_position = new double[ 0 ];
+	private double[] m_velocity = new double[ 0 ];
+	private double[] m_force = new double[ 0 ];
+	private boolean[] m_isFixed = new boolean[ 0 ];
+
+	//the linear system and the conjugate gradient vectors
+	private double[] m_deltaVelocity = new double[ 0 ];
+	private double[] m_rightHandSide = new double[ 0 ];
+	private double[] m_diagonal = new double[ 0 ];
+	private double[] m_residual = new double[ 0 ];
+	private double[] m_preconditioned = new double[ 0 ];
+	private double[] m_direction = new double[ 0 ];
+	private double[] m_product = new double[ 0 ];
+
+	/**
+	 * if springs also push and pull their reference particles
+	 */
+	private boolean m_isReactionApplied = false;
+
+	private int m_maximumIterations = DEFAULT_MAXIMUM_ITERATIONS;
+
+	private double m_tolerance = DEFAULT_TOLERANCE;
+
+	/**
+	 * the number of iterations used in the last step
+	 */
+	private int m_iterationsUsed = 0;
+
+	public ParticleImplicitIntegrator() {
+
+	}
+
+	/**
+	 * @param maximumIterations				the most conjugate gradient iterations in a step
+	 * @throws IllegalArgumentException		if the number of iterations is negative
+	 */
+	public void setMaximumIterations( int maximumIterations ) throws IllegalArgumentException {
+		if ( maximumIterations < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.COLLISION.INVALID_ITERATION_QUANTITY );
+		}
+		this.m_maximumIterations = maximumIterations;
+	}
+
+	/**
+	 * sets if the springs also apply the opposite force to their reference particles.
+	 * by default they do not
+	 *
+	 * @param isReactionApplied			if the springs push and pull both of their ends
+	 */
+	public void setReactionForces( boolean isReactionApplied ) {
+		this.m_isReactionApplied = isReactionApplied;
+	}
+
+	/**
+	 * @return			if the springs push and pull both of their ends
+	 */
+	public boolean isReactionApplied() {
+		return this.m_isReactionApplied;
+	}
+
+	/**
+	 * @param tolerance			the size of the remaining error, relative to the right hand side,
+	 * 							at which the iterations stop
+	 */
+	public void setTolerance( Real tolerance ) {
+		this.m_tolerance = tolerance.value();
+	}
+
+	/**
+	 * @return			the number of conjugate gradient iterations used in the last step
+	 */
+	public int getIterationsUsed() {
+		return this.m_iterationsUsed;
+	}
+
+	/**
+	 * adds a spring and every particle it acts on to the network. bungees only pull,
+	 * and a <code>ParticleStiffSpring</code> is integrated as the damped spring it fakes
+	 *
+	 * @param spring		the spring to add
+	 */
+	public void addSpring( ParticleSpring spring ) {
+		boolean isTensionOnly = spring instanceof ParticleUnanchoredBungee || spring instanceof ParticleAnchoredBungee;
+		double damping = spring instanceof ParticleStiffSpring ? ( ( ParticleStiffSpring ) spring ).getDamping().value() : 0;
+		Particle reference = spring instanceof ParticleUnanchoredSpring ? ( ( ParticleUnanchoredSpring ) spring ).getReference() : null;
+		for ( Particle particle : spring.getObjects() ) {
+			if ( this.m_numSprings == this.m_first.length ) {
+				int capacity = Math.max( 16 , 2 * this.m_numSprings );
+				this.m_first = Arrays.copyOf( this.m_first , capacity );
+				this.m_second = Arrays.copyOf( this.m_second , capacity );
+				this.m_isTensionOnly = Arrays.copyOf( this.m_isTensionOnly , capacity );
+				this.m_damping = Arrays.copyOf( this.m_damping , capacity );
+				this.m_stiffness = Arrays.copyOf( this.m_stiffness , 6 * capacity );
+			}
+			int index = this.m_numSprings ++;
+			this.m_springs.add( spring );
+			this.m_first[ index ] = indexOf( particle );
+			this.m_second[ index ] = reference == null ? -1 : indexOf( reference );
+			this.m_isTensionOnly[ index ] = isTensionOnly;
+			this.m_damping[ index ] = damping;
+		}
+	}
+
+	private int indexOf( Particle particle ) {
+		Integer index = this.m_indices.get( particle );
+		if ( index == null ) {
+			index = this.m_particles.size();
+			this.m_particles.add( particle );
+			this.m_indices.put( particle , index );
+		}
+		return index;
+	}
+
+	/**
+	 * @param particle		a particle
+	 * @return				if the particle is moved by this integrator
+	 */
+	public boolean contains( Particle particle ) {
+		return this.m_indices.containsKey( particle );
+	}
+
+	/**
+	 * moves every particle in the network forward by the given duration, using the
+	 * net force already applied to it by other force generators
+	 *
+	 * @param duration						the duration of the step
+	 * @throws IllegalArgumentException		if the duration is negative
+	 */
+	public void integrate( Real duration ) throws IllegalArgumentException {
+		if ( duration.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.Particle.INVALID_DURATION );
+		}
+		double h = duration.value();
+		loadParticles();
+		int size = this.m_position.length;
+
+		//add the spring forces and find the stiffness of each spring
+		for ( int spring = 0 ; spring < this.m_numSprings ; spring ++ ) {
+			loadSpring( spring );
+		}
+
+		//the right hand side is h * ( f - h * K * v ), and the diagonal of
+		//the system is the preconditioner
+		multiplyByStiffness( this.m_velocity , this.m_product , true );
+		Arrays.fill( this.m_diagonal , 0 );
+		for ( int idx = 0 ; idx < size ; idx ++ ) {
+			this.m_rightHandSide[ idx ] = h * ( this.m_force[ idx ] - h * this.m_product[ idx ] );
+			this.m_diagonal[ idx ] = this.m_mass[ idx ];
+		}
+		for ( int spring = 0 ; spring < this.m_numSprings ; spring ++ ) {
+			double[] k = this.m_stiffness;
+			int block = 6 * spring;
+			int first = 3 * this.m_first[ spring ];
+			int second = this.m_isReactionApplied ? 3 * this.m_second[ spring ] : -1;
+			double damping = h * this.m_damping[ spring ];
+			this.m_diagonal[ first ] += h * h * k[ block ] + damping;
+			this.m_diagonal[ first + 1 ] += h * h * k[ block + 3 ] + damping;
+			this.m_diagonal[ first + 2 ] += h * h * k[ block + 5 ] + damping;
+			if ( second >= 0 ) {
+				this.m_diagonal[ second ] += h * h * k[ block ] + damping;
+				this.m_diagonal[ second + 1 ] += h * h * k[ block + 3 ] + damping;
+				this.m_diagonal[ second + 2 ] += h * h * k[ block + 5 ] + damping;
+			}
+		}
+		solve( h );
+
+		//step with the new velocity and store the particles
+		int numParticles = this.m_particles.size();
+		for ( int idx = 0 ; idx < numParticles ; idx ++ ) {
+			Particle particle = this.m_particles.get( idx );
+			if ( this.m_isFixed[ 3 * idx ] ) {
+				particle.resetNetForce();
+				continue;
+			}
+			int offset = 3 * idx;
+			double vx = this.m_velocity[ offset ] + this.m_deltaVelocity[ offset ];
+			double vy = this.m_velocity[ offset + 1 ] + this.m_deltaVelocity[ offset + 1 ];
+			double vz = this.m_velocity[ offset + 2 ] + this.m_deltaVelocity[ offset + 2 ];
+			particle.setPosition( new Vector3D( new Real( this.m_position[ offset ] + h * vx ) , new Real( this.m_position[ offset + 1 ] + h * vy ) , new Real( this.m_position[ offset + 2 ] + h * vz ) ) );
+			particle.setAcceleration( new Vector3D( new Real( this.m_deltaVelocity[ offset ] / h ) , new Real( this.m_deltaVelocity[ offset + 1 ] / h ) , new Real( this.m_deltaVelocity[ offset + 2 ] / h ) ) );
+			particle.resetNetForce();
+
+			//apply damping, as Particle.act() would
+			Real dampingFactor = particle.getDampingFactor( duration );
+			particle.setVelocity( new Vector3D( new Real( vx ) , new Real( vy ) , new Real( vz ) ).multiply( dampingFactor ) );
+		}
+	}
+
+	/**
+	 * sizes the particle arrays and reads the particles into them
+	 */
+	private void loadParticles() {
+		int size = 3 * this.m_particles.size();
+		if ( this.m_position.length != size ) {
+			this.m_mass = new double[ size ];
+			this.m_position = new double[ size ];
+			this.m_velocity = new double[ size ];
+			this.m_force = new double[ size ];
+			this.m_isFixed = new boolean[ size ];
+			this.m_deltaVelocity = Arrays.copyOf( this.m_deltaVelocity , size );
+			this.m_rightHandSide = new double[ size ];
+			this.m_diagonal = new double[ size ];
+			this.m_residual = new double[ size ];
+			this.m_preconditioned = new double[ size ];
+			this.m_direction = new double[ size ];
+			this.m_product = new double[ size ];
+		}
+		for ( int idx = 0 ; idx < this.m_particles.size() ; idx ++ ) {
+			Particle particle = this.m_particles.get( idx );
+			int offset = 3 * idx;
+			Vector3D position = particle.getPosition();
+			Vector3D velocity = particle.getVelocity();
+			Vector3D force = particle.getNetForce();
+			double inverseMass = particle.getInverseMass().value();
+			boolean isFixed = inverseMass == 0;
+			for ( int coordinate = 0 ; coordinate < 3 ; coordinate ++ ) {
+				this.m_mass[ offset + coordinate ] = isFixed ? 1 : 1 / inverseMass;
+				this.m_isFixed[ offset + coordinate ] = isFixed;
+			}
+			this.m_position[ offset ] = position.getX().value();
+			this.m_position[ offset + 1 ] = position.getY().value();
+			this.m_position[ offset + 2 ] = position.getZ().value();
+			this.m_velocity[ offset ] = velocity.getX().value();
+			this.m_velocity[ offset + 1 ] = velocity.getY().value();
+			this.m_velocity[ offset + 2 ] = velocity.getZ().value();
+			this.m_force[ offset ] = force.getX().value();
+			this.m_force[ offset + 1 ] = force.getY().value();
+			this.m_force[ offset + 2 ] = force.getZ().value();
+		}
+	}
+
+	/**
+	 * adds the force of a spring to its particles and finds its stiffness block. for a
+	 * spring of constant k and rest length L stretched to length l along the unit vector d,
+	 * the block is
+	 * <p>
+	 * k * ( d * d^T + max( 0 , 1 - L / l ) * ( I - d * d^T ) )
+	 * <p>
+	 * which leaves out the part of a compressed spring that would make the system indefinite
+	 */
+	private void loadSpring( int spring ) {
+		ParticleSpring source = this.m_springs.get( spring );
+		double springConstant = source.getSpringConstant().value();
+		double restLength = source.getRestLength().value();
+		int first = 3 * this.m_first[ spring ];
+		int second = 3 * this.m_second[ spring ];
+		double[] x = this.m_position;
+		double[] v = this.m_velocity;
+
+		//find the vector from the other end to the particle
+		double dx , dy , dz;
+		if ( second >= 0 ) {
+			dx = x[ first ] - x[ second ];
+			dy = x[ first + 1 ] - x[ second + 1 ];
+			dz = x[ first + 2 ] - x[ second + 2 ];
+		} else {
+			Vector3D anchor = ( ( ParticleAnchoredSpring ) source ).getReferencePosition();
+			dx = x[ first ] - anchor.getX().value();
+			dy = x[ first + 1 ] - anchor.getY().value();
+			dz = x[ first + 2 ] - anchor.getZ().value();
+		}
+		double length = Math.sqrt( dx * dx + dy * dy + dz * dz );
+		double[] k = this.m_stiffness;
+		int block = 6 * spring;
+		Arrays.fill( k , block , block + 6 , 0 );
+		double stretch = length - restLength;
+		if ( length > 0 && !( this.m_isTensionOnly[ spring ] && stretch <= 0 ) ) {
+			dx /= length;
+			dy /= length;
+			dz /= length;
+
+			//the spring pulls the particle towards the other end
+			double fx = -springConstant * stretch * dx;
+			double fy = -springConstant * stretch * dy;
+			double fz = -springConstant * stretch * dz;
+			this.m_force[ first ] += fx;
+			this.m_force[ first + 1 ] += fy;
+			this.m_force[ first + 2 ] += fz;
+			if ( second >= 0 && this.m_isReactionApplied ) {
+				this.m_force[ second ] -= fx;
+				this.m_force[ second + 1 ] -= fy;
+				this.m_force[ second + 2 ] -= fz;
+			}
+			double transverse = springConstant * Math.max( 0 , 1 - restLength / length );
+			double axial = springConstant - transverse;
+			k[ block ] = axial * dx * dx + transverse;
+			k[ block + 1 ] = axial * dx * dy;
+			k[ block + 2 ] = axial * dx * dz;
+			k[ block + 3 ] = axial * dy * dy + transverse;
+			k[ block + 4 ] = axial * dy * dz;
+			k[ block + 5 ] = axial * dz * dz + transverse;
+		}
+
+		//the damping of a stiff spring slows the particle relative to the other end
+		double damping = this.m_damping[ spring ];
+		if ( damping > 0 ) {
+			for ( int coordinate = 0 ; coordinate < 3 ; coordinate ++ ) {
+				double relativeVelocity = v[ first + coordinate ] - ( second >= 0 ? v[ second + coordinate ] : 0 );
+				this.m_force[ first + coordinate ] -= damping * relativeVelocity;
+				if ( second >= 0 && this.m_isReactionApplied ) {
+					this.m_force[ second + coordinate ] += damping * relativeVelocity;
+				}
+			}
+		}
+	}
+
+	/**
+	 * multiplies a vector by the stiffness of all the springs, K. unless reaction forces
+	 * are applied, the reference end of a spring is not moved by it, so its part of the
+	 * vector is only used if asked for
+	 *
+	 * @param vector				a value for each coordinate of each particle
+	 * @param result				receives K * vector
+	 * @param isReferenceMoved		if the value at the reference end of each spring is used
+	 */
+	private void multiplyByStiffness( double[] vector , double[] result , boolean isReferenceMoved ) {
+		Arrays.fill( result , 0 );
+		double[] k = this.m_stiffness;
+		for ( int spring = 0 ; spring < this.m_numSprings ; spring ++ ) {
+			int block = 6 * spring;
+			int first = 3 * this.m_first[ spring ];
+			int second = 3 * this.m_second[ spring ];
+			double ux = vector[ first ] , uy = vector[ first + 1 ] , uz = vector[ first + 2 ];
+			if ( second >= 0 && ( isReferenceMoved || this.m_isReactionApplied ) ) {
+				ux -= vector[ second ];
+				uy -= vector[ second + 1 ];
+				uz -= vector[ second + 2 ];
+			}
+			double tx = k[ block ] * ux + k[ block + 1 ] * uy + k[ block + 2 ] * uz;
+			double ty = k[ block + 1 ] * ux + k[ block + 3 ] * uy + k[ block + 4 ] * uz;
+			double tz = k[ block + 2 ] * ux + k[ block + 4 ] * uy + k[ block + 5 ] * uz;
+			result[ first ] += tx;
+			result[ first + 1 ] += ty;
+			result[ first + 2 ] += tz;
+			if ( second >= 0 && this.m_isReactionApplied ) {
+				result[ second ] -= tx;
+				result[ second + 1 ] -= ty;
+				result[ second + 2 ] -= tz;
+			}
+		}
+	}
+
+	/**
+	 * multiplies a vector by the whole system, M + h * C + h^2 * K, leaving out fixed particles
+	 */
+	private void multiplyBySystem( double[] vector , double[] result , double h ) {
+		multiplyByStiffness( vector , result , false );
+		for ( int idx = 0 ; idx < result.length ; idx ++ ) {
+			result[ idx ] = this.m_isFixed[ idx ] ? 0 : this.m_mass[ idx ] * vector[ idx ] + h * h * result[ idx ];
+		}
+		for ( int spring = 0 ; spring < this.m_numSprings ; spring ++ ) {
+			double damping = h * this.m_damping[ spring ];
+			if ( damping > 0 ) {
+				int first = 3 * this.m_first[ spring ];
+				int second = this.m_isReactionApplied ? 3 * this.m_second[ spring ] : -1;
+				for ( int coordinate = 0 ; coordinate < 3 ; coordinate ++ ) {
+					double relative = vector[ first + coordinate ] - ( second >= 0 ? vector[ second + coordinate ] : 0 );
+					if ( !this.m_isFixed[ first + coordinate ] ) {
+						result[ first + coordinate ] += damping * relative;
+					}
+					if ( second >= 0 && !this.m_isFixed[ second + coordinate ] ) {
+						result[ second + coordinate ] -= damping * relative;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * solves the system for the change in velocity with preconditioned conjugate
+	 * gradients, starting from the change found in the previous step
+	 */
+	private void solve( double h ) {
+		double[] x = this.m_deltaVelocity;
+		double[] r = this.m_residual;
+		double[] z = this.m_preconditioned;
+		double[] p = this.m_direction;
+		double[] q = this.m_product;
+		double[] b = this.m_rightHandSide;
+		int size = x.length;
+
+		//fixed particles do not change velocity
+		double rightHandSideNorm = 0;
+		for ( int idx = 0 ; idx < size ; idx ++ ) {
+			if ( this.m_isFixed[ idx ] ) {
+				x[ idx ] = 0;
+				b[ idx ] = 0;
+			}
+			rightHandSideNorm += b[ idx ] * b[ idx ];
+		}
+		this.m_iterationsUsed = 0;
+		if ( rightHandSideNorm == 0 ) {
+			Arrays.fill( x , 0 );
+			return;
+		}
+		double tolerance = this.m_tolerance * this.m_tolerance * rightHandSideNorm;
+
+		//r = b - A * x , z = r / diagonal , p = z
+		multiplyBySystem( x , q , h );
+		double rz = 0;
+		double residualNorm = 0;
+		for ( int idx = 0 ; idx < size ; idx ++ ) {
+			r[ idx ] = b[ idx ] - q[ idx ];
+			z[ idx ] = r[ idx ] / this.m_diagonal[ idx ];
+			p[ idx ] = z[ idx ];
+			rz += r[ idx ] * z[ idx ];
+			residualNorm += r[ idx ] * r[ idx ];
+		}
+		while ( residualNorm > tolerance && this.m_iterationsUsed < this.m_maximumIterations ) {
+			multiplyBySystem( p , q , h );
+			double pq = 0;
+			for ( int idx = 0 ; idx < size ; idx ++ ) {
+				pq += p[ idx ] * q[ idx ];
+			}
+			if ( pq <= 0 ) {
+				break;
+			}
+			double alpha = rz / pq;
+			double nextRz = 0;
+			residualNorm = 0;
+			for ( int idx = 0 ; idx < size ; idx ++ ) {
+				x[ idx ] += alpha * p[ idx ];
+				r[ idx ] -= alpha * q[ idx ];
+				z[ idx ] = r[ idx ] / this.m_diagonal[ idx ];
+				nextRz += r[ idx ] * z[ idx ];
+				residualNorm += r[ idx ] * r[ idx ];
+			}
+			double beta = nextRz / rz;
+			rz = nextRz;
+			for ( int idx = 0 ; idx < size ; idx ++ ) {
+				p[ idx ] = z[ idx ] + beta * p[ idx ];
+			}
+			this.m_iterationsUsed ++;
+		}
+	}
+}
@@ -1,12 +1,19 @@
 package particle.run;
 
+import java.util.ArrayList;
+
 import particle.Particle;
 import particle.collision.ParticleContact;
 import particle.collision.ParticleContactGenerator;
 import particle.collision.ParticleContactResolver;
+import particle.collision.link.ParticleLinkSolver;
 import particle.force.ParticleForceGenerator;
 import _lib.LinkedList;
 import _math.Real;
+import force.field.ForceField;
+import force.field.ForceFieldSet;
+import force.integrate.ForceEvaluator;
+import force.integrate.Integrator;
 
 public class ParticleWorld {
 
@@ -20,6 +27,11 @@ public class ParticleWorld {
 	 */
 	private LinkedList < ParticleForceGenerator > m_forceGenerators = new LinkedList < ParticleForceGenerator > ();
 	
+	/**
+	 * the <code>ForceField</code>s acting on every <code>Particle</code> in this <code>ParticleWorld</code>
+	 */
+	final private ForceFieldSet m_forceFields = new ForceFieldSet();
+	
 	/**
 	 * the <code>ParticleContactGenerator</code>s in this <code>ParticleWorld</code>
 	 */
@@ -30,6 +42,44 @@ public class ParticleWorld {
 	 */
 	private ParticleContactResolver m_contactResolver;
 	
+	/**
+	 * moves particles to satisfy their links after each step, or <code>null</code>
+	 * if all links are resolved as contacts
+	 */
+	private ParticleLinkSolver m_linkSolver = null;
+	
+	/**
+	 * integrates the particles of a spring network implicitly, or <code>null</code>
+	 * if every particle is integrated by <code>Particle.act()</code>
+	 */
+	private ParticleImplicitIntegrator m_implicitIntegrator = null;
+	
+	/**
+	 * moves the particles not moved by the implicit integrator, or <code>null</code>
+	 * if each of them is moved by <code>Particle.act()</code>
+	 */
+	private Integrator m_integrator = null;
+	
+	/**
+	 * the particles moved by the integrator in the current step
+	 */
+	final private ArrayList < Particle > m_integratedParticles = new ArrayList < Particle > ();
+	
+	/**
+	 * recomputes the forces on every particle for integrators that evaluate them
+	 * more than once per step
+	 */
+	final private ForceEvaluator m_forceEvaluator = new ForceEvaluator() {
+		
+		@Override
+		public void evaluateForces( Real duration ) {
+			for ( Particle particle : ParticleWorld.this.m_particles ) {
+				particle.resetNetForce();
+			}
+			applyForces( duration , false );
+		}
+	};
+	
 	/**
 	 * maximum number of <code>ParticleContacts</code> that can be stored in this
 	 * <code>ParticleWorld</code>
@@ -95,6 +145,20 @@ public class ParticleWorld {
 		this.m_forceGenerators.add( toAdd );
 	}
 	
+	/**
+	 * adds a <code>ForceField</code> that acts on every <code>Particle</code> in this
+	 * <code>ParticleWorld</code> with finite mass, without registering the particles
+	 * 
+	 * @param toAdd
+	 */
+	public void addForceField( ForceField toAdd ) {
+		this.m_forceFields.addField( toAdd );
+	}
+	
+	public void removeForceField( ForceField toRemove ) {
+		this.m_forceFields.removeField( toRemove );
+	}
+	
 	/**
 	 * adds the given <code>ParticleContactGenerator</code> to this <code>ParticleWorld</code>
 	 * 
@@ -104,6 +168,37 @@ public class ParticleWorld {
 		this.m_contactGenerators.add( toAdd );
 	}
 	
+	/**
+	 * sets the solver that moves particles to satisfy the links added to it, right
+	 * after the particles are integrated and before contacts are generated
+	 * 
+	 * @param linkSolver		the solver, or <code>null</code> to resolve all links as contacts
+	 */
+	public void setLinkSolver( ParticleLinkSolver linkSolver ) {
+		this.m_linkSolver = linkSolver;
+	}
+	
+	/**
+	 * sets the integrator that moves the particles of a spring network. those
+	 * particles are no longer moved by <code>Particle.act()</code>
+	 * 
+	 * @param implicitIntegrator		the integrator, or <code>null</code> to integrate every particle explicitly
+	 */
+	public void setImplicitIntegrator( ParticleImplicitIntegrator implicitIntegrator ) {
+		this.m_implicitIntegrator = implicitIntegrator;
+	}
+	
+	/**
+	 * sets the integrator that moves the particles not moved by the implicit integrator.
+	 * integrators that evaluate the forces more than once per step run the force fields
+	 * and force generators again for each evaluation
+	 * 
+	 * @param integrator		the integrator, or <code>null</code> to move each particle with <code>Particle.act()</code>
+	 */
+	public void setIntegrator( Integrator integrator ) {
+		this.m_integrator = integrator;
+	}
+	
 	/**
 	 * generates <code>ParticleContact</code>s between <code>Particle</code>s
 	 */
@@ -135,27 +230,80 @@ public class ParticleWorld {
 		}
 	}
 	
+	/**
+	 * adds the forces of the force fields and force generators to the particles
+	 * 
+	 * @param duration			the duration of the step
+	 * @param newStep			if this is the first evaluation of the step, which moves the fields forward in time
+	 */
+	private void applyForces( Real duration , boolean newStep ) {
+		
+		//apply force fields to every particle in one pass
+		if ( this.m_forceFields.getNumFields() > 0 ) {
+			for ( Particle particle : this.m_particles ) {
+				this.m_forceFields.gather( particle );
+			}
+			this.m_forceFields.apply( newStep ? duration : Real.ZERO );
+		}
+		
+		//apply force generators
+		for ( ParticleForceGenerator forceGenerator : this.m_forceGenerators ) {
+			forceGenerator.generateForce( duration );
+		}
+	}
+	
 	/**
 	 * integrates particle data over the given duration
 	 * 
 	 * @param duration
 	 */
 	public void integrate( Real duration ) {
+		if ( this.m_integrator == null ) {
+			for ( Particle particle : this.m_particles ) {
+				if ( this.m_implicitIntegrator == null || !this.m_implicitIntegrator.contains( particle ) ) {
+					particle.act( duration );
+				}
+			}
+			if ( this.m_implicitIntegrator != null ) {
+				this.m_implicitIntegrator.integrate( duration );
+			}
+			return;
+		}
+		
+		//the implicit integrator goes first, since the integrator may
+		//replace the forces on every particle
+		this.m_integratedParticles.clear();
 		for ( Particle particle : this.m_particles ) {
-			particle.act( duration );
+			if ( this.m_implicitIntegrator == null || !this.m_implicitIntegrator.contains( particle ) ) {
+				this.m_integratedParticles.add( particle );
+			}
+		}
+		if ( this.m_implicitIntegrator != null ) {
+			this.m_implicitIntegrator.integrate( duration );
+		}
+		this.m_integrator.integrate( this.m_integratedParticles , this.m_forceEvaluator , duration );
+		
+		//forget forces evaluated for particles the integrator did not move
+		if ( this.m_implicitIntegrator != null ) {
+			for ( Particle particle : this.m_particles ) {
+				if ( this.m_implicitIntegrator.contains( particle ) ) {
+					particle.resetNetForce();
+				}
+			}
 		}
 	}
 	
 	public void runPhysics( Real duration ) {
-		
-		//apply force generators
-		for ( ParticleForceGenerator forceGenerator : this.m_forceGenerators ) {
-			forceGenerator.generateForce();
-		}
+		applyForces( duration , true );
 		
 		//integrate and update particle data
 		integrate( duration );
 		
+		//move linked particles back onto their links
+		if ( this.m_linkSolver != null ) {
+			this.m_linkSolver.solve( duration );
+		}
+		
 		//generate contacts
 		generateContacts();
 		
@@ -1,9 +1,11 @@
 package rigidbody;
 
+import rigidbody.force.ForceAccumulator;
 import util.ErrorMessages;
 import _math.Quaternion;
 import _math.Real;
 import _math.Vector3D;
+import force.DampingFactor;
 import force.MassedObject;
 
 /**
@@ -49,6 +51,20 @@ public class RigidBody extends MassedObject {
 	 */
 	private Real m_angularDamping = new Real( 0.999 );
 	
+	/**
+	 * the linear and angular damping factors raised to the duration of the step,
+	 * kept between steps
+	 */
+	final private DampingFactor m_linearDampingFactor = new DampingFactor();
+	
+	final private DampingFactor m_angularDampingFactor = new DampingFactor();
+	
+	/**
+	 * the weight of the previous motion in the average motion, for the duration
+	 * of the step
+	 */
+	final private DampingFactor m_motionBias = new DampingFactor();
+	
 	/**
 	 * determines if this <code>RigidBody</code> can be put to sleep, i.e.
 	 * be ignored by the physics engine if it's motion stabilizes and velocity
@@ -78,6 +94,62 @@ public class RigidBody extends MassedObject {
 	 */
 	private boolean m_isAwake = false;
 	
+	/**
+	 * the id of a <code>RigidBody</code> that has not yet been added to a world
+	 */
+	final public static int UNASSIGNED_ID = -1;
+	
+	/**
+	 * the id used in place of a <code>RigidBody</code> for immobile scenery, e.g.
+	 * a <code>PrimitivePlane</code>, which has no body
+	 */
+	final public static int SCENERY_ID = -2;
+	
+	/**
+	 * stable id of this <code>RigidBody</code>, assigned by the world that owns it.
+	 * ids identify pairs of bodies without relying on object references
+	 */
+	private int m_id = UNASSIGNED_ID;
+	
+	/**
+	 * the radius of the sphere swept along the path of this <code>RigidBody</code> to
+	 * find impacts within a step, or <code>null</code> if this <code>RigidBody</code>
+	 * is not a bullet. bullets are fast-moving bodies that could otherwise pass
+	 * through thin objects in a single step
+	 */
+	private Real m_bulletRadius = null;
+	
+	/**
+	 * a body moved by forces and contacts
+	 */
+	final public static int DYNAMIC = 0;
+	
+	/**
+	 * a body moved only by its target poses, or by its own velocity if it has none.
+	 * forces and contacts treat it as having infinite mass
+	 */
+	final public static int KINEMATIC = 1;
+	
+	/**
+	 * a body that never moves, e.g. scenery. it is skipped by integration, force
+	 * generation and sleep bookkeeping
+	 */
+	final public static int STATIC = 2;
+	
+	/**
+	 * the type of this <code>RigidBody</code>: <code>DYNAMIC</code>, <code>KINEMATIC</code>
+	 * or <code>STATIC</code>
+	 */
+	private int m_bodyType = DYNAMIC;
+	
+	/**
+	 * the position and orientation a kinematic <code>RigidBody</code> is moved to in
+	 * the next step, or <code>null</code> if it moves by its own velocity
+	 */
+	private Vector3D m_targetPosition = null;
+	
+	private Quaternion m_targetOrientation = null;
+	
 	/**
 	 * creates a <code>RigidBody</code> with the given mass, inverse moment of inertia,
 	 *  and initial position. all other properties are set to their defaults:
@@ -227,6 +299,157 @@ public class RigidBody extends MassedObject {
 	}
 	
 	
+	/**
+	 * @return		the id of this <code>RigidBody</code>, or <code>UNASSIGNED_ID</code>
+	 * 				if it has not been added to a world
+	 * @see			#m_id
+	 */
+	public int getId() {
+		return this.m_id;
+	}
+	
+	/**
+	 * sets the id of this <code>RigidBody</code>. called by the world that owns it
+	 * 
+	 * @param id		the new id for this <code>RigidBody</code>
+	 */
+	public void setId( int id ) {
+		this.m_id = id;
+	}
+	
+	/**
+	 * @param body		a <code>RigidBody</code>, or <code>null</code> for scenery
+	 * @return			the id of <code>body</code>, or <code>SCENERY_ID</code> if it is <code>null</code>
+	 */
+	public static int getId( RigidBody body ) {
+		if ( body == null ) {
+			return SCENERY_ID;
+		} else {
+			return body.getId();
+		}
+	}
+	
+	/**
+	 * @param body		a <code>RigidBody</code>, or <code>null</code> for scenery
+	 * @return			if <code>body</code> can be told apart from other bodies by its id, i.e.
+	 * 					if it is scenery or has been added to a world
+	 */
+	public static boolean isIdentified( RigidBody body ) {
+		return body == null || body.getId() >= 0;
+	}
+	
+	/**
+	 * marks this <code>RigidBody</code> as a bullet, so that the world checks the
+	 * path it sweeps during each step for impacts instead of only its final position
+	 * 
+	 * @param sweptRadius		the radius of the sphere swept along the path of this
+	 * 							<code>RigidBody</code>. it should fit inside the body
+	 * @throws IllegalArgumentException		if the radius is not positive
+	 * @see						#m_bulletRadius
+	 */
+	public void setBullet( Real sweptRadius ) throws IllegalArgumentException {
+		if ( sweptRadius.compareTo( Real.ZERO ) > 0 ) {
+			this.m_bulletRadius = sweptRadius;
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.INVALID_BULLET_RADIUS );
+		}
+	}
+	
+	/**
+	 * stops treating this <code>RigidBody</code> as a bullet
+	 */
+	public void clearBullet() {
+		this.m_bulletRadius = null;
+	}
+	
+	/**
+	 * @return		if this <code>RigidBody</code> is a bullet
+	 * @see			#m_bulletRadius
+	 */
+	public boolean isBullet() {
+		return this.m_bulletRadius != null;
+	}
+	
+	/**
+	 * @return		the radius of the sphere swept along the path of this <code>RigidBody</code>,
+	 * 				or <code>null</code> if it is not a bullet
+	 */
+	public Real getBulletRadius() {
+		return this.m_bulletRadius;
+	}
+	
+	/**
+	 * sets the type of this <code>RigidBody</code>. static bodies are stopped
+	 * 
+	 * @param bodyType						<code>DYNAMIC</code>, <code>KINEMATIC</code> or <code>STATIC</code>
+	 * @throws IllegalArgumentException		if the type is unknown
+	 */
+	public void setBodyType( int bodyType ) throws IllegalArgumentException {
+		if ( bodyType != DYNAMIC && bodyType != KINEMATIC && bodyType != STATIC ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.INVALID_BODY_TYPE );
+		}
+		this.m_bodyType = bodyType;
+		this.m_targetPosition = null;
+		this.m_targetOrientation = null;
+		if ( bodyType == STATIC ) {
+			this.setVelocity( Vector3D.ZERO );
+			this.setAngularVelocity( Vector3D.ZERO );
+		}
+	}
+	
+	/**
+	 * @return		the type of this <code>RigidBody</code>
+	 * @see			#m_bodyType
+	 */
+	public int getBodyType() {
+		return this.m_bodyType;
+	}
+	
+	public boolean isDynamic() {
+		return this.m_bodyType == DYNAMIC;
+	}
+	
+	public boolean isKinematic() {
+		return this.m_bodyType == KINEMATIC;
+	}
+	
+	public boolean isStatic() {
+		return this.m_bodyType == STATIC;
+	}
+	
+	/**
+	 * @return		if this <code>RigidBody</code> is dynamic and has finite mass. kinematic
+	 * 				and static bodies are treated as having infinite mass
+	 */
+	@Override
+	public boolean hasFiniteMass() {
+		return this.m_bodyType == DYNAMIC && super.hasFiniteMass();
+	}
+	
+	/**
+	 * @param body		a <code>RigidBody</code>, or <code>null</code> for scenery
+	 * @return			if <code>body</code> can be moved by forces and contacts
+	 */
+	public static boolean hasFiniteMass( RigidBody body ) {
+		return body != null && body.hasFiniteMass();
+	}
+	
+	/**
+	 * sets the pose this kinematic <code>RigidBody</code> is moved to in the next step. its
+	 * velocity and angular velocity are set to those that reach the pose in the step
+	 * 
+	 * @param position						the position to move to
+	 * @param orientation					the orientation to move to
+	 * @throws IllegalStateException		if this <code>RigidBody</code> is not kinematic
+	 */
+	public void setKinematicTarget( Vector3D position , Quaternion orientation ) throws IllegalStateException {
+		if ( this.m_bodyType != KINEMATIC ) {
+			throw new IllegalStateException( ErrorMessages.RigidBody.NOT_KINEMATIC );
+		}
+		this.m_targetPosition = position;
+		this.m_targetOrientation = orientation.normalize();
+	}
+	
 	/**
 	 * @return		the damping factor on this <code>RigidBody</code>
 	 */
@@ -441,7 +664,18 @@ public class RigidBody extends MassedObject {
 	 * @param torque
 	 */
 	public void addTorqueVector( Vector3D torque ) {
-		this.m_netTorque = this.m_netTorque.add( torque );
+		
+		//forces added by a parallel force stage are collected per thread
+		ForceAccumulator accumulator = ForceAccumulator.getCurrent();
+		if ( accumulator != null && this.m_id >= 0 ) {
+			accumulator.addTorque( this.m_id , torque );
+		} else if ( accumulator != null ) {
+			synchronized ( this ) {
+				this.m_netTorque = this.m_netTorque.add( torque );
+			}
+		} else {
+			this.m_netTorque = this.m_netTorque.add( torque );
+		}
 	}
 	
 	/**
@@ -452,7 +686,19 @@ public class RigidBody extends MassedObject {
 	 */
 	@Override
 	public void addForceVector( Vector3D force ) {
-		super.addForceVector( force );
+		
+		//forces added by a parallel force stage are collected per thread. bodies
+		//without an id have no place in the accumulators, so they are locked instead
+		ForceAccumulator accumulator = ForceAccumulator.getCurrent();
+		if ( accumulator != null && this.m_id >= 0 ) {
+			accumulator.addForce( this.m_id , force );
+		} else if ( accumulator != null ) {
+			synchronized ( this ) {
+				super.addForceVector( force );
+			}
+		} else {
+			super.addForceVector( force );
+		}
 	}
 	
 	/**
@@ -488,6 +734,15 @@ public class RigidBody extends MassedObject {
 	@Override
 	public void act( Real duration ) {
 		
+		//static bodies never move and kinematic bodies ignore forces
+		if ( this.m_bodyType != DYNAMIC ) {
+			clearAccumulators();
+			if ( this.m_bodyType == KINEMATIC ) {
+				moveKinematic( duration );
+			}
+			return;
+		}
+		
 		//calculate the linear acceleration from last frame
 		Vector3D lastFrameAcceleration = this.getAcceleration().add( this.getNetForce().multiply( this.getInverseMass() ) );
 		this.setLastFrameAcceleration( lastFrameAcceleration );
@@ -507,10 +762,10 @@ public class RigidBody extends MassedObject {
 		this.setAngularVelocity( this.getAngularVelocity().add( angularAcceleration.multiply( duration ) ) );
 		
 		//add linear drag
-		this.setVelocity( this.getVelocity().multiply( this.getDamping().pow( duration ) ) );
+		this.setVelocity( this.getVelocity().multiply( this.m_linearDampingFactor.get( this.getDamping() , duration ) ) );
 		
 		//add rotational drag
-		this.setAngularVelocity( this.getAngularVelocity().multiply( this.m_angularDamping.pow( duration ) ) );
+		this.setAngularVelocity( this.getAngularVelocity().multiply( this.m_angularDampingFactor.get( this.m_angularDamping , duration ) ) );
 		
 		//modify linear position
 		Vector3D deltaPos = this.getVelocity().multiply( duration );
@@ -523,8 +778,82 @@ public class RigidBody extends MassedObject {
 		//clear net force and torque
 		clearAccumulators();
 		
-		//determine the kinetic energy if this RigidBody may need to be
-		//put to sleep
+		//determine if this RigidBody should be put to sleep
+		updateMotion( duration );
+	}
+	
+	/**
+	 * determines where <code>act()</code> would move this dynamic <code>RigidBody</code>
+	 * in the given duration with its current net force, without moving it
+	 * 
+	 * @param duration			the duration of the step
+	 * @return					the position at the end of the step
+	 */
+	public Vector3D predictPosition( Real duration ) {
+		Vector3D velocity = this.getVelocity();
+		if ( this.m_bodyType == DYNAMIC ) {
+			velocity = velocity.add( this.getNetForce().multiply( this.getInverseMass() ).multiply( duration ) );
+			velocity = velocity.multiply( this.m_linearDampingFactor.get( this.getDamping() , duration ) );
+		}
+		return this.getPosition().add( velocity.multiply( duration ) );
+	}
+	
+	/**
+	 * moves this kinematic <code>RigidBody</code> to its target pose, if it has one,
+	 * or else by its velocity and angular velocity
+	 * 
+	 * @param duration			the duration of the step
+	 */
+	private void moveKinematic( Real duration ) {
+		if ( this.m_targetPosition == null ) {
+			this.setPosition( this.getPosition().add( this.getVelocity().multiply( duration ) ) );
+			this.setOrientation( this.getOrientation().add( this.getAngularVelocity().multiply( duration ) ) );
+			return;
+		}
+		this.setVelocity( this.m_targetPosition.subtract( this.getPosition() ).divide( duration ) );
+		
+		//the rotation from the current to the target orientation is
+		//target * conjugate( current ), taken the short way round
+		double qw = this.m_orientation.getW().value();
+		double qx = this.m_orientation.getX().value();
+		double qy = this.m_orientation.getY().value();
+		double qz = this.m_orientation.getZ().value();
+		double tw = this.m_targetOrientation.getW().value();
+		double tx = this.m_targetOrientation.getX().value();
+		double ty = this.m_targetOrientation.getY().value();
+		double tz = this.m_targetOrientation.getZ().value();
+		double rw = tw * qw + tx * qx + ty * qy + tz * qz;
+		double rx = -tw * qx + tx * qw - ty * qz + tz * qy;
+		double ry = -tw * qy + tx * qz + ty * qw - tz * qx;
+		double rz = -tw * qz - tx * qy + ty * qx + tz * qw;
+		if ( rw < 0 ) {
+			rw = -rw;
+			rx = -rx;
+			ry = -ry;
+			rz = -rz;
+		}
+		double sine = Math.sqrt( rx * rx + ry * ry + rz * rz );
+		if ( sine > 0 ) {
+			
+			//omega = axis * angle / duration
+			double scale = 2 * Math.atan2( sine , rw ) / ( sine * duration.value() );
+			this.setAngularVelocity( new Vector3D( new Real( rx * scale ) , new Real( ry * scale ) , new Real( rz * scale ) ) );
+		} else {
+			this.setAngularVelocity( Vector3D.ZERO );
+		}
+		this.setPosition( this.m_targetPosition );
+		this.setOrientation( this.m_targetOrientation );
+		this.m_targetPosition = null;
+		this.m_targetOrientation = null;
+	}
+	
+	/**
+	 * determines the kinetic energy if this <code>RigidBody</code> may need to be
+	 * put to sleep, and puts it to sleep if its motion has settled
+	 * 
+	 * @param duration			the duration of the step just taken
+	 */
+	private void updateMotion( Real duration ) {
 		if ( this.m_canSleep ) {
 			
 			//calculate kinetic energy
@@ -533,7 +862,7 @@ public class RigidBody extends MassedObject {
 			//determine the bias to determine a weighted average of
 			//recent kinetic energies to figure out
 			//if the RigidBody is approaching a steady velocity
-			Real bias = Real.ONE_HALF.pow( duration );
+			Real bias = this.m_motionBias.get( Real.ONE_HALF , duration );
 			this.m_motion = bias.multiply( this.m_motion ).add( Real.ONE.subtract( bias ).multiply( kineticEnergy ) );
 			
 			//determine if the RigidBody shoud be put to sleep
@@ -545,8 +874,97 @@ public class RigidBody extends MassedObject {
 				this.m_motion = this.m_sleepThreshold.multiply( Real.TEN );
 			}
 		}
+	}
+	
+	/**
+	 * @return			13: the position, the orientation as a quaternion, the velocity and
+	 * 					the angular velocity
+	 */
+	@Override
+	public int getStateSize() {
+		return 13;
+	}
+	
+	/**
+	 * @return			7: the position and the orientation
+	 */
+	@Override
+	public int getPositionStateSize() {
+		return 7;
+	}
+	
+	@Override
+	public void getState( double[] state , int offset ) {
+		Vector3D position = this.getPosition();
+		Vector3D velocity = this.getVelocity();
+		state[ offset ] = position.getX().value();
+		state[ offset + 1 ] = position.getY().value();
+		state[ offset + 2 ] = position.getZ().value();
+		state[ offset + 3 ] = this.m_orientation.getW().value();
+		state[ offset + 4 ] = this.m_orientation.getX().value();
+		state[ offset + 5 ] = this.m_orientation.getY().value();
+		state[ offset + 6 ] = this.m_orientation.getZ().value();
+		state[ offset + 7 ] = velocity.getX().value();
+		state[ offset + 8 ] = velocity.getY().value();
+		state[ offset + 9 ] = velocity.getZ().value();
+		state[ offset + 10 ] = this.m_angularVelocity.getX().value();
+		state[ offset + 11 ] = this.m_angularVelocity.getY().value();
+		state[ offset + 12 ] = this.m_angularVelocity.getZ().value();
+	}
+	
+	@Override
+	public void setState( double[] state , int offset ) {
+		this.setPosition( new Vector3D( new Real( state[ offset ] ) , new Real( state[ offset + 1 ] ) , new Real( state[ offset + 2 ] ) ) );
+		this.setOrientation( new Quaternion( new Real( state[ offset + 3 ] ) , new Real( state[ offset + 4 ] ) , new Real( state[ offset + 5 ] ) , new Real( state[ offset + 6 ] ) ) );
+		this.setVelocity( new Vector3D( new Real( state[ offset + 7 ] ) , new Real( state[ offset + 8 ] ) , new Real( state[ offset + 9 ] ) ) );
+		this.setAngularVelocity( new Vector3D( new Real( state[ offset + 10 ] ) , new Real( state[ offset + 11 ] ) , new Real( state[ offset + 12 ] ) ) );
+	}
+	
+	@Override
+	public void getDerivative( double[] derivative , int offset ) {
+		Vector3D velocity = this.getVelocity();
+		Vector3D force = this.getNetForce();
+		double inverseMass = this.getInverseMass().value();
+		derivative[ offset ] = velocity.getX().value();
+		derivative[ offset + 1 ] = velocity.getY().value();
+		derivative[ offset + 2 ] = velocity.getZ().value();
 		
+		//the orientation changes by 1/2 * omega * theta, as in Quaternion.add( Vector3D )
+		double wx = this.m_angularVelocity.getX().value();
+		double wy = this.m_angularVelocity.getY().value();
+		double wz = this.m_angularVelocity.getZ().value();
+		double qw = this.m_orientation.getW().value();
+		double qx = this.m_orientation.getX().value();
+		double qy = this.m_orientation.getY().value();
+		double qz = this.m_orientation.getZ().value();
+		derivative[ offset + 3 ] = 0.5 * ( -wx * qx - wy * qy - wz * qz );
+		derivative[ offset + 4 ] = 0.5 * ( wx * qw + wy * qz - wz * qy );
+		derivative[ offset + 5 ] = 0.5 * ( -wx * qz + wy * qw + wz * qx );
+		derivative[ offset + 6 ] = 0.5 * ( wx * qy - wy * qx + wz * qw );
+		derivative[ offset + 7 ] = force.getX().value() * inverseMass;
+		derivative[ offset + 8 ] = force.getY().value() * inverseMass;
+		derivative[ offset + 9 ] = force.getZ().value() * inverseMass;
 		
+		//alpha = torque / I , as in act()
+		Vector3D angularAcceleration = this.m_invMomentOfInertia.transform( this.getNetTorque() );
+		derivative[ offset + 10 ] = angularAcceleration.getX().value();
+		derivative[ offset + 11 ] = angularAcceleration.getY().value();
+		derivative[ offset + 12 ] = angularAcceleration.getZ().value();
+	}
+	
+	@Override
+	public void endStep( Real duration ) {
+		
+		//calculate the linear acceleration from last frame
+		this.setLastFrameAcceleration( this.getAcceleration().add( this.getNetForce().multiply( this.getInverseMass() ) ) );
+		
+		//add linear and rotational drag
+		this.setVelocity( this.getVelocity().multiply( this.m_linearDampingFactor.get( this.getDamping() , duration ) ) );
+		this.setAngularVelocity( this.getAngularVelocity().multiply( this.m_angularDampingFactor.get( this.m_angularDamping , duration ) ) );
+		
+		//clear net force and torque
+		clearAccumulators();
+		updateMotion( duration );
 	}
 	
 	/**
@@ -596,6 +1014,13 @@ public class RigidBody extends MassedObject {
 		this.m_sleepThreshold = sleepThreshold;
 	}
 	
+	/**
+	 * @return			if this <code>RigidBody</code> can be put to sleep
+	 */
+	public boolean isSleepable() {
+		return this.m_canSleep;
+	}
+	
 	/**
 	 * wakes this <code>RigidBody</code> up so that the <code>act()</code>
 	 * method no longer ignores this <code>RigidBody</code>
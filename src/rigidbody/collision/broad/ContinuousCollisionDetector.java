@@ -0,0 +1,432 @@
+package rigidbody.collision.broad;
+
+import java.util.ArrayList;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.generate.Contact;
+import rigidbody.collision.generate.ContactGenerator;
+import rigidbody.collision.generate.ConvexAndConvexCollisionGenerator;
+import rigidbody.collision.generate.Primitive;
+import rigidbody.collision.generate.PrimitiveHeightfield;
+import rigidbody.collision.generate.PrimitivePlane;
+import rigidbody.collision.generate.PrimitiveSphere;
+import rigidbody.collision.generate.PrimitiveTriangleMesh;
+import rigidbody.collision.generate.SphereAndHeightfieldCollisionGenerator;
+import rigidbody.collision.generate.SphereAndPlaneCollisionGenerator;
+import rigidbody.collision.generate.SphereAndSphereCollisionGenerator;
+import rigidbody.collision.generate.SphereAndTriangleMeshCollisionGenerator;
+import rigidbody.collision.generate.SupportMapped;
+import rigidbody.collision.resolve.ContactResolver;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * finds the time of impact of bullets, i.e. fast-moving <code>RigidBody</code> objects
+ * that could pass through thin obstacles in a single step. the path of a bullet
+ * during a step is swept by a sphere of the bullet's swept radius and tested against
+ * the obstacles registered with this detector.
+ * <p>
+ * obstacles whose bounding box does not touch the bounding box of the swept path
+ * are skipped. planes and spheres are then swept exactly. all other obstacles are
+ * tested by placing the sphere along the path no more than a radius apart, and
+ * the first position in contact is then narrowed down by bisection. triangle meshes,
+ * heightfields and <code>SupportMapped</code> obstacles are tested on plain coordinates,
+ * without moving the bullet or allocating. obstacles of any other type are tested
+ * by asking the given <code>ContactGenerator</code>, usually a <code>CollisionDispatcher</code>,
+ * for contacts.
+ * <p>
+ * obstacles are tested in their current pose, so moving obstacles should be moved
+ * before their bullets are swept. a plane or a sphere already touching the swept
+ * sphere stops it straight away if the path leads further into it. any other
+ * obstacle already touching the swept sphere is ignored, since the usual contact
+ * generation handles it. bullets stopped by sampling are left just short of the
+ * obstacle, so they are not touching it at the start of their next path
+ *
+ * @see			RigidBody#setBullet(Real)
+ */
+public class ContinuousCollisionDetector {
+
+	/**
+	 * the largest number of positions at which a swept sphere is tested against one obstacle
+	 */
+	final public static int MAXIMUM_SAMPLES = 256;
+
+	/**
+	 * the number of times the interval containing an impact is halved
+	 */
+	final private static int BISECTION_ITERATIONS = 10;
+
+	/**
+	 * the primitives bullets may hit
+	 */
+	final private LinkedList < Primitive > m_obstacles = new LinkedList < Primitive > ();
+
+	/**
+	 * generates contacts between the swept sphere and obstacles that are not swept exactly
+	 */
+	final private ContactGenerator m_generator;
+
+	/**
+	 * generate the contacts of bullets with the obstacles that are swept exactly
+	 */
+	final private SphereAndPlaneCollisionGenerator m_planeGenerator;
+	final private SphereAndSphereCollisionGenerator m_sphereGenerator;
+
+	/**
+	 * test the swept sphere against the obstacles that are sampled on plain coordinates
+	 */
+	final private ConvexAndConvexCollisionGenerator m_convexGenerator;
+	final private SphereAndTriangleMeshCollisionGenerator m_meshGenerator;
+	final private SphereAndHeightfieldCollisionGenerator m_heightfieldGenerator;
+
+	/**
+	 * the swept sphere of each bullet, indexed by the id of the bullet. the same
+	 * sphere is used every time, so generators that cache data for pairs of
+	 * primitives can reuse it
+	 */
+	final private ArrayList < PrimitiveSphere > m_sweptSpheres = new ArrayList < PrimitiveSphere > ();
+
+	//scratch space for bounding boxes
+	final private double[] m_rotation = new double[ 9 ];
+	final private double[] m_localPoint = new double[ 3 ];
+	final private double[] m_center = new double[ 3 ];
+	final private double[] m_bounds = new double[ 6 ];
+
+	/**
+	 * creates a <code>ContinuousCollisionDetector</code> with no obstacles
+	 *
+	 * @param generator			generates contacts between a <code>PrimitiveSphere</code> and any
+	 * 							obstacle other than a plane or a sphere
+	 */
+	public ContinuousCollisionDetector( ContactGenerator generator ) {
+		Real friction = generator.getFriction();
+		Real elasticity = generator.getElasticity();
+		Real penetrationOffset = generator.getPenetrationOffset();
+		this.m_generator = generator;
+		this.m_planeGenerator = new SphereAndPlaneCollisionGenerator( friction , elasticity , penetrationOffset );
+		this.m_sphereGenerator = new SphereAndSphereCollisionGenerator( friction , elasticity , penetrationOffset );
+		this.m_convexGenerator = new ConvexAndConvexCollisionGenerator( friction , elasticity , penetrationOffset );
+		this.m_meshGenerator = new SphereAndTriangleMeshCollisionGenerator( friction , elasticity , penetrationOffset );
+		this.m_heightfieldGenerator = new SphereAndHeightfieldCollisionGenerator( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * adds a primitive that bullets may hit. primitives of a bullet are never
+	 * tested against that bullet
+	 *
+	 * @param obstacle
+	 */
+	public void addObstacle( Primitive obstacle ) {
+		this.m_obstacles.add( obstacle );
+	}
+
+	/**
+	 * removes a primitive added with <code>addObstacle()</code>. comparison is done
+	 * by pointer reference
+	 *
+	 * @param obstacle
+	 */
+	public void removeObstacle( Primitive obstacle ) {
+		this.m_obstacles.remove( obstacle );
+	}
+
+	/**
+	 * determines how far a bullet can move from <code>start</code> towards <code>end</code>
+	 * before its swept sphere hits an obstacle. the bullet may be moved while its path
+	 * is sampled against obstacles that are not tested on plain coordinates, so its
+	 * position should be set again by the caller afterwards
+	 *
+	 * @param bullet		a <code>RigidBody</code> with a swept radius
+	 * @param start			the position of the bullet at the start of the step
+	 * @param end			the position of the bullet at the end of the step
+	 * @return				the fraction of the path that can be travelled, 1 if nothing is hit
+	 * @see					RigidBody#setBullet(Real)
+	 */
+	public Real getTimeOfImpact( RigidBody bullet , Vector3D start , Vector3D end ) {
+		double radius = bullet.getBulletRadius().value();
+		double startX = start.getX().value();
+		double startY = start.getY().value();
+		double startZ = start.getZ().value();
+		double pathX = end.getX().value() - startX;
+		double pathY = end.getY().value() - startY;
+		double pathZ = end.getZ().value() - startZ;
+		if ( pathX == 0 && pathY == 0 && pathZ == 0 ) {
+			return Real.ONE;
+		}
+
+		//the bounding box of the swept path
+		double minX = Math.min( startX , startX + pathX ) - radius;
+		double minY = Math.min( startY , startY + pathY ) - radius;
+		double minZ = Math.min( startZ , startZ + pathZ ) - radius;
+		double maxX = Math.max( startX , startX + pathX ) + radius;
+		double maxY = Math.max( startY , startY + pathY ) + radius;
+		double maxZ = Math.max( startZ , startZ + pathZ ) + radius;
+
+		double timeOfImpact = 1;
+		for ( Primitive obstacle : this.m_obstacles ) {
+			if ( obstacle.getBody() == bullet ) {
+				continue;
+			}
+
+			//planes are infinite, so they are always swept
+			if ( obstacle instanceof PrimitivePlane ) {
+				timeOfImpact = Math.min( timeOfImpact , sweepPlane( ( PrimitivePlane ) obstacle , startX , startY , startZ , pathX , pathY , pathZ , radius ) );
+				continue;
+			}
+
+			//skip obstacles that are nowhere near the path
+			determineBounds( obstacle , this.m_bounds );
+			double[] b = this.m_bounds;
+			if ( b[ 0 ] > maxX || b[ 3 ] < minX || b[ 1 ] > maxY || b[ 4 ] < minY || b[ 2 ] > maxZ || b[ 5 ] < minZ ) {
+				continue;
+			}
+			if ( obstacle instanceof PrimitiveSphere ) {
+				timeOfImpact = Math.min( timeOfImpact , sweepSphere( ( PrimitiveSphere ) obstacle , startX , startY , startZ , pathX , pathY , pathZ , radius ) );
+			} else {
+				timeOfImpact = Math.min( timeOfImpact , sample( bullet , obstacle , startX , startY , startZ , pathX , pathY , pathZ , radius , timeOfImpact ) );
+			}
+		}
+		return timeOfImpact == 1 ? Real.ONE : new Real( timeOfImpact );
+	}
+
+	/**
+	 * adds the contacts between the swept sphere of a bullet and the obstacles it
+	 * touches to the given resolver. this lets the impacts of bullets that move on
+	 * alone after being stopped be resolved without generating contacts for the
+	 * other bodies
+	 *
+	 * @param bullet		a <code>RigidBody</code> with a swept radius
+	 * @param resolver		receives the contacts
+	 * @see					RigidBody#setBullet(Real)
+	 */
+	public void generateContacts( RigidBody bullet , ContactResolver resolver ) {
+		double radius = bullet.getBulletRadius().value();
+		Vector3D position = bullet.getPosition();
+		double x = position.getX().value();
+		double y = position.getY().value();
+		double z = position.getZ().value();
+		PrimitiveSphere sphere = getSweptSphere( bullet );
+		for ( Primitive obstacle : this.m_obstacles ) {
+			if ( obstacle.getBody() == bullet ) {
+				continue;
+			}
+			LinkedList < Contact > contacts;
+			if ( obstacle instanceof PrimitivePlane ) {
+				contacts = this.m_planeGenerator.generateContacts( sphere , obstacle );
+			} else {
+
+				//skip obstacles that are nowhere near the bullet
+				determineBounds( obstacle , this.m_bounds );
+				double[] b = this.m_bounds;
+				if ( b[ 0 ] > x + radius || b[ 3 ] < x - radius || b[ 1 ] > y + radius || b[ 4 ] < y - radius || b[ 2 ] > z + radius || b[ 5 ] < z - radius ) {
+					continue;
+				}
+				if ( obstacle instanceof PrimitiveSphere ) {
+					contacts = this.m_sphereGenerator.generateContacts( sphere , obstacle );
+				} else {
+					contacts = this.m_generator.generateContacts( sphere , obstacle );
+				}
+			}
+			for ( Contact contact : contacts ) {
+				resolver.addContact( contact );
+			}
+		}
+	}
+
+	/**
+	 * @return			the sphere swept by the bullet, created the first time the bullet
+	 * 					is seen or when its swept radius has changed
+	 */
+	private PrimitiveSphere getSweptSphere( RigidBody bullet ) {
+		int id = bullet.getId();
+
+		//bullets without an id cannot be told apart, so they get a new sphere each time
+		if ( id < 0 ) {
+			return new PrimitiveSphere( bullet , null , bullet.getBulletRadius() );
+		}
+		while ( this.m_sweptSpheres.size() <= id ) {
+			this.m_sweptSpheres.add( null );
+		}
+		PrimitiveSphere sphere = this.m_sweptSpheres.get( id );
+		if ( sphere == null || sphere.getBody() != bullet || sphere.getRadius().compareTo( bullet.getBulletRadius() ) != 0 ) {
+			sphere = new PrimitiveSphere( bullet , null , bullet.getBulletRadius() );
+			this.m_sweptSpheres.set( id , sphere );
+		}
+		return sphere;
+	}
+
+	/**
+	 * @return			the fraction of the path travelled when the sphere touches the plane
+	 * 					from either side, or 1 if it does not
+	 */
+	private static double sweepPlane( PrimitivePlane plane , double startX , double startY , double startZ , double pathX , double pathY , double pathZ , double radius ) {
+		double normalX = plane.getNormal().getX().value();
+		double normalY = plane.getNormal().getY().value();
+		double normalZ = plane.getNormal().getZ().value();
+		double startDistance = startX * normalX + startY * normalY + startZ * normalZ - plane.getDistanceFromOrigin().value();
+		double approach = pathX * normalX + pathY * normalY + pathZ * normalZ;
+		
+		//a sphere already touching the plane cannot move any further into it
+		if ( Math.abs( startDistance ) <= radius ) {
+			return startDistance * approach < 0 ? 0 : 1;
+		}
+
+		//from the front, the sphere touches the plane when its distance falls to the radius
+		if ( startDistance > radius && approach < 0 ) {
+			double time = ( radius - startDistance ) / approach;
+			return time < 1 ? time : 1;
+		}
+
+		//and from the back, when its distance rises to minus the radius
+		if ( startDistance < -radius && approach > 0 ) {
+			double time = ( -radius - startDistance ) / approach;
+			return time < 1 ? time : 1;
+		}
+		return 1;
+	}
+
+	/**
+	 * @return			the fraction of the path travelled when the swept sphere touches the
+	 * 					other sphere, or 1 if it does not
+	 */
+	private static double sweepSphere( PrimitiveSphere other , double startX , double startY , double startZ , double pathX , double pathY , double pathZ , double radius ) {
+		Vector3D center = other.getPosition();
+		double offsetX = startX - center.getX().value();
+		double offsetY = startY - center.getY().value();
+		double offsetZ = startZ - center.getZ().value();
+		double radiusSum = radius + other.getRadius().value();
+
+		//solve | offset + t * path | = radiusSum for the smaller t
+		double a = pathX * pathX + pathY * pathY + pathZ * pathZ;
+		double b = offsetX * pathX + offsetY * pathY + offsetZ * pathZ;
+		double c = offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ - radiusSum * radiusSum;
+		
+		//spheres already touching cannot move any closer together
+		if ( c <= 0 ) {
+			return b < 0 ? 0 : 1;
+		}
+		if ( b >= 0 ) {
+			return 1;
+		}
+		double discriminant = b * b - a * c;
+		if ( discriminant < 0 ) {
+			return 1;
+		}
+		double time = ( -b - Math.sqrt( discriminant ) ) / a;
+		return time < 1 ? time : 1;
+	}
+
+	/**
+	 * tests the sphere against an obstacle at positions along the path no more than
+	 * a radius apart, so that the sphere cannot skip over any surface. the first
+	 * interval that ends in contact is then bisected
+	 *
+	 * @param limit		the earliest impact found so far. positions beyond it are not tested
+	 * @return			the fraction of the path travelled before the sphere touches the obstacle, or 1
+	 */
+	private double sample( RigidBody bullet , Primitive obstacle , double startX , double startY , double startZ , double pathX , double pathY , double pathZ , double radius , double limit ) {
+		if ( touches( bullet , obstacle , startX , startY , startZ , radius ) ) {
+			return 1;
+		}
+		double length = Math.sqrt( pathX * pathX + pathY * pathY + pathZ * pathZ );
+		int numSamples = Math.min( MAXIMUM_SAMPLES , Math.max( 1 , ( int ) Math.ceil( length / radius ) ) );
+		double free = 0;
+		for ( int idx = 1 ; idx <= numSamples && free < limit ; idx ++ ) {
+			double time = ( double ) idx / numSamples;
+			if ( touches( bullet , obstacle , startX + pathX * time , startY + pathY * time , startZ + pathZ * time , radius ) ) {
+
+				//narrow down the impact, keeping the last position that was free
+				double blocked = time;
+				for ( int iteration = 0 ; iteration < BISECTION_ITERATIONS ; iteration ++ ) {
+					double middle = 0.5 * ( free + blocked );
+					if ( touches( bullet , obstacle , startX + pathX * middle , startY + pathY * middle , startZ + pathZ * middle , radius ) ) {
+						blocked = middle;
+					} else {
+						free = middle;
+					}
+				}
+				return free;
+			}
+			free = time;
+		}
+		return 1;
+	}
+
+	/**
+	 * @return			if the swept sphere touches the obstacle with the bullet placed at the given position.
+	 * 					speculative contacts do not count
+	 */
+	private boolean touches( RigidBody bullet , Primitive obstacle , double x , double y , double z , double radius ) {
+		if ( obstacle instanceof PrimitiveTriangleMesh ) {
+			return this.m_meshGenerator.touchesSphere( ( PrimitiveTriangleMesh ) obstacle , x , y , z , radius );
+		}
+		if ( obstacle instanceof PrimitiveHeightfield ) {
+			return this.m_heightfieldGenerator.touchesSphere( ( PrimitiveHeightfield ) obstacle , x , y , z , radius );
+		}
+		if ( obstacle instanceof SupportMapped ) {
+			return this.m_convexGenerator.touchesSphere( obstacle , x , y , z , radius );
+		}
+
+		//the given generator needs the bullet in place
+		bullet.setPosition( new Vector3D( new Real( x ) , new Real( y ) , new Real( z ) ) );
+		for ( Contact contact : this.m_generator.generateContacts( getSweptSphere( bullet ) , obstacle ) ) {
+			if ( !contact.isSpeculative() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * determines the world axis-aligned bounding box of an obstacle
+	 *
+	 * @param obstacle		any obstacle other than a plane
+	 * @param result		an array of at least 6 elements to receive [ minX , minY , minZ , maxX , maxY , maxZ ].
+	 * 						obstacles with unknown bounds are given infinite bounds, so they are always tested
+	 */
+	private void determineBounds( Primitive obstacle , double[] result ) {
+		if ( obstacle instanceof PrimitiveTriangleMesh ) {
+			( ( PrimitiveTriangleMesh ) obstacle ).getBounds( result );
+			return;
+		}
+
+		//heightfields are bounded along x and z only, since their heights may change
+		if ( obstacle instanceof PrimitiveHeightfield ) {
+			PrimitiveHeightfield field = ( PrimitiveHeightfield ) obstacle;
+			result[ 0 ] = field.getX( 0 );
+			result[ 2 ] = field.getZ( 0 );
+			result[ 3 ] = field.getX( field.getNumColumns() - 1 );
+			result[ 5 ] = field.getZ( field.getNumRows() - 1 );
+			result[ 1 ] = Double.NEGATIVE_INFINITY;
+			result[ 4 ] = Double.POSITIVE_INFINITY;
+			return;
+		}
+		if ( obstacle instanceof SupportMapped && obstacle.getBody() != null ) {
+			SupportMapped shape = ( SupportMapped ) obstacle;
+			double[] rotation = this.m_rotation;
+			double[] point = this.m_localPoint;
+			obstacle.getBody().getOrientation().toOrientationData( rotation );
+			double[] center = this.m_center;
+			Vector3D position = obstacle.getBody().getPosition();
+			center[ 0 ] = position.getX().value();
+			center[ 1 ] = position.getY().value();
+			center[ 2 ] = position.getZ().value();
+			double margin = shape.getMargin();
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+
+				//the world axis in local coordinates is a row of the rotation
+				double directionX = rotation[ 3 * axis ];
+				double directionY = rotation[ 3 * axis + 1 ];
+				double directionZ = rotation[ 3 * axis + 2 ];
+				shape.getLocalSupportPoint( directionX , directionY , directionZ , point );
+				result[ 3 + axis ] = directionX * point[ 0 ] + directionY * point[ 1 ] + directionZ * point[ 2 ] + center[ axis ] + margin;
+				shape.getLocalSupportPoint( -directionX , -directionY , -directionZ , point );
+				result[ axis ] = directionX * point[ 0 ] + directionY * point[ 1 ] + directionZ * point[ 2 ] + center[ axis ] - margin;
+			}
+			return;
+		}
+		result[ 0 ] = result[ 1 ] = result[ 2 ] = Double.NEGATIVE_INFINITY;
+		result[ 3 ] = result[ 4 ] = result[ 5 ] = Double.POSITIVE_INFINITY;
+	}
+}
@@ -0,0 +1,280 @@
+package rigidbody.collision.broad;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.generate.Contact;
+import rigidbody.collision.generate.ContactGenerator;
+import rigidbody.collision.generate.Primitive;
+import rigidbody.collision.resolve.ContactResolver;
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _lib.PairKey;
+
+/**
+ * runs the <code>ContactGenerator</code>s on the <code>PotentialContact</code>s found
+ * by the broad phase, spread over a pool of worker threads.
+ * <p>
+ * contact generators keep scratch data and caches, so each worker has its own
+ * generator. a pair of bodies is always handed to the same worker, chosen by the
+ * pair's key, so that the caches of each generator stay valid from one frame to the
+ * next. each worker collects its contacts in its own buffer. once all workers are
+ * done, the buffers are merged and sorted by pair key before the contacts are given
+ * to the <code>ContactResolver</code>. the sort is stable and the contacts of a pair
+ * always come from the same worker in the same order, so the contacts resolved do not
+ * depend on the order in which the threads happened to run
+ */
+public class ParallelNarrowPhase {
+
+	/**
+	 * orders contacts by the key of their pair of bodies
+	 */
+	final private static Comparator < Contact > PAIR_ORDER = new Comparator < Contact > () {
+
+		@Override
+		public int compare( Contact contact1 , Contact contact2 ) {
+			long key1 = contact1.getPairKey();
+			long key2 = contact2.getPairKey();
+			return key1 < key2 ? -1 : ( key1 == key2 ? 0 : 1 );
+		}
+	};
+
+	/**
+	 * the contact generator used by each worker
+	 */
+	final private ContactGenerator[] m_generators;
+
+	/**
+	 * the primitives of each <code>RigidBody</code>, indexed by id, for <code>PotentialContact</code>s
+	 * that only know their bodies. these are read by all the workers at once, so they are kept
+	 * in <code>ArrayList</code>s, which can be read concurrently, rather than <code>LinkedList</code>s,
+	 * which move a shared cursor while they are iterated
+	 */
+	final private ArrayList < ArrayList < Primitive > > m_primitives = new ArrayList < ArrayList < Primitive > > ();
+
+	/**
+	 * the pairs handed to each worker in the current frame
+	 */
+	final private ArrayList < ArrayList < PotentialContact > > m_assignedPairs = new ArrayList < ArrayList < PotentialContact > > ();
+
+	/**
+	 * the contacts found by each worker in the current frame
+	 */
+	final private ArrayList < ArrayList < Contact > > m_buffers = new ArrayList < ArrayList < Contact > > ();
+
+	/**
+	 * the contacts of all workers, merged in pair order
+	 */
+	final private ArrayList < Contact > m_mergedContacts = new ArrayList < Contact > ();
+
+	/**
+	 * the task run by each worker
+	 */
+	final private ArrayList < Callable < Object > > m_tasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers, or <code>null</code> if there is a single
+	 * worker, which runs on the calling thread
+	 */
+	private ExecutorService m_executor;
+
+	/**
+	 * creates a narrow phase with one worker thread per given generator. no two
+	 * workers may share a generator
+	 *
+	 * @param generators					the contact generator of each worker, e.g. a <code>CollisionDispatcher</code> each
+	 * @throws IllegalArgumentException		if no generators are given
+	 */
+	public ParallelNarrowPhase( ContactGenerator[] generators ) throws IllegalArgumentException {
+		if ( generators.length == 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.NarrowPhase.NO_GENERATORS );
+		}
+		this.m_generators = generators.clone();
+		for ( int idx = 0 ; idx < generators.length ; idx ++ ) {
+			final int worker = idx;
+			this.m_assignedPairs.add( new ArrayList < PotentialContact > () );
+			this.m_buffers.add( new ArrayList < Contact > () );
+			this.m_tasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					runWorker( worker );
+					return null;
+				}
+			});
+		}
+		if ( generators.length > 1 ) {
+
+			//daemon threads, so that an idle pool does not keep the program running
+			this.m_executor = Executors.newFixedThreadPool( generators.length , new ThreadFactory() {
+
+				@Override
+				public Thread newThread( Runnable task ) {
+					Thread thread = new Thread( task , "narrow phase" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return			the number of workers
+	 */
+	public int getNumWorkers() {
+		return this.m_generators.length;
+	}
+
+	/**
+	 * adds a primitive to be tested whenever its body is in a <code>PotentialContact</code>
+	 * that does not name its own primitives. the body must already have its id, e.g. from
+	 * being added to a <code>RigidBodyWorld</code>
+	 *
+	 * @param primitive						the primitive to add
+	 * @throws IllegalArgumentException		if the primitive has no body or the body has no id
+	 */
+	public void addPrimitive( Primitive primitive ) throws IllegalArgumentException {
+		int id = RigidBody.getId( primitive.getBody() );
+		if ( id < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.NarrowPhase.UNIDENTIFIED_BODY );
+		}
+		while ( this.m_primitives.size() <= id ) {
+			this.m_primitives.add( null );
+		}
+		ArrayList < Primitive > primitives = this.m_primitives.get( id );
+		if ( primitives == null ) {
+			primitives = new ArrayList < Primitive > ();
+			this.m_primitives.set( id , primitives );
+		}
+		primitives.add( primitive );
+	}
+
+	/**
+	 * removes a primitive added with <code>addPrimitive()</code>
+	 *
+	 * @param primitive		the primitive to remove
+	 */
+	public void removePrimitive( Primitive primitive ) {
+		int id = RigidBody.getId( primitive.getBody() );
+		if ( id >= 0 && id < this.m_primitives.size() && this.m_primitives.get( id ) != null ) {
+			this.m_primitives.get( id ).remove( primitive );
+		}
+	}
+
+	/**
+	 * generates the contacts of the given pairs on the worker threads and adds them
+	 * to the given <code>ContactResolver</code> in pair order. returns once every
+	 * worker is done
+	 *
+	 * @param pairs			the pairs found by the broad phase
+	 * @param resolver		the resolver to receive the contacts
+	 */
+	public void generateContacts( LinkedList < PotentialContact > pairs , ContactResolver resolver ) {
+
+		//hand out the pairs by key, so each pair goes to the same worker every frame
+		int numWorkers = this.m_generators.length;
+		for ( int idx = 0 ; idx < numWorkers ; idx ++ ) {
+			this.m_assignedPairs.get( idx ).clear();
+			this.m_buffers.get( idx ).clear();
+		}
+		for ( PotentialContact pair : pairs ) {
+			int worker = ( PairKey.hash( pair.getPairKey() ) & Integer.MAX_VALUE ) % numWorkers;
+			this.m_assignedPairs.get( worker ).add( pair );
+		}
+
+		//run the workers and wait for all of them
+		if ( this.m_executor == null ) {
+			runWorker( 0 );
+		} else {
+			try {
+				for ( Future < Object > result : this.m_executor.invokeAll( this.m_tasks ) ) {
+					result.get();
+				}
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch ( ExecutionException e ) {
+				if ( e.getCause() instanceof RuntimeException ) {
+					throw ( RuntimeException ) e.getCause();
+				}
+				throw new IllegalStateException( e.getCause() );
+			}
+		}
+
+		//merge the buffers in worker order, then sort by pair. the sort is stable,
+		//so the contacts of each pair stay in the order they were generated
+		this.m_mergedContacts.clear();
+		for ( int idx = 0 ; idx < numWorkers ; idx ++ ) {
+			this.m_mergedContacts.addAll( this.m_buffers.get( idx ) );
+			this.m_buffers.get( idx ).clear();
+		}
+		Collections.sort( this.m_mergedContacts , PAIR_ORDER );
+		for ( Contact contact : this.m_mergedContacts ) {
+			resolver.addContact( contact );
+		}
+		this.m_mergedContacts.clear();
+
+		//let the generators forget the pairs that were not tested this frame
+		for ( int idx = 0 ; idx < numWorkers ; idx ++ ) {
+			this.m_generators[ idx ].endFrame();
+		}
+	}
+
+	/**
+	 * generates the contacts of the pairs handed to one worker into its buffer
+	 *
+	 * @param worker		the index of the worker
+	 */
+	private void runWorker( int worker ) {
+		ContactGenerator generator = this.m_generators[ worker ];
+		ArrayList < Contact > buffer = this.m_buffers.get( worker );
+		for ( PotentialContact pair : this.m_assignedPairs.get( worker ) ) {
+
+			//a pair that names its primitives is tested directly
+			if ( pair.getPrimitive1() != null ) {
+				addAll( generator.generateContacts( pair.getPrimitive1() , pair.getPrimitive2() ) , buffer );
+
+			//otherwise, every primitive of one body is tested against every primitive of the other
+			} else {
+				ArrayList < Primitive > primitives1 = getPrimitives( pair.getBody1() );
+				ArrayList < Primitive > primitives2 = getPrimitives( pair.getBody2() );
+				if ( primitives1 == null || primitives2 == null ) {
+					continue;
+				}
+				for ( int idx1 = 0 ; idx1 < primitives1.size() ; idx1 ++ ) {
+					for ( int idx2 = 0 ; idx2 < primitives2.size() ; idx2 ++ ) {
+						addAll( generator.generateContacts( primitives1.get( idx1 ) , primitives2.get( idx2 ) ) , buffer );
+					}
+				}
+			}
+		}
+	}
+
+	private ArrayList < Primitive > getPrimitives( RigidBody body ) {
+		int id = RigidBody.getId( body );
+		return id >= 0 && id < this.m_primitives.size() ? this.m_primitives.get( id ) : null;
+	}
+
+	private static void addAll( LinkedList < Contact > contacts , ArrayList < Contact > buffer ) {
+		for ( Contact contact : contacts ) {
+			buffer.add( contact );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the narrow phase should not be used afterwards
+	 */
+	public void shutdown() {
+		if ( this.m_executor != null ) {
+			this.m_executor.shutdown();
+		}
+	}
+}
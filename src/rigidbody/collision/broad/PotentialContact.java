@@ -1,6 +1,8 @@
 package rigidbody.collision.broad;
 
 import rigidbody.RigidBody;
+import rigidbody.collision.generate.Primitive;
+import _lib.PairKey;
 
 /**
  * represents a possible contact between two <code>RigidBody</code> objects
@@ -17,11 +19,35 @@ public class PotentialContact {
 	 */
 	private RigidBody m_body2;
 	
+	/**
+	 * the primitive of the first body to test, or <code>null</code> if the narrow phase
+	 * should test the primitives registered for the bodies
+	 */
+	private Primitive m_primitive1;
+	
+	/**
+	 * the primitive of the second body to test
+	 */
+	private Primitive m_primitive2;
+	
 	public PotentialContact( RigidBody body1 , RigidBody body2 ) {
 		this.m_body1 = body1;
 		this.m_body2 = body2;
 	}
 	
+	/**
+	 * creates a <code>PotentialContact</code> between two given primitives. either primitive
+	 * may be part of the scenery
+	 * 
+	 * @param primitive1
+	 * @param primitive2
+	 */
+	public PotentialContact( Primitive primitive1 , Primitive primitive2 ) {
+		this( primitive1.getBody() , primitive2.getBody() );
+		this.m_primitive1 = primitive1;
+		this.m_primitive2 = primitive2;
+	}
+	
 	public RigidBody getBody1() {
 		return this.m_body1;
 	}
@@ -29,4 +55,36 @@ public class PotentialContact {
 	public RigidBody getBody2() {
 		return this.m_body2;
 	}
+	
+	/**
+	 * @return			the primitive of the first body to test, or <code>null</code> if none was given
+	 */
+	public Primitive getPrimitive1() {
+		return this.m_primitive1;
+	}
+	
+	/**
+	 * @return			the primitive of the second body to test, or <code>null</code> if none was given
+	 */
+	public Primitive getPrimitive2() {
+		return this.m_primitive2;
+	}
+	
+	/**
+	 * @return			the unordered key of the pair of bodies in this <code>PotentialContact</code>
+	 * @see				PairKey#pack(int, int)
+	 */
+	public long getPairKey() {
+		return PairKey.pack( RigidBody.getId( this.m_body1 ) , RigidBody.getId( this.m_body2 ) );
+	}
+	
+	/**
+	 * @return			if the key of this <code>PotentialContact</code> identifies its pair. bodies
+	 * 					without an id all share <code>RigidBody.UNASSIGNED_ID</code>, so their keys
+	 * 					cannot tell pairs apart
+	 * @see				#getPairKey()
+	 */
+	public boolean hasPairKey() {
+		return RigidBody.isIdentified( this.m_body1 ) && RigidBody.isIdentified( this.m_body2 );
+	}
 }
@@ -1,6 +1,7 @@
 package rigidbody.collision.broad;
 
 import rigidbody.collision.generate.Contact;
+import _lib.PairSet;
 import _math.Real;
 
 abstract public class PotentialContactGenerator {
@@ -45,6 +46,14 @@ abstract public class PotentialContactGenerator {
 		this.m_potentialContactResolver = newResolver;
 	}
 	
+	/**
+	 * @return			the pairs of bodies that may be in contact, from the <code>PotentialContact</code>s
+	 * 					generated since contacts were last resolved
+	 */
+	public PairSet getPotentialPairs() {
+		return this.m_potentialContactResolver.getPairsAdded();
+	}
+	
 	/**
 	 * generates all <code>PotentialContact<code>s associated with this <code>PotentialContactGenerator</code>
 	 */
@@ -1,8 +1,10 @@
 package rigidbody.collision.broad;
 
+import rigidbody.RigidBody;
 import rigidbody.collision.generate.Contact;
 import rigidbody.collision.resolve.ContactResolver;
 import _lib.LinkedList;
+import _lib.PairSet;
 import _math.Real;
 
 public class PotentialContactResolver {
@@ -16,12 +18,77 @@ public class PotentialContactResolver {
 	
 	ContactResolver m_resolver = new ContactResolver( 1000 );
 	
+	/**
+	 * the pairs of bodies already added this frame, by any kind of <code>PotentialContact</code>
+	 */
+	private PairSet m_pairsAdded = new PairSet();
+	
+	/**
+	 * the pairs of bodies already added this frame by <code>PotentialContact</code>s that do
+	 * not name their primitives. used to ignore duplicates, since the narrow phase tests all
+	 * the primitives of such a pair at once
+	 */
+	private PairSet m_bodyPairsAdded = new PairSet();
+	
+	/**
+	 * generates the <code>Contact</code>s of the <code>PotentialContact</code>s, or <code>null</code>
+	 * if <code>PotentialContact</code>s are only collected
+	 */
+	private ParallelNarrowPhase m_narrowPhase = null;
+	
 	public PotentialContactResolver() {
 		
 	}
 	
+	/**
+	 * adds the given <code>PotentialContact</code>. a <code>PotentialContact</code> that only
+	 * names its bodies is ignored if one for the same pair of bodies has already been added
+	 * this frame. one that names its primitives is always added: a body may touch several
+	 * pieces of scenery, or two compound bodies may touch at several primitives, and all
+	 * of these share the same pair of bodies. pairs in which neither body can be moved by
+	 * contacts are ignored. pairs of bodies without an id cannot be told apart, so they
+	 * are always added
+	 * 
+	 * @param contact
+	 */
 	public void addContact( PotentialContact contact ) {
-		this.m_contactsToResolve.add( contact );
+		if ( !RigidBody.hasFiniteMass( contact.getBody1() ) && !RigidBody.hasFiniteMass( contact.getBody2() ) ) {
+			return;
+		}
+		if ( !contact.hasPairKey() ) {
+			this.m_contactsToResolve.add( contact );
+			return;
+		}
+		long key = contact.getPairKey();
+		this.m_pairsAdded.add( key );
+		if ( contact.getPrimitive1() != null || this.m_bodyPairsAdded.add( key ) ) {
+			this.m_contactsToResolve.add( contact );
+		}
+	}
+	
+	/**
+	 * sets the narrow phase that turns the <code>PotentialContact</code>s added each frame
+	 * into <code>Contact</code>s before they are resolved
+	 * 
+	 * @param narrowPhase		the narrow phase, or <code>null</code> to only resolve known contacts
+	 */
+	public void setNarrowPhase( ParallelNarrowPhase narrowPhase ) {
+		this.m_narrowPhase = narrowPhase;
+	}
+	
+	/**
+	 * @return			the pairs of bodies whose <code>PotentialContact</code>s were added since
+	 * 					contacts were last resolved
+	 */
+	public PairSet getPairsAdded() {
+		return this.m_pairsAdded;
+	}
+	
+	/**
+	 * @return			the <code>ContactResolver</code> that resolves the <code>Contact</code>s found
+	 */
+	public ContactResolver getContactResolver() {
+		return this.m_resolver;
 	}
 	
 	/**
@@ -56,6 +123,12 @@ public class PotentialContactResolver {
 				}
 			}
 		}*/
+		if ( this.m_narrowPhase != null ) {
+			this.m_narrowPhase.generateContacts( this.m_contactsToResolve , this.m_resolver );
+		}
 		this.m_resolver.resolve( duration );
+		this.m_contactsToResolve.removeAll();
+		this.m_pairsAdded.clear();
+		this.m_bodyPairsAdded.clear();
 	}
 }
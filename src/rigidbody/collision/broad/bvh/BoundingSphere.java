@@ -143,19 +143,16 @@ public class BoundingSphere extends BoundingShape {
 				
 				//the new diameter is the distance between the centers of the two spheres
 				//plus the radius of each sphere
-				Real diameter = Real.sqrt( centerToCenterDistanceSquared ).add( sphere1.getRadius() ).add( sphere2.getRadius() );
+				Real centerToCenterDistance = Real.sqrt( centerToCenterDistanceSquared );
+				Real diameter = centerToCenterDistance.add( sphere1.getRadius() ).add( sphere2.getRadius() );
 				Real radius = diameter.divide( Real.TWO );
 				
-				//the new center is found by taking a weighted average
-				//proportional to the radii of the two spheres
-				Vector3D center = sphere1.getCenter();
-				
-				//only take the weighted average if the two spheres are not identical
-				if ( radius.compareTo( Real.ZERO ) > 0 ) {
-					Vector3D centerToCenterVector = sphere1.getCenter().subtract( sphere2.getCenter() );
-					Vector3D offsetScale = centerToCenterVector.divide( diameter );
-					center = center.add( offsetScale.multiply( radius.subtract( sphere1.getRadius() ) ) );
-				}
+				//the new center is moved from the center of the first sphere towards
+				//the second sphere until the first sphere touches the new sphere from inside.
+				//neither sphere encloses the other, so their centers are apart
+				Vector3D centerToCenterVector = sphere2.getCenter().subtract( sphere1.getCenter() );
+				Vector3D offsetScale = centerToCenterVector.divide( centerToCenterDistance );
+				Vector3D center = sphere1.getCenter().add( offsetScale.multiply( radius.subtract( sphere1.getRadius() ) ) );
 				
 				return new BoundingSphere( center, radius );
 			}
@@ -46,6 +46,9 @@ public class BoundingVolumeTree < T extends BoundingShape > {
 		} else {
 			Node currentNode = this.m_root;
 			while ( !currentNode.isLeaf() ) {
+				
+				//every node on the way down will encompass the new bounding volume
+				currentNode.setBoundingVolume( ( T ) currentNode.getBoundingVolume().calculateEnclosingShape( volumeToAdd ) );
 				Node leftChild = currentNode.getLeftChild();
 				Node rightChild = currentNode.getRightChild();
 				
@@ -169,73 +172,74 @@ public class BoundingVolumeTree < T extends BoundingShape > {
 		return getPotentialContactAt( this.m_root , limit );
 	}
 	
-	
-	//TODO test this
 	/**
 	 * determines possible contacts between <code>RigidBody</code> objects beginning
 	 * at the given node
 	 * 
-	 * @param currentNode			the starting node
+	 * @param currentNode			the starting node, or <code>null</code> if the tree is empty
 	 * @param limit					maximum number of contacts to generate
 	 * @return						a list of possible contacts between <code>RigidBody</code> objects
 	 */
 	protected LinkedList < PotentialContact > getPotentialContactAt( Node currentNode , int limit ) {
+		LinkedList < PotentialContact > rtn = new LinkedList < PotentialContact > ();
+		addPotentialContactsWithin( currentNode , limit , rtn );
+		return rtn;
+	}
+	
+	/**
+	 * adds the possible contacts between the leaves below the given node
+	 * 
+	 * @param currentNode			the starting node, or <code>null</code> if the tree is empty
+	 * @param limit					maximum number of contacts to add
+	 * @param result				receives the contacts
+	 * @return						how many more contacts may be added
+	 */
+	private int addPotentialContactsWithin( Node currentNode , int limit , LinkedList < PotentialContact > result ) {
 		
 		//if we're at a leaf, no potential contacts are possible
 		//and if the limit is zero, we cannot generate any contacts
-		if ( currentNode.isLeaf() || limit <= 0 ) {
-			return new LinkedList < PotentialContact > ();
+		if ( currentNode == null || currentNode.isLeaf() || limit <= 0 ) {
+			return limit;
+		}
+		
+		//leaves can touch others under the same child, whether or not the children touch,
+		//and the leaves under the other child
+		int updatingLimit = addPotentialContactsWithin( currentNode.getLeftChild() , limit , result );
+		updatingLimit = addPotentialContactsWithin( currentNode.getRightChild() , updatingLimit , result );
+		return addPotentialContactsBetween( currentNode.getLeftChild() , currentNode.getRightChild() , updatingLimit , result );
+	}
+	
+	/**
+	 * adds the possible contacts between the leaves below one node and the leaves
+	 * below another node
+	 * 
+	 * @param node1					a node
+	 * @param node2					a node that is not under <code>node1</code>
+	 * @param limit					maximum number of contacts to add
+	 * @param result				receives the contacts
+	 * @return						how many more contacts may be added
+	 */
+	private int addPotentialContactsBetween( Node node1 , Node node2 , int limit , LinkedList < PotentialContact > result ) {
+		
+		//if the nodes' bounding volumes do not touch, then none of their
+		//children can possibly touch either
+		if ( limit <= 0 || !node1.getBoundingVolume().touches( node2.getBoundingVolume() ) ) {
+			return limit;
+		}
+		
+		//if both nodes are leaves, then there is one contact
+		if ( node1.isLeaf() && node2.isLeaf() ) {
+			result.add( new PotentialContact( node1.getBody() , node2.getBody() ) );
+			return limit - 1;
+		}
+		
+		//otherwise, search the children of whichever node has children
+		if ( node1.isLeaf() ) {
+			int updatingLimit = addPotentialContactsBetween( node1 , node2.getLeftChild() , limit , result );
+			return addPotentialContactsBetween( node1 , node2.getRightChild() , updatingLimit , result );
 		} else {
-			
-			if ( currentNode.getLeftChild().getBoundingVolume().touches( currentNode.getRightChild().getBoundingVolume() ) ) {
-				LinkedList < PotentialContact > rtn = new LinkedList < PotentialContact > ();
-				int updatingLimit = limit;
-				
-				//if both children are leaves, then there is one contact
-				if ( currentNode.getLeftChild().isLeaf() && currentNode.getRightChild().isLeaf() ) {
-						PotentialContact contact = new PotentialContact( currentNode.getLeftChild().getBody() , currentNode.getRightChild().getBody() );
-						rtn.add( contact );
-						
-						//subtract 1 from the limit
-						updatingLimit -= 1;
-				} else {
-					
-					//if the left child is not a leaf, search the left child's children
-					if ( !currentNode.getLeftChild().isLeaf() ) {
-						LinkedList < PotentialContact > leftChildrenContacts = getPotentialContactAt( currentNode.getLeftChild() , updatingLimit );
-						
-						//update the limit
-						updatingLimit -= leftChildrenContacts.size();
-						
-						//add the left children contacts to the master list
-						for ( PotentialContact contact : leftChildrenContacts ) {
-							rtn.add( contact );
-						}
-					}
-					
-					//if we have room for more contacts and
-					//the right child is not a leaf, search the right child's children
-					if ( updatingLimit > 0 && !currentNode.getRightChild().isLeaf() ) {
-						LinkedList < PotentialContact > rightChildrenContacts = getPotentialContactAt( currentNode.getRightChild() , updatingLimit );
-						
-						//update the limit
-						updatingLimit -= rightChildrenContacts.size();
-						
-						//add the right children contacts to the master list
-						for ( PotentialContact contact : rightChildrenContacts ) {
-							rtn.add( contact );
-						}
-					}
-				}
-				
-				//return the contacts
-				return rtn;
-				
-			//if the current node's children's bounding volumes do not touch, then none of their
-			//children can possibly touch either
-			} else {
-				return new LinkedList < PotentialContact > ();
-			}
+			int updatingLimit = addPotentialContactsBetween( node1.getLeftChild() , node2 , limit , result );
+			return addPotentialContactsBetween( node1.getRightChild() , node2 , updatingLimit , result );
 		}
 	}
 	
@@ -338,7 +342,7 @@ public class BoundingVolumeTree < T extends BoundingShape > {
 		 * @return			the left child of this node
 		 */
 		final public Node getLeftChild() {
-			return this.m_rightChild;
+			return this.m_leftChild;
 		}
 		
 		/**
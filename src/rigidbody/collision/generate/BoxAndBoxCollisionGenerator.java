@@ -2,15 +2,129 @@ package rigidbody.collision.generate;
 
 import util.ErrorMessages;
 import _lib.LinkedList;
+import _lib.PairKey;
+import _lib.PairMap;
 import _math.Real;
 import _math.Vector3D;
 
+/**
+ * a collision generator for boxes colliding with boxes, using the separating axis
+ * test on the 3 face axes of each box and the 9 axes perpendicular to an edge of
+ * each box.
+ * <p>
+ * most pairs of boxes stay apart or stay in contact for many frames, so the axis
+ * that separated a pair, or the axis of its contact, is remembered by the ids of
+ * the two primitives and tested first in the next frame. a pair that is still
+ * separated by the same axis is rejected after a single test. pairs that were not
+ * tested in a frame are forgotten by <code>endFrame()</code>.
+ * <p>
+ * a box resting on the face of another box is given a contact at each corner of
+ * the area where the faces touch, up to four, so that it is supported along the whole face
+ * instead of rocking on a single point
+ */
 public class BoxAndBoxCollisionGenerator extends ContactGenerator {
 
+	/**
+	 * the number of axes tested: 3 face axes of each box, then the
+	 * 9 cross products of an edge of the first box with an edge of the second
+	 */
+	final private static int NUM_AXES = 15;
+	
+	/**
+	 * an axis index meaning no axis was found
+	 */
+	final private static int NO_AXIS = -1;
+	
+	/**
+	 * a new contact axis replaces the contact axis of the last frame only if its
+	 * overlap is smaller than this fraction of the overlap on the old axis. this
+	 * keeps the contact normal of a resting pair from flickering between axes
+	 */
+	final private static double CONTACT_AXIS_TOLERANCE = 0.95;
+	
+	/**
+	 * edge axes shorter than this, squared, come from nearly parallel edges and are skipped
+	 */
+	final private static double PARALLEL_TOLERANCE = 1e-3;
+	
+	/**
+	 * the most contacts generated for one pair of boxes. four points are enough
+	 * to support a box resting on a face
+	 */
+	final private static int MAX_CONTACTS = 4;
+	
+	/**
+	 * the most vertices a face can have after being clipped to the 4 sides of another face
+	 */
+	final private static int MAX_CLIPPED_VERTICES = 8;
+	
+	/**
+	 * the separating axis or the contact axis found for each pair of boxes tested in
+	 * the current and the previous frame. axis indices are stored as if the box with
+	 * the lower id were the first box
+	 */
+	private PairMap < int[] > m_currentAxes = new PairMap < int[] > ();
+	private PairMap < int[] > m_previousAxes = new PairMap < int[] > ();
+	
+	//the rotation, position and half size of both boxes, loaded once per pair.
+	//the world direction of local axis i is column i of a rotation
+	final private double[] m_rotation1 = new double[ 9 ];
+	final private double[] m_rotation2 = new double[ 9 ];
+	final private double[] m_halfSize1 = new double[ 3 ];
+	final private double[] m_halfSize2 = new double[ 3 ];
+	final private double[] m_position1 = new double[ 3 ];
+	final private double[] m_position2 = new double[ 3 ];
+	final private double[] m_centerToCenter = new double[ 3 ];
+	
+	/**
+	 * the unit direction of the axis last passed to <code>determineOverlap()</code>
+	 */
+	final private double[] m_axis = new double[ 3 ];
+	
+	/**
+	 * the unit contact normal of the loaded boxes, pointing from the second box to the first
+	 */
+	final private double[] m_normal = new double[ 3 ];
+	
+	//the incident face while it is being clipped, packed as x , y , z per vertex.
+	//the two buffers swap after each clip
+	private double[] m_polygon = new double[ 3 * MAX_CLIPPED_VERTICES ];
+	private double[] m_clippedPolygon = new double[ 3 * MAX_CLIPPED_VERTICES ];
+	
+	//the contact points of a face contact, packed as x , y , z , penetration per point.
+	//the two buffers swap when the points are reduced
+	private double[] m_points = new double[ 4 * MAX_CLIPPED_VERTICES ];
+	private double[] m_reducedPoints = new double[ 4 * MAX_CLIPPED_VERTICES ];
+	private int m_numPoints;
+	
+	//the end points of the closest edges of an edge contact
+	final private double[] m_edge1 = new double[ 6 ];
+	final private double[] m_edge2 = new double[ 6 ];
+
 	public BoxAndBoxCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
 		super( friction , elasticity , penetrationOffset );
 	}
 	
+	/**
+	 * forgets the axis cached for every pair. should be called if bodies are
+	 * moved discontinuously, e.g. when a world is reset
+	 */
+	public void clearCache() {
+		this.m_currentAxes.clear();
+		this.m_previousAxes.clear();
+	}
+	
+	/**
+	 * forgets the axes of the pairs that were not tested since the last call
+	 */
+	@Override
+	public void endFrame() {
+		PairMap < int[] > swap = this.m_previousAxes;
+		this.m_previousAxes = this.m_currentAxes;
+		this.m_currentAxes = swap;
+		this.m_currentAxes.clear();
+	}
+	
 	/**
 	 * @throws IllegalArgumentException			if <code>p1</code> or <code>p2</code> is not a <code>PrimitiveBox</code>
 	 * @see										PrimitiveBox
@@ -22,15 +136,10 @@ public class BoxAndBoxCollisionGenerator extends ContactGenerator {
 		if ( p1 instanceof PrimitiveBox ) {
 			if ( p2 instanceof PrimitiveBox ) {
 				PrimitiveBox box1 = ( PrimitiveBox ) p1;
-				box1.determineVertices();
 				PrimitiveBox box2 = ( PrimitiveBox ) p2;
-				box2.determineVertices();
 				
 				LinkedList < Contact > contacts = new LinkedList < Contact > ();
-				Contact boxToBoxContact = determineContact( box1 , box2 );
-				if ( boxToBoxContact != null ) {
-					contacts.add( boxToBoxContact );
-				}
+				determineContacts( box1 , box2 , contacts );
 				return contacts;
 			} else {
 				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveBox.class.getName() , p2.getClass().getName() ) );
@@ -41,122 +150,233 @@ public class BoxAndBoxCollisionGenerator extends ContactGenerator {
 	}
 
 	/**
-	 * Uses the separating axis test to determine the axis of the box on which
-	 * a collision between two boxes occurred (or determines that no collision occurred). then
-	 * determines the contact data between the two boxes
+	 * uses the separating axis test to determine the axis on which a collision between
+	 * two boxes occurred (or determines that no collision occurred). then adds the contacts
+	 * between the two boxes to the given list. the normal of every contact points from
+	 * <code>box2</code> to <code>box1</code>.
+	 * <p>
+	 * if the axis is a face axis, the face of the other box most opposed to that face is
+	 * clipped against it, and each clipped vertex below the face is a contact, up to
+	 * <code>MAX_CONTACTS</code> of them. if the axis is an edge axis, there is one contact
+	 * between the closest points of the two edges
 	 * 
 	 * @param box1		the first box involved in a possible collision
 	 * @param box2		another box involved in a possible collision
-	 * @return			the contact data for the collision that occurred, or <code>null</code> if no collision occurred
+	 * @param contacts	the list to receive the contacts
 	 */
-	public Contact determineContact( PrimitiveBox box1 , PrimitiveBox box2 ) {
-	
-		//use a greedy algorithm to determine which axis has the least overlap
-		Real bestOverlap = Real.MAX_VALUE;
-		Vector3D bestAxis = null;
+	public void determineContacts( PrimitiveBox box1 , PrimitiveBox box2 , LinkedList < Contact > contacts ) {
 		
-		//determines if the contact is vertex-face (true) or edge-edge (false)
-		boolean isVertexFaceContact = false;
+		//load the rotations of both boxes once for all the axes
+		loadBoxes( box1 , box2 );
 		
-		//if the contact is vertex-face, this determines if the face belongs to box 1 (true)
-		//or box2 (false)
-		boolean isFaceFromBox1 = false;
+		//boxes closer than they could move in one step are given speculative contacts
+		double speculativeMargin = getSpeculativeMargin( box1.getBody() , box2.getBody() );
 		
-		//check the face axes for the first box
-		Vector3D[] firstBoxEdges = { box1.getXAxis() , box1.getYAxis() , box1.getZAxis() };
-		Vector3D centerToCenterVector = box1.getPosition().subtract( box2.getPosition() );
-		for ( Vector3D axis : firstBoxEdges ) {
-			Real axisOverlap = determineOverlapOnAxis( box1 , box2 , axis , centerToCenterVector );
+		//look up the axis found for this pair in the last frame
+		boolean swapped = box1.getId() > box2.getId();
+		int[] cachedAxis = findCachedAxis( PairKey.pack( box1.getId() , box2.getId() ) );
+		int previousAxis = cachedAxis[ 0 ];
+		if ( swapped && previousAxis != NO_AXIS ) {
+			previousAxis = swapBoxes( previousAxis );
+		}
+		
+		//use a greedy algorithm to determine which axis has the least overlap,
+		//starting with the axis of the last frame
+		double bestOverlap = Double.MAX_VALUE;
+		int bestAxis = NO_AXIS;
+		if ( previousAxis != NO_AXIS ) {
+			double overlap = determineOverlap( previousAxis );
 			
-			//if overlap is negative, then there can be no collision
-			if ( axisOverlap.compareTo( Real.ZERO ) < 0 ) {
-				return null;
-			} else {
-				
-				//save the axis with the smallest overlap
-				if ( axisOverlap.compareTo( bestOverlap ) < 0 ) {
-					bestOverlap = axisOverlap;
-					bestAxis = axis;
-					isVertexFaceContact = true;
-				}
+			//if the axis still separates the boxes, then there is nothing else to test
+			if ( overlap < -speculativeMargin ) {
+				return;
+			}
+			if ( !Double.isNaN( overlap ) ) {
+				bestOverlap = overlap < 0 ? overlap : CONTACT_AXIS_TOLERANCE * overlap;
+				bestAxis = previousAxis;
 			}
 		}
-
-		//check the face axes for the second box
-		Vector3D[] secondBoxEdges = { box2.getXAxis() , box2.getYAxis() , box2.getZAxis() };
-		for ( Vector3D axis : secondBoxEdges ) {
-			Real axisOverlap = determineOverlapOnAxis( box1 , box2 , axis , centerToCenterVector );
+		for ( int axis = 0 ; axis < NUM_AXES ; axis ++ ) {
+			if ( axis == previousAxis ) {
+				continue;
+			}
+			double overlap = determineOverlap( axis );
 			
-			//if overlap is negative, then there can be no collision
-			if ( axisOverlap.compareTo( Real.ZERO ) < 0 ) {
-				return null;
-			} else {
+			//if overlap is negative, then there can be no collision.
+			//remember the separating axis for the next frame
+			if ( overlap < -speculativeMargin ) {
+				cachedAxis[ 0 ] = swapped ? swapBoxes( axis ) : axis;
+				return;
 				
-				//save the axis with the smallest overlap
-				if ( axisOverlap.compareTo( bestOverlap ) < 0 ) {
-					bestOverlap = axisOverlap;
-					bestAxis = axis;
-					isVertexFaceContact = true;
-					isFaceFromBox1 = true;
-				}
+			//save the axis with the smallest overlap. nearly parallel edges
+			//give no axis, but their face axes have already been checked
+			} else if ( overlap < bestOverlap ) {
+				bestOverlap = overlap;
+				bestAxis = axis;
 			}
 		}
+		cachedAxis[ 0 ] = swapped && bestAxis != NO_AXIS ? swapBoxes( bestAxis ) : bestAxis;
 		
-		//check edge-edge axes
-		Vector3D bestFirstBoxEdge = null;
-		Vector3D bestSecondBoxEdge = null;
-		for ( Vector3D firstBoxEdge : firstBoxEdges ) {
-			for ( Vector3D secondBoxEdge : secondBoxEdges ) {
-				
-				//determine the axis by using the vector perpendicular to both axes
-				Vector3D axis = firstBoxEdge.cross( secondBoxEdge );
-				
-				//if the two edges were approximately parallel, then ignore them
-				//because we've already checked them in the face axes calculations
-				if ( axis.magnitudeSquared().compareTo( Real.ONE_THOUSANDTH ) < 0 ) {
-					
-					//continue
-					
-				//otherwise, determine the overlap
-				} else {
-					Real axisOverlap = determineOverlapOnAxis( box1 , box2 , axis.normalize() , centerToCenterVector );
-					//if overlap is negative, then the boxes cannot be in contact
-					if ( axisOverlap.compareTo( Real.ZERO ) < 0 ) {
-						return null;
-					} else {
-						
-						//save the axis with the smallest overlap
-						if ( axisOverlap.compareTo( bestOverlap ) < 0 ) {
-							bestOverlap = axisOverlap;
-							bestAxis = axis;
-							isVertexFaceContact = false;
-							isFaceFromBox1 = false;
-							bestFirstBoxEdge = firstBoxEdge;
-							bestSecondBoxEdge = secondBoxEdge;
-						}
-					}
-				}
-			}
-		}
+		//recompute the exact overlap on the best axis, which may have been scaled as the cached axis,
+		//and turn the axis so it points from the second box to the first
+		bestOverlap = determineOverlap( bestAxis );
+		double[] n = this.m_normal;
+		double[] t = this.m_centerToCenter;
+		double sign = this.m_axis[ 0 ] * t[ 0 ] + this.m_axis[ 1 ] * t[ 1 ] + this.m_axis[ 2 ] * t[ 2 ] < 0 ? -1 : 1;
+		n[ 0 ] = sign * this.m_axis[ 0 ];
+		n[ 1 ] = sign * this.m_axis[ 1 ];
+		n[ 2 ] = sign * this.m_axis[ 2 ];
 	
-		//determine if the axis of contact was on a face or on an edge
-		//if it was on a face, then the contact is between a vertex and a face
-		if ( isVertexFaceContact ) {
-			
-			//determine the face in the contact
-			if ( isFaceFromBox1 ) {
-				return createVertexFaceContactData( box1 , box2 , bestAxis , centerToCenterVector , bestOverlap );
+		//if the axis of contact was on a face, then the contacts are the vertices of the
+		//other box's face clipped to that face. the face of the first box facing the second
+		//points against the normal, and the face of the second box facing the first points along it
+		if ( bestAxis < 6 ) {
+			if ( bestAxis < 3 ) {
+				clipFaces( this.m_rotation1 , this.m_halfSize1 , this.m_position1 , bestAxis , this.m_rotation2 , this.m_halfSize2 , this.m_position2 , -1 , speculativeMargin );
 			} else {
-				return createVertexFaceContactData( box2 , box1 , bestAxis , centerToCenterVector , bestOverlap );
+				clipFaces( this.m_rotation2 , this.m_halfSize2 , this.m_position2 , bestAxis - 3 , this.m_rotation1 , this.m_halfSize1 , this.m_position1 , 1 , speculativeMargin );
+			}
+			if ( this.m_numPoints > MAX_CONTACTS ) {
+				reducePoints();
+			}
+			double[] points = this.m_points;
+			for ( int idx = 0 ; idx < this.m_numPoints ; idx ++ ) {
+				contacts.add( createContact( box1.getBody() , box2.getBody() , points[ 4 * idx ] , points[ 4 * idx + 1 ] , points[ 4 * idx + 2 ] , n[ 0 ] , n[ 1 ] , n[ 2 ] , points[ 4 * idx + 3 ] ) );
 			}
 			
 		//if the axis of contact was on an edge, then the contact is between
-		//an edge and an edge
+		//an edge and an edge: the edges of each box closest to the other box
 		} else {
-			return createEdgeEdgeContactData( box1 , bestFirstBoxEdge , box2 , bestSecondBoxEdge , bestAxis , bestOverlap );
+			int edgeAxis = bestAxis - 6;
+			supportingEdge( this.m_rotation1 , this.m_halfSize1 , this.m_position1 , edgeAxis / 3 , -1 , this.m_edge1 );
+			supportingEdge( this.m_rotation2 , this.m_halfSize2 , this.m_position2 , edgeAxis % 3 , 1 , this.m_edge2 );
+			double[] edge1 = this.m_edge1;
+			double[] edge2 = this.m_edge2;
+			double s = CapsuleAndCapsuleCollisionGenerator.closestPointsOnSegments( edge1 , edge2 );
+			double point1X = edge1[ 0 ] + s * ( edge1[ 3 ] - edge1[ 0 ] );
+			double point1Y = edge1[ 1 ] + s * ( edge1[ 4 ] - edge1[ 1 ] );
+			double point1Z = edge1[ 2 ] + s * ( edge1[ 5 ] - edge1[ 2 ] );
+			double u = CapsuleAndSphereCollisionGenerator.closestPointOnSegment( edge2 , point1X , point1Y , point1Z );
+			double point2X = edge2[ 0 ] + u * ( edge2[ 3 ] - edge2[ 0 ] );
+			double point2Y = edge2[ 1 ] + u * ( edge2[ 4 ] - edge2[ 1 ] );
+			double point2Z = edge2[ 2 ] + u * ( edge2[ 5 ] - edge2[ 2 ] );
+			
+			//the contact lies halfway between the closest points
+			contacts.add( createContact( box1.getBody() , box2.getBody() , 0.5 * ( point1X + point2X ) , 0.5 * ( point1Y + point2Y ) , 0.5 * ( point1Z + point2Z ) , n[ 0 ] , n[ 1 ] , n[ 2 ] , bestOverlap ) );
+		}
+	}
+	
+	/**
+	 * loads the rotations, half sizes, centers and the vector between the centers of both boxes
+	 */
+	private void loadBoxes( PrimitiveBox box1 , PrimitiveBox box2 ) {
+		box1.getBody().getOrientation().toOrientationData( this.m_rotation1 );
+		box2.getBody().getOrientation().toOrientationData( this.m_rotation2 );
+		Vector3D halfSize1 = box1.getHalfSize();
+		Vector3D halfSize2 = box2.getHalfSize();
+		this.m_halfSize1[ 0 ] = halfSize1.getX().value();
+		this.m_halfSize1[ 1 ] = halfSize1.getY().value();
+		this.m_halfSize1[ 2 ] = halfSize1.getZ().value();
+		this.m_halfSize2[ 0 ] = halfSize2.getX().value();
+		this.m_halfSize2[ 1 ] = halfSize2.getY().value();
+		this.m_halfSize2[ 2 ] = halfSize2.getZ().value();
+		Vector3D position1 = box1.getPosition();
+		Vector3D position2 = box2.getPosition();
+		this.m_position1[ 0 ] = position1.getX().value();
+		this.m_position1[ 1 ] = position1.getY().value();
+		this.m_position1[ 2 ] = position1.getZ().value();
+		this.m_position2[ 0 ] = position2.getX().value();
+		this.m_position2[ 1 ] = position2.getY().value();
+		this.m_position2[ 2 ] = position2.getZ().value();
+		for ( int idx = 0 ; idx < 3 ; idx ++ ) {
+			this.m_centerToCenter[ idx ] = this.m_position1[ idx ] - this.m_position2[ idx ];
 		}
 	}
 	
+	/**
+	 * determines the overlap of the loaded boxes on one of the axes to test, and
+	 * stores the unit direction of the axis in <code>m_axis</code>
+	 * 
+	 * @param axis		the index of the axis: 0 to 2 are the face axes of the first box, 3 to 5
+	 * 					the face axes of the second box, and 6 + 3 * i + j is the cross product of
+	 * 					edge i of the first box and edge j of the second box
+	 * @return			the overlap on the axis, negative if the boxes are apart on it, or <code>NaN</code>
+	 * 					if the axis comes from parallel edges
+	 */
+	private double determineOverlap( int axis ) {
+		double[] r1 = this.m_rotation1;
+		double[] r2 = this.m_rotation2;
+		double[] direction = this.m_axis;
+		if ( axis < 3 ) {
+			direction[ 0 ] = r1[ axis ];
+			direction[ 1 ] = r1[ 3 + axis ];
+			direction[ 2 ] = r1[ 6 + axis ];
+		} else if ( axis < 6 ) {
+			direction[ 0 ] = r2[ axis - 3 ];
+			direction[ 1 ] = r2[ axis ];
+			direction[ 2 ] = r2[ axis + 3 ];
+		} else {
+			int edge1 = ( axis - 6 ) / 3;
+			int edge2 = ( axis - 6 ) % 3;
+			double ax = r1[ edge1 ] , ay = r1[ 3 + edge1 ] , az = r1[ 6 + edge1 ];
+			double bx = r2[ edge2 ] , by = r2[ 3 + edge2 ] , bz = r2[ 6 + edge2 ];
+			direction[ 0 ] = ay * bz - az * by;
+			direction[ 1 ] = az * bx - ax * bz;
+			direction[ 2 ] = ax * by - ay * bx;
+			double lengthSquared = direction[ 0 ] * direction[ 0 ] + direction[ 1 ] * direction[ 1 ] + direction[ 2 ] * direction[ 2 ];
+			if ( lengthSquared < PARALLEL_TOLERANCE ) {
+				return Double.NaN;
+			}
+			double length = Math.sqrt( lengthSquared );
+			direction[ 0 ] /= length;
+			direction[ 1 ] /= length;
+			direction[ 2 ] /= length;
+		}
+		
+		//the overlap is the sum of the individual projections minus the
+		//projection of the vector between the centers
+		double projection1 = 0;
+		double projection2 = 0;
+		for ( int idx = 0 ; idx < 3 ; idx ++ ) {
+			projection1 += this.m_halfSize1[ idx ] * Math.abs( direction[ 0 ] * r1[ idx ] + direction[ 1 ] * r1[ 3 + idx ] + direction[ 2 ] * r1[ 6 + idx ] );
+			projection2 += this.m_halfSize2[ idx ] * Math.abs( direction[ 0 ] * r2[ idx ] + direction[ 1 ] * r2[ 3 + idx ] + direction[ 2 ] * r2[ 6 + idx ] );
+		}
+		double[] t = this.m_centerToCenter;
+		return projection1 + projection2 - Math.abs( direction[ 0 ] * t[ 0 ] + direction[ 1 ] * t[ 1 ] + direction[ 2 ] * t[ 2 ] );
+	}
+	
+	/**
+	 * @param axis		an axis index
+	 * @return			the index of the same axis if the two boxes swapped places
+	 */
+	private static int swapBoxes( int axis ) {
+		if ( axis < 3 ) {
+			return axis + 3;
+		} else if ( axis < 6 ) {
+			return axis - 3;
+		} else {
+			int edgeAxis = axis - 6;
+			return 6 + 3 * ( edgeAxis % 3 ) + edgeAxis / 3;
+		}
+	}
+	
+	/**
+	 * @param pairKey		the key of a pair of boxes
+	 * @return				the cached axis of the pair, which is <code>NO_AXIS</code> if the
+	 * 						pair was not tested in the last frame. the pair is kept for the next frame
+	 */
+	private int[] findCachedAxis( long pairKey ) {
+		int[] cachedAxis = this.m_currentAxes.get( pairKey );
+		if ( cachedAxis == null ) {
+			cachedAxis = this.m_previousAxes.remove( pairKey );
+			if ( cachedAxis == null ) {
+				cachedAxis = new int[] { NO_AXIS };
+			}
+			this.m_currentAxes.put( pairKey , cachedAxis );
+		}
+		return cachedAxis;
+	}
+	
 	/**
 	 * determines the overlap on the given axis between the two given boxes.
 	 * 
@@ -178,124 +398,259 @@ public class BoxAndBoxCollisionGenerator extends ContactGenerator {
 	}
 	
 	/**
-	 * creates a <code>Contact</code> object with the data describing the contact
-	 * between box1 and box2
+	 * clips the face of the incident box most opposed to the reference face against
+	 * the sides of the reference face, and adds a contact for each clipped vertex
+	 * below the reference face (or within the speculative margin of it)
 	 * 
-	 * @param box1					the box with a face in contact
-	 * @param box2					the box with a vertex in contact
-	 * @param axisOfContact			the axis along which the contact occurrs
-	 * @param centerToCenterVector	the precomputed vector from one <code>box1</code>'s center to <code>box2</code>'s center
-	 * @param penetration			the amount of penetration
-	 * @return						the contact data describing the collision between <code>box1</code> and <code>box2</code>
+	 * @param referenceRotation		the rotation of the box owning the reference face
+	 * @param referenceHalfSize		the half size of the box owning the reference face
+	 * @param referenceCenter		the center of the box owning the reference face
+	 * @param referenceAxis			the local axis of the reference face
+	 * @param incidentRotation		the rotation of the other box
+	 * @param incidentHalfSize		the half size of the other box
+	 * @param incidentCenter		the center of the other box
+	 * @param faceSign				1 if the reference face points along the contact normal, -1 if it points against it
+	 * @param speculativeMargin		how far in front of the reference face a vertex may be and still be given a contact
 	 */
-	protected Contact createVertexFaceContactData( PrimitiveBox box1 , PrimitiveBox box2 , Vector3D axisOfContact , Vector3D centerToCenterVector , Real penetration ) {
+	private void clipFaces( double[] referenceRotation , double[] referenceHalfSize , double[] referenceCenter , int referenceAxis , 
+			double[] incidentRotation , double[] incidentHalfSize , double[] incidentCenter , double faceSign , double speculativeMargin ) {
+		double[] n = this.m_normal;
 		
-		//determine which face is in contact: the one facing in the same direction
-		//or the one facing in the opposite direction of the axis of contact 
-		Vector3D contactNormal;
-		if ( axisOfContact.dot( centerToCenterVector ).compareTo( Real.ZERO ) > 0 ) {
-			contactNormal = axisOfContact.multiply( Real.NEGATIVE_ONE );
-		} else {
-			contactNormal = axisOfContact;
-		}
+		//the reference face points from the reference box towards the incident box
+		double faceX = faceSign * n[ 0 ];
+		double faceY = faceSign * n[ 1 ];
+		double faceZ = faceSign * n[ 2 ];
+		double faceOffset = faceX * referenceCenter[ 0 ] + faceY * referenceCenter[ 1 ] + faceZ * referenceCenter[ 2 ] + referenceHalfSize[ referenceAxis ];
 		
-		//determine the vertex in contact in the box's local coordinates
-		Real vertexX;
-		if ( box2.getXAxis().dot( contactNormal ).compareTo( Real.ZERO ) < 0 ) {
-			vertexX = box2.getHalfSize().getX().multiply( Real.NEGATIVE_ONE );
-		} else {
-			vertexX = box2.getHalfSize().getX();
+		//the incident face is the face of the other box that points most directly
+		//against the reference face
+		int incidentAxis = 0;
+		double bestAlignment = -1;
+		double incidentSign = 1;
+		for ( int idx = 0 ; idx < 3 ; idx ++ ) {
+			double alignment = faceX * incidentRotation[ idx ] + faceY * incidentRotation[ 3 + idx ] + faceZ * incidentRotation[ 6 + idx ];
+			if ( Math.abs( alignment ) > bestAlignment ) {
+				bestAlignment = Math.abs( alignment );
+				incidentAxis = idx;
+				incidentSign = alignment > 0 ? -1 : 1;
+			}
 		}
+		int u = ( incidentAxis + 1 ) % 3;
+		int v = ( incidentAxis + 2 ) % 3;
+		double centerX = incidentCenter[ 0 ] + incidentSign * incidentHalfSize[ incidentAxis ] * incidentRotation[ incidentAxis ];
+		double centerY = incidentCenter[ 1 ] + incidentSign * incidentHalfSize[ incidentAxis ] * incidentRotation[ 3 + incidentAxis ];
+		double centerZ = incidentCenter[ 2 ] + incidentSign * incidentHalfSize[ incidentAxis ] * incidentRotation[ 6 + incidentAxis ];
+		double uX = incidentHalfSize[ u ] * incidentRotation[ u ] , uY = incidentHalfSize[ u ] * incidentRotation[ 3 + u ] , uZ = incidentHalfSize[ u ] * incidentRotation[ 6 + u ];
+		double vX = incidentHalfSize[ v ] * incidentRotation[ v ] , vY = incidentHalfSize[ v ] * incidentRotation[ 3 + v ] , vZ = incidentHalfSize[ v ] * incidentRotation[ 6 + v ];
 		
-		Real vertexY;
-		if ( box2.getYAxis().dot( contactNormal ).compareTo( Real.ZERO ) < 0 ) {
-			vertexY = box2.getHalfSize().getY().multiply( Real.NEGATIVE_ONE );
-		} else {
-			vertexY = box2.getHalfSize().getY();
-		}
+		//list the vertices of the incident face in order around the face
+		double[] polygon = this.m_polygon;
+		polygon[ 0 ] = centerX + uX + vX;
+		polygon[ 1 ] = centerY + uY + vY;
+		polygon[ 2 ] = centerZ + uZ + vZ;
+		polygon[ 3 ] = centerX - uX + vX;
+		polygon[ 4 ] = centerY - uY + vY;
+		polygon[ 5 ] = centerZ - uZ + vZ;
+		polygon[ 6 ] = centerX - uX - vX;
+		polygon[ 7 ] = centerY - uY - vY;
+		polygon[ 8 ] = centerZ - uZ - vZ;
+		polygon[ 9 ] = centerX + uX - vX;
+		polygon[ 10 ] = centerY + uY - vY;
+		polygon[ 11 ] = centerZ + uZ - vZ;
+		int numVertices = 4;
 		
-		Real vertexZ;
-		if ( box2.getZAxis().dot( contactNormal ).compareTo( Real.ZERO ) < 0 ) {
-			vertexZ = box2.getHalfSize().getZ().multiply( Real.NEGATIVE_ONE );
-		} else {
-			vertexZ = box2.getHalfSize().getZ();
+		//clip the incident face against the 4 sides of the reference face
+		for ( int idx = 1 ; idx < 3 && numVertices > 0 ; idx ++ ) {
+			int side = ( referenceAxis + idx ) % 3;
+			double sideX = referenceRotation[ side ] , sideY = referenceRotation[ 3 + side ] , sideZ = referenceRotation[ 6 + side ];
+			double sideCenter = sideX * referenceCenter[ 0 ] + sideY * referenceCenter[ 1 ] + sideZ * referenceCenter[ 2 ];
+			numVertices = clipPolygon( numVertices , sideX , sideY , sideZ , sideCenter + referenceHalfSize[ side ] );
+			numVertices = clipPolygon( numVertices , -sideX , -sideY , -sideZ , -sideCenter + referenceHalfSize[ side ] );
 		}
 		
-		Vector3D vertex = new Vector3D( vertexX , vertexY , vertexZ );
-		Vector3D vertexInWorldCoordinates = box2.getBody().getOrientation().toOrientationAndPositionMatrix( box2.getPosition() ).convertLocalToWorld( vertex );
+		//keep the clipped vertices behind the reference face. each contact is placed
+		//halfway between the vertex and its projection onto the reference face
+		polygon = this.m_polygon;
+		this.m_numPoints = 0;
+		for ( int idx = 0 ; idx < numVertices ; idx ++ ) {
+			double x = polygon[ 3 * idx ];
+			double y = polygon[ 3 * idx + 1 ];
+			double z = polygon[ 3 * idx + 2 ];
+			double penetration = faceOffset - ( faceX * x + faceY * y + faceZ * z );
+			if ( penetration >= -speculativeMargin ) {
+				double[] point = this.m_points;
+				int offset = 4 * this.m_numPoints;
+				point[ offset ] = x + 0.5 * penetration * faceX;
+				point[ offset + 1 ] = y + 0.5 * penetration * faceY;
+				point[ offset + 2 ] = z + 0.5 * penetration * faceZ;
+				point[ offset + 3 ] = penetration;
+				this.m_numPoints ++;
+			}
+		}
+	}
+	
+	/**
+	 * clips the polygon in <code>m_polygon</code> against a plane, keeping the part
+	 * where <code>normal . point <= offset</code>. the clipped polygon replaces the old one
+	 * 
+	 * @param numVertices		the number of vertices of the polygon
+	 * @return					the number of vertices of the clipped polygon
+	 */
+	private int clipPolygon( int numVertices , double normalX , double normalY , double normalZ , double offset ) {
+		double[] input = this.m_polygon;
+		double[] output = this.m_clippedPolygon;
+		int numClipped = 0;
+		int previous = numVertices - 1;
+		double previousDistance = normalX * input[ 3 * previous ] + normalY * input[ 3 * previous + 1 ] + normalZ * input[ 3 * previous + 2 ] - offset;
+		for ( int current = 0 ; current < numVertices ; current ++ ) {
+			double currentDistance = normalX * input[ 3 * current ] + normalY * input[ 3 * current + 1 ] + normalZ * input[ 3 * current + 2 ] - offset;
+			
+			//an edge crossing the plane is cut where it crosses
+			if ( ( previousDistance <= 0 ) != ( currentDistance <= 0 ) ) {
+				double t = previousDistance / ( previousDistance - currentDistance );
+				for ( int coordinate = 0 ; coordinate < 3 ; coordinate ++ ) {
+					output[ 3 * numClipped + coordinate ] = input[ 3 * previous + coordinate ] + t * ( input[ 3 * current + coordinate ] - input[ 3 * previous + coordinate ] );
+				}
+				numClipped ++;
+			}
+			
+			//vertices inside the plane are kept
+			if ( currentDistance <= 0 ) {
+				for ( int coordinate = 0 ; coordinate < 3 ; coordinate ++ ) {
+					output[ 3 * numClipped + coordinate ] = input[ 3 * current + coordinate ];
+				}
+				numClipped ++;
+			}
+			previous = current;
+			previousDistance = currentDistance;
+		}
 		
-		//create the contact data
-		Contact contact = new Contact( box1.getBody() , box2.getBody() , contactNormal , vertexInWorldCoordinates , penetration , this.getPenetrationOffset() , this.getFriction() , this.getElasticity() );
-		return contact;
+		//the clipped polygon becomes the input of the next clip
+		this.m_clippedPolygon = input;
+		this.m_polygon = output;
+		return numClipped;
 	}
 	
-	//TODO test edge edge collision
-	private Contact createEdgeEdgeContactData( PrimitiveBox box1 , Vector3D axis1 , PrimitiveBox box2 , Vector3D axis2 , Vector3D axisOfContact , Real penetration ) {
-		Vector3D pointOnEdge1 = box1.getHalfSize();
-		Vector3D pointOnEdge2 = box2.getHalfSize();
+	/**
+	 * reduces the contact points in <code>m_points</code> to at most <code>MAX_CONTACTS</code>:
+	 * the deepest point, the point farthest from it, the point making the largest
+	 * triangle with those two, and the point adding the most area on the other side
+	 * of that triangle. a manifold of these points supports the boxes as well as the
+	 * whole clipped face does
+	 */
+	private void reducePoints() {
+		double[] points = this.m_points;
+		int numPoints = this.m_numPoints;
 		
-		//TODO find better way to do this ( pg 325 in book )
-		if ( !axisOfContact.getX().equals( Real.ZERO ) ) {
-			if ( axisOfContact.getX().compareTo( Real.ZERO ) > 0 ) {
-				pointOnEdge1 = new Vector3D( Real.ZERO , pointOnEdge1.getY() , Real.ZERO );
-				pointOnEdge2 = new Vector3D( Real.ZERO , Real.ZERO , pointOnEdge2.getZ() );
-			} else {
-				pointOnEdge1 = new Vector3D( Real.ZERO , Real.ZERO , pointOnEdge1.getZ() );
-				pointOnEdge2 = new Vector3D( Real.ZERO , pointOnEdge2.getY() , Real.ZERO );
-			}
-		} else if ( !axisOfContact.getY().equals( Real.ZERO ) ) {
-			if ( axisOfContact.getY().compareTo( Real.ZERO ) > 0 ) {
-				pointOnEdge1 = new Vector3D( Real.ZERO , Real.ZERO , pointOnEdge1.getZ() );
-				pointOnEdge2 = new Vector3D( pointOnEdge2.getX() , Real.ZERO , Real.ZERO );
-			} else {
-				pointOnEdge1 = new Vector3D( pointOnEdge1.getX() , Real.ZERO , Real.ZERO );
-				pointOnEdge2 = new Vector3D( Real.ZERO , Real.ZERO , pointOnEdge2.getZ() );
+		//start with the deepest point
+		int first = 0;
+		for ( int idx = 1 ; idx < numPoints ; idx ++ ) {
+			if ( points[ 4 * idx + 3 ] > points[ 4 * first + 3 ] ) {
+				first = idx;
 			}
-		} else if ( !axisOfContact.getZ().equals( Real.ZERO ) ) {
-			if ( axisOfContact.getZ().compareTo( Real.ZERO ) > 0 ) {
-				pointOnEdge1 = new Vector3D( pointOnEdge1.getX() , Real.ZERO , Real.ZERO );
-				pointOnEdge2 = new Vector3D( Real.ZERO , pointOnEdge2.getY() , Real.ZERO );
-			} else {
-				pointOnEdge1 = new Vector3D( Real.ZERO , pointOnEdge1.getY() , Real.ZERO );
-				pointOnEdge2 = new Vector3D( pointOnEdge2.getX() , Real.ZERO , Real.ZERO );
+		}
+		
+		//then the point farthest from it
+		int second = NO_AXIS;
+		double bestDistance = -1;
+		for ( int idx = 0 ; idx < numPoints ; idx ++ ) {
+			double dx = points[ 4 * idx ] - points[ 4 * first ];
+			double dy = points[ 4 * idx + 1 ] - points[ 4 * first + 1 ];
+			double dz = points[ 4 * idx + 2 ] - points[ 4 * first + 2 ];
+			double distance = dx * dx + dy * dy + dz * dz;
+			if ( idx != first && distance > bestDistance ) {
+				bestDistance = distance;
+				second = idx;
 			}
 		}
 		
-		pointOnEdge1 = box1.getBody().getOrientation().toOrientationAndPositionMatrix( box1.getPosition() ).convertLocalToWorld( pointOnEdge1 );
-		pointOnEdge2 = box2.getBody().getOrientation().toOrientationAndPositionMatrix( box2.getPosition() ).convertLocalToWorld( pointOnEdge2 );
+		//then the point making the largest triangle with both. the signed area
+		//is measured along the contact normal
+		int third = NO_AXIS;
+		double bestArea = -1;
+		double thirdSign = 1;
+		for ( int idx = 0 ; idx < numPoints ; idx ++ ) {
+			if ( idx == first || idx == second ) {
+				continue;
+			}
+			double area = signedArea( first , second , idx );
+			if ( Math.abs( area ) > bestArea ) {
+				bestArea = Math.abs( area );
+				third = idx;
+				thirdSign = area < 0 ? -1 : 1;
+			}
+		}
 		
-		Vector3D contactPoint = determineContactPoint( axis1 , pointOnEdge1 , axis2 , pointOnEdge2 );
+		//and last the point that adds the most area outside the triangle
+		int fourth = NO_AXIS;
+		bestArea = 0;
+		for ( int idx = 0 ; idx < numPoints ; idx ++ ) {
+			if ( idx == first || idx == second || idx == third ) {
+				continue;
+			}
+			double area = -Math.min( Math.min( thirdSign * signedArea( first , second , idx ) , thirdSign * signedArea( second , third , idx ) ) , thirdSign * signedArea( third , first , idx ) );
+			if ( area > bestArea ) {
+				bestArea = area;
+				fourth = idx;
+			}
+		}
 		
-		//create the contact
-		Contact contact = new Contact( box1.getBody() , box2.getBody() , axisOfContact , contactPoint , penetration , this.getPenetrationOffset() , this.getFriction() , this.getElasticity() );
-		return contact;
+		//move the chosen points to the front
+		int[] chosen = { first , second , third , fourth };
+		double[] reduced = this.m_reducedPoints;
+		this.m_numPoints = 0;
+		for ( int idx = 0 ; idx < MAX_CONTACTS ; idx ++ ) {
+			if ( chosen[ idx ] != NO_AXIS ) {
+				System.arraycopy( points , 4 * chosen[ idx ] , reduced , 4 * this.m_numPoints , 4 );
+				this.m_numPoints ++;
+			}
+		}
+		this.m_reducedPoints = points;
+		this.m_points = reduced;
+	}
+	
+	/**
+	 * @return			twice the area of the triangle of three contact points, positive if the
+	 * 					triangle turns counterclockwise around the contact normal
+	 */
+	private double signedArea( int a , int b , int c ) {
+		double[] points = this.m_points;
+		double abX = points[ 4 * b ] - points[ 4 * a ] , abY = points[ 4 * b + 1 ] - points[ 4 * a + 1 ] , abZ = points[ 4 * b + 2 ] - points[ 4 * a + 2 ];
+		double acX = points[ 4 * c ] - points[ 4 * a ] , acY = points[ 4 * c + 1 ] - points[ 4 * a + 1 ] , acZ = points[ 4 * c + 2 ] - points[ 4 * a + 2 ];
+		double[] n = this.m_normal;
+		return n[ 0 ] * ( abY * acZ - abZ * acY ) + n[ 1 ] * ( abZ * acX - abX * acZ ) + n[ 2 ] * ( abX * acY - abY * acX );
 	}
 	
-	//TODO figure out what this does ( pg 326 )
 	/**
-	 * determines the edge-edge contact point between two boxes given directions
-	 * of both edges and points on both edges
+	 * finds the edge of a box parallel to one of its axes that lies farthest along a direction
 	 * 
-	 * @param axis1			direction of the edge on box 1
-	 * @param point1		point on the edge of box 1
-	 * @param axis2			direction of the edge on box 2
-	 * @param point2		point on the edge of box 2
+	 * @param rotation		the rotation of the box
+	 * @param halfSize		the half size of the box
+	 * @param center		the center of the box
+	 * @param axis			the local axis the edge is parallel to
+	 * @param directionSign	1 to search along the contact normal, -1 to search against it
+	 * @param segment		an array of 6 elements to receive the end points of the edge
 	 */
-	private static Vector3D determineContactPoint( Vector3D axis1 , Vector3D point1 , Vector3D axis2 , Vector3D point2 ) {
-		Vector3D pointToPointVector = point1.subtract( point2 );
-		Real axisOneLength = axis1.dot( pointToPointVector );
-		Real axisTwoLength = axis2.dot( pointToPointVector );
-		
-		Real axisOneSquareMag = axis1.magnitudeSquared();
-		Real axisTwoSquareMag = axis2.magnitudeSquared();
-		Real axisDotProduct = axis1.dot( axis2 );
-		
-		Real denom = axisOneSquareMag.multiply( axisTwoSquareMag ).subtract( axisDotProduct.multiply( axisDotProduct ) );
-		Real axis1Scale = axisDotProduct.multiply( axisTwoLength ).subtract( axisTwoSquareMag.multiply( axisTwoLength ) ).divide( denom );
-		Real axis2Scale = axisOneSquareMag.multiply( axisTwoLength ).subtract( axisDotProduct.multiply( axisOneLength ) );
-		
-		Vector3D nearestPoint1 = point1.add( axis1.multiply( axis1Scale ) );
-		Vector3D nearestPoint2 = point2.add( axis2.multiply( axis2Scale ) );
-		return nearestPoint1.multiply( Real.ONE_HALF ).add( nearestPoint2.multiply( Real.ONE_HALF ) );
+	private void supportingEdge( double[] rotation , double[] halfSize , double[] center , int axis , double directionSign , double[] segment ) {
+		double[] n = this.m_normal;
+		double x = center[ 0 ] , y = center[ 1 ] , z = center[ 2 ];
+		for ( int idx = 0 ; idx < 3 ; idx ++ ) {
+			if ( idx != axis ) {
+				double alignment = directionSign * ( n[ 0 ] * rotation[ idx ] + n[ 1 ] * rotation[ 3 + idx ] + n[ 2 ] * rotation[ 6 + idx ] );
+				double extent = alignment < 0 ? -halfSize[ idx ] : halfSize[ idx ];
+				x += extent * rotation[ idx ];
+				y += extent * rotation[ 3 + idx ];
+				z += extent * rotation[ 6 + idx ];
+			}
+		}
+		double edgeX = halfSize[ axis ] * rotation[ axis ];
+		double edgeY = halfSize[ axis ] * rotation[ 3 + axis ];
+		double edgeZ = halfSize[ axis ] * rotation[ 6 + axis ];
+		segment[ 0 ] = x - edgeX;
+		segment[ 1 ] = y - edgeY;
+		segment[ 2 ] = z - edgeZ;
+		segment[ 3 ] = x + edgeX;
+		segment[ 4 ] = y + edgeY;
+		segment[ 5 ] = z + edgeZ;
 	}
 }
@@ -0,0 +1,114 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for boxes colliding with heightfields. every corner of
+ * the box below the terrain gets a contact, as does every grid point of the
+ * terrain that pokes up into the box
+ */
+public class BoxAndHeightfieldCollisionGenerator extends HeightfieldContactGenerator {
+
+	final private double[] m_rotation = new double[ 9 ];
+	
+	public BoxAndHeightfieldCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all contacts between a box and the terrain under it
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveBox</code> or <code>p2</code> is not a <code>PrimitiveHeightfield</code>
+	 * @see										PrimitiveBox
+	 * @see										PrimitiveHeightfield
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveBox ) {
+			if ( p2 instanceof PrimitiveHeightfield ) {
+				PrimitiveBox box = ( PrimitiveBox ) p1;
+				PrimitiveHeightfield field = ( PrimitiveHeightfield ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				double[] rotation = this.m_rotation;
+				box.getBody().getOrientation().toOrientationData( rotation );
+				Vector3D position = box.getBody().getPosition();
+				double centerX = position.getX().value();
+				double centerY = position.getY().value();
+				double centerZ = position.getZ().value();
+				double[] halfSize = { box.getHalfSize().getX().value() , box.getHalfSize().getY().value() , box.getHalfSize().getZ().value() };
+				
+				//check each corner of the box
+				for ( int corner = 0 ; corner < 8 ; corner ++ ) {
+					double x = ( corner & 1 ) == 0 ? -halfSize[ 0 ] : halfSize[ 0 ];
+					double y = ( corner & 2 ) == 0 ? -halfSize[ 1 ] : halfSize[ 1 ];
+					double z = ( corner & 4 ) == 0 ? -halfSize[ 2 ] : halfSize[ 2 ];
+					generatePointContact( field , box.getBody() ,
+							rotation[ 0 ] * x + rotation[ 1 ] * y + rotation[ 2 ] * z + centerX ,
+							rotation[ 3 ] * x + rotation[ 4 ] * y + rotation[ 5 ] * z + centerY ,
+							rotation[ 6 ] * x + rotation[ 7 ] * y + rotation[ 8 ] * z + centerZ , contacts );
+				}
+				
+				//then check the grid points under the box
+				double extentX = Math.abs( rotation[ 0 ] ) * halfSize[ 0 ] + Math.abs( rotation[ 1 ] ) * halfSize[ 1 ] + Math.abs( rotation[ 2 ] ) * halfSize[ 2 ];
+				double extentZ = Math.abs( rotation[ 6 ] ) * halfSize[ 0 ] + Math.abs( rotation[ 7 ] ) * halfSize[ 1 ] + Math.abs( rotation[ 8 ] ) * halfSize[ 2 ];
+				int firstColumn = field.getColumn( centerX - extentX );
+				int lastColumn = field.getColumn( centerX + extentX ) + 1;
+				int firstRow = field.getRow( centerZ - extentZ );
+				int lastRow = field.getRow( centerZ + extentZ ) + 1;
+				for ( int row = firstRow ; row <= lastRow ; row ++ ) {
+					for ( int column = firstColumn ; column <= lastColumn ; column ++ ) {
+						generateGridPointContact( box , rotation , centerX , centerY , centerZ , halfSize , field.getX( column ) , field.getY( column , row ) , field.getZ( row ) , contacts );
+					}
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveHeightfield.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveBox.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * adds a contact if a grid point of the terrain is inside the box. the box is
+	 * pushed off the point through the face of the box nearest the point
+	 */
+	private void generateGridPointContact( PrimitiveBox box , double[] rotation , double centerX , double centerY , double centerZ , double[] halfSize , double pointX , double pointY , double pointZ , LinkedList < Contact > contacts ) {
+		
+		//convert the point into the local coordinates of the box
+		double x = pointX - centerX;
+		double y = pointY - centerY;
+		double z = pointZ - centerZ;
+		double[] local = {
+			rotation[ 0 ] * x + rotation[ 3 ] * y + rotation[ 6 ] * z ,
+			rotation[ 1 ] * x + rotation[ 4 ] * y + rotation[ 7 ] * z ,
+			rotation[ 2 ] * x + rotation[ 5 ] * y + rotation[ 8 ] * z
+		};
+		
+		//find the face the point is closest to, if it is inside at all
+		int bestAxis = -1;
+		double penetration = Double.POSITIVE_INFINITY;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			double depth = halfSize[ axis ] - Math.abs( local[ axis ] );
+			if ( depth < 0 ) {
+				return;
+			}
+			if ( depth < penetration ) {
+				penetration = depth;
+				bestAxis = axis;
+			}
+		}
+		
+		//the box moves away from that face, so the normal is the inward face normal
+		double sign = local[ bestAxis ] < 0 ? 1 : -1;
+		double normalX = sign * rotation[ bestAxis ];
+		double normalY = sign * rotation[ 3 + bestAxis ];
+		double normalZ = sign * rotation[ 6 + bestAxis ];
+		double offset = 0.5 * penetration;
+		contacts.add( createContact( box.getBody() , null , pointX - normalX * offset , pointY - normalY * offset , pointZ - normalZ * offset , normalX , normalY , normalZ , penetration ) );
+	}
+}
@@ -32,11 +32,14 @@ public class BoxAndPlaneCollisionGenerator extends ContactGenerator {
 				PrimitivePlane plane = ( PrimitivePlane ) p2;
 				LinkedList < Contact > contacts = new LinkedList < Contact > ();
 				
+				//vertices near enough to reach the plane in one step are given speculative contacts
+				Real speculativeMargin = new Real( getSpeculativeMargin( box.getBody() , null ) );
+				
 				//go through each vertex of the box
 				for ( Vector3D vertex : box.getVertices() ) {
 					
 					//check if it is in contact with the plane
-					Contact vertexPlaneContact = generateVertexContact( box.getBody() , vertex , plane );
+					Contact vertexPlaneContact = generateVertexContact( box.getBody() , vertex , plane , speculativeMargin );
 					
 					//and if it is, add it to the list of contacts
 					if ( vertexPlaneContact != null ) {
@@ -62,12 +65,30 @@ public class BoxAndPlaneCollisionGenerator extends ContactGenerator {
 	 * 							the vertex is not in contact with the plane
 	 */
 	protected Contact generateVertexContact( RigidBody box , Vector3D vertexPosition , PrimitivePlane plane ) {
+		return generateVertexContact( box , vertexPosition , plane , Real.ZERO );
+	}
+	
+	/**
+	 * generates a contact between a vertex of a box and a plane, including a
+	 * speculative contact if the vertex is above the plane by no more than the
+	 * given margin
+	 * 
+	 * @param box					the box
+	 * @param vertexPosition		the position of the vertex of a box
+	 * @param plane					the plane
+	 * @param speculativeMargin		the largest distance above the plane at which the vertex is given a contact
+	 * @return						the contact between the vertex of a box and a plane, or <code>null</code> if
+	 * 								the vertex is not in contact with the plane
+	 * @see							ContactGenerator#setSpeculativeDuration(Real)
+	 */
+	protected Contact generateVertexContact( RigidBody box , Vector3D vertexPosition , PrimitivePlane plane , Real speculativeMargin ) {
 		
 		//determine the distance of the vertex to the plane
 		Real vertexToPlaneDistance = ContactGenerator.pointToPlaneDistance( vertexPosition , plane );
 		
-		//if the distance of the vertex to the plane is negative, then there is a contact
-		if ( vertexToPlaneDistance.compareTo( Real.ZERO ) <= 0 ) {
+		//if the distance of the vertex to the plane is negative, or within the
+		//speculative margin, then there is a contact
+		if ( vertexToPlaneDistance.compareTo( speculativeMargin ) <= 0 ) {
 			
 			//determine the location of the contact 
 			Vector3D contactPoint = plane.getNormal().multiply( vertexToPlaneDistance.subtract( plane.getDistanceFromOrigin() ) ).add( vertexPosition );
@@ -0,0 +1,269 @@
+package rigidbody.collision.generate;
+
+import java.util.Arrays;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for capsules colliding with boxes. the segment of the
+ * capsule is moved into the local coordinates of the box, where the squared
+ * distance from a point on the segment to the box is a piecewise quadratic that
+ * changes form only where the segment crosses the planes of the faces. the
+ * minimum of each piece is found in closed form, so at most seven pieces are
+ * checked and nothing is iterated.
+ * <p>
+ * if the segment itself passes through the box, the capsule is pushed out
+ * through whichever face needs the shortest push
+ */
+public class CapsuleAndBoxCollisionGenerator extends ContactGenerator {
+
+	/**
+	 * end points closer than this fraction of the segment to the closest point do not get their own contact
+	 */
+	final private static double DISTINCT_END_FRACTION = 1e-3;
+	
+	public CapsuleAndBoxCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all contacts between a capsule and a box. there will be zero,
+	 * one or two contacts. a capsule lying on a face gets a contact under
+	 * each cap
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveCapsule</code> or <code>p2</code> is not a <code>PrimitiveBox</code>
+	 * @see										PrimitiveCapsule
+	 * @see										PrimitiveBox
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveCapsule ) {
+			if ( p2 instanceof PrimitiveBox ) {
+				PrimitiveCapsule capsule = ( PrimitiveCapsule ) p1;
+				PrimitiveBox box = ( PrimitiveBox ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				double radius = capsule.getRadius().value();
+				
+				//determine the pose of the box
+				double[] rotation = new double[ 9 ];
+				box.getBody().getOrientation().toOrientationData( rotation );
+				Vector3D boxPosition = box.getBody().getPosition();
+				double[] boxCenter = { boxPosition.getX().value() , boxPosition.getY().value() , boxPosition.getZ().value() };
+				double[] halfSize = { box.getHalfSize().getX().value() , box.getHalfSize().getY().value() , box.getHalfSize().getZ().value() };
+				
+				//bring the segment into the local coordinates of the box
+				double[] segment = new double[ 6 ];
+				capsule.getWorldSegment( segment );
+				double[] start = new double[ 3 ];
+				double[] direction = new double[ 3 ];
+				worldToLocal( rotation , boxCenter , segment , 0 , start );
+				worldToLocal( rotation , boxCenter , segment , 3 , direction );
+				for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+					direction[ axis ] -= start[ axis ];
+				}
+				
+				//find the point on the segment closest to the box
+				double t = closestPointToBox( start , direction , halfSize );
+				double[] point = new double[ 3 ];
+				double[] boxPoint = new double[ 3 ];
+				double distanceSquared = clampToBox( start , direction , t , halfSize , point , boxPoint );
+				if ( distanceSquared > radius * radius ) {
+					return contacts;
+				}
+				
+				if ( distanceSquared > 0 ) {
+					
+					//the segment is outside the box, so the contact is between the
+					//closest points. the caps may also touch if the capsule lies along a face
+					addContact( capsule , box , rotation , boxCenter , point , boxPoint , Math.sqrt( distanceSquared ) , radius , contacts );
+					for ( int end = 0 ; end <= 1 ; end ++ ) {
+						if ( Math.abs( end - t ) > DISTINCT_END_FRACTION ) {
+							distanceSquared = clampToBox( start , direction , end , halfSize , point , boxPoint );
+							if ( distanceSquared > 0 && distanceSquared <= radius * radius ) {
+								addContact( capsule , box , rotation , boxCenter , point , boxPoint , Math.sqrt( distanceSquared ) , radius , contacts );
+							}
+						}
+					}
+				} else {
+					addPenetratingContact( capsule , box , rotation , boxCenter , start , direction , halfSize , radius , contacts );
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveBox.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * determines the point on a segment closest to a box centered at the origin
+	 * 
+	 * @param start			the first end point of the segment
+	 * @param direction		the vector from the first end point to the second
+	 * @param halfSize		the half size of the box
+	 * @return				the closest point, as a fraction of the way along the segment
+	 */
+	protected static double closestPointToBox( double[] start , double[] direction , double[] halfSize ) {
+		
+		//find where the segment crosses the plane of each face
+		double[] breaks = new double[ 8 ];
+		int numBreaks = 0;
+		breaks[ numBreaks ++ ] = 0;
+		breaks[ numBreaks ++ ] = 1;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			if ( direction[ axis ] != 0 ) {
+				for ( int side = -1 ; side <= 1 ; side += 2 ) {
+					double crossing = ( side * halfSize[ axis ] - start[ axis ] ) / direction[ axis ];
+					if ( crossing > 0 && crossing < 1 ) {
+						breaks[ numBreaks ++ ] = crossing;
+					}
+				}
+			}
+		}
+		Arrays.sort( breaks , 0 , numBreaks );
+		
+		//between two crossings, every coordinate is either inside its slab
+		//or clamped to the same face, so the squared distance is a quadratic
+		double bestT = 0;
+		double bestDistanceSquared = Double.POSITIVE_INFINITY;
+		for ( int piece = 0 ; piece + 1 < numBreaks ; piece ++ ) {
+			double low = breaks[ piece ];
+			double high = breaks[ piece + 1 ];
+			double middle = 0.5 * ( low + high );
+			double linear = 0;
+			double quadratic = 0;
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+				double coordinate = start[ axis ] + middle * direction[ axis ];
+				double face = coordinate > halfSize[ axis ] ? halfSize[ axis ] : ( coordinate < -halfSize[ axis ] ? -halfSize[ axis ] : coordinate );
+				if ( face != coordinate ) {
+					linear += direction[ axis ] * ( start[ axis ] - face );
+					quadratic += direction[ axis ] * direction[ axis ];
+				}
+			}
+			double t = quadratic > 0 ? Math.max( low , Math.min( high , -linear / quadratic ) ) : low;
+			double distanceSquared = squaredDistanceToBox( start , direction , t , halfSize );
+			if ( distanceSquared < bestDistanceSquared ) {
+				bestDistanceSquared = distanceSquared;
+				bestT = t;
+			}
+		}
+		return bestT;
+	}
+	
+	private static double squaredDistanceToBox( double[] start , double[] direction , double t , double[] halfSize ) {
+		double distanceSquared = 0;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			double coordinate = start[ axis ] + t * direction[ axis ];
+			double excess = Math.abs( coordinate ) - halfSize[ axis ];
+			if ( excess > 0 ) {
+				distanceSquared += excess * excess;
+			}
+		}
+		return distanceSquared;
+	}
+	
+	/**
+	 * finds the point at <code>t</code> along the segment and the point of the box closest to it
+	 * 
+	 * @return				the squared distance between the two points
+	 */
+	private static double clampToBox( double[] start , double[] direction , double t , double[] halfSize , double[] point , double[] boxPoint ) {
+		double distanceSquared = 0;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			point[ axis ] = start[ axis ] + t * direction[ axis ];
+			boxPoint[ axis ] = Math.max( -halfSize[ axis ] , Math.min( halfSize[ axis ] , point[ axis ] ) );
+			double difference = point[ axis ] - boxPoint[ axis ];
+			distanceSquared += difference * difference;
+		}
+		return distanceSquared;
+	}
+	
+	/**
+	 * adds the contact between a point of the segment outside the box and the
+	 * closest point of the box, both given in the local coordinates of the box
+	 */
+	private void addContact( PrimitiveCapsule capsule , PrimitiveBox box , double[] rotation , double[] boxCenter , double[] point , double[] boxPoint , double distance , double radius , LinkedList < Contact > contacts ) {
+		
+		//the normal points from the box to the capsule
+		double[] normal = new double[ 3 ];
+		double[] contactPoint = new double[ 3 ];
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			normal[ axis ] = ( point[ axis ] - boxPoint[ axis ] ) / distance;
+		}
+		
+		//the contact point is halfway between the surface of the box and the surface of the capsule
+		double penetration = radius - distance;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			contactPoint[ axis ] = boxPoint[ axis ] - normal[ axis ] * 0.5 * penetration;
+		}
+		addLocalContact( capsule , box , rotation , boxCenter , contactPoint , normal , penetration , contacts );
+	}
+	
+	/**
+	 * adds the contact for a capsule whose segment passes into the box. the capsule
+	 * is pushed out along whichever face normal needs the smallest push to move the
+	 * whole capsule out of that face
+	 */
+	private void addPenetratingContact( PrimitiveCapsule capsule , PrimitiveBox box , double[] rotation , double[] boxCenter , double[] start , double[] direction , double[] halfSize , double radius , LinkedList < Contact > contacts ) {
+		int bestAxis = 0;
+		int bestSide = 1;
+		double bestDepth = Double.POSITIVE_INFINITY;
+		double bestT = 0;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			for ( int side = -1 ; side <= 1 ; side += 2 ) {
+				
+				//the end point deepest behind this face limits the push
+				double startHeight = side * start[ axis ];
+				double endHeight = side * ( start[ axis ] + direction[ axis ] );
+				double depth = halfSize[ axis ] + radius - Math.min( startHeight , endHeight );
+				if ( depth < bestDepth ) {
+					bestDepth = depth;
+					bestAxis = axis;
+					bestSide = side;
+					bestT = startHeight <= endHeight ? 0 : 1;
+				}
+			}
+		}
+		double[] normal = new double[ 3 ];
+		double[] contactPoint = new double[ 3 ];
+		normal[ bestAxis ] = bestSide;
+		
+		//the contact point is halfway between the face and the deepest point of the capsule
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			contactPoint[ axis ] = start[ axis ] + bestT * direction[ axis ];
+		}
+		contactPoint[ bestAxis ] = bestSide * halfSize[ bestAxis ] - bestSide * 0.5 * bestDepth;
+		addLocalContact( capsule , box , rotation , boxCenter , contactPoint , normal , bestDepth , contacts );
+	}
+	
+	/**
+	 * converts a contact point and normal from the local coordinates of the box
+	 * into world coordinates and adds the contact
+	 */
+	private void addLocalContact( PrimitiveCapsule capsule , PrimitiveBox box , double[] rotation , double[] boxCenter , double[] point , double[] normal , double penetration , LinkedList < Contact > contacts ) {
+		double pointX = rotation[ 0 ] * point[ 0 ] + rotation[ 1 ] * point[ 1 ] + rotation[ 2 ] * point[ 2 ] + boxCenter[ 0 ];
+		double pointY = rotation[ 3 ] * point[ 0 ] + rotation[ 4 ] * point[ 1 ] + rotation[ 5 ] * point[ 2 ] + boxCenter[ 1 ];
+		double pointZ = rotation[ 6 ] * point[ 0 ] + rotation[ 7 ] * point[ 1 ] + rotation[ 8 ] * point[ 2 ] + boxCenter[ 2 ];
+		double normalX = rotation[ 0 ] * normal[ 0 ] + rotation[ 1 ] * normal[ 1 ] + rotation[ 2 ] * normal[ 2 ];
+		double normalY = rotation[ 3 ] * normal[ 0 ] + rotation[ 4 ] * normal[ 1 ] + rotation[ 5 ] * normal[ 2 ];
+		double normalZ = rotation[ 6 ] * normal[ 0 ] + rotation[ 7 ] * normal[ 1 ] + rotation[ 8 ] * normal[ 2 ];
+		contacts.add( createContact( capsule.getBody() , box.getBody() , pointX , pointY , pointZ , normalX , normalY , normalZ , penetration ) );
+	}
+	
+	/**
+	 * converts a point from world coordinates into the local coordinates of the box
+	 * by multiplying by the transpose of its rotation
+	 */
+	private static void worldToLocal( double[] rotation , double[] boxCenter , double[] world , int offset , double[] result ) {
+		double x = world[ offset ] - boxCenter[ 0 ];
+		double y = world[ offset + 1 ] - boxCenter[ 1 ];
+		double z = world[ offset + 2 ] - boxCenter[ 2 ];
+		result[ 0 ] = rotation[ 0 ] * x + rotation[ 3 ] * y + rotation[ 6 ] * z;
+		result[ 1 ] = rotation[ 1 ] * x + rotation[ 4 ] * y + rotation[ 7 ] * z;
+		result[ 2 ] = rotation[ 2 ] * x + rotation[ 5 ] * y + rotation[ 8 ] * z;
+	}
+}
@@ -0,0 +1,176 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+
+/**
+ * a collision generator for capsules colliding with capsules. the closest points
+ * of the two core segments are found in closed form. capsules lying side by side
+ * touch along a line, so they are given a contact at each end of the overlap
+ * to keep them from rocking
+ */
+public class CapsuleAndCapsuleCollisionGenerator extends ContactGenerator {
+
+	/**
+	 * segments whose directions have a squared sine below this are treated as parallel
+	 */
+	final private static double PARALLEL_TOLERANCE = 1e-6;
+	
+	public CapsuleAndCapsuleCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all contacts between two capsules. there will be zero, one or
+	 * two contacts
+	 * 
+	 * @throws IllegalArgumentException			if either <code>p1</code> or <code>p2</code> is not a <code>PrimitiveCapsule</code>
+	 * @see										PrimitiveCapsule
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveCapsule ) {
+			if ( p2 instanceof PrimitiveCapsule ) {
+				PrimitiveCapsule capsule1 = ( PrimitiveCapsule ) p1;
+				PrimitiveCapsule capsule2 = ( PrimitiveCapsule ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				double[] segment1 = new double[ 6 ];
+				double[] segment2 = new double[ 6 ];
+				capsule1.getWorldSegment( segment1 );
+				capsule2.getWorldSegment( segment2 );
+				double radius1 = capsule1.getRadius().value();
+				double radius2 = capsule2.getRadius().value();
+				
+				double d1X = segment1[ 3 ] - segment1[ 0 ] , d1Y = segment1[ 4 ] - segment1[ 1 ] , d1Z = segment1[ 5 ] - segment1[ 2 ];
+				double d2X = segment2[ 3 ] - segment2[ 0 ] , d2Y = segment2[ 4 ] - segment2[ 1 ] , d2Z = segment2[ 5 ] - segment2[ 2 ];
+				double a = d1X * d1X + d1Y * d1Y + d1Z * d1Z;
+				double e = d2X * d2X + d2Y * d2Y + d2Z * d2Z;
+				double b = d1X * d2X + d1Y * d2Y + d1Z * d2Z;
+				
+				//if the segments are parallel, find the range of the first segment
+				//that lies alongside the second and put a contact at both ends of it
+				if ( a > 0 && e > 0 && a * e - b * b <= PARALLEL_TOLERANCE * a * e ) {
+					double start = CapsuleAndSphereCollisionGenerator.closestPointOnSegment( segment1 , segment2[ 0 ] , segment2[ 1 ] , segment2[ 2 ] );
+					double end = CapsuleAndSphereCollisionGenerator.closestPointOnSegment( segment1 , segment2[ 3 ] , segment2[ 4 ] , segment2[ 5 ] );
+					if ( start != end ) {
+						addContactAt( capsule1 , capsule2 , segment1 , segment2 , start , radius1 , radius2 , contacts );
+						addContactAt( capsule1 , capsule2 , segment1 , segment2 , end , radius1 , radius2 , contacts );
+						return contacts;
+					}
+				}
+				
+				//otherwise, the closest points are unique
+				double s = closestPointsOnSegments( segment1 , segment2 );
+				addContactAt( capsule1 , capsule2 , segment1 , segment2 , s , radius1 , radius2 , contacts );
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * adds the contact between the point at <code>s</code> along the first segment
+	 * and the closest point on the second segment, if the capsules touch there
+	 */
+	private void addContactAt( PrimitiveCapsule capsule1 , PrimitiveCapsule capsule2 , double[] segment1 , double[] segment2 , double s , double radius1 , double radius2 , LinkedList < Contact > contacts ) {
+		double point1X = segment1[ 0 ] + s * ( segment1[ 3 ] - segment1[ 0 ] );
+		double point1Y = segment1[ 1 ] + s * ( segment1[ 4 ] - segment1[ 1 ] );
+		double point1Z = segment1[ 2 ] + s * ( segment1[ 5 ] - segment1[ 2 ] );
+		double t = CapsuleAndSphereCollisionGenerator.closestPointOnSegment( segment2 , point1X , point1Y , point1Z );
+		double point2X = segment2[ 0 ] + t * ( segment2[ 3 ] - segment2[ 0 ] );
+		double point2Y = segment2[ 1 ] + t * ( segment2[ 4 ] - segment2[ 1 ] );
+		double point2Z = segment2[ 2 ] + t * ( segment2[ 5 ] - segment2[ 2 ] );
+		
+		//the normal points from the second capsule to the first
+		double radiiSum = radius1 + radius2;
+		double normalX = point1X - point2X;
+		double normalY = point1Y - point2Y;
+		double normalZ = point1Z - point2Z;
+		double distanceSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+		if ( distanceSquared > radiiSum * radiiSum ) {
+			return;
+		}
+		double distance = Math.sqrt( distanceSquared );
+		if ( distance > 0 ) {
+			normalX /= distance;
+			normalY /= distance;
+			normalZ /= distance;
+		} else {
+			
+			//the segments cross, so separate them perpendicular to both
+			double d1X = segment1[ 3 ] - segment1[ 0 ] , d1Y = segment1[ 4 ] - segment1[ 1 ] , d1Z = segment1[ 5 ] - segment1[ 2 ];
+			double d2X = segment2[ 3 ] - segment2[ 0 ] , d2Y = segment2[ 4 ] - segment2[ 1 ] , d2Z = segment2[ 5 ] - segment2[ 2 ];
+			double crossX = d1Y * d2Z - d1Z * d2Y;
+			double crossY = d1Z * d2X - d1X * d2Z;
+			double crossZ = d1X * d2Y - d1Y * d2X;
+			double crossLength = Math.sqrt( crossX * crossX + crossY * crossY + crossZ * crossZ );
+			if ( crossLength > 0 ) {
+				normalX = crossX / crossLength;
+				normalY = crossY / crossLength;
+				normalZ = crossZ / crossLength;
+			} else {
+				double[] perpendicular = new double[ 3 ];
+				CapsuleAndSphereCollisionGenerator.perpendicularToSegment( segment1 , perpendicular );
+				normalX = perpendicular[ 0 ];
+				normalY = perpendicular[ 1 ];
+				normalZ = perpendicular[ 2 ];
+			}
+		}
+		
+		//the contact point is halfway between the two surfaces
+		double penetration = radiiSum - distance;
+		double offset = radius2 - 0.5 * penetration;
+		contacts.add( createContact( capsule1.getBody() , capsule2.getBody() , point2X + normalX * offset , point2Y + normalY * offset , point2Z + normalZ * offset , normalX , normalY , normalZ , penetration ) );
+	}
+	
+	/**
+	 * determines the closest points of two segments by minimizing the squared
+	 * distance between them, clamping to the ends of each segment in turn
+	 * 
+	 * @param segment1		the end points of the first segment, packed as [ x0 , y0 , z0 , x1 , y1 , z1 ]
+	 * @param segment2		the end points of the second segment
+	 * @return				the closest point on the first segment, as a fraction of the way
+	 * 						from its first end point to its second
+	 */
+	protected static double closestPointsOnSegments( double[] segment1 , double[] segment2 ) {
+		double d1X = segment1[ 3 ] - segment1[ 0 ] , d1Y = segment1[ 4 ] - segment1[ 1 ] , d1Z = segment1[ 5 ] - segment1[ 2 ];
+		double d2X = segment2[ 3 ] - segment2[ 0 ] , d2Y = segment2[ 4 ] - segment2[ 1 ] , d2Z = segment2[ 5 ] - segment2[ 2 ];
+		double rX = segment1[ 0 ] - segment2[ 0 ] , rY = segment1[ 1 ] - segment2[ 1 ] , rZ = segment1[ 2 ] - segment2[ 2 ];
+		double a = d1X * d1X + d1Y * d1Y + d1Z * d1Z;
+		double e = d2X * d2X + d2Y * d2Y + d2Z * d2Z;
+		double f = d2X * rX + d2Y * rY + d2Z * rZ;
+		
+		//the first segment is a point
+		if ( a == 0 ) {
+			return 0;
+		}
+		double c = d1X * rX + d1Y * rY + d1Z * rZ;
+		
+		//the second segment is a point
+		if ( e == 0 ) {
+			return clamp( -c / a );
+		}
+		
+		//find the closest points of the infinite lines, then clamp them
+		//to the segments
+		double b = d1X * d2X + d1Y * d2Y + d1Z * d2Z;
+		double denominator = a * e - b * b;
+		double s = denominator > 0 ? clamp( ( b * f - c * e ) / denominator ) : 0;
+		double t = ( b * s + f ) / e;
+		if ( t < 0 ) {
+			s = clamp( -c / a );
+		} else if ( t > 1 ) {
+			s = clamp( ( b - c ) / a );
+		}
+		return s;
+	}
+	
+	private static double clamp( double value ) {
+		return Math.max( 0 , Math.min( 1 , value ) );
+	}
+}
@@ -0,0 +1,81 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+
+/**
+ * a collision generator for capsules colliding with heightfields. the caps are
+ * tested as spheres, and grid points under the middle of the capsule, such as the
+ * top of a ridge the capsule lies across, are tested against its segment
+ */
+public class CapsuleAndHeightfieldCollisionGenerator extends HeightfieldContactGenerator {
+
+	final private double[] m_segment = new double[ 6 ];
+	
+	public CapsuleAndHeightfieldCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all contacts between a capsule and the terrain under it
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveCapsule</code> or <code>p2</code> is not a <code>PrimitiveHeightfield</code>
+	 * @see										PrimitiveCapsule
+	 * @see										PrimitiveHeightfield
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveCapsule ) {
+			if ( p2 instanceof PrimitiveHeightfield ) {
+				PrimitiveCapsule capsule = ( PrimitiveCapsule ) p1;
+				PrimitiveHeightfield field = ( PrimitiveHeightfield ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				double[] segment = this.m_segment;
+				capsule.getWorldSegment( segment );
+				double radius = capsule.getRadius().value();
+				
+				//test each cap as a sphere
+				generateSphereContacts( field , capsule.getBody() , segment[ 0 ] , segment[ 1 ] , segment[ 2 ] , radius , contacts );
+				generateSphereContacts( field , capsule.getBody() , segment[ 3 ] , segment[ 4 ] , segment[ 5 ] , radius , contacts );
+				
+				//then test the grid points under the capsule against the middle of the segment
+				int firstColumn = field.getColumn( Math.min( segment[ 0 ] , segment[ 3 ] ) - radius );
+				int lastColumn = field.getColumn( Math.max( segment[ 0 ] , segment[ 3 ] ) + radius ) + 1;
+				int firstRow = field.getRow( Math.min( segment[ 2 ] , segment[ 5 ] ) - radius );
+				int lastRow = field.getRow( Math.max( segment[ 2 ] , segment[ 5 ] ) + radius ) + 1;
+				for ( int row = firstRow ; row <= lastRow ; row ++ ) {
+					for ( int column = firstColumn ; column <= lastColumn ; column ++ ) {
+						double pointX = field.getX( column );
+						double pointY = field.getY( column , row );
+						double pointZ = field.getZ( row );
+						double t = CapsuleAndSphereCollisionGenerator.closestPointOnSegment( segment , pointX , pointY , pointZ );
+						
+						//points closest to a cap were already covered by that cap
+						if ( t <= 0 || t >= 1 ) {
+							continue;
+						}
+						double normalX = segment[ 0 ] + t * ( segment[ 3 ] - segment[ 0 ] ) - pointX;
+						double normalY = segment[ 1 ] + t * ( segment[ 4 ] - segment[ 1 ] ) - pointY;
+						double normalZ = segment[ 2 ] + t * ( segment[ 5 ] - segment[ 2 ] ) - pointZ;
+						double distanceSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+						if ( distanceSquared > radius * radius || distanceSquared == 0 ) {
+							continue;
+						}
+						double distance = Math.sqrt( distanceSquared );
+						normalX /= distance;
+						normalY /= distance;
+						normalZ /= distance;
+						double penetration = radius - distance;
+						contacts.add( createContact( capsule.getBody() , null , pointX - normalX * 0.5 * penetration , pointY - normalY * 0.5 * penetration , pointZ - normalZ * 0.5 * penetration , normalX , normalY , normalZ , penetration ) );
+					}
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveHeightfield.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+}
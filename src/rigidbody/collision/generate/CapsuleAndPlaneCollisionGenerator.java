@@ -0,0 +1,64 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for capsules colliding with planes. the deepest point
+ * of a capsule is always at one of its caps, so only the two end points of its
+ * segment need to be checked
+ */
+public class CapsuleAndPlaneCollisionGenerator extends ContactGenerator {
+
+	public CapsuleAndPlaneCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all the contacts between the caps of a capsule and a plane.
+	 * there will be a minimum of zero and a maximum of two caps in contact
+	 * with the plane
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveCapsule</code> or <code>p2</code> is not a <code>PrimitivePlane</code>
+	 * @see										PrimitiveCapsule
+	 * @see										PrimitivePlane
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveCapsule ) {
+			if ( p2 instanceof PrimitivePlane ) {
+				PrimitiveCapsule capsule = ( PrimitiveCapsule ) p1;
+				PrimitivePlane plane = ( PrimitivePlane ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				double[] segment = new double[ 6 ];
+				capsule.getWorldSegment( segment );
+				Vector3D normal = plane.getNormal();
+				double normalX = normal.getX().value();
+				double normalY = normal.getY().value();
+				double normalZ = normal.getZ().value();
+				double planeDistance = plane.getDistanceFromOrigin().value();
+				double radius = capsule.getRadius().value();
+				double speculativeMargin = getSpeculativeMargin( capsule.getBody() , null );
+				
+				//check the center of each cap
+				for ( int end = 0 ; end < 6 ; end += 3 ) {
+					double distance = segment[ end ] * normalX + segment[ end + 1 ] * normalY + segment[ end + 2 ] * normalZ - planeDistance;
+					
+					//if the cap reaches through the plane, or can reach it in one step,
+					//then there is a contact at the point on the plane below the cap
+					if ( distance <= radius + speculativeMargin ) {
+						contacts.add( createContact( capsule.getBody() , null , segment[ end ] - normalX * distance , segment[ end + 1 ] - normalY * distance , segment[ end + 2 ] - normalZ * distance , normalX , normalY , normalZ , radius - distance ) );
+					}
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitivePlane.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for capsules colliding with spheres. the point on the
+ * segment of the capsule closest to the center of the sphere is found in closed
+ * form, after which the test is the same as for two spheres
+ */
+public class CapsuleAndSphereCollisionGenerator extends ContactGenerator {
+
+	public CapsuleAndSphereCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns the contact between a capsule and a sphere, if any
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveCapsule</code> or <code>p2</code> is not a <code>PrimitiveSphere</code>
+	 * @see										PrimitiveCapsule
+	 * @see										PrimitiveSphere
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveCapsule ) {
+			if ( p2 instanceof PrimitiveSphere ) {
+				PrimitiveCapsule capsule = ( PrimitiveCapsule ) p1;
+				PrimitiveSphere sphere = ( PrimitiveSphere ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				double[] segment = new double[ 6 ];
+				capsule.getWorldSegment( segment );
+				Vector3D spherePosition = sphere.getPosition();
+				double centerX = spherePosition.getX().value();
+				double centerY = spherePosition.getY().value();
+				double centerZ = spherePosition.getZ().value();
+				
+				//find the point on the segment closest to the center of the sphere
+				double t = closestPointOnSegment( segment , centerX , centerY , centerZ );
+				double closestX = segment[ 0 ] + t * ( segment[ 3 ] - segment[ 0 ] );
+				double closestY = segment[ 1 ] + t * ( segment[ 4 ] - segment[ 1 ] );
+				double closestZ = segment[ 2 ] + t * ( segment[ 5 ] - segment[ 2 ] );
+				
+				//then treat the capsule as a sphere centered on that point
+				double capsuleRadius = capsule.getRadius().value();
+				double sphereRadius = sphere.getRadius().value();
+				double radiiSum = capsuleRadius + sphereRadius;
+				double reach = radiiSum + getSpeculativeMargin( capsule.getBody() , sphere.getBody() );
+				double normalX = closestX - centerX;
+				double normalY = closestY - centerY;
+				double normalZ = closestZ - centerZ;
+				double distanceSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+				if ( distanceSquared > reach * reach ) {
+					return contacts;
+				}
+				double distance = Math.sqrt( distanceSquared );
+				if ( distance > 0 ) {
+					normalX /= distance;
+					normalY /= distance;
+					normalZ /= distance;
+				} else {
+					
+					//the center of the sphere is on the segment, so push it out
+					//in any direction perpendicular to the segment
+					double[] perpendicular = new double[ 3 ];
+					perpendicularToSegment( segment , perpendicular );
+					normalX = perpendicular[ 0 ];
+					normalY = perpendicular[ 1 ];
+					normalZ = perpendicular[ 2 ];
+				}
+				
+				//the contact point is halfway between the two surfaces
+				double penetration = radiiSum - distance;
+				double offset = sphereRadius - 0.5 * penetration;
+				contacts.add( createContact( capsule.getBody() , sphere.getBody() , centerX + normalX * offset , centerY + normalY * offset , centerZ + normalZ * offset , normalX , normalY , normalZ , penetration ) );
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveSphere.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveCapsule.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * determines the point on a segment closest to a given point
+	 * 
+	 * @param segment		the end points of the segment, packed as [ x0 , y0 , z0 , x1 , y1 , z1 ]
+	 * @param pointX		x coordinate of the point
+	 * @param pointY		y coordinate of the point
+	 * @param pointZ		z coordinate of the point
+	 * @return				the closest point as a fraction of the way from the first end point to the second
+	 */
+	protected static double closestPointOnSegment( double[] segment , double pointX , double pointY , double pointZ ) {
+		double directionX = segment[ 3 ] - segment[ 0 ];
+		double directionY = segment[ 4 ] - segment[ 1 ];
+		double directionZ = segment[ 5 ] - segment[ 2 ];
+		double lengthSquared = directionX * directionX + directionY * directionY + directionZ * directionZ;
+		if ( lengthSquared == 0 ) {
+			return 0;
+		}
+		double t = ( ( pointX - segment[ 0 ] ) * directionX + ( pointY - segment[ 1 ] ) * directionY + ( pointZ - segment[ 2 ] ) * directionZ ) / lengthSquared;
+		return Math.max( 0 , Math.min( 1 , t ) );
+	}
+	
+	/**
+	 * determines a unit vector perpendicular to a segment. if the segment has
+	 * no length, any unit vector is returned
+	 * 
+	 * @param segment		the end points of the segment, packed as [ x0 , y0 , z0 , x1 , y1 , z1 ]
+	 * @param result		an array of at least 3 elements to receive the vector
+	 */
+	protected static void perpendicularToSegment( double[] segment , double[] result ) {
+		double directionX = segment[ 3 ] - segment[ 0 ];
+		double directionY = segment[ 4 ] - segment[ 1 ];
+		double directionZ = segment[ 5 ] - segment[ 2 ];
+		
+		//cross the segment with the coordinate axis it is least aligned with
+		double x , y , z;
+		if ( Math.abs( directionX ) <= Math.abs( directionY ) && Math.abs( directionX ) <= Math.abs( directionZ ) ) {
+			x = 0; y = directionZ; z = -directionY;
+		} else if ( Math.abs( directionY ) <= Math.abs( directionZ ) ) {
+			x = -directionZ; y = 0; z = directionX;
+		} else {
+			x = directionY; y = -directionX; z = 0;
+		}
+		double length = Math.sqrt( x * x + y * y + z * z );
+		if ( length == 0 ) {
+			result[ 0 ] = 0;
+			result[ 1 ] = 1;
+			result[ 2 ] = 0;
+		} else {
+			result[ 0 ] = x / length;
+			result[ 1 ] = y / length;
+			result[ 2 ] = z / length;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package rigidbody.collision.generate;
+
+import java.util.HashMap;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+
+/**
+ * chooses the <code>ContactGenerator</code> for a pair of primitives by their
+ * types, so that callers do not need to know which generator handles which pair.
+ * a generator registered for ( A , B ) also handles ( B , A ): the primitives are
+ * simply passed to it in the other order, which describes the same contacts.
+ * <p>
+ * a new dispatcher already knows every generator in this package. pairs with no
+ * registered generator fall back on the <code>ConvexAndConvexCollisionGenerator</code>
+ * if both primitives are <code>SupportMapped</code>, or on the
+ * <code>ConvexAndTriangleMeshCollisionGenerator</code> if one of them is a
+ * <code>PrimitiveTriangleMesh</code>
+ */
+public class CollisionDispatcher extends ContactGenerator {
+
+	/**
+	 * the generator registered for each ordered pair of primitive types
+	 */
+	final private HashMap < Class < ? > , HashMap < Class < ? > , ContactGenerator > > m_generators = new HashMap < Class < ? > , HashMap < Class < ? > , ContactGenerator > > ();
+
+	/**
+	 * handles pairs of support-mapped primitives without a registered generator
+	 */
+	private ContactGenerator m_convexGenerator;
+
+	/**
+	 * handles support-mapped primitives against triangle meshes without a registered generator
+	 */
+	private ContactGenerator m_convexMeshGenerator;
+
+	/**
+	 * creates a dispatcher whose built-in generators all use the given amount
+	 * of friction and elasticity
+	 *
+	 * @param friction
+	 * @param elasticity
+	 * @param penetrationOffset
+	 */
+	public CollisionDispatcher( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+		register( PrimitiveSphere.class , PrimitiveSphere.class , new SphereAndSphereCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveSphere.class , PrimitivePlane.class , new SphereAndPlaneCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveBox.class , PrimitivePlane.class , new BoxAndPlaneCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveBox.class , PrimitiveSphere.class , new BoxAndSphereCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveBox.class , PrimitiveBox.class , new BoxAndBoxCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveCapsule.class , PrimitiveSphere.class , new CapsuleAndSphereCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveCapsule.class , PrimitiveCapsule.class , new CapsuleAndCapsuleCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveCapsule.class , PrimitivePlane.class , new CapsuleAndPlaneCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveCapsule.class , PrimitiveBox.class , new CapsuleAndBoxCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveSphere.class , PrimitiveTriangleMesh.class , new SphereAndTriangleMeshCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveSphere.class , PrimitiveHeightfield.class , new SphereAndHeightfieldCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveBox.class , PrimitiveHeightfield.class , new BoxAndHeightfieldCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		register( PrimitiveCapsule.class , PrimitiveHeightfield.class , new CapsuleAndHeightfieldCollisionGenerator( friction , elasticity , penetrationOffset ) );
+		this.m_convexGenerator = new ConvexAndConvexCollisionGenerator( friction , elasticity , penetrationOffset );
+		this.m_convexMeshGenerator = new ConvexAndTriangleMeshCollisionGenerator( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * registers the generator for a pair of primitive types, replacing any
+	 * generator registered for the pair before. the generator will be given
+	 * primitives of the first type as its first parameter
+	 *
+	 * @param type1			the type of the first primitive the generator accepts
+	 * @param type2			the type of the second primitive the generator accepts
+	 * @param generator		the generator
+	 */
+	public void register( Class < ? extends Primitive > type1 , Class < ? extends Primitive > type2 , ContactGenerator generator ) {
+		HashMap < Class < ? > , ContactGenerator > generators = this.m_generators.get( type1 );
+		if ( generators == null ) {
+			generators = new HashMap < Class < ? > , ContactGenerator > ();
+			this.m_generators.put( type1 , generators );
+		}
+		generators.put( type2 , generator );
+	}
+
+	/**
+	 * @param generator		the generator for pairs of <code>SupportMapped</code> primitives with no registered generator
+	 */
+	public void setConvexGenerator( ContactGenerator generator ) {
+		this.m_convexGenerator = generator;
+	}
+
+	/**
+	 * @param generator		the generator for <code>SupportMapped</code> primitives against triangle
+	 * 						meshes with no registered generator
+	 */
+	public void setConvexMeshGenerator( ContactGenerator generator ) {
+		this.m_convexMeshGenerator = generator;
+	}
+
+	/**
+	 * turns speculative contacts on or off for every registered generator and both fallbacks
+	 */
+	@Override
+	public void setSpeculativeDuration( Real duration ) {
+		super.setSpeculativeDuration( duration );
+		for ( HashMap < Class < ? > , ContactGenerator > generators : this.m_generators.values() ) {
+			for ( ContactGenerator generator : generators.values() ) {
+				generator.setSpeculativeDuration( duration );
+			}
+		}
+		if ( this.m_convexGenerator != null ) {
+			this.m_convexGenerator.setSpeculativeDuration( duration );
+		}
+		if ( this.m_convexMeshGenerator != null ) {
+			this.m_convexMeshGenerator.setSpeculativeDuration( duration );
+		}
+	}
+
+	/**
+	 * ends the frame of every registered generator and both fallbacks
+	 */
+	@Override
+	public void endFrame() {
+		for ( HashMap < Class < ? > , ContactGenerator > generators : this.m_generators.values() ) {
+			for ( ContactGenerator generator : generators.values() ) {
+				generator.endFrame();
+			}
+		}
+		if ( this.m_convexGenerator != null ) {
+			this.m_convexGenerator.endFrame();
+		}
+		if ( this.m_convexMeshGenerator != null ) {
+			this.m_convexMeshGenerator.endFrame();
+		}
+	}
+
+	private ContactGenerator lookUp( Class < ? > type1 , Class < ? > type2 ) {
+		HashMap < Class < ? > , ContactGenerator > generators = this.m_generators.get( type1 );
+		return generators == null ? null : generators.get( type2 );
+	}
+
+	/**
+	 * returns all contacts between the two primitives, using the generator for their types
+	 *
+	 * @throws IllegalArgumentException			if no generator handles the pair
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+
+		//look for a registered generator in either order
+		ContactGenerator generator = lookUp( p1.getClass() , p2.getClass() );
+		if ( generator != null ) {
+			return generator.generateContacts( p1 , p2 );
+		}
+		generator = lookUp( p2.getClass() , p1.getClass() );
+		if ( generator != null ) {
+			return generator.generateContacts( p2 , p1 );
+		}
+
+		//then fall back on the general convex generators
+		if ( p1 instanceof SupportMapped && p2 instanceof SupportMapped && this.m_convexGenerator != null ) {
+			return this.m_convexGenerator.generateContacts( p1 , p2 );
+		}
+		if ( this.m_convexMeshGenerator != null ) {
+			if ( p1 instanceof SupportMapped && p2 instanceof PrimitiveTriangleMesh ) {
+				return this.m_convexMeshGenerator.generateContacts( p1 , p2 );
+			}
+			if ( p2 instanceof SupportMapped && p1 instanceof PrimitiveTriangleMesh ) {
+				return this.m_convexMeshGenerator.generateContacts( p2 , p1 );
+			}
+		}
+		throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.NO_GENERATOR( p1.getClass().getName() , p2.getClass().getName() ) );
+	}
+}
@@ -4,6 +4,7 @@ import rigidbody.Matrix3;
 import rigidbody.RigidBody;
 import util.ErrorMessages;
 import _lib.LinkedList;
+import _lib.PairKey;
 import _math.Real;
 import _math.Vector3D;
 
@@ -44,6 +45,14 @@ public class Contact {
 	 */
 	private Real m_penetrationOffset;
 	
+	/**
+	 * if the bodies in this contact were apart when it was generated. a speculative
+	 * contact only stops the bodies from closing the gap between them within a step
+	 * 
+	 * @see				ContactGenerator#setSpeculativeDuration(Real)
+	 */
+	private boolean m_isSpeculative;
+	
 	/**
 	 * amount of friction involved in this contact
 	 */
@@ -68,7 +77,8 @@ public class Contact {
 	 * 									a immobile object with infinite mass
 	 * @param contactPoint				location of contact in world coordinates
 	 * @param contactNormal				direction of contact (vector perpendicular to the contact surface)
-	 * @param penetration				amount of penetration between the two bodies that are in contact
+	 * @param penetration				amount of penetration between the two bodies that are in contact. a negative
+	 * 									penetration is the gap between two bodies in a speculative contact
 	 * @param friction					amount of friction involved in this collision
 	 * @param elasticity				how elastic this collision is
 	 */
@@ -79,7 +89,7 @@ public class Contact {
 		this.m_reference = reference;
 		this.m_other = other;
 		//swap bodies if the reference has infinite mass
-		if ( this.m_reference.getInverseMass().equals( Real.ZERO ) ) {
+		if ( !this.m_reference.hasFiniteMass() ) {
 			this.m_other = null;
 			this.m_reference = other;
 			if ( this.m_reference == null ) {
@@ -87,7 +97,7 @@ public class Contact {
 			}
 		}
 		if ( other != null ) {
-			if ( other.getInverseMass().equals( Real.ZERO ) ) {
+			if ( !other.hasFiniteMass() ) {
 				this.m_other = null;
 			}
 		}
@@ -95,6 +105,7 @@ public class Contact {
 		this.m_contactNormal = contactNormal;
 		this.m_penetration = penetration.subtract( penetrationOffset );
 		this.m_penetrationOffset = penetrationOffset;
+		this.m_isSpeculative = penetration.compareTo( Real.ZERO ) < 0;
 		this.m_friction = friction;
 		this.m_elasticity = elasticity;
 		determineContactBasis();
@@ -345,11 +356,41 @@ public class Contact {
 	
 	public void resolveVelocity( Real duration ) {
 		
+		//the bodies in a speculative contact may still be apart, in which case
+		//they are only prevented from closing the gap in this step
+		if ( this.m_isSpeculative && this.m_penetration.compareTo( Real.ZERO ) < 0 ) {
+			resolveSpeculativeVelocity( duration );
+			return;
+		}
+		
 		//resolve the velocity
 		Vector3D referenceDesiredVelocity = calculateDesiredVelocityChange( duration , DEFAULT_MINIMUM_CONTACT_VELOCITY );
 		applyImpulse( calculateFrictionlessImpulse( referenceDesiredVelocity ) );
 	}
 	
+	/**
+	 * removes just enough of the closing velocity of a speculative contact for the
+	 * bodies to meet, but not pass through each other, by the end of the step. there
+	 * is no bounce, since the bodies have not hit each other yet
+	 * 
+	 * @param duration			the duration of the step
+	 */
+	protected void resolveSpeculativeVelocity( Real duration ) {
+		
+		//the bodies may approach each other at up to gap / duration
+		Real gap = this.m_penetration.multiply( Real.NEGATIVE_ONE );
+		Real allowedClosingVelocity = gap.divide( duration );
+		Real separatingVelocity = calculateSeparatingVelocity().dot( this.m_contactNormal );
+		Real excessClosingVelocity = separatingVelocity.add( allowedClosingVelocity );
+		if ( excessClosingVelocity.compareTo( Real.ZERO ) >= 0 ) {
+			return;
+		}
+		
+		//remove only the excess
+		Vector3D desiredDeltaVelocity = this.m_contactNormal.multiply( excessClosingVelocity.multiply( Real.NEGATIVE_ONE ) );
+		applyImpulse( calculateFrictionlessImpulse( desiredDeltaVelocity ) );
+	}
+	
 	/**
 	 * the default constant that defines how much rotation can be used in nonlinear
 	 * projection when resolving penetration
@@ -534,6 +575,25 @@ public class Contact {
 		return this.m_other;
 	}
 	
+	/**
+	 * @return			the unordered key of the pair of bodies in this contact. scenery
+	 * 					is keyed as <code>RigidBody.SCENERY_ID</code>
+	 * @see				PairKey#pack(int, int)
+	 */
+	public long getPairKey() {
+		return PairKey.pack( RigidBody.getId( this.m_reference ) , RigidBody.getId( this.m_other ) );
+	}
+	
+	/**
+	 * @return			if the key of this contact identifies its pair. bodies without an id
+	 * 					all share <code>RigidBody.UNASSIGNED_ID</code>, so their keys cannot
+	 * 					tell pairs apart
+	 * @see				#getPairKey()
+	 */
+	public boolean hasPairKey() {
+		return RigidBody.isIdentified( this.m_reference ) && RigidBody.isIdentified( this.m_other );
+	}
+	
 	/**
 	 * @return			the location of contact in world coordinates
 	 */
@@ -566,6 +626,14 @@ public class Contact {
 		this.m_penetration = modifiedPenetration.subtract( this.m_penetrationOffset );
 	}
 	
+	/**
+	 * @return			if the bodies in this contact were apart when it was generated
+	 * @see				#m_isSpeculative
+	 */
+	public boolean isSpeculative() {
+		return this.m_isSpeculative;
+	}
+	
 	/**
 	 * @return			amount of friction in this collision
 	 */
@@ -1,5 +1,6 @@
 package rigidbody.collision.generate;
 
+import rigidbody.RigidBody;
 import _lib.LinkedList;
 import _math.Real;
 import _math.Vector3D;
@@ -25,6 +26,14 @@ abstract public class ContactGenerator {
 	 */
 	private Real m_penetrationOffset;
 	
+	/**
+	 * the duration of a step if speculative contacts are generated, or <code>null</code>
+	 * if contacts are only generated for primitives that touch
+	 * 
+	 * @see				#setSpeculativeDuration(Real)
+	 */
+	private Real m_speculativeDuration = null;
+	
 	/**
 	 * creates a collision generator with the given friction and elasticity
 	 * involved in collisions
@@ -61,6 +70,60 @@ abstract public class ContactGenerator {
 		return this.m_penetrationOffset;
 	}
 	
+	/**
+	 * turns speculative contacts on or off. with speculative contacts, primitives
+	 * that are apart are still given a contact if the gap between them is smaller than
+	 * the distance their bodies could close in one step. such a contact has a negative
+	 * penetration, and it lets the bodies approach each other by no more than the gap
+	 * in the step, so fast bodies are stopped at the surface instead of passing through it.
+	 * this extends the penetration offset, which is a fixed margin, into a margin that
+	 * grows with the speed of the bodies
+	 * 
+	 * @param duration		the duration of a step, or <code>null</code> to only generate
+	 * 						contacts for primitives that touch
+	 * @see					Contact#isSpeculative()
+	 */
+	public void setSpeculativeDuration( Real duration ) {
+		this.m_speculativeDuration = duration;
+	}
+	
+	/**
+	 * @return			the duration of a step if speculative contacts are generated, or <code>null</code>
+	 * @see				#setSpeculativeDuration(Real)
+	 */
+	public Real getSpeculativeDuration() {
+		return this.m_speculativeDuration;
+	}
+	
+	/**
+	 * ends the current frame. generators that remember data for pairs of primitives
+	 * forget the pairs that were not tested since the last call. the default does nothing
+	 */
+	public void endFrame() {
+		
+	}
+	
+	/**
+	 * determines how far apart two primitives may be and still be given a contact.
+	 * this is the distance the bodies would travel towards each other in one step if
+	 * they moved straight at each other with their current relative velocity. rotation
+	 * is not taken into account
+	 * 
+	 * @param body1		a body, or <code>null</code> for scenery
+	 * @param body2		another body, or <code>null</code> for scenery
+	 * @return			the speculative margin, or 0 if speculative contacts are off
+	 */
+	protected double getSpeculativeMargin( RigidBody body1 , RigidBody body2 ) {
+		if ( this.m_speculativeDuration == null ) {
+			return 0;
+		}
+		Vector3D relativeVelocity = body1 == null ? Vector3D.ZERO : body1.getVelocity();
+		if ( body2 != null ) {
+			relativeVelocity = relativeVelocity.subtract( body2.getVelocity() );
+		}
+		return relativeVelocity.magnitude().value() * this.m_speculativeDuration.value();
+	}
+	
 	/**
 	 * generates all contacts between <code>p1</code> and <code>p2</code>
 	 *  
@@ -70,6 +133,27 @@ abstract public class ContactGenerator {
 	 */
 	abstract public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 );
 	
+	/**
+	 * creates a contact from coordinates computed without intermediate <code>Vector3D</code>s,
+	 * using the friction, elasticity and penetration offset of this generator
+	 * 
+	 * @param reference		the body the contact normal points towards
+	 * @param other			the other body, or <code>null</code> for scenery
+	 * @param pointX		x coordinate of the contact point
+	 * @param pointY		y coordinate of the contact point
+	 * @param pointZ		z coordinate of the contact point
+	 * @param normalX		x component of the unit contact normal
+	 * @param normalY		y component of the unit contact normal
+	 * @param normalZ		z component of the unit contact normal
+	 * @param penetration	the depth of the contact
+	 * @return				the new contact
+	 */
+	protected Contact createContact( RigidBody reference , RigidBody other , double pointX , double pointY , double pointZ , double normalX , double normalY , double normalZ , double penetration ) {
+		Vector3D contactPoint = new Vector3D( new Real( pointX ) , new Real( pointY ) , new Real( pointZ ) );
+		Vector3D contactNormal = new Vector3D( new Real( normalX ) , new Real( normalY ) , new Real( normalZ ) );
+		return new Contact( reference , other , contactPoint , contactNormal , new Real( penetration ) , this.getPenetrationOffset() , this.getFriction() , this.getElasticity() );
+	}
+	
 	/**
 	 * determines the distance of a point to a plane. applies the formula
 	 * <p>
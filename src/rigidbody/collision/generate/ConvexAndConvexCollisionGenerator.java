@@ -0,0 +1,1043 @@
+package rigidbody.collision.generate;
+
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _lib.PairKey;
+import _lib.PairMap;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for any two convex primitives that provide a support
+ * mapping. the distance between the core shapes is found with the GJK algorithm
+ * and, if the cores overlap, the penetration is found by expanding a polytope
+ * with the EPA algorithm. the margins of both shapes are then added back on, so
+ * spheres are handled exactly and rounded shapes rarely need EPA.
+ * <p>
+ * the final GJK simplex of every pair of primitives is cached, with its support
+ * points in the local coordinates of their bodies, and moved with the bodies to
+ * start the search in the next frame. pairs that move little between frames are
+ * usually proven separate, or overlapping, straight away. pairs that were not
+ * tested in a frame are forgotten by <code>endFrame()</code>. triangles handed in
+ * by a <code>ConvexAndTriangleMeshCollisionGenerator</code> are not cached, since
+ * one triangle object stands for every triangle of the mesh
+ * <p>
+ * all intermediate values are held in arrays owned by this generator, so an
+ * instance must not be used by more than one thread at a time
+ *
+ * @see			SupportMapped
+ */
+public class ConvexAndConvexCollisionGenerator extends ContactGenerator {
+
+	/**
+	 * the maximum number of GJK iterations before the current estimate is accepted
+	 */
+	final private static int MAX_GJK_ITERATIONS = 64;
+
+	/**
+	 * the maximum number of vertices in the EPA polytope
+	 */
+	final private static int MAX_EPA_VERTICES = 64;
+
+	/**
+	 * the maximum number of faces in the EPA polytope
+	 */
+	final private static int MAX_EPA_FACES = 2 * MAX_EPA_VERTICES;
+
+	/**
+	 * GJK stops once the distance estimate improves by less than this fraction
+	 */
+	final private static double RELATIVE_TOLERANCE = 1e-6;
+
+	/**
+	 * squared distances below this are treated as zero
+	 */
+	final private static double ZERO_TOLERANCE = 1e-12;
+
+	/**
+	 * the size of a cached simplex: its number of points, then for each point
+	 * the support points of both primitives
+	 */
+	final private static int CACHED_SIMPLEX_SIZE = 1 + 4 * 6;
+
+	/**
+	 * the core of a sphere, used to test spheres that have no primitive
+	 */
+	final private static SupportMapped POINT = new SupportMapped() {
+
+		@Override
+		public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+			result[ 0 ] = 0;
+			result[ 1 ] = 0;
+			result[ 2 ] = 0;
+		}
+
+		@Override
+		public double getMargin() {
+			return 0;
+		}
+	};
+
+	/**
+	 * the final simplex of each pair of primitives tested in the current and the
+	 * previous frame. the support points are in the local coordinates of their
+	 * bodies, the one of the primitive with the smaller id first
+	 */
+	private PairMap < double[] > m_currentSimplices = new PairMap < double[] > ();
+	private PairMap < double[] > m_previousSimplices = new PairMap < double[] > ();
+
+	//the rotation and position of both primitives
+	final private double[] m_rotation1 = new double[ 9 ];
+	final private double[] m_rotation2 = new double[ 9 ];
+	final private double[] m_position1 = new double[ 3 ];
+	final private double[] m_position2 = new double[ 3 ];
+
+	//scratch space for support queries
+	final private double[] m_localDirection = new double[ 3 ];
+	final private double[] m_localPoint = new double[ 3 ];
+	final private double[] m_support1 = new double[ 3 ];
+	final private double[] m_support2 = new double[ 3 ];
+
+	//the GJK simplex. point i of the minkowski difference is stored at 3i in
+	//m_simplex and was made from the support points at 3i in m_simplex1 and m_simplex2
+	final private double[] m_simplex = new double[ 12 ];
+	final private double[] m_simplex1 = new double[ 12 ];
+	final private double[] m_simplex2 = new double[ 12 ];
+	final private double[] m_weights = new double[ 4 ];
+	final private double[] m_closestWeights = new double[ 4 ];
+	final private double[] m_faceWeights = new double[ 3 ];
+	private int m_simplexSize;
+
+	//the closest point of the simplex to the origin
+	final private double[] m_closest = new double[ 3 ];
+
+	//the EPA polytope
+	final private double[] m_polytope = new double[ 3 * MAX_EPA_VERTICES ];
+	final private double[] m_polytope1 = new double[ 3 * MAX_EPA_VERTICES ];
+	final private double[] m_polytope2 = new double[ 3 * MAX_EPA_VERTICES ];
+	final private int[] m_faces = new int[ 3 * MAX_EPA_FACES ];
+	final private double[] m_faceNormals = new double[ 3 * MAX_EPA_FACES ];
+	final private double[] m_faceDistances = new double[ MAX_EPA_FACES ];
+	final private boolean[] m_faceAlive = new boolean[ MAX_EPA_FACES ];
+	final private int[] m_horizon = new int[ 6 * MAX_EPA_FACES ];
+	private int m_numVertices;
+	private int m_numFaces;
+
+	//the result of a query: witness points on both cores, the direction of
+	//the closest point of the minkowski difference and the signed core distance
+	final private double[] m_witness1 = new double[ 3 ];
+	final private double[] m_witness2 = new double[ 3 ];
+	final private double[] m_direction = new double[ 3 ];
+	private double m_distance;
+
+	/**
+	 * constructs a convex to convex collision generator using the given amount
+	 * of friction and elasticity in every collision
+	 *
+	 * @param friction
+	 * @param elasticity
+	 * @param penetrationOffset
+	 */
+	public ConvexAndConvexCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * forgets every cached simplex. should be called if bodies are moved
+	 * discontinuously, e.g. when a world is reset
+	 */
+	public void clearCache() {
+		this.m_currentSimplices.clear();
+		this.m_previousSimplices.clear();
+	}
+
+	/**
+	 * forgets the simplices of the pairs that were not tested since the last call
+	 */
+	@Override
+	public void endFrame() {
+		PairMap < double[] > swap = this.m_previousSimplices;
+		this.m_previousSimplices = this.m_currentSimplices;
+		this.m_currentSimplices = swap;
+		this.m_currentSimplices.clear();
+	}
+
+	/**
+	 * returns the contact between two support-mapped primitives, if any
+	 *
+	 * @throws IllegalArgumentException			if either <code>p1</code> or <code>p2</code> is not <code>SupportMapped</code>
+	 * @see										SupportMapped
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( !( p1 instanceof SupportMapped ) ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( SupportMapped.class.getName() , p1.getClass().getName() ) );
+		}
+		if ( !( p2 instanceof SupportMapped ) ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( SupportMapped.class.getName() , p2.getClass().getName() ) );
+		}
+		SupportMapped shape1 = ( SupportMapped ) p1;
+		SupportMapped shape2 = ( SupportMapped ) p2;
+		LinkedList < Contact > contactsList = new LinkedList < Contact > ();
+
+		//cache the poses of both bodies so each support query is a few multiplications
+		loadPose( p1.getBody() , this.m_rotation1 , this.m_position1 );
+		loadPose( p2.getBody() , this.m_rotation2 , this.m_position2 );
+		double margin1 = shape1.getMargin();
+		double margin2 = shape2.getMargin();
+		double marginSum = margin1 + margin2;
+		double speculativeMargin = getSpeculativeMargin( p1.getBody() , p2.getBody() );
+
+		//start from the simplex of the last frame, or else from the direction between the centers
+		boolean useCache = !( p1 instanceof PrimitiveTriangle ) && !( p2 instanceof PrimitiveTriangle );
+		boolean isSwapped = p1.getId() > p2.getId();
+		double[] cachedSimplex = useCache ? findCachedSimplex( PairKey.pack( p1.getId() , p2.getId() ) ) : null;
+		this.m_simplexSize = 0;
+		if ( cachedSimplex != null ) {
+			loadSimplex( cachedSimplex , isSwapped );
+		}
+		if ( this.m_simplexSize == 0 ) {
+			set( this.m_direction , this.m_position1[ 0 ] - this.m_position2[ 0 ] , this.m_position1[ 1 ] - this.m_position2[ 1 ] , this.m_position1[ 2 ] - this.m_position2[ 2 ] );
+		}
+
+		//find the distance between the cores, or their penetration if they overlap
+		boolean separated = !runGJK( shape1 , shape2 , marginSum + speculativeMargin );
+		if ( !separated && this.m_distance <= 0 ) {
+			if ( !runEPA( shape1 , shape2 ) ) {
+
+				//the minkowski difference is flat, so fall back on the
+				//direction between the centers
+				set( this.m_direction , this.m_position1[ 0 ] - this.m_position2[ 0 ] , this.m_position1[ 1 ] - this.m_position2[ 1 ] , this.m_position1[ 2 ] - this.m_position2[ 2 ] );
+				if ( dot( this.m_direction , this.m_direction ) < ZERO_TOLERANCE ) {
+					set( this.m_direction , 0 , 1 , 0 );
+				}
+				normalize( this.m_direction );
+				System.arraycopy( this.m_position1 , 0 , this.m_witness1 , 0 , 3 );
+				System.arraycopy( this.m_position2 , 0 , this.m_witness2 , 0 , 3 );
+				this.m_distance = 0;
+			}
+		}
+
+		//remember the simplex for the next frame
+		if ( cachedSimplex != null ) {
+			storeSimplex( cachedSimplex , isSwapped );
+		}
+		if ( separated ) {
+			return contactsList;
+		}
+
+		//the contact normal points from the second primitive to the first,
+		//which is the direction the minkowski difference lies in
+		double normalX = this.m_direction[ 0 ];
+		double normalY = this.m_direction[ 1 ];
+		double normalZ = this.m_direction[ 2 ];
+		double penetration = marginSum - this.m_distance;
+		if ( penetration < -speculativeMargin ) {
+			return contactsList;
+		}
+
+		//move the witness points from the cores out to the surfaces and
+		//take the point halfway between them
+		double contactX = 0.5 * ( this.m_witness1[ 0 ] - normalX * margin1 + this.m_witness2[ 0 ] + normalX * margin2 );
+		double contactY = 0.5 * ( this.m_witness1[ 1 ] - normalY * margin1 + this.m_witness2[ 1 ] + normalY * margin2 );
+		double contactZ = 0.5 * ( this.m_witness1[ 2 ] - normalZ * margin1 + this.m_witness2[ 2 ] + normalZ * margin2 );
+
+		contactsList.add( createContact( p1.getBody() , p2.getBody() , contactX , contactY , contactZ , normalX , normalY , normalZ , penetration ) );
+		return contactsList;
+	}
+
+	/**
+	 * tests if a sphere touches a support-mapped primitive without generating a
+	 * <code>Contact</code>, so that a sphere can be tested at many positions, e.g.
+	 * along a swept path, without allocating. nothing is cached for the pair
+	 *
+	 * @param primitive							a support-mapped primitive
+	 * @param centerX							x coordinate of the center of the sphere
+	 * @param centerY							y coordinate of the center of the sphere
+	 * @param centerZ							z coordinate of the center of the sphere
+	 * @param radius							the radius of the sphere
+	 * @return									if the sphere touches or overlaps the primitive
+	 * @throws IllegalArgumentException			if <code>primitive</code> is not <code>SupportMapped</code>
+	 */
+	public boolean touchesSphere( Primitive primitive , double centerX , double centerY , double centerZ , double radius ) throws IllegalArgumentException {
+		if ( !( primitive instanceof SupportMapped ) ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( SupportMapped.class.getName() , primitive.getClass().getName() ) );
+		}
+		SupportMapped shape = ( SupportMapped ) primitive;
+		loadPose( primitive.getBody() , this.m_rotation1 , this.m_position1 );
+
+		//the sphere is its center, a point, with the radius as its margin
+		loadPose( null , this.m_rotation2 , this.m_position2 );
+		set( this.m_position2 , centerX , centerY , centerZ );
+		double marginSum = shape.getMargin() + radius;
+		this.m_simplexSize = 0;
+		set( this.m_direction , this.m_position1[ 0 ] - centerX , this.m_position1[ 1 ] - centerY , this.m_position1[ 2 ] - centerZ );
+		return runGJK( shape , POINT , marginSum ) && this.m_distance <= marginSum;
+	}
+
+	/**
+	 * runs GJK on the cores of the two shapes, starting from the simplex already in
+	 * <code>m_simplex</code>, if any, or else from the search direction in
+	 * <code>m_direction</code>. afterwards, <code>m_direction</code> holds
+	 * the unit direction of the closest point of the minkowski difference from the origin, the witness
+	 * points are filled in and <code>m_distance</code> is the distance between the cores,
+	 * or 0 if they overlap
+	 *
+	 * @param shape1		the first shape
+	 * @param shape2		the second shape
+	 * @param marginSum		the sum of the margins of the shapes, plus any speculative margin
+	 * @return				<code>false</code> if the cores are proven to be more than
+	 * 						<code>marginSum</code> apart, in which case only <code>m_direction</code> is valid
+	 * 						and the simplex holds the point that proved it
+	 */
+	private boolean runGJK( SupportMapped shape1 , SupportMapped shape2 , double marginSum ) {
+		double[] v = this.m_closest;
+		if ( this.m_simplexSize > 0 ) {
+
+			//the points of a cached simplex are still points of the minkowski difference
+			boolean containsOrigin = reduceSimplex();
+			if ( containsOrigin || dot( v , v ) <= ZERO_TOLERANCE * maxSimplexNormSquared() ) {
+				computeWitnessPoints();
+				this.m_distance = 0;
+				return true;
+			}
+		} else {
+			if ( dot( this.m_direction , this.m_direction ) < ZERO_TOLERANCE ) {
+				set( this.m_direction , 1 , 0 , 0 );
+			}
+			System.arraycopy( this.m_direction , 0 , v , 0 , 3 );
+		}
+		double vv = dot( v , v );
+
+		for ( int iteration = 0 ; iteration < MAX_GJK_ITERATIONS ; iteration ++ ) {
+
+			//find the point of the minkowski difference farthest towards the origin
+			supportMinkowski( shape1 , shape2 , -v[ 0 ] , -v[ 1 ] , -v[ 2 ] );
+			double wX = this.m_support1[ 0 ] - this.m_support2[ 0 ];
+			double wY = this.m_support1[ 1 ] - this.m_support2[ 1 ];
+			double wZ = this.m_support1[ 2 ] - this.m_support2[ 2 ];
+			double vw = v[ 0 ] * wX + v[ 1 ] * wY + v[ 2 ] * wZ;
+
+			//if the whole minkowski difference lies farther along v than the margins,
+			//the shapes cannot touch
+			if ( vw > 0 && vw * vw > vv * marginSum * marginSum ) {
+				copyNormalized( v , this.m_direction );
+				set( this.m_simplex , 0 , wX , wY , wZ );
+				set( this.m_simplex1 , 0 , this.m_support1[ 0 ] , this.m_support1[ 1 ] , this.m_support1[ 2 ] );
+				set( this.m_simplex2 , 0 , this.m_support2[ 0 ] , this.m_support2[ 1 ] , this.m_support2[ 2 ] );
+				this.m_simplexSize = 1;
+				return false;
+			}
+
+			//stop when the new point brings v no closer to the origin. the
+			//starting direction is not a point of the difference, so it cannot end the search
+			if ( this.m_simplexSize > 0 && ( vv - vw <= RELATIVE_TOLERANCE * vv || isInSimplex( wX , wY , wZ ) ) ) {
+				break;
+			}
+
+			//add the new point and find the closest point of the new simplex
+			int idx = 3 * this.m_simplexSize;
+			set( this.m_simplex , idx , wX , wY , wZ );
+			set( this.m_simplex1 , idx , this.m_support1[ 0 ] , this.m_support1[ 1 ] , this.m_support1[ 2 ] );
+			set( this.m_simplex2 , idx , this.m_support2[ 0 ] , this.m_support2[ 1 ] , this.m_support2[ 2 ] );
+			this.m_simplexSize ++;
+			boolean containsOrigin = reduceSimplex();
+			vv = dot( v , v );
+			if ( containsOrigin || vv <= ZERO_TOLERANCE * maxSimplexNormSquared() ) {
+
+				//the cores overlap
+				computeWitnessPoints();
+				this.m_distance = 0;
+				return true;
+			}
+		}
+
+		//the cores are separate, and v is the closest point of the minkowski difference
+		computeWitnessPoints();
+		this.m_distance = Math.sqrt( vv );
+		copyNormalized( v , this.m_direction );
+		return true;
+	}
+
+	/**
+	 * replaces the simplex with the smallest sub-simplex containing its closest point
+	 * to the origin, and stores that point in <code>m_closest</code> and its
+	 * barycentric coordinates in <code>m_weights</code>
+	 *
+	 * @return			<code>true</code> if the simplex is a tetrahedron containing the origin
+	 */
+	private boolean reduceSimplex() {
+		double[] s = this.m_simplex;
+		double[] weights = this.m_weights;
+		switch ( this.m_simplexSize ) {
+			case 1:
+				weights[ 0 ] = 1;
+				break;
+			case 2:
+				closestOnSegment( 0 , 1 , weights );
+				break;
+			case 3:
+				closestOnTriangle( 0 , 1 , 2 , this.m_faceWeights );
+				weights[ 0 ] = this.m_faceWeights[ 0 ];
+				weights[ 1 ] = this.m_faceWeights[ 1 ];
+				weights[ 2 ] = this.m_faceWeights[ 2 ];
+				break;
+			default:
+				if ( closestOnTetrahedron( weights ) ) {
+					set( this.m_closest , 0 , 0 , 0 );
+					return true;
+				}
+				break;
+		}
+
+		//drop the vertices that do not contribute to the closest point
+		int kept = 0;
+		double closestX = 0 , closestY = 0 , closestZ = 0;
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			if ( weights[ i ] > 0 ) {
+				closestX += weights[ i ] * s[ 3 * i ];
+				closestY += weights[ i ] * s[ 3 * i + 1 ];
+				closestZ += weights[ i ] * s[ 3 * i + 2 ];
+				if ( kept != i ) {
+					System.arraycopy( s , 3 * i , s , 3 * kept , 3 );
+					System.arraycopy( this.m_simplex1 , 3 * i , this.m_simplex1 , 3 * kept , 3 );
+					System.arraycopy( this.m_simplex2 , 3 * i , this.m_simplex2 , 3 * kept , 3 );
+					weights[ kept ] = weights[ i ];
+				}
+				kept ++;
+			}
+		}
+		this.m_simplexSize = kept;
+		set( this.m_closest , closestX , closestY , closestZ );
+		return false;
+	}
+
+	/**
+	 * finds the barycentric coordinates of the point on the simplex segment
+	 * <code>ab</code> closest to the origin
+	 */
+	private void closestOnSegment( int a , int b , double[] weights ) {
+		double[] s = this.m_simplex;
+		double abX = s[ 3 * b ] - s[ 3 * a ];
+		double abY = s[ 3 * b + 1 ] - s[ 3 * a + 1 ];
+		double abZ = s[ 3 * b + 2 ] - s[ 3 * a + 2 ];
+		double abab = abX * abX + abY * abY + abZ * abZ;
+		double t = abab > 0 ? -( s[ 3 * a ] * abX + s[ 3 * a + 1 ] * abY + s[ 3 * a + 2 ] * abZ ) / abab : 0;
+		t = Math.max( 0 , Math.min( 1 , t ) );
+		weights[ a ] = 1 - t;
+		weights[ b ] = t;
+	}
+
+	/**
+	 * finds the barycentric coordinates of the point on the simplex triangle
+	 * <code>abc</code> closest to the origin by checking which voronoi region
+	 * of the triangle contains the origin
+	 *
+	 * @param weights		receives the weights of <code>a</code>, <code>b</code> and <code>c</code>, in that order
+	 */
+	private void closestOnTriangle( int a , int b , int c , double[] weights ) {
+		double[] s = this.m_simplex;
+		double aX = s[ 3 * a ] , aY = s[ 3 * a + 1 ] , aZ = s[ 3 * a + 2 ];
+		double bX = s[ 3 * b ] , bY = s[ 3 * b + 1 ] , bZ = s[ 3 * b + 2 ];
+		double cX = s[ 3 * c ] , cY = s[ 3 * c + 1 ] , cZ = s[ 3 * c + 2 ];
+		double abX = bX - aX , abY = bY - aY , abZ = bZ - aZ;
+		double acX = cX - aX , acY = cY - aY , acZ = cZ - aZ;
+
+		//vertex region of a
+		double d1 = -( abX * aX + abY * aY + abZ * aZ );
+		double d2 = -( acX * aX + acY * aY + acZ * aZ );
+		if ( d1 <= 0 && d2 <= 0 ) {
+			set( weights , 1 , 0 , 0 );
+			return;
+		}
+
+		//vertex region of b
+		double d3 = -( abX * bX + abY * bY + abZ * bZ );
+		double d4 = -( acX * bX + acY * bY + acZ * bZ );
+		if ( d3 >= 0 && d4 <= d3 ) {
+			set( weights , 0 , 1 , 0 );
+			return;
+		}
+
+		//edge region of ab
+		double vc = d1 * d4 - d3 * d2;
+		if ( vc <= 0 && d1 >= 0 && d3 <= 0 ) {
+			double t = d1 / ( d1 - d3 );
+			set( weights , 1 - t , t , 0 );
+			return;
+		}
+
+		//vertex region of c
+		double d5 = -( abX * cX + abY * cY + abZ * cZ );
+		double d6 = -( acX * cX + acY * cY + acZ * cZ );
+		if ( d6 >= 0 && d5 <= d6 ) {
+			set( weights , 0 , 0 , 1 );
+			return;
+		}
+
+		//edge region of ac
+		double vb = d5 * d2 - d1 * d6;
+		if ( vb <= 0 && d2 >= 0 && d6 <= 0 ) {
+			double t = d2 / ( d2 - d6 );
+			set( weights , 1 - t , 0 , t );
+			return;
+		}
+
+		//edge region of bc
+		double va = d3 * d6 - d5 * d4;
+		if ( va <= 0 && ( d4 - d3 ) >= 0 && ( d5 - d6 ) >= 0 ) {
+			double t = ( d4 - d3 ) / ( ( d4 - d3 ) + ( d5 - d6 ) );
+			set( weights , 0 , 1 - t , t );
+			return;
+		}
+
+		//face region
+		double denominator = va + vb + vc;
+		if ( denominator <= 0 ) {
+
+			//the triangle is degenerate, so keep its first edge
+			closestOnSegment( a , b , this.m_closestWeights );
+			set( weights , this.m_closestWeights[ a ] , this.m_closestWeights[ b ] , 0 );
+			return;
+		}
+		double v = vb / denominator;
+		double w = vc / denominator;
+		set( weights , 1 - v - w , v , w );
+	}
+
+	/**
+	 * finds the barycentric coordinates of the point on the simplex tetrahedron
+	 * closest to the origin. only the faces that the origin lies outside of
+	 * need to be checked
+	 *
+	 * @return			<code>true</code> if the origin lies inside the tetrahedron
+	 */
+	private boolean closestOnTetrahedron( double[] weights ) {
+		boolean inside = true;
+		double bestDistanceSquared = Double.POSITIVE_INFINITY;
+		for ( int face = 0 ; face < 4 ; face ++ ) {
+
+			//each face leaves out one vertex
+			int a = face == 0 ? 1 : 0;
+			int b = face <= 1 ? 2 : 1;
+			int c = face <= 2 ? 3 : 2;
+			if ( !isOriginOutsideFace( a , b , c , face ) ) {
+				continue;
+			}
+			inside = false;
+			closestOnTriangle( a , b , c , this.m_faceWeights );
+			double x = 0 , y = 0 , z = 0;
+			for ( int i = 0 ; i < 3 ; i ++ ) {
+				int vertex = i == 0 ? a : ( i == 1 ? b : c );
+				x += this.m_faceWeights[ i ] * this.m_simplex[ 3 * vertex ];
+				y += this.m_faceWeights[ i ] * this.m_simplex[ 3 * vertex + 1 ];
+				z += this.m_faceWeights[ i ] * this.m_simplex[ 3 * vertex + 2 ];
+			}
+			double distanceSquared = x * x + y * y + z * z;
+			if ( distanceSquared < bestDistanceSquared ) {
+				bestDistanceSquared = distanceSquared;
+				weights[ face ] = 0;
+				weights[ a ] = this.m_faceWeights[ 0 ];
+				weights[ b ] = this.m_faceWeights[ 1 ];
+				weights[ c ] = this.m_faceWeights[ 2 ];
+			}
+		}
+		if ( inside ) {
+			weights[ 0 ] = weights[ 1 ] = weights[ 2 ] = weights[ 3 ] = 0.25;
+		}
+		return inside;
+	}
+
+	/**
+	 * @return			if the origin and the vertex <code>opposite</code> lie on different
+	 * 					sides of the plane through the simplex triangle <code>abc</code>. a flat
+	 * 					tetrahedron treats every face as facing the origin
+	 */
+	private boolean isOriginOutsideFace( int a , int b , int c , int opposite ) {
+		double[] s = this.m_simplex;
+		double abX = s[ 3 * b ] - s[ 3 * a ] , abY = s[ 3 * b + 1 ] - s[ 3 * a + 1 ] , abZ = s[ 3 * b + 2 ] - s[ 3 * a + 2 ];
+		double acX = s[ 3 * c ] - s[ 3 * a ] , acY = s[ 3 * c + 1 ] - s[ 3 * a + 1 ] , acZ = s[ 3 * c + 2 ] - s[ 3 * a + 2 ];
+		double nX = abY * acZ - abZ * acY;
+		double nY = abZ * acX - abX * acZ;
+		double nZ = abX * acY - abY * acX;
+		double signOrigin = -( nX * s[ 3 * a ] + nY * s[ 3 * a + 1 ] + nZ * s[ 3 * a + 2 ] );
+		double signOpposite = nX * ( s[ 3 * opposite ] - s[ 3 * a ] ) + nY * ( s[ 3 * opposite + 1 ] - s[ 3 * a + 1 ] ) + nZ * ( s[ 3 * opposite + 2 ] - s[ 3 * a + 2 ] );
+		if ( signOpposite * signOpposite < ZERO_TOLERANCE * ZERO_TOLERANCE ) {
+			return true;
+		}
+		return signOrigin * signOpposite < 0;
+	}
+
+	private boolean isInSimplex( double x , double y , double z ) {
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			if ( this.m_simplex[ 3 * i ] == x && this.m_simplex[ 3 * i + 1 ] == y && this.m_simplex[ 3 * i + 2 ] == z ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double maxSimplexNormSquared() {
+		double max = 0;
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			double x = this.m_simplex[ 3 * i ] , y = this.m_simplex[ 3 * i + 1 ] , z = this.m_simplex[ 3 * i + 2 ];
+			max = Math.max( max , x * x + y * y + z * z );
+		}
+		return max;
+	}
+
+	/**
+	 * combines the support points of the simplex with the current weights
+	 * to find the closest points on both cores
+	 */
+	private void computeWitnessPoints() {
+		set( this.m_witness1 , 0 , 0 , 0 );
+		set( this.m_witness2 , 0 , 0 , 0 );
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+				this.m_witness1[ axis ] += this.m_weights[ i ] * this.m_simplex1[ 3 * i + axis ];
+				this.m_witness2[ axis ] += this.m_weights[ i ] * this.m_simplex2[ 3 * i + axis ];
+			}
+		}
+	}
+
+	/**
+	 * runs EPA on the cores of two overlapping shapes, starting from the final GJK simplex.
+	 * afterwards, <code>m_direction</code> holds the unit direction opposite the
+	 * shallowest face of the minkowski difference, <code>m_distance</code> is minus the depth
+	 * of the overlap and the witness points are filled in
+	 *
+	 * @return			<code>false</code> if the minkowski difference has no volume
+	 */
+	private boolean runEPA( SupportMapped shape1 , SupportMapped shape2 ) {
+
+		//copy the simplex into the polytope and blow it up into a tetrahedron
+		this.m_numVertices = 0;
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			addPolytopeVertex( this.m_simplex , this.m_simplex1 , this.m_simplex2 , 3 * i );
+		}
+		if ( this.m_numVertices == 1 && !expandFromPoint( shape1 , shape2 ) ) {
+			return false;
+		}
+		if ( this.m_numVertices == 2 && !expandFromSegment( shape1 , shape2 ) ) {
+			return false;
+		}
+		if ( this.m_numVertices == 3 && !expandFromTriangle( shape1 , shape2 ) ) {
+			return false;
+		}
+
+		//build the four faces of the tetrahedron, wound so their normals point outwards
+		this.m_numFaces = 0;
+		addPolytopeFace( 0 , 1 , 2 , 3 );
+		addPolytopeFace( 0 , 1 , 3 , 2 );
+		addPolytopeFace( 0 , 2 , 3 , 1 );
+		addPolytopeFace( 1 , 2 , 3 , 0 );
+
+		int closestFace = -1;
+		while ( true ) {
+
+			//find the face closest to the origin
+			closestFace = -1;
+			double closestDistance = Double.POSITIVE_INFINITY;
+			for ( int face = 0 ; face < this.m_numFaces ; face ++ ) {
+				if ( this.m_faceAlive[ face ] && this.m_faceDistances[ face ] < closestDistance ) {
+					closestDistance = this.m_faceDistances[ face ];
+					closestFace = face;
+				}
+			}
+			if ( closestFace < 0 ) {
+				return false;
+			}
+
+			//push the polytope out along the normal of that face
+			double nX = this.m_faceNormals[ 3 * closestFace ];
+			double nY = this.m_faceNormals[ 3 * closestFace + 1 ];
+			double nZ = this.m_faceNormals[ 3 * closestFace + 2 ];
+			supportMinkowski( shape1 , shape2 , nX , nY , nZ );
+			double wX = this.m_support1[ 0 ] - this.m_support2[ 0 ];
+			double wY = this.m_support1[ 1 ] - this.m_support2[ 1 ];
+			double wZ = this.m_support1[ 2 ] - this.m_support2[ 2 ];
+			double supportDistance = nX * wX + nY * wY + nZ * wZ;
+
+			//stop once the face is on the boundary of the minkowski difference
+			if ( supportDistance - closestDistance <= RELATIVE_TOLERANCE * Math.max( 1 , Math.abs( supportDistance ) )
+					|| this.m_numVertices == MAX_EPA_VERTICES ) {
+				break;
+			}
+			int newVertex = this.m_numVertices;
+			set( this.m_polytope , 3 * newVertex , wX , wY , wZ );
+			set( this.m_polytope1 , 3 * newVertex , this.m_support1[ 0 ] , this.m_support1[ 1 ] , this.m_support1[ 2 ] );
+			set( this.m_polytope2 , 3 * newVertex , this.m_support2[ 0 ] , this.m_support2[ 1 ] , this.m_support2[ 2 ] );
+			this.m_numVertices ++;
+
+			//remove every face the new vertex can see, keeping the edges
+			//around the hole they leave
+			int numHorizonEdges = 0;
+			for ( int face = 0 ; face < this.m_numFaces ; face ++ ) {
+				if ( !this.m_faceAlive[ face ] ) {
+					continue;
+				}
+				int a = this.m_faces[ 3 * face ];
+				double visibility = this.m_faceNormals[ 3 * face ] * ( wX - this.m_polytope[ 3 * a ] )
+									+ this.m_faceNormals[ 3 * face + 1 ] * ( wY - this.m_polytope[ 3 * a + 1 ] )
+									+ this.m_faceNormals[ 3 * face + 2 ] * ( wZ - this.m_polytope[ 3 * a + 2 ] );
+				if ( visibility <= 0 ) {
+					continue;
+				}
+				this.m_faceAlive[ face ] = false;
+				for ( int edge = 0 ; edge < 3 ; edge ++ ) {
+					int from = this.m_faces[ 3 * face + edge ];
+					int to = this.m_faces[ 3 * face + ( edge + 1 ) % 3 ];
+
+					//an edge shared by two removed faces is inside the hole
+					boolean shared = false;
+					for ( int other = 0 ; other < numHorizonEdges ; other ++ ) {
+						if ( this.m_horizon[ 2 * other ] == to && this.m_horizon[ 2 * other + 1 ] == from ) {
+							numHorizonEdges --;
+							this.m_horizon[ 2 * other ] = this.m_horizon[ 2 * numHorizonEdges ];
+							this.m_horizon[ 2 * other + 1 ] = this.m_horizon[ 2 * numHorizonEdges + 1 ];
+							shared = true;
+							break;
+						}
+					}
+					if ( !shared ) {
+						this.m_horizon[ 2 * numHorizonEdges ] = from;
+						this.m_horizon[ 2 * numHorizonEdges + 1 ] = to;
+						numHorizonEdges ++;
+					}
+				}
+			}
+
+			//reclaim the slots of removed faces before patching the hole
+			int liveFaces = 0;
+			for ( int face = 0 ; face < this.m_numFaces ; face ++ ) {
+				if ( this.m_faceAlive[ face ] ) {
+					if ( liveFaces != face ) {
+						System.arraycopy( this.m_faces , 3 * face , this.m_faces , 3 * liveFaces , 3 );
+						System.arraycopy( this.m_faceNormals , 3 * face , this.m_faceNormals , 3 * liveFaces , 3 );
+						this.m_faceDistances[ liveFaces ] = this.m_faceDistances[ face ];
+						this.m_faceAlive[ liveFaces ] = true;
+					}
+					liveFaces ++;
+				}
+			}
+			this.m_numFaces = liveFaces;
+			if ( this.m_numFaces + numHorizonEdges > MAX_EPA_FACES ) {
+				return false;
+			}
+
+			//connect the new vertex to every edge of the horizon
+			for ( int edge = 0 ; edge < numHorizonEdges ; edge ++ ) {
+				setPolytopeFace( this.m_numFaces ++ , this.m_horizon[ 2 * edge ] , this.m_horizon[ 2 * edge + 1 ] , newVertex );
+			}
+		}
+
+		//the point of the boundary closest to the origin is the projection of the
+		//origin onto the closest face. the minkowski difference lies opposite the face normal
+		double distance = this.m_faceDistances[ closestFace ];
+		set( this.m_direction , -this.m_faceNormals[ 3 * closestFace ] , -this.m_faceNormals[ 3 * closestFace + 1 ] , -this.m_faceNormals[ 3 * closestFace + 2 ] );
+		int a = this.m_faces[ 3 * closestFace ];
+		int b = this.m_faces[ 3 * closestFace + 1 ];
+		int c = this.m_faces[ 3 * closestFace + 2 ];
+
+		//reuse the simplex to find the barycentric coordinates of the projection
+		this.m_simplexSize = 3;
+		set( this.m_simplex , 0 , this.m_polytope[ 3 * a ] + this.m_direction[ 0 ] * distance , this.m_polytope[ 3 * a + 1 ] + this.m_direction[ 1 ] * distance , this.m_polytope[ 3 * a + 2 ] + this.m_direction[ 2 ] * distance );
+		set( this.m_simplex , 3 , this.m_polytope[ 3 * b ] + this.m_direction[ 0 ] * distance , this.m_polytope[ 3 * b + 1 ] + this.m_direction[ 1 ] * distance , this.m_polytope[ 3 * b + 2 ] + this.m_direction[ 2 ] * distance );
+		set( this.m_simplex , 6 , this.m_polytope[ 3 * c ] + this.m_direction[ 0 ] * distance , this.m_polytope[ 3 * c + 1 ] + this.m_direction[ 1 ] * distance , this.m_polytope[ 3 * c + 2 ] + this.m_direction[ 2 ] * distance );
+		closestOnTriangle( 0 , 1 , 2 , this.m_weights );
+		System.arraycopy( this.m_polytope1 , 3 * a , this.m_simplex1 , 0 , 3 );
+		System.arraycopy( this.m_polytope1 , 3 * b , this.m_simplex1 , 3 , 3 );
+		System.arraycopy( this.m_polytope1 , 3 * c , this.m_simplex1 , 6 , 3 );
+		System.arraycopy( this.m_polytope2 , 3 * a , this.m_simplex2 , 0 , 3 );
+		System.arraycopy( this.m_polytope2 , 3 * b , this.m_simplex2 , 3 , 3 );
+		System.arraycopy( this.m_polytope2 , 3 * c , this.m_simplex2 , 6 , 3 );
+		computeWitnessPoints();
+		this.m_distance = -distance;
+		return true;
+	}
+
+	/**
+	 * adds a second vertex to a polytope that is a single point
+	 */
+	private boolean expandFromPoint( SupportMapped shape1 , SupportMapped shape2 ) {
+		for ( int axis = 0 ; axis < 6 ; axis ++ ) {
+			double sign = axis < 3 ? 1 : -1;
+			supportMinkowski( shape1 , shape2 , axis % 3 == 0 ? sign : 0 , axis % 3 == 1 ? sign : 0 , axis % 3 == 2 ? sign : 0 );
+			double dX = this.m_support1[ 0 ] - this.m_support2[ 0 ] - this.m_polytope[ 0 ];
+			double dY = this.m_support1[ 1 ] - this.m_support2[ 1 ] - this.m_polytope[ 1 ];
+			double dZ = this.m_support1[ 2 ] - this.m_support2[ 2 ] - this.m_polytope[ 2 ];
+			if ( dX * dX + dY * dY + dZ * dZ > ZERO_TOLERANCE ) {
+				addSupportToPolytope();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * adds a third vertex to a polytope that is a segment by searching
+	 * around the segment
+	 */
+	private boolean expandFromSegment( SupportMapped shape1 , SupportMapped shape2 ) {
+		double[] p = this.m_polytope;
+		double dX = p[ 3 ] - p[ 0 ] , dY = p[ 4 ] - p[ 1 ] , dZ = p[ 5 ] - p[ 2 ];
+
+		//find a direction perpendicular to the segment by crossing it with
+		//the coordinate axis it is least aligned with
+		double absX = Math.abs( dX ) , absY = Math.abs( dY ) , absZ = Math.abs( dZ );
+		double e1X , e1Y , e1Z;
+		if ( absX <= absY && absX <= absZ ) {
+			e1X = 0; e1Y = dZ; e1Z = -dY;
+		} else if ( absY <= absZ ) {
+			e1X = -dZ; e1Y = 0; e1Z = dX;
+		} else {
+			e1X = dY; e1Y = -dX; e1Z = 0;
+		}
+		double e2X = dY * e1Z - dZ * e1Y;
+		double e2Y = dZ * e1X - dX * e1Z;
+		double e2Z = dX * e1Y - dY * e1X;
+		double dd = dX * dX + dY * dY + dZ * dZ;
+		for ( int attempt = 0 ; attempt < 4 ; attempt ++ ) {
+			double sign = attempt < 2 ? 1 : -1;
+			if ( attempt % 2 == 0 ) {
+				supportMinkowski( shape1 , shape2 , sign * e1X , sign * e1Y , sign * e1Z );
+			} else {
+				supportMinkowski( shape1 , shape2 , sign * e2X , sign * e2Y , sign * e2Z );
+			}
+
+			//accept the point if it is off the line through the segment
+			double wX = this.m_support1[ 0 ] - this.m_support2[ 0 ] - p[ 0 ];
+			double wY = this.m_support1[ 1 ] - this.m_support2[ 1 ] - p[ 1 ];
+			double wZ = this.m_support1[ 2 ] - this.m_support2[ 2 ] - p[ 2 ];
+			double cX = wY * dZ - wZ * dY , cY = wZ * dX - wX * dZ , cZ = wX * dY - wY * dX;
+			if ( cX * cX + cY * cY + cZ * cZ > ZERO_TOLERANCE * dd ) {
+				addSupportToPolytope();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * adds a fourth vertex to a polytope that is a triangle by searching
+	 * along the normal of the triangle
+	 */
+	private boolean expandFromTriangle( SupportMapped shape1 , SupportMapped shape2 ) {
+		double[] p = this.m_polytope;
+		double abX = p[ 3 ] - p[ 0 ] , abY = p[ 4 ] - p[ 1 ] , abZ = p[ 5 ] - p[ 2 ];
+		double acX = p[ 6 ] - p[ 0 ] , acY = p[ 7 ] - p[ 1 ] , acZ = p[ 8 ] - p[ 2 ];
+		double nX = abY * acZ - abZ * acY;
+		double nY = abZ * acX - abX * acZ;
+		double nZ = abX * acY - abY * acX;
+		double nn = nX * nX + nY * nY + nZ * nZ;
+		if ( nn < ZERO_TOLERANCE * ZERO_TOLERANCE ) {
+			return false;
+		}
+		for ( int attempt = 0 ; attempt < 2 ; attempt ++ ) {
+			double sign = attempt == 0 ? 1 : -1;
+			supportMinkowski( shape1 , shape2 , sign * nX , sign * nY , sign * nZ );
+			double height = nX * ( this.m_support1[ 0 ] - this.m_support2[ 0 ] - p[ 0 ] )
+							+ nY * ( this.m_support1[ 1 ] - this.m_support2[ 1 ] - p[ 1 ] )
+							+ nZ * ( this.m_support1[ 2 ] - this.m_support2[ 2 ] - p[ 2 ] );
+			if ( height * height > ZERO_TOLERANCE * nn ) {
+				addSupportToPolytope();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addPolytopeVertex( double[] point , double[] point1 , double[] point2 , int offset ) {
+		int idx = 3 * this.m_numVertices;
+		System.arraycopy( point , offset , this.m_polytope , idx , 3 );
+		System.arraycopy( point1 , offset , this.m_polytope1 , idx , 3 );
+		System.arraycopy( point2 , offset , this.m_polytope2 , idx , 3 );
+		this.m_numVertices ++;
+	}
+
+	private void addSupportToPolytope() {
+		int idx = 3 * this.m_numVertices;
+		set( this.m_polytope , idx , this.m_support1[ 0 ] - this.m_support2[ 0 ] , this.m_support1[ 1 ] - this.m_support2[ 1 ] , this.m_support1[ 2 ] - this.m_support2[ 2 ] );
+		System.arraycopy( this.m_support1 , 0 , this.m_polytope1 , idx , 3 );
+		System.arraycopy( this.m_support2 , 0 , this.m_polytope2 , idx , 3 );
+		this.m_numVertices ++;
+	}
+
+	/**
+	 * adds a face of the starting tetrahedron, flipping its winding if its normal
+	 * would point towards the remaining vertex
+	 */
+	private void addPolytopeFace( int a , int b , int c , int opposite ) {
+		int face = this.m_numFaces ++;
+		setPolytopeFace( face , a , b , c );
+		double[] p = this.m_polytope;
+		double towardsOpposite = this.m_faceNormals[ 3 * face ] * ( p[ 3 * opposite ] - p[ 3 * a ] )
+								+ this.m_faceNormals[ 3 * face + 1 ] * ( p[ 3 * opposite + 1 ] - p[ 3 * a + 1 ] )
+								+ this.m_faceNormals[ 3 * face + 2 ] * ( p[ 3 * opposite + 2 ] - p[ 3 * a + 2 ] );
+		if ( towardsOpposite > 0 ) {
+			setPolytopeFace( face , a , c , b );
+		}
+	}
+
+	/**
+	 * stores the face <code>abc</code> and its unit normal and distance from the origin.
+	 * faces with no area are never chosen as the closest face
+	 */
+	private void setPolytopeFace( int face , int a , int b , int c ) {
+		double[] p = this.m_polytope;
+		double abX = p[ 3 * b ] - p[ 3 * a ] , abY = p[ 3 * b + 1 ] - p[ 3 * a + 1 ] , abZ = p[ 3 * b + 2 ] - p[ 3 * a + 2 ];
+		double acX = p[ 3 * c ] - p[ 3 * a ] , acY = p[ 3 * c + 1 ] - p[ 3 * a + 1 ] , acZ = p[ 3 * c + 2 ] - p[ 3 * a + 2 ];
+		double nX = abY * acZ - abZ * acY;
+		double nY = abZ * acX - abX * acZ;
+		double nZ = abX * acY - abY * acX;
+		double length = Math.sqrt( nX * nX + nY * nY + nZ * nZ );
+		this.m_faces[ 3 * face ] = a;
+		this.m_faces[ 3 * face + 1 ] = b;
+		this.m_faces[ 3 * face + 2 ] = c;
+		this.m_faceAlive[ face ] = true;
+		if ( length < ZERO_TOLERANCE ) {
+			set( this.m_faceNormals , 3 * face , nX , nY , nZ );
+			this.m_faceDistances[ face ] = Double.POSITIVE_INFINITY;
+			return;
+		}
+		set( this.m_faceNormals , 3 * face , nX / length , nY / length , nZ / length );
+		this.m_faceDistances[ face ] = ( nX * p[ 3 * a ] + nY * p[ 3 * a + 1 ] + nZ * p[ 3 * a + 2 ] ) / length;
+	}
+
+	/**
+	 * finds the support points of both cores for the given world direction, in
+	 * world coordinates. the first point is stored in <code>m_support1</code>
+	 * and the point of the second core in the opposite direction in <code>m_support2</code>
+	 */
+	private void supportMinkowski( SupportMapped shape1 , SupportMapped shape2 , double directionX , double directionY , double directionZ ) {
+		supportWorld( shape1 , this.m_rotation1 , this.m_position1 , directionX , directionY , directionZ , this.m_support1 );
+		supportWorld( shape2 , this.m_rotation2 , this.m_position2 , -directionX , -directionY , -directionZ , this.m_support2 );
+	}
+
+	private void supportWorld( SupportMapped shape , double[] rotation , double[] position , double directionX , double directionY , double directionZ , double[] result ) {
+
+		//rotate the direction into local coordinates with the transpose of the rotation
+		double[] local = this.m_localDirection;
+		local[ 0 ] = rotation[ 0 ] * directionX + rotation[ 3 ] * directionY + rotation[ 6 ] * directionZ;
+		local[ 1 ] = rotation[ 1 ] * directionX + rotation[ 4 ] * directionY + rotation[ 7 ] * directionZ;
+		local[ 2 ] = rotation[ 2 ] * directionX + rotation[ 5 ] * directionY + rotation[ 8 ] * directionZ;
+		shape.getLocalSupportPoint( local[ 0 ] , local[ 1 ] , local[ 2 ] , this.m_localPoint );
+
+		//then bring the support point back into world coordinates
+		double[] point = this.m_localPoint;
+		result[ 0 ] = rotation[ 0 ] * point[ 0 ] + rotation[ 1 ] * point[ 1 ] + rotation[ 2 ] * point[ 2 ] + position[ 0 ];
+		result[ 1 ] = rotation[ 3 ] * point[ 0 ] + rotation[ 4 ] * point[ 1 ] + rotation[ 5 ] * point[ 2 ] + position[ 1 ];
+		result[ 2 ] = rotation[ 6 ] * point[ 0 ] + rotation[ 7 ] * point[ 1 ] + rotation[ 8 ] * point[ 2 ] + position[ 2 ];
+	}
+
+	/**
+	 * @param key			the key of a pair of primitives
+	 * @return				the cached simplex of the pair, which is empty if the pair was
+	 * 						not tested in the last frame. the pair is kept for the next frame
+	 */
+	private double[] findCachedSimplex( long key ) {
+		double[] simplex = this.m_currentSimplices.get( key );
+		if ( simplex == null ) {
+			simplex = this.m_previousSimplices.remove( key );
+			if ( simplex == null ) {
+				simplex = new double[ CACHED_SIMPLEX_SIZE ];
+			}
+			this.m_currentSimplices.put( key , simplex );
+		}
+		return simplex;
+	}
+
+	/**
+	 * moves a cached simplex with the bodies into <code>m_simplex</code>
+	 *
+	 * @param cached		the cached simplex
+	 * @param isSwapped		if the first primitive has the larger id
+	 */
+	private void loadSimplex( double[] cached , boolean isSwapped ) {
+		this.m_simplexSize = ( int ) cached[ 0 ];
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			int offset = 1 + 6 * i;
+			toWorld( this.m_rotation1 , this.m_position1 , cached , isSwapped ? offset + 3 : offset , this.m_simplex1 , 3 * i );
+			toWorld( this.m_rotation2 , this.m_position2 , cached , isSwapped ? offset : offset + 3 , this.m_simplex2 , 3 * i );
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+				this.m_simplex[ 3 * i + axis ] = this.m_simplex1[ 3 * i + axis ] - this.m_simplex2[ 3 * i + axis ];
+			}
+		}
+	}
+
+	/**
+	 * stores the support points of <code>m_simplex</code> in a cached simplex
+	 *
+	 * @param cached		the cached simplex
+	 * @param isSwapped		if the first primitive has the larger id
+	 */
+	private void storeSimplex( double[] cached , boolean isSwapped ) {
+		cached[ 0 ] = this.m_simplexSize;
+		for ( int i = 0 ; i < this.m_simplexSize ; i ++ ) {
+			int offset = 1 + 6 * i;
+			toLocal( this.m_rotation1 , this.m_position1 , this.m_simplex1 , 3 * i , cached , isSwapped ? offset + 3 : offset );
+			toLocal( this.m_rotation2 , this.m_position2 , this.m_simplex2 , 3 * i , cached , isSwapped ? offset : offset + 3 );
+		}
+	}
+
+	private static void toWorld( double[] rotation , double[] position , double[] local , int localOffset , double[] result , int resultOffset ) {
+		double x = local[ localOffset ] , y = local[ localOffset + 1 ] , z = local[ localOffset + 2 ];
+		result[ resultOffset ] = rotation[ 0 ] * x + rotation[ 1 ] * y + rotation[ 2 ] * z + position[ 0 ];
+		result[ resultOffset + 1 ] = rotation[ 3 ] * x + rotation[ 4 ] * y + rotation[ 5 ] * z + position[ 1 ];
+		result[ resultOffset + 2 ] = rotation[ 6 ] * x + rotation[ 7 ] * y + rotation[ 8 ] * z + position[ 2 ];
+	}
+
+	private static void toLocal( double[] rotation , double[] position , double[] world , int worldOffset , double[] result , int resultOffset ) {
+		double x = world[ worldOffset ] - position[ 0 ] , y = world[ worldOffset + 1 ] - position[ 1 ] , z = world[ worldOffset + 2 ] - position[ 2 ];
+		result[ resultOffset ] = rotation[ 0 ] * x + rotation[ 3 ] * y + rotation[ 6 ] * z;
+		result[ resultOffset + 1 ] = rotation[ 1 ] * x + rotation[ 4 ] * y + rotation[ 7 ] * z;
+		result[ resultOffset + 2 ] = rotation[ 2 ] * x + rotation[ 5 ] * y + rotation[ 8 ] * z;
+	}
+
+	/**
+	 * stores the rotation and position of a body. primitives without a body,
+	 * such as pieces of static scenery, are already in world coordinates
+	 */
+	private static void loadPose( RigidBody body , double[] rotation , double[] position ) {
+		if ( body == null ) {
+			for ( int idx = 0 ; idx < 9 ; idx ++ ) {
+				rotation[ idx ] = idx % 4 == 0 ? 1 : 0;
+			}
+			position[ 0 ] = position[ 1 ] = position[ 2 ] = 0;
+			return;
+		}
+		body.getOrientation().toOrientationData( rotation );
+		Vector3D bodyPosition = body.getPosition();
+		position[ 0 ] = bodyPosition.getX().value();
+		position[ 1 ] = bodyPosition.getY().value();
+		position[ 2 ] = bodyPosition.getZ().value();
+	}
+
+	private static double dot( double[] a , double[] b ) {
+		return a[ 0 ] * b[ 0 ] + a[ 1 ] * b[ 1 ] + a[ 2 ] * b[ 2 ];
+	}
+
+	private static void set( double[] array , double x , double y , double z ) {
+		set( array , 0 , x , y , z );
+	}
+
+	private static void set( double[] array , int offset , double x , double y , double z ) {
+		array[ offset ] = x;
+		array[ offset + 1 ] = y;
+		array[ offset + 2 ] = z;
+	}
+
+	private static void normalize( double[] vector ) {
+		double length = Math.sqrt( dot( vector , vector ) );
+		if ( length > 0 ) {
+			set( vector , vector[ 0 ] / length , vector[ 1 ] / length , vector[ 2 ] / length );
+		}
+	}
+
+	private static void copyNormalized( double[] source , double[] destination ) {
+		System.arraycopy( source , 0 , destination , 0 , 3 );
+		normalize( destination );
+	}
+}
@@ -0,0 +1,142 @@
+package rigidbody.collision.generate;
+
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for any support-mapped primitive, such as a box or a convex
+ * hull, colliding with a static triangle mesh. the bounding box of the primitive
+ * is found from its support mapping and used to collect the nearby triangles from
+ * the hierarchy of the mesh. each of those triangles is then tested with a
+ * <code>ConvexAndConvexCollisionGenerator</code>.
+ * <p>
+ * spheres are better handled by the <code>SphereAndTriangleMeshCollisionGenerator</code>
+ * 
+ * @see			ConvexAndConvexCollisionGenerator
+ * @see			SphereAndTriangleMeshCollisionGenerator
+ */
+public class ConvexAndTriangleMeshCollisionGenerator extends ContactGenerator {
+
+	/**
+	 * tests the primitive against one triangle at a time
+	 */
+	final private ConvexAndConvexCollisionGenerator m_triangleGenerator;
+	
+	/**
+	 * the indices of the triangles near the primitive. grown as needed
+	 */
+	private int[] m_triangles = new int[ 64 ];
+	
+	/**
+	 * the stack used to walk the hierarchy of the mesh
+	 */
+	final private int[] m_stack = new int[ PrimitiveTriangleMesh.MAX_DEPTH ];
+	
+	/**
+	 * the triangle being tested
+	 */
+	final private PrimitiveTriangle m_triangle = new PrimitiveTriangle();
+	
+	//scratch space for finding the bounding box of the primitive
+	final private double[] m_rotation = new double[ 9 ];
+	final private double[] m_localPoint = new double[ 3 ];
+	final private double[] m_center = new double[ 3 ];
+	final private double[] m_bounds = new double[ 6 ];
+	
+	public ConvexAndTriangleMeshCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+		this.m_triangleGenerator = new ConvexAndConvexCollisionGenerator( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * also turns speculative contacts on or off for the generator that tests each triangle
+	 */
+	@Override
+	public void setSpeculativeDuration( Real duration ) {
+		super.setSpeculativeDuration( duration );
+		this.m_triangleGenerator.setSpeculativeDuration( duration );
+	}
+
+	/**
+	 * also ends the frame of the generator that tests each triangle
+	 */
+	@Override
+	public void endFrame() {
+		this.m_triangleGenerator.endFrame();
+	}
+
+	/**
+	 * returns a contact for every triangle of the mesh the primitive touches
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not <code>SupportMapped</code> or <code>p2</code> is not a <code>PrimitiveTriangleMesh</code>
+	 * @see										SupportMapped
+	 * @see										PrimitiveTriangleMesh
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof SupportMapped ) {
+			if ( p2 instanceof PrimitiveTriangleMesh ) {
+				PrimitiveTriangleMesh mesh = ( PrimitiveTriangleMesh ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				//find the triangles near the primitive, including those it could reach
+				//within the speculative duration
+				determineBounds( p1.getBody() , ( SupportMapped ) p1 , getSpeculativeMargin( p1.getBody() , null ) , this.m_bounds );
+				double[] b = this.m_bounds;
+				int numTriangles = mesh.overlapTriangles( b[ 0 ] , b[ 1 ] , b[ 2 ] , b[ 3 ] , b[ 4 ] , b[ 5 ] , this.m_triangles , this.m_stack );
+				if ( numTriangles > this.m_triangles.length ) {
+					this.m_triangles = new int[ Integer.highestOneBit( numTriangles ) << 1 ];
+					numTriangles = mesh.overlapTriangles( b[ 0 ] , b[ 1 ] , b[ 2 ] , b[ 3 ] , b[ 4 ] , b[ 5 ] , this.m_triangles , this.m_stack );
+				}
+				
+				//and test each one
+				for ( int idx = 0 ; idx < numTriangles ; idx ++ ) {
+					mesh.getTriangle( this.m_triangles[ idx ] , this.m_triangle );
+					for ( Contact contact : this.m_triangleGenerator.generateContacts( p1 , this.m_triangle ) ) {
+						contacts.add( contact );
+					}
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveTriangleMesh.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( SupportMapped.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * determines the world axis-aligned bounding box of a support-mapped shape
+	 * from its support points along each coordinate axis
+	 * 
+	 * @param body			the body the shape bounds
+	 * @param shape			the shape
+	 * @param extraMargin	how far to widen the box beyond the shape's own margin
+	 * @param result		an array of at least 6 elements to receive [ minX , minY , minZ , maxX , maxY , maxZ ]
+	 */
+	private void determineBounds( RigidBody body , SupportMapped shape , double extraMargin , double[] result ) {
+		double[] rotation = this.m_rotation;
+		double[] point = this.m_localPoint;
+		double[] center = this.m_center;
+		body.getOrientation().toOrientationData( rotation );
+		Vector3D position = body.getPosition();
+		center[ 0 ] = position.getX().value();
+		center[ 1 ] = position.getY().value();
+		center[ 2 ] = position.getZ().value();
+		double margin = shape.getMargin() + extraMargin;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			
+			//the world axis in local coordinates is a row of the rotation
+			double directionX = rotation[ 3 * axis ];
+			double directionY = rotation[ 3 * axis + 1 ];
+			double directionZ = rotation[ 3 * axis + 2 ];
+			shape.getLocalSupportPoint( directionX , directionY , directionZ , point );
+			result[ 3 + axis ] = directionX * point[ 0 ] + directionY * point[ 1 ] + directionZ * point[ 2 ] + center[ axis ] + margin;
+			shape.getLocalSupportPoint( -directionX , -directionY , -directionZ , point );
+			result[ axis ] = directionX * point[ 0 ] + directionY * point[ 1 ] + directionZ * point[ 2 ] + center[ axis ] - margin;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package rigidbody.collision.generate;
+
+import rigidbody.RigidBody;
+import _lib.LinkedList;
+import _math.Real;
+
+/**
+ * the base of the contact generators for primitives colliding with a
+ * <code>PrimitiveHeightfield</code>. only the cells under the footprint of
+ * the primitive are visited.
+ * <p>
+ * terrain is one-sided: a point below the surface is pushed back up along the
+ * normal of the terrain above it, never down through the terrain
+ * 
+ * @see			PrimitiveHeightfield
+ */
+abstract public class HeightfieldContactGenerator extends ContactGenerator {
+
+	/**
+	 * closest points nearer than this to a closest point already found are
+	 * the same point reached through a neighbouring triangle
+	 */
+	final private static double DUPLICATE_DISTANCE_SQUARED = 1e-12;
+	
+	/**
+	 * the squared cosine above which a contact normal is taken to be the face normal
+	 */
+	final private static double FACE_ALIGNMENT = 1 - 1e-9;
+	
+	/**
+	 * the triangle being tested
+	 */
+	final private PrimitiveTriangle m_triangle = new PrimitiveTriangle();
+	
+	//scratch space for sphere queries
+	final private double[] m_normal = new double[ 3 ];
+	final private double[] m_closestPoint = new double[ 3 ];
+	/**
+	 * the candidate contacts of a sphere query, eight values each: the closest point,
+	 * the normal, the penetration and 1 if the closest point is inside its triangle
+	 */
+	private double[] m_pointsFound = new double[ 8 * 16 ];
+	
+	public HeightfieldContactGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+	
+	/**
+	 * adds the contacts between a sphere and a heightfield. if the center of the
+	 * sphere is below the terrain, a single contact pushes it back up. otherwise,
+	 * each triangle under the sphere whose closest point is within a radius of
+	 * the center gets a contact
+	 * 
+	 * @param field			the heightfield
+	 * @param body			the body the sphere bounds
+	 * @param centerX		x coordinate of the center of the sphere
+	 * @param centerY		y coordinate of the center of the sphere
+	 * @param centerZ		z coordinate of the center of the sphere
+	 * @param radius		the radius of the sphere
+	 * @param contacts		the list to receive the contacts
+	 */
+	protected void generateSphereContacts( PrimitiveHeightfield field , RigidBody body , double centerX , double centerY , double centerZ , double radius , LinkedList < Contact > contacts ) {
+		double[] normal = this.m_normal;
+		
+		//a center below the surface is pushed out along the normal of the terrain
+		if ( field.contains( centerX , centerZ ) ) {
+			double height = field.getHeightAt( centerX , centerZ , normal );
+			if ( centerY < height ) {
+				double depth = ( height - centerY ) * normal[ 1 ];
+				double penetration = depth + radius;
+				double offset = 0.5 * ( depth - radius );
+				contacts.add( createContact( body , null , centerX + normal[ 0 ] * offset , centerY + normal[ 1 ] * offset , centerZ + normal[ 2 ] * offset , normal[ 0 ] , normal[ 1 ] , normal[ 2 ] , penetration ) );
+				return;
+			}
+		}
+		
+		//otherwise, check the triangles of every cell under the sphere
+		int numPointsFound = 0;
+		boolean faceFound = false;
+		int firstColumn = field.getColumn( centerX - radius );
+		int lastColumn = field.getColumn( centerX + radius );
+		int firstRow = field.getRow( centerZ - radius );
+		int lastRow = field.getRow( centerZ + radius );
+		for ( int row = firstRow ; row <= lastRow ; row ++ ) {
+			for ( int column = firstColumn ; column <= lastColumn ; column ++ ) {
+				for ( int half = 0 ; half < 2 ; half ++ ) {
+					field.getTriangle( column , row , half == 1 , this.m_triangle );
+					double[] vertices = this.m_triangle.getVertexData();
+					SphereAndTriangleMeshCollisionGenerator.closestPointOnTriangle( vertices , centerX , centerY , centerZ , this.m_closestPoint );
+					double normalX = centerX - this.m_closestPoint[ 0 ];
+					double normalY = centerY - this.m_closestPoint[ 1 ];
+					double normalZ = centerZ - this.m_closestPoint[ 2 ];
+					double distanceSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+					if ( distanceSquared > radius * radius || distanceSquared == 0 || isDuplicate( numPointsFound ) ) {
+						continue;
+					}
+					
+					//determine if the closest point is inside the triangle rather than
+					//on an edge or a corner, in which case it lies straight along the face normal
+					double abX = vertices[ 3 ] - vertices[ 0 ] , abY = vertices[ 4 ] - vertices[ 1 ] , abZ = vertices[ 5 ] - vertices[ 2 ];
+					double acX = vertices[ 6 ] - vertices[ 0 ] , acY = vertices[ 7 ] - vertices[ 1 ] , acZ = vertices[ 8 ] - vertices[ 2 ];
+					double faceX = abY * acZ - abZ * acY;
+					double faceY = abZ * acX - abX * acZ;
+					double faceZ = abX * acY - abY * acX;
+					double alignment = normalX * faceX + normalY * faceY + normalZ * faceZ;
+					boolean onFace = alignment * alignment >= FACE_ALIGNMENT * distanceSquared * ( faceX * faceX + faceY * faceY + faceZ * faceZ );
+					faceFound |= onFace;
+					
+					//remember the candidate. neighbouring triangles sharing its point are skipped
+					if ( 8 * numPointsFound == this.m_pointsFound.length ) {
+						double[] grown = new double[ 2 * this.m_pointsFound.length ];
+						System.arraycopy( this.m_pointsFound , 0 , grown , 0 , this.m_pointsFound.length );
+						this.m_pointsFound = grown;
+					}
+					double distance = Math.sqrt( distanceSquared );
+					int base = 8 * numPointsFound;
+					System.arraycopy( this.m_closestPoint , 0 , this.m_pointsFound , base , 3 );
+					this.m_pointsFound[ base + 3 ] = normalX / distance;
+					this.m_pointsFound[ base + 4 ] = normalY / distance;
+					this.m_pointsFound[ base + 5 ] = normalZ / distance;
+					this.m_pointsFound[ base + 6 ] = radius - distance;
+					this.m_pointsFound[ base + 7 ] = onFace ? 1 : 0;
+					numPointsFound ++;
+				}
+			}
+		}
+		
+		//the edges and corners inside a smooth patch of terrain are not real features, so
+		//if the sphere rests on the inside of any triangle, only those contacts are kept
+		for ( int idx = 0 ; idx < numPointsFound ; idx ++ ) {
+			double[] found = this.m_pointsFound;
+			int base = 8 * idx;
+			if ( faceFound && found[ base + 7 ] == 0 ) {
+				continue;
+			}
+			
+			//the contact point is halfway between the terrain and the surface of the sphere
+			double offset = 0.5 * found[ base + 6 ];
+			contacts.add( createContact( body , null , found[ base ] - found[ base + 3 ] * offset , found[ base + 1 ] - found[ base + 4 ] * offset , found[ base + 2 ] - found[ base + 5 ] * offset , found[ base + 3 ] , found[ base + 4 ] , found[ base + 5 ] , found[ base + 6 ] ) );
+		}
+	}
+	
+	/**
+	 * tests if a sphere touches a heightfield without generating any <code>Contact</code>s,
+	 * i.e. if its center is below the terrain or any triangle under it is within a radius
+	 * of its center
+	 * 
+	 * @param field			the heightfield
+	 * @param centerX		x coordinate of the center of the sphere
+	 * @param centerY		y coordinate of the center of the sphere
+	 * @param centerZ		z coordinate of the center of the sphere
+	 * @param radius		the radius of the sphere
+	 * @return				if the sphere touches or overlaps the terrain
+	 */
+	protected boolean isSphereTouching( PrimitiveHeightfield field , double centerX , double centerY , double centerZ , double radius ) {
+		if ( field.contains( centerX , centerZ ) && centerY < field.getHeightAt( centerX , centerZ , this.m_normal ) ) {
+			return true;
+		}
+		int firstColumn = field.getColumn( centerX - radius );
+		int lastColumn = field.getColumn( centerX + radius );
+		int firstRow = field.getRow( centerZ - radius );
+		int lastRow = field.getRow( centerZ + radius );
+		for ( int row = firstRow ; row <= lastRow ; row ++ ) {
+			for ( int column = firstColumn ; column <= lastColumn ; column ++ ) {
+				for ( int half = 0 ; half < 2 ; half ++ ) {
+					field.getTriangle( column , row , half == 1 , this.m_triangle );
+					SphereAndTriangleMeshCollisionGenerator.closestPointOnTriangle( this.m_triangle.getVertexData() , centerX , centerY , centerZ , this.m_closestPoint );
+					double dx = centerX - this.m_closestPoint[ 0 ];
+					double dy = centerY - this.m_closestPoint[ 1 ];
+					double dz = centerZ - this.m_closestPoint[ 2 ];
+					if ( dx * dx + dy * dy + dz * dz <= radius * radius ) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return			if the current closest point has already been found
+	 */
+	private boolean isDuplicate( int numPointsFound ) {
+		for ( int idx = 0 ; idx < numPointsFound ; idx ++ ) {
+			double dx = this.m_pointsFound[ 8 * idx ] - this.m_closestPoint[ 0 ];
+			double dy = this.m_pointsFound[ 8 * idx + 1 ] - this.m_closestPoint[ 1 ];
+			double dz = this.m_pointsFound[ 8 * idx + 2 ] - this.m_closestPoint[ 2 ];
+			if ( dx * dx + dy * dy + dz * dz < DUPLICATE_DISTANCE_SQUARED ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * adds a contact for a point of a primitive that is below the terrain, pushing
+	 * it back up along the normal of the terrain above it. points that are not over
+	 * the grid or are above the terrain are ignored
+	 * 
+	 * @param field			the heightfield
+	 * @param body			the body the point belongs to
+	 * @param pointX		x coordinate of the point
+	 * @param pointY		y coordinate of the point
+	 * @param pointZ		z coordinate of the point
+	 * @param contacts		the list to receive the contact
+	 */
+	protected void generatePointContact( PrimitiveHeightfield field , RigidBody body , double pointX , double pointY , double pointZ , LinkedList < Contact > contacts ) {
+		if ( !field.contains( pointX , pointZ ) ) {
+			return;
+		}
+		double[] normal = this.m_normal;
+		double height = field.getHeightAt( pointX , pointZ , normal );
+		if ( pointY <= height ) {
+			double penetration = ( height - pointY ) * normal[ 1 ];
+			double offset = 0.5 * penetration;
+			contacts.add( createContact( body , null , pointX + normal[ 0 ] * offset , pointY + normal[ 1 ] * offset , pointZ + normal[ 2 ] * offset , normal[ 0 ] , normal[ 1 ] , normal[ 2 ] , penetration ) );
+		}
+	}
+}
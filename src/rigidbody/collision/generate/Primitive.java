@@ -1,5 +1,7 @@
 package rigidbody.collision.generate;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import rigidbody.Matrix4;
 import rigidbody.RigidBody;
 import _math.Vector3D;
@@ -12,6 +14,17 @@ import _math.Vector3D;
  */
 abstract public class Primitive {
 
+	/**
+	 * hands out the ids of new <code>Primitive</code>s
+	 */
+	final private static AtomicInteger NEXT_ID = new AtomicInteger();
+	
+	/**
+	 * a number no other <code>Primitive</code> has, used by contact generators
+	 * to remember data for pairs of primitives from one frame to the next
+	 */
+	final private int m_id = NEXT_ID.getAndIncrement() & Integer.MAX_VALUE;
+	
 	/**
 	 * the <code>RigidBody</code> that is bounded by this <code>Primitive</code>
 	 */
@@ -28,6 +41,13 @@ abstract public class Primitive {
 		this.m_offset = offset;
 	}
 	
+	/**
+	 * @return			the id of this <code>Primitive</code>, which is never negative
+	 */
+	public int getId() {
+		return this.m_id;
+	}
+	
 	/**
 	 * @return			the <code>RigidBody</code> bounded by this <code>Primitive</code>
 	 */
@@ -8,7 +8,7 @@ import _math.Vector3D;
 /**
  * a box that bounds a <code>RigidBody</code> or a part of a <code>RigidBody</code>
  */
-public class PrimitiveBox extends Primitive {
+public class PrimitiveBox extends Primitive implements SupportMapped {
 
 	
 	/**
@@ -122,4 +122,19 @@ public class PrimitiveBox extends Primitive {
 				this.getHalfSize().getY().multiply( Real.abs( axis.dot( this.getYAxis() ) ) ) ).add( 
 				this.getHalfSize().getZ().multiply( Real.abs( axis.dot( this.getZAxis() ) ) ) );
 	}
+
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		result[ 0 ] = directionX < 0 ? -this.m_halfSize.getX().value() : this.m_halfSize.getX().value();
+		result[ 1 ] = directionY < 0 ? -this.m_halfSize.getY().value() : this.m_halfSize.getY().value();
+		result[ 2 ] = directionZ < 0 ? -this.m_halfSize.getZ().value() : this.m_halfSize.getZ().value();
+	}
+
+	/**
+	 * @return			always 0 because a box has sharp corners
+	 */
+	@Override
+	public double getMargin() {
+		return 0;
+	}
 }
@@ -0,0 +1,111 @@
+package rigidbody.collision.generate;
+
+import rigidbody.Matrix4;
+import rigidbody.RigidBody;
+import _math.Quaternion;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a capsule that bounds a <code>RigidBody</code> or a part of a <code>RigidBody</code>.
+ * a capsule is every point within a radius of a line segment. the segment runs
+ * along the local y axis of the <code>RigidBody</code>, from <code>-halfHeight</code>
+ * to <code>halfHeight</code>, so the total height of the capsule is
+ * <code>2 * ( halfHeight + radius )</code>
+ */
+public class PrimitiveCapsule extends Primitive implements SupportMapped {
+
+	/**
+	 * the radius of the hemispherical caps and of the cylinder between them
+	 */
+	final private Real m_radius;
+	
+	/**
+	 * half the length of the segment at the core of this capsule
+	 */
+	final private Real m_halfHeight;
+	
+	/**
+	 * creates a capsule with the given properties
+	 * 
+	 * @param body				the <code>RigidBody</code> this capsule bounds
+	 * @param offset			the offset of this capsule from the center of mass of the <code>RigidBody</code>
+	 * @param radius			the radius of the capsule
+	 * @param halfHeight		half the distance between the centers of the two caps
+	 */
+	public PrimitiveCapsule( RigidBody body , Matrix4 offset , Real radius , Real halfHeight ) {
+		super( body , offset );
+		this.m_radius = radius;
+		this.m_halfHeight = halfHeight;
+	}
+	
+	/**
+	 * @return			the radius of this capsule
+	 */
+	public Real getRadius() {
+		return this.m_radius;
+	}
+	
+	/**
+	 * @return			half the length of the segment at the core of this capsule
+	 */
+	public Real getHalfHeight() {
+		return this.m_halfHeight;
+	}
+	
+	@Override
+	public Vector3D getPosition() {
+		return this.getBody().getPosition();
+	}
+	
+	/**
+	 * determines the end points of the segment at the core of this capsule in world coordinates
+	 * 
+	 * @param result			an array of at least 6 elements. the bottom end point is stored
+	 * 							in the first three and the top end point in the last three
+	 */
+	public void getWorldSegment( double[] result ) {
+		Quaternion orientation = this.getBody().getOrientation();
+		double w = orientation.getW().value();
+		double x = orientation.getX().value();
+		double y = orientation.getY().value();
+		double z = orientation.getZ().value();
+		double halfHeight = this.m_halfHeight.value();
+		
+		//the segment runs along the local y axis, which is the second column
+		//of the orientation matrix
+		double axisX = ( 2 * x * y + 2 * z * w ) * halfHeight;
+		double axisY = ( 1 - ( 2 * x * x + 2 * z * z ) ) * halfHeight;
+		double axisZ = ( 2 * y * z - 2 * x * w ) * halfHeight;
+		
+		Vector3D position = this.getBody().getPosition();
+		double centerX = position.getX().value();
+		double centerY = position.getY().value();
+		double centerZ = position.getZ().value();
+		result[ 0 ] = centerX - axisX;
+		result[ 1 ] = centerY - axisY;
+		result[ 2 ] = centerZ - axisZ;
+		result[ 3 ] = centerX + axisX;
+		result[ 4 ] = centerY + axisY;
+		result[ 5 ] = centerZ + axisZ;
+	}
+
+	/**
+	 * the core of a capsule is its segment, so the support point is whichever
+	 * end point lies farther in the given direction
+	 */
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		result[ 0 ] = 0;
+		result[ 1 ] = directionY < 0 ? -this.m_halfHeight.value() : this.m_halfHeight.value();
+		result[ 2 ] = 0;
+	}
+
+	/**
+	 * @return			the radius of this capsule
+	 */
+	@Override
+	public double getMargin() {
+		return this.m_radius.value();
+	}
+}
@@ -0,0 +1,103 @@
+package rigidbody.collision.generate;
+
+import rigidbody.Matrix4;
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * the convex hull of a set of points that bounds a <code>RigidBody</code> or a
+ * part of a <code>RigidBody</code>. the hull never needs to be built explicitly
+ * because contacts are found from its support mapping
+ */
+public class PrimitiveConvexHull extends Primitive implements SupportMapped {
+
+	/**
+	 * the vertices of the hull in the local coordinates of the <code>RigidBody</code>,
+	 * packed as [ x0 , y0 , z0 , x1 , y1 , z1 , ... ]
+	 */
+	final private double[] m_vertices;
+	
+	/**
+	 * the distance from the center of mass to the farthest vertex
+	 */
+	final private Real m_boundingRadius;
+	
+	/**
+	 * creates a convex hull from the given points
+	 * 
+	 * @param body							the <code>RigidBody</code> this hull bounds
+	 * @param offset						the offset of this hull from the center of mass of the <code>RigidBody</code>
+	 * @param vertices						the points of the hull in the local coordinates of the <code>RigidBody</code>.
+	 * 										points inside the hull are allowed and simply never chosen
+	 * @throws IllegalArgumentException		if no vertices are given
+	 */
+	public PrimitiveConvexHull( RigidBody body , Matrix4 offset , Vector3D[] vertices ) throws IllegalArgumentException {
+		super( body , offset );
+		if ( vertices == null || vertices.length == 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Primitive.EMPTY_HULL );
+		}
+		this.m_vertices = new double[ vertices.length * 3 ];
+		double maximumDistanceSquared = 0;
+		for ( int vertexIdx = 0 ; vertexIdx < vertices.length ; vertexIdx ++ ) {
+			double x = vertices[ vertexIdx ].getX().value();
+			double y = vertices[ vertexIdx ].getY().value();
+			double z = vertices[ vertexIdx ].getZ().value();
+			this.m_vertices[ 3 * vertexIdx ] = x;
+			this.m_vertices[ 3 * vertexIdx + 1 ] = y;
+			this.m_vertices[ 3 * vertexIdx + 2 ] = z;
+			maximumDistanceSquared = Math.max( maximumDistanceSquared , x * x + y * y + z * z );
+		}
+		this.m_boundingRadius = new Real( Math.sqrt( maximumDistanceSquared ) );
+	}
+	
+	/**
+	 * @return			the number of vertices in this hull
+	 */
+	public int getNumVertices() {
+		return this.m_vertices.length / 3;
+	}
+	
+	/**
+	 * @param vertexIdx		the index of a vertex
+	 * @return				the vertex in the local coordinates of the <code>RigidBody</code>
+	 */
+	public Vector3D getLocalVertex( int vertexIdx ) {
+		return new Vector3D( new Real( this.m_vertices[ 3 * vertexIdx ] ) , new Real( this.m_vertices[ 3 * vertexIdx + 1 ] ) , new Real( this.m_vertices[ 3 * vertexIdx + 2 ] ) );
+	}
+	
+	/**
+	 * @return			the radius of a sphere about the center of mass that encloses this hull
+	 */
+	public Real getBoundingRadius() {
+		return this.m_boundingRadius;
+	}
+	
+	@Override
+	public Vector3D getPosition() {
+		return this.getBody().getPosition();
+	}
+
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		double[] vertices = this.m_vertices;
+		int bestIdx = 0;
+		double bestDot = Double.NEGATIVE_INFINITY;
+		for ( int idx = 0 ; idx < vertices.length ; idx += 3 ) {
+			double dot = vertices[ idx ] * directionX + vertices[ idx + 1 ] * directionY + vertices[ idx + 2 ] * directionZ;
+			if ( dot > bestDot ) {
+				bestDot = dot;
+				bestIdx = idx;
+			}
+		}
+		result[ 0 ] = vertices[ bestIdx ];
+		result[ 1 ] = vertices[ bestIdx + 1 ];
+		result[ 2 ] = vertices[ bestIdx + 2 ];
+	}
+
+	@Override
+	public double getMargin() {
+		return 0;
+	}
+}
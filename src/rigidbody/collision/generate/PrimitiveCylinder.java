@@ -0,0 +1,85 @@
+package rigidbody.collision.generate;
+
+import rigidbody.Matrix4;
+import rigidbody.RigidBody;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a cylinder that bounds a <code>RigidBody</code> or a part of a <code>RigidBody</code>.
+ * the axis of the cylinder runs along the local y axis of the <code>RigidBody</code>,
+ * from <code>-halfHeight</code> to <code>halfHeight</code>. cylinders have sharp
+ * rims, so contacts with them are found by the <code>ConvexAndConvexCollisionGenerator</code>
+ * 
+ * @see			ConvexAndConvexCollisionGenerator
+ */
+public class PrimitiveCylinder extends Primitive implements SupportMapped {
+
+	/**
+	 * the radius of the circular caps
+	 */
+	final private Real m_radius;
+	
+	/**
+	 * half the distance between the two caps
+	 */
+	final private Real m_halfHeight;
+	
+	/**
+	 * creates a cylinder with the given properties
+	 * 
+	 * @param body				the <code>RigidBody</code> this cylinder bounds
+	 * @param offset			the offset of this cylinder from the center of mass of the <code>RigidBody</code>
+	 * @param radius			the radius of the cylinder
+	 * @param halfHeight		half the height of the cylinder
+	 */
+	public PrimitiveCylinder( RigidBody body , Matrix4 offset , Real radius , Real halfHeight ) {
+		super( body , offset );
+		this.m_radius = radius;
+		this.m_halfHeight = halfHeight;
+	}
+	
+	/**
+	 * @return			the radius of this cylinder
+	 */
+	public Real getRadius() {
+		return this.m_radius;
+	}
+	
+	/**
+	 * @return			half the height of this cylinder
+	 */
+	public Real getHalfHeight() {
+		return this.m_halfHeight;
+	}
+	
+	@Override
+	public Vector3D getPosition() {
+		return this.getBody().getPosition();
+	}
+
+	/**
+	 * the support point lies on the rim of the cap facing the given direction
+	 */
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		double radius = this.m_radius.value();
+		double radialLength = Math.sqrt( directionX * directionX + directionZ * directionZ );
+		if ( radialLength > 0 ) {
+			result[ 0 ] = directionX * radius / radialLength;
+			result[ 2 ] = directionZ * radius / radialLength;
+		} else {
+			result[ 0 ] = 0;
+			result[ 2 ] = 0;
+		}
+		result[ 1 ] = directionY < 0 ? -this.m_halfHeight.value() : this.m_halfHeight.value();
+	}
+
+	/**
+	 * @return			always 0 because a cylinder has sharp rims
+	 */
+	@Override
+	public double getMargin() {
+		return 0;
+	}
+}
@@ -0,0 +1,236 @@
+package rigidbody.collision.generate;
+
+import rigidbody.Matrix4;
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * static terrain given by a regular grid of heights over the xz plane. a
+ * heightfield has no <code>RigidBody</code>, so contacts with it are contacts
+ * with scenery.
+ * <p>
+ * the heights are stored in a single <code>float[]</code>, row by row along z.
+ * the grid point in column <code>column</code> and row <code>row</code> lies at
+ * <code>( originX + column * cellSize , originY + height , originZ + row * cellSize )</code>.
+ * each cell is split into two triangles along the diagonal from
+ * <code>( column + 1 , row )</code> to <code>( column , row + 1 )</code>. the
+ * cell under any point is found by dividing by the cell size, so the cost of a
+ * query depends on the size of the area queried, not on the size of the terrain
+ */
+public class PrimitiveHeightfield extends Primitive {
+
+	/**
+	 * the height of each grid point above <code>m_originY</code>, row by row
+	 */
+	final private float[] m_heights;
+	
+	/**
+	 * the number of grid points along x
+	 */
+	final private int m_numColumns;
+	
+	/**
+	 * the number of grid points along z
+	 */
+	final private int m_numRows;
+	
+	/**
+	 * the distance between neighbouring grid points
+	 */
+	final private double m_cellSize;
+	
+	//the world position of the grid point in column 0 and row 0, at height 0
+	final private double m_originX;
+	final private double m_originY;
+	final private double m_originZ;
+	
+	/**
+	 * creates a heightfield from the given heights. the array is used directly,
+	 * so later changes to it reshape the terrain
+	 * 
+	 * @param heights						the height of each grid point, row by row along z, <code>numColumns</code> heights per row
+	 * @param numColumns					the number of grid points along x
+	 * @param numRows						the number of grid points along z
+	 * @param cellSize						the distance between neighbouring grid points
+	 * @param origin						the world position of the first grid point at height 0
+	 * @throws IllegalArgumentException		if the grid is smaller than 2 by 2, does not match the number of heights, or the cell size is not positive
+	 */
+	public PrimitiveHeightfield( float[] heights , int numColumns , int numRows , Real cellSize , Vector3D origin ) throws IllegalArgumentException {
+		super( null , null );
+		if ( numColumns < 2 || numRows < 2 || heights.length != numColumns * numRows || cellSize.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_HEIGHTFIELD );
+		}
+		this.m_heights = heights;
+		this.m_numColumns = numColumns;
+		this.m_numRows = numRows;
+		this.m_cellSize = cellSize.value();
+		this.m_originX = origin.getX().value();
+		this.m_originY = origin.getY().value();
+		this.m_originZ = origin.getZ().value();
+	}
+	
+	/**
+	 * @return			the number of grid points along x
+	 */
+	public int getNumColumns() {
+		return this.m_numColumns;
+	}
+	
+	/**
+	 * @return			the number of grid points along z
+	 */
+	public int getNumRows() {
+		return this.m_numRows;
+	}
+	
+	/**
+	 * @return			the distance between neighbouring grid points
+	 */
+	public double getCellSize() {
+		return this.m_cellSize;
+	}
+	
+	/**
+	 * @param column	a column of the grid
+	 * @return			the world x coordinate of the column
+	 */
+	public double getX( int column ) {
+		return this.m_originX + column * this.m_cellSize;
+	}
+	
+	/**
+	 * @param row		a row of the grid
+	 * @return			the world z coordinate of the row
+	 */
+	public double getZ( int row ) {
+		return this.m_originZ + row * this.m_cellSize;
+	}
+	
+	/**
+	 * @param column	a column of the grid
+	 * @param row		a row of the grid
+	 * @return			the world y coordinate of the grid point
+	 */
+	public double getY( int column , int row ) {
+		return this.m_originY + this.m_heights[ row * this.m_numColumns + column ];
+	}
+	
+	/**
+	 * @param x			a world x coordinate
+	 * @return			the column of the cell containing <code>x</code>, clamped to the cells of the grid
+	 */
+	public int getColumn( double x ) {
+		int column = ( int ) Math.floor( ( x - this.m_originX ) / this.m_cellSize );
+		return Math.max( 0 , Math.min( this.m_numColumns - 2 , column ) );
+	}
+	
+	/**
+	 * @param z			a world z coordinate
+	 * @return			the row of the cell containing <code>z</code>, clamped to the cells of the grid
+	 */
+	public int getRow( double z ) {
+		int row = ( int ) Math.floor( ( z - this.m_originZ ) / this.m_cellSize );
+		return Math.max( 0 , Math.min( this.m_numRows - 2 , row ) );
+	}
+	
+	/**
+	 * @param x			a world x coordinate
+	 * @param z			a world z coordinate
+	 * @return			if the point lies over the grid
+	 */
+	public boolean contains( double x , double z ) {
+		double column = ( x - this.m_originX ) / this.m_cellSize;
+		double row = ( z - this.m_originZ ) / this.m_cellSize;
+		return column >= 0 && row >= 0 && column <= this.m_numColumns - 1 && row <= this.m_numRows - 1;
+	}
+	
+	/**
+	 * copies one of the two triangles of a cell into the given <code>PrimitiveTriangle</code>.
+	 * both triangles are wound so their normals point up
+	 * 
+	 * @param column		the column of the cell
+	 * @param row			the row of the cell
+	 * @param upper			<code>false</code> for the triangle touching grid point ( <code>column</code> , <code>row</code> ),
+	 * 						<code>true</code> for the triangle touching ( <code>column + 1</code> , <code>row + 1</code> )
+	 * @param result		the triangle to receive the vertices
+	 */
+	public void getTriangle( int column , int row , boolean upper , PrimitiveTriangle result ) {
+		if ( upper ) {
+			result.setVertex( 0 , getX( column + 1 ) , getY( column + 1 , row ) , getZ( row ) );
+			result.setVertex( 1 , getX( column ) , getY( column , row + 1 ) , getZ( row + 1 ) );
+			result.setVertex( 2 , getX( column + 1 ) , getY( column + 1 , row + 1 ) , getZ( row + 1 ) );
+		} else {
+			result.setVertex( 0 , getX( column ) , getY( column , row ) , getZ( row ) );
+			result.setVertex( 1 , getX( column ) , getY( column , row + 1 ) , getZ( row + 1 ) );
+			result.setVertex( 2 , getX( column + 1 ) , getY( column + 1 , row ) , getZ( row ) );
+		}
+	}
+	
+	/**
+	 * determines the height of the terrain above the given point and the normal
+	 * of the triangle there. the point should lie over the grid
+	 * 
+	 * @param x				a world x coordinate
+	 * @param z				a world z coordinate
+	 * @param normal		an array of at least 3 elements to receive the unit normal of the terrain
+	 * @return				the world y coordinate of the terrain
+	 * @see					#contains(double, double)
+	 */
+	public double getHeightAt( double x , double z , double[] normal ) {
+		int column = getColumn( x );
+		int row = getRow( z );
+		double fractionX = ( x - getX( column ) ) / this.m_cellSize;
+		double fractionZ = ( z - getZ( row ) ) / this.m_cellSize;
+		double height00 = getY( column , row );
+		double height10 = getY( column + 1 , row );
+		double height01 = getY( column , row + 1 );
+		double height11 = getY( column + 1 , row + 1 );
+		
+		//each triangle is a plane, so the height changes linearly along x and z
+		double slopeX , slopeZ , height;
+		if ( fractionX + fractionZ <= 1 ) {
+			slopeX = height10 - height00;
+			slopeZ = height01 - height00;
+			height = height00 + fractionX * slopeX + fractionZ * slopeZ;
+		} else {
+			slopeX = height11 - height01;
+			slopeZ = height11 - height10;
+			height = height11 - ( 1 - fractionX ) * slopeX - ( 1 - fractionZ ) * slopeZ;
+		}
+		
+		//the normal of the plane y = slopeX * x + slopeZ * z is ( -slopeX , 1 , -slopeZ ), in cells
+		double normalX = -slopeX / this.m_cellSize;
+		double normalZ = -slopeZ / this.m_cellSize;
+		double length = Math.sqrt( normalX * normalX + 1 + normalZ * normalZ );
+		normal[ 0 ] = normalX / length;
+		normal[ 1 ] = 1 / length;
+		normal[ 2 ] = normalZ / length;
+		return height;
+	}
+	
+	/**
+	 * @return			always <code>null</code> because a heightfield is part of the scenery
+	 */
+	@Override
+	public RigidBody getBody() {
+		return null;
+	}
+	
+	/**
+	 * @return			always <code>null</code> because a heightfield is in world coordinates
+	 */
+	@Override
+	public Matrix4 getOffset() {
+		return null;
+	}
+
+	/**
+	 * @return			the world position of the first grid point at height 0
+	 */
+	@Override
+	public Vector3D getPosition() {
+		return new Vector3D( new Real( this.m_originX ) , new Real( this.m_originY ) , new Real( this.m_originZ ) );
+	}
+}
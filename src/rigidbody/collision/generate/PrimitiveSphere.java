@@ -8,7 +8,7 @@ import _math.Vector3D;
 /**
  * a sphere that bounds a piece of a <code>RigidBody</code>
  */
-public class PrimitiveSphere extends Primitive {
+public class PrimitiveSphere extends Primitive implements SupportMapped {
 	
 	private Real m_radius;
 	
@@ -28,4 +28,22 @@ public class PrimitiveSphere extends Primitive {
 	public Vector3D getPosition() {
 		return this.getBody().getPosition();
 	}
+
+	/**
+	 * the core of a sphere is its center, so the support point is always the origin
+	 */
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		result[ 0 ] = 0;
+		result[ 1 ] = 0;
+		result[ 2 ] = 0;
+	}
+
+	/**
+	 * @return			the radius of this sphere
+	 */
+	@Override
+	public double getMargin() {
+		return this.m_radius.value();
+	}
 }
@@ -0,0 +1,89 @@
+package rigidbody.collision.generate;
+
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a single triangle of static scenery, in world coordinates. a triangle has no
+ * <code>RigidBody</code>, so contacts with it are contacts with scenery. the
+ * vertices can be replaced, so one triangle can stand in for every triangle of a
+ * <code>PrimitiveTriangleMesh</code> in turn
+ * 
+ * @see				PrimitiveTriangleMesh
+ */
+public class PrimitiveTriangle extends Primitive implements SupportMapped {
+
+	/**
+	 * the three vertices, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , x2 , y2 , z2 ]
+	 */
+	final private double[] m_vertices = new double[ 9 ];
+	
+	public PrimitiveTriangle() {
+		super( null , null );
+	}
+	
+	/**
+	 * creates a triangle with the given vertices
+	 * 
+	 * @param vertex0			a vertex in world coordinates
+	 * @param vertex1			a vertex in world coordinates
+	 * @param vertex2			a vertex in world coordinates
+	 */
+	public PrimitiveTriangle( Vector3D vertex0 , Vector3D vertex1 , Vector3D vertex2 ) {
+		this();
+		setVertex( 0 , vertex0.getX().value() , vertex0.getY().value() , vertex0.getZ().value() );
+		setVertex( 1 , vertex1.getX().value() , vertex1.getY().value() , vertex1.getZ().value() );
+		setVertex( 2 , vertex2.getX().value() , vertex2.getY().value() , vertex2.getZ().value() );
+	}
+	
+	/**
+	 * moves one vertex of this triangle
+	 * 
+	 * @param vertexIdx			0, 1 or 2
+	 * @param x					the new x coordinate
+	 * @param y					the new y coordinate
+	 * @param z					the new z coordinate
+	 */
+	public void setVertex( int vertexIdx , double x , double y , double z ) {
+		this.m_vertices[ 3 * vertexIdx ] = x;
+		this.m_vertices[ 3 * vertexIdx + 1 ] = y;
+		this.m_vertices[ 3 * vertexIdx + 2 ] = z;
+	}
+	
+	/**
+	 * @return			the vertices of this triangle, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , x2 , y2 , z2 ].
+	 * 					the array is owned by this triangle and must not be modified
+	 */
+	public double[] getVertexData() {
+		return this.m_vertices;
+	}
+	
+	/**
+	 * @return			the centroid of this triangle
+	 */
+	@Override
+	public Vector3D getPosition() {
+		double[] v = this.m_vertices;
+		return new Vector3D( new Real( ( v[ 0 ] + v[ 3 ] + v[ 6 ] ) / 3 ) , new Real( ( v[ 1 ] + v[ 4 ] + v[ 7 ] ) / 3 ) , new Real( ( v[ 2 ] + v[ 5 ] + v[ 8 ] ) / 3 ) );
+	}
+
+	@Override
+	public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result ) {
+		double[] v = this.m_vertices;
+		double dot0 = v[ 0 ] * directionX + v[ 1 ] * directionY + v[ 2 ] * directionZ;
+		double dot1 = v[ 3 ] * directionX + v[ 4 ] * directionY + v[ 5 ] * directionZ;
+		double dot2 = v[ 6 ] * directionX + v[ 7 ] * directionY + v[ 8 ] * directionZ;
+		int best = dot0 >= dot1 ? ( dot0 >= dot2 ? 0 : 6 ) : ( dot1 >= dot2 ? 3 : 6 );
+		result[ 0 ] = v[ best ];
+		result[ 1 ] = v[ best + 1 ];
+		result[ 2 ] = v[ best + 2 ];
+	}
+
+	/**
+	 * @return			always 0 because a triangle has no thickness
+	 */
+	@Override
+	public double getMargin() {
+		return 0;
+	}
+}
@@ -0,0 +1,530 @@
+package rigidbody.collision.generate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import util.ErrorMessages;
+import _math.Vector3D;
+
+/**
+ * a static mesh of triangles in world coordinates, such as the geometry of a level.
+ * a mesh has no <code>RigidBody</code>, so contacts with it are contacts with scenery.
+ * <p>
+ * the triangles are kept in a bounding volume hierarchy of axis-aligned boxes so
+ * that only the triangles near a primitive are tested. the hierarchy is flattened
+ * into arrays in depth-first order: the left child of a node is always the next
+ * node, and each node stores the index of its right child, or the range of
+ * triangles it holds if it is a leaf. the triangles are reordered so the triangles
+ * of every leaf are contiguous.
+ * <p>
+ * building the hierarchy for a large mesh takes time, so a built mesh can be
+ * saved with <code>saveCache(File)</code> and memory-mapped back with
+ * <code>loadCache(File)</code>. a mapped mesh is read straight from the file,
+ * so loading it only costs a check that its triangles and hierarchy are valid
+ */
+public class PrimitiveTriangleMesh extends Primitive {
+
+	/**
+	 * leaves hold at most this many triangles
+	 */
+	final public static int MAX_TRIANGLES_PER_LEAF = 4;
+
+	/**
+	 * identifies a mesh cache file
+	 */
+	final private static int CACHE_MAGIC = 0x54524D48;
+
+	/**
+	 * the version of the layout of mesh cache files
+	 */
+	final private static int CACHE_VERSION = 1;
+
+	/**
+	 * the number of <code>int</code>s at the start of a cache file
+	 */
+	final private static int CACHE_HEADER_INTS = 6;
+
+	/**
+	 * the deepest a hierarchy of median splits over <code>Integer.MAX_VALUE</code> triangles can be,
+	 * and so the size of the stack needed by <code>overlapTriangles</code>
+	 */
+	final public static int MAX_DEPTH = 64;
+
+	/**
+	 * the vertices, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , ... ]
+	 */
+	final private FloatBuffer m_vertices;
+
+	/**
+	 * the vertex indices of each triangle, three per triangle, in the order of the leaves
+	 */
+	final private IntBuffer m_indices;
+
+	/**
+	 * the bounds of each node, packed as [ minX , minY , minZ , maxX , maxY , maxZ ]
+	 */
+	final private FloatBuffer m_nodeBounds;
+
+	/**
+	 * two values per node. an inner node stores the index of its right child and
+	 * its split axis. a leaf stores its first triangle and minus its number of triangles
+	 */
+	final private IntBuffer m_nodeData;
+
+	/**
+	 * a hash of the vertices and indices the mesh was built from. used to tell if
+	 * a cache file is out of date
+	 */
+	final private int m_sourceHash;
+
+	/**
+	 * builds a mesh and its bounding volume hierarchy
+	 *
+	 * @param vertices						the vertices in world coordinates, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , ... ]
+	 * @param indices						the indices of the vertices of each triangle, three per triangle
+	 * @throws IllegalArgumentException		if the number of indices is not a multiple of 3 or an index is out of range
+	 */
+	public PrimitiveTriangleMesh( float[] vertices , int[] indices ) throws IllegalArgumentException {
+		super( null , null );
+		int numVertices = vertices.length / 3;
+		if ( indices.length % 3 != 0 || vertices.length % 3 != 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_MESH );
+		}
+		for ( int index : indices ) {
+			if ( index < 0 || index >= numVertices ) {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_MESH );
+			}
+		}
+		this.m_sourceHash = hash( vertices , indices );
+		this.m_vertices = FloatBuffer.wrap( vertices.clone() );
+
+		//determine the bounds and centroid of every triangle
+		int numTriangles = indices.length / 3;
+		float[] triangleBounds = new float[ 6 * numTriangles ];
+		float[] centroids = new float[ 3 * numTriangles ];
+		int[] order = new int[ numTriangles ];
+		for ( int triangle = 0 ; triangle < numTriangles ; triangle ++ ) {
+			order[ triangle ] = triangle;
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+				float a = vertices[ 3 * indices[ 3 * triangle ] + axis ];
+				float b = vertices[ 3 * indices[ 3 * triangle + 1 ] + axis ];
+				float c = vertices[ 3 * indices[ 3 * triangle + 2 ] + axis ];
+				triangleBounds[ 6 * triangle + axis ] = Math.min( a , Math.min( b , c ) );
+				triangleBounds[ 6 * triangle + 3 + axis ] = Math.max( a , Math.max( b , c ) );
+				centroids[ 3 * triangle + axis ] = ( a + b + c ) / 3;
+			}
+		}
+
+		//build the hierarchy. a binary tree with at least one triangle per leaf
+		//has fewer than twice as many nodes as triangles
+		int maxNodes = Math.max( 1 , 2 * numTriangles );
+		float[] nodeBounds = new float[ 6 * maxNodes ];
+		int[] nodeData = new int[ 2 * maxNodes ];
+		int numNodes = buildNode( 0 , numTriangles , 0 , order , triangleBounds , centroids , nodeBounds , nodeData );
+		this.m_nodeBounds = FloatBuffer.wrap( Arrays.copyOf( nodeBounds , 6 * numNodes ) );
+		this.m_nodeData = IntBuffer.wrap( Arrays.copyOf( nodeData , 2 * numNodes ) );
+
+		//store the triangles in the order of the leaves
+		int[] sortedIndices = new int[ indices.length ];
+		for ( int triangle = 0 ; triangle < numTriangles ; triangle ++ ) {
+			System.arraycopy( indices , 3 * order[ triangle ] , sortedIndices , 3 * triangle , 3 );
+		}
+		this.m_indices = IntBuffer.wrap( sortedIndices );
+	}
+
+	private PrimitiveTriangleMesh( FloatBuffer vertices , IntBuffer indices , FloatBuffer nodeBounds , IntBuffer nodeData , int sourceHash ) {
+		super( null , null );
+		this.m_vertices = vertices;
+		this.m_indices = indices;
+		this.m_nodeBounds = nodeBounds;
+		this.m_nodeData = nodeData;
+		this.m_sourceHash = sourceHash;
+	}
+
+	/**
+	 * builds the subtree over the triangles <code>order[ start ]</code> to
+	 * <code>order[ end - 1 ]</code> by splitting them at the median centroid
+	 * along the longest axis of their centroids
+	 *
+	 * @return				the number of nodes in the tree once the subtree is built
+	 */
+	private static int buildNode( int start , int end , int node , int[] order , float[] triangleBounds , float[] centroids , float[] nodeBounds , int[] nodeData ) {
+
+		//determine the bounds of the triangles and of their centroids
+		float[] centroidBounds = { Float.POSITIVE_INFINITY , Float.POSITIVE_INFINITY , Float.POSITIVE_INFINITY , Float.NEGATIVE_INFINITY , Float.NEGATIVE_INFINITY , Float.NEGATIVE_INFINITY };
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+			nodeBounds[ 6 * node + axis ] = Float.POSITIVE_INFINITY;
+			nodeBounds[ 6 * node + 3 + axis ] = Float.NEGATIVE_INFINITY;
+		}
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			int triangle = order[ idx ];
+			for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+				nodeBounds[ 6 * node + axis ] = Math.min( nodeBounds[ 6 * node + axis ] , triangleBounds[ 6 * triangle + axis ] );
+				nodeBounds[ 6 * node + 3 + axis ] = Math.max( nodeBounds[ 6 * node + 3 + axis ] , triangleBounds[ 6 * triangle + 3 + axis ] );
+				centroidBounds[ axis ] = Math.min( centroidBounds[ axis ] , centroids[ 3 * triangle + axis ] );
+				centroidBounds[ 3 + axis ] = Math.max( centroidBounds[ 3 + axis ] , centroids[ 3 * triangle + axis ] );
+			}
+		}
+		int splitAxis = 0;
+		for ( int axis = 1 ; axis < 3 ; axis ++ ) {
+			if ( centroidBounds[ 3 + axis ] - centroidBounds[ axis ] > centroidBounds[ 3 + splitAxis ] - centroidBounds[ splitAxis ] ) {
+				splitAxis = axis;
+			}
+		}
+
+		//small groups, and groups that cannot be split, become leaves
+		if ( end - start <= MAX_TRIANGLES_PER_LEAF || centroidBounds[ 3 + splitAxis ] == centroidBounds[ splitAxis ] ) {
+			nodeData[ 2 * node ] = start;
+			nodeData[ 2 * node + 1 ] = -( end - start );
+			return node + 1;
+		}
+
+		//otherwise, split the group in half and build the left child directly after this node
+		int middle = ( start + end ) >>> 1;
+		selectMedian( order , start , end , middle , centroids , splitAxis );
+		int rightChild = buildNode( start , middle , node + 1 , order , triangleBounds , centroids , nodeBounds , nodeData );
+		nodeData[ 2 * node ] = rightChild;
+		nodeData[ 2 * node + 1 ] = splitAxis;
+		return buildNode( middle , end , rightChild , order , triangleBounds , centroids , nodeBounds , nodeData );
+	}
+
+	/**
+	 * partially sorts <code>order[ start ]</code> to <code>order[ end - 1 ]</code> so
+	 * that the triangle at <code>nth</code> has the centroid it would have if the
+	 * range were sorted along the given axis, with no smaller centroid after it and
+	 * no larger centroid before it
+	 */
+	private static void selectMedian( int[] order , int start , int end , int nth , float[] centroids , int axis ) {
+		int low = start;
+		int high = end - 1;
+		while ( low < high ) {
+			float pivot = centroids[ 3 * order[ ( low + high ) >>> 1 ] + axis ];
+			int i = low;
+			int j = high;
+			while ( i <= j ) {
+				while ( centroids[ 3 * order[ i ] + axis ] < pivot ) {
+					i ++;
+				}
+				while ( centroids[ 3 * order[ j ] + axis ] > pivot ) {
+					j --;
+				}
+				if ( i <= j ) {
+					int swap = order[ i ];
+					order[ i ] = order[ j ];
+					order[ j ] = swap;
+					i ++;
+					j --;
+				}
+			}
+			if ( nth <= j ) {
+				high = j;
+			} else if ( nth >= i ) {
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static int hash( float[] vertices , int[] indices ) {
+		return 31 * Arrays.hashCode( vertices ) + Arrays.hashCode( indices );
+	}
+
+	/**
+	 * @return			the number of triangles in this mesh
+	 */
+	public int getNumTriangles() {
+		return this.m_indices.limit() / 3;
+	}
+
+	/**
+	 * @return			the number of vertices in this mesh
+	 */
+	public int getNumVertices() {
+		return this.m_vertices.limit() / 3;
+	}
+
+	/**
+	 * copies a triangle of this mesh into the given <code>PrimitiveTriangle</code>
+	 *
+	 * @param triangleIdx		the index of a triangle, as reported by <code>overlapTriangles</code>
+	 * @param result			the triangle to receive the vertices
+	 */
+	public void getTriangle( int triangleIdx , PrimitiveTriangle result ) {
+		for ( int corner = 0 ; corner < 3 ; corner ++ ) {
+			int vertex = 3 * this.m_indices.get( 3 * triangleIdx + corner );
+			result.setVertex( corner , this.m_vertices.get( vertex ) , this.m_vertices.get( vertex + 1 ) , this.m_vertices.get( vertex + 2 ) );
+		}
+	}
+
+	/**
+	 * copies the bounds of the whole mesh into the given array
+	 *
+	 * @param result			an array of at least 6 elements to receive [ minX , minY , minZ , maxX , maxY , maxZ ]
+	 */
+	public void getBounds( double[] result ) {
+		for ( int idx = 0 ; idx < 6 ; idx ++ ) {
+			result[ idx ] = this.m_nodeBounds.get( idx );
+		}
+	}
+
+	/**
+	 * finds every triangle whose leaf overlaps the given axis-aligned box. if there
+	 * are more triangles than fit in <code>result</code>, the number of triangles
+	 * is still returned so the caller can retry with a larger array
+	 *
+	 * @param minX				the smallest x coordinate of the box
+	 * @param minY				the smallest y coordinate of the box
+	 * @param minZ				the smallest z coordinate of the box
+	 * @param maxX				the largest x coordinate of the box
+	 * @param maxY				the largest y coordinate of the box
+	 * @param maxZ				the largest z coordinate of the box
+	 * @param result			receives the indices of the triangles found
+	 * @param stack				an array of at least <code>MAX_DEPTH</code> elements used to walk the hierarchy.
+	 * 							it is passed in, like <code>result</code>, so that queries do not allocate
+	 * 							and callers on different threads do not share it
+	 * @return					the number of triangles found
+	 */
+	public int overlapTriangles( double minX , double minY , double minZ , double maxX , double maxY , double maxZ , int[] result , int[] stack ) {
+		if ( this.getNumTriangles() == 0 ) {
+			return 0;
+		}
+		FloatBuffer bounds = this.m_nodeBounds;
+		IntBuffer data = this.m_nodeData;
+		int stackSize = 0;
+		int found = 0;
+		stack[ stackSize ++ ] = 0;
+		while ( stackSize > 0 ) {
+			int node = stack[ -- stackSize ];
+			int base = 6 * node;
+
+			//skip nodes that do not overlap the box
+			if ( bounds.get( base ) > maxX || bounds.get( base + 3 ) < minX ||
+				 bounds.get( base + 1 ) > maxY || bounds.get( base + 4 ) < minY ||
+				 bounds.get( base + 2 ) > maxZ || bounds.get( base + 5 ) < minZ ) {
+				continue;
+			}
+			int first = data.get( 2 * node );
+			int second = data.get( 2 * node + 1 );
+
+			//report the triangles of a leaf
+			if ( second < 0 ) {
+				for ( int triangle = first ; triangle < first - second ; triangle ++ ) {
+					if ( found < result.length ) {
+						result[ found ] = triangle;
+					}
+					found ++;
+				}
+
+			//and descend into both children of an inner node
+			} else {
+				stack[ stackSize ++ ] = first;
+				stack[ stackSize ++ ] = node + 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return			always <code>Vector3D.ZERO</code> because a mesh is stored in world coordinates
+	 */
+	@Override
+	public Vector3D getPosition() {
+		return Vector3D.ZERO;
+	}
+
+	/**
+	 * writes this mesh and its bounding volume hierarchy to a cache file
+	 *
+	 * @param cacheFile			the file to write
+	 * @throws IOException		if the file cannot be written
+	 * @see						#loadCache(File)
+	 */
+	public void saveCache( File cacheFile ) throws IOException {
+		int numFloats = this.m_vertices.limit() + this.m_nodeBounds.limit();
+		int numInts = CACHE_HEADER_INTS + this.m_indices.limit() + this.m_nodeData.limit();
+		ByteBuffer buffer = ByteBuffer.allocate( 4 * ( numFloats + numInts ) ).order( ByteOrder.LITTLE_ENDIAN );
+		buffer.putInt( CACHE_MAGIC );
+		buffer.putInt( CACHE_VERSION );
+		buffer.putInt( this.getNumVertices() );
+		buffer.putInt( this.getNumTriangles() );
+		buffer.putInt( this.m_nodeData.limit() / 2 );
+		buffer.putInt( this.m_sourceHash );
+		for ( int idx = 0 ; idx < this.m_vertices.limit() ; idx ++ ) {
+			buffer.putFloat( this.m_vertices.get( idx ) );
+		}
+		for ( int idx = 0 ; idx < this.m_indices.limit() ; idx ++ ) {
+			buffer.putInt( this.m_indices.get( idx ) );
+		}
+		for ( int idx = 0 ; idx < this.m_nodeBounds.limit() ; idx ++ ) {
+			buffer.putFloat( this.m_nodeBounds.get( idx ) );
+		}
+		for ( int idx = 0 ; idx < this.m_nodeData.limit() ; idx ++ ) {
+			buffer.putInt( this.m_nodeData.get( idx ) );
+		}
+		buffer.flip();
+		FileOutputStream output = new FileOutputStream( cacheFile );
+		try {
+			FileChannel channel = output.getChannel();
+			while ( buffer.hasRemaining() ) {
+				channel.write( buffer );
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * memory-maps a mesh saved with <code>saveCache(File)</code>. the mesh reads
+	 * its vertices, triangles and hierarchy directly from the file
+	 *
+	 * @param cacheFile			the file to map
+	 * @return					the mapped mesh
+	 * @throws IOException		if the file cannot be read or is not a mesh cache
+	 * @see						#saveCache(File)
+	 */
+	public static PrimitiveTriangleMesh loadCache( File cacheFile ) throws IOException {
+		RandomAccessFile file = new RandomAccessFile( cacheFile , "r" );
+		MappedByteBuffer mapped;
+		try {
+			mapped = file.getChannel().map( FileChannel.MapMode.READ_ONLY , 0 , file.length() );
+		} finally {
+
+			//the mapping stays valid after the file is closed
+			file.close();
+		}
+		mapped.order( ByteOrder.LITTLE_ENDIAN );
+		if ( mapped.capacity() < 4 * CACHE_HEADER_INTS || mapped.getInt( 0 ) != CACHE_MAGIC || mapped.getInt( 4 ) != CACHE_VERSION ) {
+			throw new IOException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_MESH_CACHE );
+		}
+		int numVertices = mapped.getInt( 8 );
+		int numTriangles = mapped.getInt( 12 );
+		int numNodes = mapped.getInt( 16 );
+		int sourceHash = mapped.getInt( 20 );
+		long expectedSize = 4L * ( CACHE_HEADER_INTS + 3L * numVertices + 3L * numTriangles + 6L * numNodes + 2L * numNodes );
+		if ( numVertices < 0 || numTriangles < 0 || numNodes < 0 || expectedSize != mapped.capacity() ) {
+			throw new IOException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_MESH_CACHE );
+		}
+
+		//view each section of the file as an array of the right type
+		int offset = 4 * CACHE_HEADER_INTS;
+		FloatBuffer vertices = section( mapped , offset , 3 * numVertices ).asFloatBuffer();
+		offset += 4 * 3 * numVertices;
+		IntBuffer indices = section( mapped , offset , 3 * numTriangles ).asIntBuffer();
+		offset += 4 * 3 * numTriangles;
+		FloatBuffer nodeBounds = section( mapped , offset , 6 * numNodes ).asFloatBuffer();
+		offset += 4 * 6 * numNodes;
+		IntBuffer nodeData = section( mapped , offset , 2 * numNodes ).asIntBuffer();
+		if ( !isValid( numVertices , numTriangles , numNodes , indices , nodeData ) ) {
+			throw new IOException( ErrorMessages.RigidBody.Collision.Primitive.INVALID_MESH_CACHE );
+		}
+		return new PrimitiveTriangleMesh( vertices , indices , nodeBounds , nodeData , sourceHash );
+	}
+
+	/**
+	 * checks that the triangles and hierarchy read from a cache file can be used
+	 * without reading outside of the file. every index must refer to a vertex,
+	 * every leaf to a range of triangles and every inner node to a right child
+	 * after its left child, no deeper than <code>MAX_DEPTH</code>
+	 *
+	 * @return			if the mesh is valid
+	 */
+	private static boolean isValid( int numVertices , int numTriangles , int numNodes , IntBuffer indices , IntBuffer nodeData ) {
+		for ( int idx = 0 ; idx < indices.limit() ; idx ++ ) {
+			int index = indices.get( idx );
+			if ( index < 0 || index >= numVertices ) {
+				return false;
+			}
+		}
+
+		//the hierarchy of an empty mesh is never walked
+		if ( numTriangles == 0 ) {
+			return true;
+		}
+		if ( numNodes == 0 ) {
+			return false;
+		}
+
+		//children always come after their parent, so the depth of every
+		//node is known by the time it is reached
+		int[] depths = new int[ numNodes ];
+		for ( int node = 0 ; node < numNodes ; node ++ ) {
+			int first = nodeData.get( 2 * node );
+			int second = nodeData.get( 2 * node + 1 );
+			if ( second < 0 ) {
+				if ( first < 0 || ( long ) first - second > numTriangles ) {
+					return false;
+				}
+			} else {
+				if ( second > 2 || first <= node + 1 || first >= numNodes || depths[ node ] + 1 >= MAX_DEPTH ) {
+					return false;
+				}
+				depths[ node + 1 ] = depths[ node ] + 1;
+				depths[ first ] = depths[ node ] + 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return			a little-endian view of <code>count</code> 4-byte values starting at <code>offset</code>
+	 */
+	private static ByteBuffer section( ByteBuffer buffer , int offset , int count ) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position( offset );
+		duplicate.limit( offset + 4 * count );
+		return duplicate.slice().order( ByteOrder.LITTLE_ENDIAN );
+	}
+
+	/**
+	 * maps the cached mesh if the cache file was built from the given vertices
+	 * and indices. otherwise, builds the mesh and replaces the cache file. the new
+	 * cache is written to a temporary file that is then renamed, so a stale cache
+	 * that is still mapped is never written over
+	 *
+	 * @param cacheFile						the cache file, which need not exist
+	 * @param vertices						the vertices in world coordinates, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , ... ]
+	 * @param indices						the indices of the vertices of each triangle, three per triangle
+	 * @return								the mesh
+	 * @throws IOException					if a new cache file cannot be written
+	 * @throws IllegalArgumentException		if the mesh has to be built and the indices are invalid
+	 */
+	public static PrimitiveTriangleMesh loadOrBuild( File cacheFile , float[] vertices , int[] indices ) throws IOException , IllegalArgumentException {
+		if ( cacheFile.isFile() ) {
+			try {
+				PrimitiveTriangleMesh cached = loadCache( cacheFile );
+				if ( cached.getNumVertices() * 3 == vertices.length && cached.getNumTriangles() * 3 == indices.length && cached.m_sourceHash == hash( vertices , indices ) ) {
+					return cached;
+				}
+			} catch ( IOException e ) {
+
+				//the cache is unreadable, so it is simply rebuilt
+			}
+		}
+		PrimitiveTriangleMesh mesh = new PrimitiveTriangleMesh( vertices , indices );
+		File parent = cacheFile.getAbsoluteFile().getParentFile();
+		File temporaryFile = File.createTempFile( cacheFile.getName() , ".tmp" , parent );
+		try {
+			mesh.saveCache( temporaryFile );
+
+			//some platforms cannot rename over an existing file
+			if ( !temporaryFile.renameTo( cacheFile ) && !( cacheFile.delete() && temporaryFile.renameTo( cacheFile ) ) ) {
+				throw new IOException( ErrorMessages.RigidBody.Collision.Primitive.CANNOT_REPLACE_MESH_CACHE );
+			}
+		} finally {
+			if ( temporaryFile.exists() ) {
+				temporaryFile.delete();
+			}
+		}
+		return mesh;
+	}
+}
@@ -0,0 +1,56 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for spheres colliding with heightfields
+ */
+public class SphereAndHeightfieldCollisionGenerator extends HeightfieldContactGenerator {
+
+	public SphereAndHeightfieldCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns all contacts between a sphere and the terrain under it
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveSphere</code> or <code>p2</code> is not a <code>PrimitiveHeightfield</code>
+	 * @see										PrimitiveSphere
+	 * @see										PrimitiveHeightfield
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveSphere ) {
+			if ( p2 instanceof PrimitiveHeightfield ) {
+				PrimitiveSphere sphere = ( PrimitiveSphere ) p1;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				Vector3D position = sphere.getPosition();
+				generateSphereContacts( ( PrimitiveHeightfield ) p2 , sphere.getBody() , position.getX().value() , position.getY().value() , position.getZ().value() , sphere.getRadius().value() , contacts );
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveHeightfield.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveSphere.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * tests if a sphere touches a heightfield without generating any <code>Contact</code>s,
+	 * so that a sphere can be tested at many positions, e.g. along a swept path,
+	 * without allocating
+	 * 
+	 * @param field			the heightfield
+	 * @param centerX		x coordinate of the center of the sphere
+	 * @param centerY		y coordinate of the center of the sphere
+	 * @param centerZ		z coordinate of the center of the sphere
+	 * @param radius		the radius of the sphere
+	 * @return				if the sphere touches or overlaps the terrain
+	 */
+	public boolean touchesSphere( PrimitiveHeightfield field , double centerX , double centerY , double centerZ , double radius ) {
+		return isSphereTouching( field , centerX , centerY , centerZ , radius );
+	}
+}
@@ -35,9 +35,10 @@ public class SphereAndPlaneCollisionGenerator extends ContactGenerator {
 				
 				//determine if the distance from the plane is less than a radius of the sphere
 				
-				//if the sphere is within a radius length of the plane,
-				//then there is a contact
-				if ( Real.abs( sphereDistanceFromPlane ).compareTo( Real.abs( sphere.getRadius() ) ) <= 0 ) {
+				//if the sphere is within a radius length of the plane, or near enough
+				//to reach it in one step, then there is a contact
+				Real speculativeMargin = new Real( getSpeculativeMargin( sphere.getBody() , null ) );
+				if ( Real.abs( sphereDistanceFromPlane ).compareTo( Real.abs( sphere.getRadius() ).add( speculativeMargin ) ) <= 0 ) {
 					
 					//determine the properties of the collision
 					//based on the side of the plane on which the collision occurred
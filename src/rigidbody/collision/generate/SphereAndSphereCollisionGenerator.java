@@ -47,15 +47,18 @@ public class SphereAndSphereCollisionGenerator extends ContactGenerator {
 				//determine the sum of the radii of both spheres
 				Real radiiSum = sphere1.getRadius().add( sphere2.getRadius() );
 				
+				//spheres closer than they could move in one step are given a speculative contact
+				Real speculativeMargin = new Real( getSpeculativeMargin( sphere1.getBody() , sphere2.getBody() ) );
+				
 				//if the distance between the two spheres is greater than
-				//the sum of their radii
-				if ( distanceFromTwoToOne.compareTo( radiiSum ) > 0 ) {
+				//the sum of their radii and the speculative margin
+				if ( distanceFromTwoToOne.compareTo( radiiSum.add( speculativeMargin ) ) > 0 ) {
 					
 					//then there are no contacts, so return an empty list
 					return new LinkedList < Contact > ();
 					
 				//if the distance between the two spheres is less than or equal to
-				//the sum of their radii
+				//the sum of their radii and the speculative margin
 				} else {
 					
 					//then there are contacts
@@ -69,7 +72,8 @@ public class SphereAndSphereCollisionGenerator extends ContactGenerator {
 					//which is the halfway point on the vector from sphere 1 to sphere 2
 					Vector3D contactPoint = position1.add( vectorFromTwoToOne.multiply( Real.ONE_HALF ) );
 					
-					//determine the penetration, which is the radius overlap
+					//determine the penetration, which is the radius overlap. it is negative
+					//if the spheres are apart
 					Real penetration = sphere1.getRadius().add( sphere2.getRadius() ).subtract( distanceFromTwoToOne );
 					
 					Contact sphereContact = new Contact( sphere1.getBody() , sphere2.getBody() , contactPoint , contactNormal , penetration , this.getPenetrationOffset() , this.getFriction() , this.getElasticity() );
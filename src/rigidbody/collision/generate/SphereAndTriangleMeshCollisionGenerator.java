@@ -0,0 +1,235 @@
+package rigidbody.collision.generate;
+
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * a collision generator for spheres colliding with static triangle meshes. the
+ * hierarchy of the mesh narrows the search down to the triangles near the sphere,
+ * and the closest point of each of those triangles is found in closed form
+ */
+public class SphereAndTriangleMeshCollisionGenerator extends ContactGenerator {
+
+	/**
+	 * the indices of the triangles near the sphere. grown as needed
+	 */
+	private int[] m_triangles = new int[ 64 ];
+	
+	/**
+	 * the stack used to walk the hierarchy of the mesh
+	 */
+	final private int[] m_stack = new int[ PrimitiveTriangleMesh.MAX_DEPTH ];
+	
+	/**
+	 * the triangle being tested
+	 */
+	final private PrimitiveTriangle m_triangle = new PrimitiveTriangle();
+	
+	/**
+	 * the closest point of the triangle being tested
+	 */
+	final private double[] m_closestPoint = new double[ 3 ];
+	
+	public SphereAndTriangleMeshCollisionGenerator( Real friction , Real elasticity , Real penetrationOffset ) {
+		super( friction , elasticity , penetrationOffset );
+	}
+
+	/**
+	 * returns a contact for every triangle of the mesh the sphere touches
+	 * 
+	 * @throws IllegalArgumentException			if <code>p1</code> is not a <code>PrimitiveSphere</code> or <code>p2</code> is not a <code>PrimitiveTriangleMesh</code>
+	 * @see										PrimitiveSphere
+	 * @see										PrimitiveTriangleMesh
+	 */
+	@Override
+	public LinkedList < Contact > generateContacts( Primitive p1 , Primitive p2 ) throws IllegalArgumentException {
+		if ( p1 instanceof PrimitiveSphere ) {
+			if ( p2 instanceof PrimitiveTriangleMesh ) {
+				PrimitiveSphere sphere = ( PrimitiveSphere ) p1;
+				PrimitiveTriangleMesh mesh = ( PrimitiveTriangleMesh ) p2;
+				LinkedList < Contact > contacts = new LinkedList < Contact > ();
+				
+				Vector3D position = sphere.getPosition();
+				double centerX = position.getX().value();
+				double centerY = position.getY().value();
+				double centerZ = position.getZ().value();
+				double radius = sphere.getRadius().value();
+				
+				//the sphere can reach triangles beyond its radius within the speculative duration
+				double reach = radius + getSpeculativeMargin( sphere.getBody() , null );
+				
+				//find the triangles near the sphere
+				int numTriangles = findTriangles( mesh , centerX , centerY , centerZ , reach );
+				for ( int idx = 0 ; idx < numTriangles ; idx ++ ) {
+					mesh.getTriangle( this.m_triangles[ idx ] , this.m_triangle );
+					double[] vertices = this.m_triangle.getVertexData();
+					closestPointOnTriangle( vertices , centerX , centerY , centerZ , this.m_closestPoint );
+					
+					//the sphere touches the triangle if the closest point is within a radius,
+					//and may touch it soon if it is within reach
+					double normalX = centerX - this.m_closestPoint[ 0 ];
+					double normalY = centerY - this.m_closestPoint[ 1 ];
+					double normalZ = centerZ - this.m_closestPoint[ 2 ];
+					double distanceSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+					if ( distanceSquared > reach * reach ) {
+						continue;
+					}
+					double distance = Math.sqrt( distanceSquared );
+					if ( distance > 0 ) {
+						normalX /= distance;
+						normalY /= distance;
+						normalZ /= distance;
+					} else {
+						
+						//the center is on the triangle, so push it out along the face normal
+						double abX = vertices[ 3 ] - vertices[ 0 ] , abY = vertices[ 4 ] - vertices[ 1 ] , abZ = vertices[ 5 ] - vertices[ 2 ];
+						double acX = vertices[ 6 ] - vertices[ 0 ] , acY = vertices[ 7 ] - vertices[ 1 ] , acZ = vertices[ 8 ] - vertices[ 2 ];
+						normalX = abY * acZ - abZ * acY;
+						normalY = abZ * acX - abX * acZ;
+						normalZ = abX * acY - abY * acX;
+						double length = Math.sqrt( normalX * normalX + normalY * normalY + normalZ * normalZ );
+						if ( length == 0 ) {
+							continue;
+						}
+						normalX /= length;
+						normalY /= length;
+						normalZ /= length;
+					}
+					
+					//the contact point is halfway between the triangle and the surface of the sphere.
+					//the penetration is negative for a speculative contact
+					double penetration = radius - distance;
+					contacts.add( createContact( sphere.getBody() , null , this.m_closestPoint[ 0 ] - normalX * 0.5 * penetration , this.m_closestPoint[ 1 ] - normalY * 0.5 * penetration , this.m_closestPoint[ 2 ] - normalZ * 0.5 * penetration , normalX , normalY , normalZ , penetration ) );
+				}
+				return contacts;
+			} else {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveTriangleMesh.class.getName() , p2.getClass().getName() ) );
+			}
+		} else {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.CollisionGenerator.INVALID_PRIMITIVE_PARAMETER( PrimitiveSphere.class.getName() , p1.getClass().getName() ) );
+		}
+	}
+	
+	/**
+	 * tests if a sphere touches a triangle mesh without generating any <code>Contact</code>s,
+	 * so that a sphere can be tested at many positions, e.g. along a swept path,
+	 * without allocating
+	 * 
+	 * @param mesh			the mesh
+	 * @param centerX		x coordinate of the center of the sphere
+	 * @param centerY		y coordinate of the center of the sphere
+	 * @param centerZ		z coordinate of the center of the sphere
+	 * @param radius		the radius of the sphere
+	 * @return				if the sphere touches or overlaps any triangle of the mesh
+	 */
+	public boolean touchesSphere( PrimitiveTriangleMesh mesh , double centerX , double centerY , double centerZ , double radius ) {
+		int numTriangles = findTriangles( mesh , centerX , centerY , centerZ , radius );
+		for ( int idx = 0 ; idx < numTriangles ; idx ++ ) {
+			mesh.getTriangle( this.m_triangles[ idx ] , this.m_triangle );
+			closestPointOnTriangle( this.m_triangle.getVertexData() , centerX , centerY , centerZ , this.m_closestPoint );
+			double dx = centerX - this.m_closestPoint[ 0 ];
+			double dy = centerY - this.m_closestPoint[ 1 ];
+			double dz = centerZ - this.m_closestPoint[ 2 ];
+			if ( dx * dx + dy * dy + dz * dz <= radius * radius ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * finds the triangles of the mesh whose leaves overlap the box around a sphere,
+	 * growing <code>m_triangles</code> if they do not fit
+	 * 
+	 * @return				the number of triangles found
+	 */
+	private int findTriangles( PrimitiveTriangleMesh mesh , double centerX , double centerY , double centerZ , double radius ) {
+		int numTriangles = mesh.overlapTriangles( centerX - radius , centerY - radius , centerZ - radius , centerX + radius , centerY + radius , centerZ + radius , this.m_triangles , this.m_stack );
+		if ( numTriangles > this.m_triangles.length ) {
+			this.m_triangles = new int[ Integer.highestOneBit( numTriangles ) << 1 ];
+			numTriangles = mesh.overlapTriangles( centerX - radius , centerY - radius , centerZ - radius , centerX + radius , centerY + radius , centerZ + radius , this.m_triangles , this.m_stack );
+		}
+		return numTriangles;
+	}
+	
+	/**
+	 * determines the point of a triangle closest to a given point by checking which
+	 * voronoi region of the triangle contains the point
+	 * 
+	 * @param vertices		the vertices of the triangle, packed as [ x0 , y0 , z0 , x1 , y1 , z1 , x2 , y2 , z2 ]
+	 * @param pointX		x coordinate of the point
+	 * @param pointY		y coordinate of the point
+	 * @param pointZ		z coordinate of the point
+	 * @param result		an array of at least 3 elements to receive the closest point
+	 */
+	protected static void closestPointOnTriangle( double[] vertices , double pointX , double pointY , double pointZ , double[] result ) {
+		double aX = vertices[ 0 ] , aY = vertices[ 1 ] , aZ = vertices[ 2 ];
+		double abX = vertices[ 3 ] - aX , abY = vertices[ 4 ] - aY , abZ = vertices[ 5 ] - aZ;
+		double acX = vertices[ 6 ] - aX , acY = vertices[ 7 ] - aY , acZ = vertices[ 8 ] - aZ;
+		
+		//vertex region of a
+		double apX = pointX - aX , apY = pointY - aY , apZ = pointZ - aZ;
+		double d1 = abX * apX + abY * apY + abZ * apZ;
+		double d2 = acX * apX + acY * apY + acZ * apZ;
+		if ( d1 <= 0 && d2 <= 0 ) {
+			setPoint( result , aX , aY , aZ );
+			return;
+		}
+		
+		//vertex region of b
+		double bpX = pointX - vertices[ 3 ] , bpY = pointY - vertices[ 4 ] , bpZ = pointZ - vertices[ 5 ];
+		double d3 = abX * bpX + abY * bpY + abZ * bpZ;
+		double d4 = acX * bpX + acY * bpY + acZ * bpZ;
+		if ( d3 >= 0 && d4 <= d3 ) {
+			setPoint( result , vertices[ 3 ] , vertices[ 4 ] , vertices[ 5 ] );
+			return;
+		}
+		
+		//edge region of ab
+		double vc = d1 * d4 - d3 * d2;
+		if ( vc <= 0 && d1 >= 0 && d3 <= 0 ) {
+			double t = d1 / ( d1 - d3 );
+			setPoint( result , aX + t * abX , aY + t * abY , aZ + t * abZ );
+			return;
+		}
+		
+		//vertex region of c
+		double cpX = pointX - vertices[ 6 ] , cpY = pointY - vertices[ 7 ] , cpZ = pointZ - vertices[ 8 ];
+		double d5 = abX * cpX + abY * cpY + abZ * cpZ;
+		double d6 = acX * cpX + acY * cpY + acZ * cpZ;
+		if ( d6 >= 0 && d5 <= d6 ) {
+			setPoint( result , vertices[ 6 ] , vertices[ 7 ] , vertices[ 8 ] );
+			return;
+		}
+		
+		//edge region of ac
+		double vb = d5 * d2 - d1 * d6;
+		if ( vb <= 0 && d2 >= 0 && d6 <= 0 ) {
+			double t = d2 / ( d2 - d6 );
+			setPoint( result , aX + t * acX , aY + t * acY , aZ + t * acZ );
+			return;
+		}
+		
+		//edge region of bc
+		double va = d3 * d6 - d5 * d4;
+		if ( va <= 0 && ( d4 - d3 ) >= 0 && ( d5 - d6 ) >= 0 ) {
+			double t = ( d4 - d3 ) / ( ( d4 - d3 ) + ( d5 - d6 ) );
+			setPoint( result , vertices[ 3 ] + t * ( vertices[ 6 ] - vertices[ 3 ] ) , vertices[ 4 ] + t * ( vertices[ 7 ] - vertices[ 4 ] ) , vertices[ 5 ] + t * ( vertices[ 8 ] - vertices[ 5 ] ) );
+			return;
+		}
+		
+		//face region
+		double denominator = va + vb + vc;
+		double v = denominator > 0 ? vb / denominator : 0;
+		double w = denominator > 0 ? vc / denominator : 0;
+		setPoint( result , aX + abX * v + acX * w , aY + abY * v + acY * w , aZ + abZ * v + acZ * w );
+	}
+	
+	private static void setPoint( double[] result , double x , double y , double z ) {
+		result[ 0 ] = x;
+		result[ 1 ] = y;
+		result[ 2 ] = z;
+	}
+}
@@ -0,0 +1,30 @@
+package rigidbody.collision.generate;
+
+/**
+ * a convex shape described by its support mapping: the point of the shape that
+ * lies farthest in a given direction. any pair of support-mapped shapes can be
+ * tested for contact by the <code>ConvexAndConvexCollisionGenerator</code>.
+ * <p>
+ * a shape is treated as a core shape swept by a sphere of radius <code>getMargin()</code>.
+ * a sphere, for example, is a single point with a margin equal to its radius
+ * 
+ * @see		ConvexAndConvexCollisionGenerator
+ */
+public interface SupportMapped {
+
+	/**
+	 * determines the point of the core shape farthest in the given direction,
+	 * in the local coordinates of the <code>RigidBody</code> the shape bounds
+	 * 
+	 * @param directionX		x component of the direction in local coordinates. need not be unit length
+	 * @param directionY		y component of the direction in local coordinates
+	 * @param directionZ		z component of the direction in local coordinates
+	 * @param result			an array of at least 3 elements to receive the support point
+	 */
+	abstract public void getLocalSupportPoint( double directionX , double directionY , double directionZ , double[] result );
+	
+	/**
+	 * @return			the radius of the sphere swept around the core shape
+	 */
+	abstract public double getMargin();
+}
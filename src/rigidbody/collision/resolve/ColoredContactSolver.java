@@ -0,0 +1,323 @@
+package rigidbody.collision.resolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.generate.Contact;
+import util.ErrorMessages;
+import _lib.LinkedList;
+import _math.Real;
+
+/**
+ * resolves the velocities of many <code>Contact</code>s on several threads. the
+ * contacts are colored so that no two contacts of the same color share a body
+ * that can move: a contact only changes the velocities of its own bodies, so the
+ * contacts of one color can be resolved at the same time in any order. the colors
+ * are resolved one after the other.
+ * <p>
+ * a contact is given the lowest color not yet used by either of its bodies. the
+ * colors therefore depend on the order of the contacts. in deterministic mode the
+ * contacts are first sorted by their pair of bodies and their contact point, so that
+ * the velocities resolved do not depend on the order in which contacts were found
+ */
+public class ColoredContactSolver {
+
+	/**
+	 * the most colors used. contacts that cannot be given one of these colors
+	 * are resolved one at a time after all the colors
+	 */
+	final public static int MAXIMUM_COLORS = 64;
+
+	/**
+	 * colors with fewer contacts than this are resolved on the calling thread,
+	 * since handing them to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_BATCH = 64;
+
+	/**
+	 * the color of contacts resolved one at a time after all the colors
+	 */
+	final private static int SEQUENTIAL_COLOR = MAXIMUM_COLORS;
+
+	/**
+	 * orders contacts by pair of bodies, then by contact point
+	 */
+	final private static Comparator < Contact > CONTACT_ORDER = new Comparator < Contact > () {
+
+		@Override
+		public int compare( Contact contact1 , Contact contact2 ) {
+			long key1 = contact1.getPairKey();
+			long key2 = contact2.getPairKey();
+			if ( key1 != key2 ) {
+				return key1 < key2 ? -1 : 1;
+			}
+			int order = contact1.getContactPoint().getX().compareTo( contact2.getContactPoint().getX() );
+			if ( order == 0 ) {
+				order = contact1.getContactPoint().getY().compareTo( contact2.getContactPoint().getY() );
+			}
+			if ( order == 0 ) {
+				order = contact1.getContactPoint().getZ().compareTo( contact2.getContactPoint().getZ() );
+			}
+			return order;
+		}
+	};
+
+	/**
+	 * if contacts are sorted before they are colored
+	 */
+	private boolean m_isDeterministic = false;
+
+	/**
+	 * the contacts being resolved, in the order they are colored
+	 */
+	final private ArrayList < Contact > m_contacts = new ArrayList < Contact > ();
+
+	/**
+	 * the contacts grouped by color
+	 */
+	private Contact[] m_coloredContacts = new Contact[ 0 ];
+
+	/**
+	 * the color of each contact in <code>m_contacts</code>
+	 */
+	private int[] m_colors = new int[ 0 ];
+
+	/**
+	 * the index in <code>m_coloredContacts</code> of the first contact of each color.
+	 * the last entry is the number of contacts
+	 */
+	final private int[] m_colorStarts = new int[ MAXIMUM_COLORS + 2 ];
+
+	/**
+	 * a bit for each color already used by the contacts of each body, indexed by id
+	 */
+	private long[] m_usedColors = new long[ 0 ];
+
+	/**
+	 * the number of colors used in the last resolve
+	 */
+	private int m_numColors = 0;
+
+	/**
+	 * the share of a color resolved by each worker
+	 */
+	final private ArrayList < Batch > m_batches = new ArrayList < Batch > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates a solver that resolves each color on the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public ColoredContactSolver( int numThreads ) throws IllegalArgumentException {
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.ContactSolver.INVALID_THREAD_COUNT );
+		}
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			this.m_batches.add( new Batch() );
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "contact solver" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param isDeterministic		if the contacts should be sorted before they are colored, so that the
+	 * 								result does not depend on the order in which they were added
+	 */
+	public void setDeterministic( boolean isDeterministic ) {
+		this.m_isDeterministic = isDeterministic;
+	}
+
+	public boolean isDeterministic() {
+		return this.m_isDeterministic;
+	}
+
+	/**
+	 * @return			the number of colors used in the last resolve, not counting contacts resolved one at a time
+	 */
+	public int getNumColors() {
+		return this.m_numColors;
+	}
+
+	/**
+	 * resolves the velocities of the given contacts, one color at a time
+	 *
+	 * @param contacts			the contacts to resolve
+	 * @param duration			the duration for which the contacts occur
+	 * @see						Contact#resolveVelocity(Real)
+	 */
+	public void resolveVelocities( LinkedList < Contact > contacts , Real duration ) {
+		this.m_contacts.clear();
+		for ( Contact contact : contacts ) {
+			this.m_contacts.add( contact );
+		}
+		if ( this.m_isDeterministic ) {
+			Collections.sort( this.m_contacts , CONTACT_ORDER );
+		}
+		colorContacts();
+
+		//resolve the colors in order, each one spread over the workers
+		for ( int color = 0 ; color < this.m_numColors ; color ++ ) {
+			int start = this.m_colorStarts[ color ];
+			int end = this.m_colorStarts[ color + 1 ];
+			if ( end - start < MINIMUM_PARALLEL_BATCH ) {
+				resolveRange( start , end , duration );
+			} else {
+				resolveInParallel( start , end , duration );
+			}
+		}
+
+		//then the contacts that could not be colored
+		resolveRange( this.m_colorStarts[ SEQUENTIAL_COLOR ] , this.m_colorStarts[ SEQUENTIAL_COLOR + 1 ] , duration );
+		Arrays.fill( this.m_coloredContacts , null );
+		this.m_contacts.clear();
+	}
+
+	/**
+	 * gives each contact the lowest color not used by its bodies, then groups the
+	 * contacts by color in <code>m_coloredContacts</code>
+	 */
+	private void colorContacts() {
+		int numContacts = this.m_contacts.size();
+		if ( this.m_colors.length < numContacts ) {
+			this.m_colors = new int[ numContacts ];
+			this.m_coloredContacts = new Contact[ numContacts ];
+		}
+		Arrays.fill( this.m_colorStarts , 0 );
+		this.m_numColors = 0;
+		for ( int idx = 0 ; idx < numContacts ; idx ++ ) {
+			Contact contact = this.m_contacts.get( idx );
+			int referenceId = contact.getReferenceBody().getId();
+			int otherId = RigidBody.getId( contact.getOtherBody() );
+
+			//bodies that are not part of a world cannot be tracked, so
+			//their contacts are resolved one at a time
+			int color = SEQUENTIAL_COLOR;
+			if ( referenceId >= 0 && ( otherId >= 0 || contact.getOtherBody() == null ) ) {
+				ensureCapacity( Math.max( referenceId , otherId ) + 1 );
+				long used = this.m_usedColors[ referenceId ] | ( otherId >= 0 ? this.m_usedColors[ otherId ] : 0 );
+				if ( used != -1L ) {
+					color = Long.numberOfTrailingZeros( ~used );
+					this.m_usedColors[ referenceId ] |= 1L << color;
+					if ( otherId >= 0 ) {
+						this.m_usedColors[ otherId ] |= 1L << color;
+					}
+					this.m_numColors = Math.max( this.m_numColors , color + 1 );
+				}
+			}
+			this.m_colors[ idx ] = color;
+			this.m_colorStarts[ color + 1 ] ++;
+		}
+
+		//turn the counts into starting indices, then place the contacts
+		for ( int color = 0 ; color <= SEQUENTIAL_COLOR ; color ++ ) {
+			this.m_colorStarts[ color + 1 ] += this.m_colorStarts[ color ];
+		}
+		int[] next = this.m_colorStarts.clone();
+		for ( int idx = 0 ; idx < numContacts ; idx ++ ) {
+			this.m_coloredContacts[ next[ this.m_colors[ idx ] ] ++ ] = this.m_contacts.get( idx );
+		}
+
+		//forget the colors used, ready for the next resolve
+		for ( int idx = 0 ; idx < numContacts ; idx ++ ) {
+			Contact contact = this.m_contacts.get( idx );
+			int referenceId = contact.getReferenceBody().getId();
+			int otherId = RigidBody.getId( contact.getOtherBody() );
+			if ( referenceId >= 0 && referenceId < this.m_usedColors.length ) {
+				this.m_usedColors[ referenceId ] = 0;
+			}
+			if ( otherId >= 0 && otherId < this.m_usedColors.length ) {
+				this.m_usedColors[ otherId ] = 0;
+			}
+		}
+	}
+
+	private void ensureCapacity( int numBodies ) {
+		if ( this.m_usedColors.length < numBodies ) {
+			this.m_usedColors = Arrays.copyOf( this.m_usedColors , Math.max( numBodies , 2 * this.m_usedColors.length ) );
+		}
+	}
+
+	private void resolveRange( int start , int end , Real duration ) {
+		for ( int idx = start ; idx < end ; idx ++ ) {
+			this.m_coloredContacts[ idx ].resolveVelocity( duration );
+		}
+	}
+
+	/**
+	 * splits a range of contacts of one color evenly over the workers and waits for all of them
+	 */
+	private void resolveInParallel( int start , int end , Real duration ) {
+		int numBatches = this.m_batches.size();
+		for ( int idx = 0 ; idx < numBatches ; idx ++ ) {
+			Batch batch = this.m_batches.get( idx );
+			batch.m_start = start + ( int ) ( ( long ) ( end - start ) * idx / numBatches );
+			batch.m_end = start + ( int ) ( ( long ) ( end - start ) * ( idx + 1 ) / numBatches );
+			batch.m_duration = duration;
+		}
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( this.m_batches ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the solver should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+
+	/**
+	 * the share of one color resolved by one worker
+	 */
+	private class Batch implements Callable < Object > {
+
+		private int m_start;
+
+		private int m_end;
+
+		private Real m_duration;
+
+		public Batch() {
+
+		}
+
+		@Override
+		public Object call() {
+			resolveRange( this.m_start , this.m_end , this.m_duration );
+			return null;
+		}
+	}
+}
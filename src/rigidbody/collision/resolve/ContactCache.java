@@ -0,0 +1,111 @@
+package rigidbody.collision.resolve;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.generate.Contact;
+import _lib.PairKey;
+import _lib.PairMap;
+
+/**
+ * remembers the <code>Contact</code> generated for each pair of bodies during
+ * the current and the previous frame. pairs are keyed by the ids of their bodies,
+ * so looking up last frame's contact for a pair and detecting when pairs begin or
+ * stop touching does not depend on object identity
+ */
+public class ContactCache {
+
+	/**
+	 * the first <code>Contact</code> recorded for each pair in the previous frame
+	 */
+	private PairMap < Contact > m_previousContacts = new PairMap < Contact > ();
+	
+	/**
+	 * the first <code>Contact</code> recorded for each pair in the current frame
+	 */
+	private PairMap < Contact > m_currentContacts = new PairMap < Contact > ();
+	
+	/**
+	 * notified when pairs begin or stop touching, or <code>null</code> if no one is listening
+	 */
+	private ContactListener m_listener;
+	
+	public ContactCache() {
+		
+	}
+	
+	/**
+	 * sets the <code>ContactListener</code> notified at the end of each frame
+	 * 
+	 * @param listener		the listener, or <code>null</code> to stop notifications
+	 */
+	public void setContactListener( ContactListener listener ) {
+		this.m_listener = listener;
+	}
+	
+	/**
+	 * records the given <code>Contact</code> for the current frame. only the first
+	 * <code>Contact</code> of each pair is kept, and contacts of bodies without an id
+	 * are not kept at all
+	 * 
+	 * @param contact		a <code>Contact</code> generated this frame
+	 */
+	public void addContact( Contact contact ) {
+		if ( !contact.hasPairKey() ) {
+			return;
+		}
+		long key = contact.getPairKey();
+		if ( !this.m_currentContacts.containsKey( key ) ) {
+			this.m_currentContacts.put( key , contact );
+		}
+	}
+	
+	/**
+	 * @param body1			a <code>RigidBody</code>
+	 * @param body2			another <code>RigidBody</code>, or <code>null</code> for scenery
+	 * @return				the <code>Contact</code> recorded for the pair in the previous frame,
+	 * 						or <code>null</code> if they were not in contact or either body has no id
+	 */
+	public Contact getPreviousContact( RigidBody body1 , RigidBody body2 ) {
+		if ( !RigidBody.isIdentified( body1 ) || !RigidBody.isIdentified( body2 ) ) {
+			return null;
+		}
+		return this.m_previousContacts.get( PairKey.pack( RigidBody.getId( body1 ) , RigidBody.getId( body2 ) ) );
+	}
+	
+	/**
+	 * @param pairKey		the key of a pair of bodies
+	 * @return				if the pair was in contact in the previous frame
+	 */
+	public boolean wasInContact( long pairKey ) {
+		return this.m_previousContacts.containsKey( pairKey );
+	}
+	
+	/**
+	 * ends the current frame. the listener, if any, is notified of pairs that
+	 * began or stopped touching, and the current frame's contacts become the
+	 * previous frame's contacts
+	 */
+	public void endFrame() {
+		if ( this.m_listener != null ) {
+			
+			//pairs in contact now but not last frame have begun touching
+			for ( int slot = 0 ; slot < this.m_currentContacts.capacity() ; slot ++ ) {
+				if ( this.m_currentContacts.isOccupied( slot ) && !this.m_previousContacts.containsKey( this.m_currentContacts.keyAt( slot ) ) ) {
+					this.m_listener.contactBegan( this.m_currentContacts.valueAt( slot ) );
+				}
+			}
+			
+			//pairs in contact last frame but not now have stopped touching
+			for ( int slot = 0 ; slot < this.m_previousContacts.capacity() ; slot ++ ) {
+				if ( this.m_previousContacts.isOccupied( slot ) && !this.m_currentContacts.containsKey( this.m_previousContacts.keyAt( slot ) ) ) {
+					this.m_listener.contactEnded( this.m_previousContacts.valueAt( slot ) );
+				}
+			}
+		}
+		
+		//swap the tables so neither has to be reallocated
+		PairMap < Contact > swap = this.m_previousContacts;
+		this.m_previousContacts = this.m_currentContacts;
+		this.m_currentContacts = swap;
+		this.m_currentContacts.clear();
+	}
+}
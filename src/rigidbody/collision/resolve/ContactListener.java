@@ -0,0 +1,25 @@
+package rigidbody.collision.resolve;
+
+import rigidbody.collision.generate.Contact;
+
+/**
+ * receives notifications when pairs of <code>RigidBody</code> objects begin
+ * or stop touching
+ */
+public interface ContactListener {
+
+	/**
+	 * called once for a pair of bodies in the first frame in which they are in contact
+	 * 
+	 * @param contact		the first <code>Contact</code> generated for the pair this frame
+	 */
+	abstract public void contactBegan( Contact contact );
+	
+	/**
+	 * called once for a pair of bodies in the first frame in which they are no
+	 * longer in contact
+	 * 
+	 * @param lastContact	the <code>Contact</code> recorded for the pair in the previous frame
+	 */
+	abstract public void contactEnded( Contact lastContact );
+}
@@ -26,6 +26,17 @@ public class ContactResolver {
 	 */
 	private int m_maximumIterations;
 	
+	/**
+	 * remembers the contacts of each pair of bodies from one frame to the next
+	 */
+	private ContactCache m_contactCache = new ContactCache();
+	
+	/**
+	 * resolves velocities on several threads, or <code>null</code> if velocities
+	 * are resolved one contact at a time on the calling thread
+	 */
+	private ColoredContactSolver m_coloredSolver = null;
+	
 	/**
 	 * creates a <code>ContactResolver</code> that resolves collisions between objects 
 	 * 
@@ -41,17 +52,51 @@ public class ContactResolver {
 	
 	/**
 	 * adds the given <code>Contact</code> to the list of <code>Contact</code>s that need
-	 * to be resolved
+	 * to be resolved. speculative contacts have no penetration to resolve, so only
+	 * their velocities are resolved
 	 * 
 	 * @param contact			the <code>Contact</code> to add
 	 */
 	public void addContact( Contact contact ) {
-		this.m_penetrationsToResolve.add( contact );
+		if ( !contact.isSpeculative() ) {
+			this.m_penetrationsToResolve.add( contact );
+		}
 		this.m_velocitiesToResolve.add( contact );
+		this.m_contactCache.addContact( contact );
+	}
+	
+	/**
+	 * @return			the <code>ContactCache</code> holding this frame's and last frame's
+	 * 					<code>Contact</code>s for each pair of bodies
+	 */
+	public ContactCache getContactCache() {
+		return this.m_contactCache;
 	}
 	
 	/**
-	 * resolves the <code>Contact</code>s assigned to this <code>ContactResolver</code>
+	 * sets the <code>ContactListener</code> notified when pairs of bodies begin or
+	 * stop touching
+	 * 
+	 * @param listener		the listener, or <code>null</code> to stop notifications
+	 */
+	public void setContactListener( ContactListener listener ) {
+		this.m_contactCache.setContactListener( listener );
+	}
+	
+	/**
+	 * sets the solver used to resolve velocities in parallel. penetrations are
+	 * always resolved on the calling thread, since each step resolves the worst
+	 * penetration left by the step before
+	 * 
+	 * @param solver		the solver, or <code>null</code> to resolve velocities one contact at a time
+	 */
+	public void setColoredSolver( ColoredContactSolver solver ) {
+		this.m_coloredSolver = solver;
+	}
+	
+	/**
+	 * resolves the <code>Contact</code>s assigned to this <code>ContactResolver</code>.
+	 * contacts left unresolved are dropped, so none are carried into the next frame
 	 * 
 	 * @param duration		duration over which these <code>Contact</code>s occur - i.e.
 	 * 						the duration passed to the <code>RigidBody</code> <code>act()</code>
@@ -61,6 +106,9 @@ public class ContactResolver {
 	public void resolve( Real duration ) {
 		resolvePenetrations();
 		resolveVelocities( duration );
+		this.m_penetrationsToResolve.removeAll();
+		this.m_velocitiesToResolve.removeAll();
+		this.m_contactCache.endFrame();
 	}
 	
 	/**
@@ -111,6 +159,13 @@ public class ContactResolver {
 	 */
 	protected void resolveVelocities( Real duration ) {
 		
+		//let the colored solver resolve all the contacts at once, if there is one
+		if ( this.m_coloredSolver != null ) {
+			this.m_coloredSolver.resolveVelocities( this.m_velocitiesToResolve , duration );
+			this.m_velocitiesToResolve.removeAll();
+			return;
+		}
+		
 		//go through each contact
 		for ( Contact aContact : this.m_velocitiesToResolve ) {
 			
@@ -0,0 +1,37 @@
+package rigidbody.collision.trigger;
+
+/**
+ * receives the overlaps between triggers and bodies found by a <code>TriggerSet</code>,
+ * once per step and in batches. each overlap is keyed by the id of the trigger's body
+ * and the id of the overlapping body, in that order, packed with
+ * <code>PairKey.packOrdered(int, int)</code>. <code>PairKey.getFirstId(long)</code>
+ * returns the trigger's body and <code>PairKey.getSecondId(long)</code> the other body
+ * 
+ * @see		_lib.PairKey
+ */
+public interface TriggerListener {
+
+	/**
+	 * called with the pairs that began overlapping in this step
+	 * 
+	 * @param pairKeys		the keys of the pairs. only the first <code>count</code> are used
+	 * @param count			the number of pairs
+	 */
+	public void triggersEntered( long[] pairKeys , int count );
+	
+	/**
+	 * called with the pairs that overlapped in the previous step and still overlap
+	 * 
+	 * @param pairKeys		the keys of the pairs. only the first <code>count</code> are used
+	 * @param count			the number of pairs
+	 */
+	public void triggersStayed( long[] pairKeys , int count );
+	
+	/**
+	 * called with the pairs that overlapped in the previous step but no longer overlap
+	 * 
+	 * @param pairKeys		the keys of the pairs. only the first <code>count</code> are used
+	 * @param count			the number of pairs
+	 */
+	public void triggersExited( long[] pairKeys , int count );
+}
@@ -0,0 +1,526 @@
+package rigidbody.collision.trigger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.broad.PotentialContact;
+import rigidbody.collision.broad.PotentialContactGenerator;
+import rigidbody.collision.broad.bvh.BoundingSphere;
+import rigidbody.collision.broad.bvh.BoundingVolumeTree;
+import rigidbody.collision.generate.Primitive;
+import rigidbody.collision.generate.PrimitiveBox;
+import rigidbody.collision.generate.PrimitiveSphere;
+import util.ErrorMessages;
+import _lib.PairKey;
+import _lib.PairSet;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * finds the bodies overlapping trigger volumes, e.g. zones that notify gameplay
+ * code when something enters them. triggers are primitives of bodies, usually
+ * static or kinematic ones, and are tested against the primitives of other bodies
+ * with boolean overlap tests only: no <code>Contact</code>s are generated and
+ * the bodies are never pushed apart.
+ * <p>
+ * each body is bounded by a sphere around all of its triggers and primitives, and
+ * only the pairs of bodies that a <code>BoundingVolumeTree</code> finds touching
+ * are tested. the tree is rebuilt each step because bodies move.
+ * <p>
+ * a <code>TriggerSet</code> is added to a world like any other
+ * <code>PotentialContactGenerator</code>. the overlaps are found while potential
+ * contacts are generated, and the <code>TriggerListener</code> is given the pairs
+ * that entered, stayed in and exited triggers when contacts are resolved, once
+ * per step. spheres and boxes are supported
+ */
+public class TriggerSet extends PotentialContactGenerator {
+
+	/**
+	 * the kinds of shapes that can be tested
+	 */
+	final private static int SPHERE = 0;
+
+	final private static int BOX = 1;
+
+	/**
+	 * the number of values stored for each shape: the rotation of its body, its
+	 * position, its radius or half size, and the radius of the sphere around it
+	 */
+	final private static int SHAPE_SIZE = 16;
+
+	final private static int POSITION = 9;
+
+	final private static int HALF_SIZE = 12;
+
+	final private static int BOUNDING_RADIUS = 15;
+
+	/**
+	 * added to the products of box axes so that boxes with parallel edges are not
+	 * falsely separated by the nearly zero cross products of their axes
+	 */
+	final private static double PARALLEL_EPSILON = 1e-6;
+
+	/**
+	 * the trigger volumes
+	 */
+	final private ArrayList < Primitive > m_triggers = new ArrayList < Primitive > ();
+
+	/**
+	 * the primitives of the bodies that can enter the triggers
+	 */
+	final private ArrayList < Primitive > m_primitives = new ArrayList < Primitive > ();
+
+	/**
+	 * the kind of each trigger, then of each primitive
+	 */
+	private int[] m_kinds = new int[ 0 ];
+
+	/**
+	 * the <code>SHAPE_SIZE</code> values of each trigger, then of each primitive, for the current step
+	 */
+	private double[] m_shapes = new double[ 0 ];
+
+	/**
+	 * the first trigger and the first primitive of each body, indexed by id, and
+	 * the next shape of the same kind and body after each shape, or -1 for none
+	 */
+	private int[] m_firstTrigger = new int[ 0 ];
+
+	private int[] m_firstPrimitive = new int[ 0 ];
+
+	private int[] m_nextSlot = new int[ 0 ];
+
+	/**
+	 * the bodies with triggers or primitives in the current step
+	 */
+	final private ArrayList < RigidBody > m_bodies = new ArrayList < RigidBody > ();
+
+	/**
+	 * the pairs overlapping in the current and the previous step, keyed by the
+	 * trigger's body, then the other body
+	 */
+	private PairSet m_overlaps = new PairSet();
+
+	private PairSet m_previousOverlaps = new PairSet();
+
+	/**
+	 * the batches of pairs given to the listener
+	 */
+	private long[] m_entered = new long[ 16 ];
+
+	private long[] m_stayed = new long[ 16 ];
+
+	private long[] m_exited = new long[ 16 ];
+
+	/**
+	 * the rotation from the second box of a pair to the first, its absolute values,
+	 * and the offset between the boxes in the coordinates of the first
+	 */
+	final private double[] m_rotation = new double[ 9 ];
+
+	final private double[] m_absRotation = new double[ 9 ];
+
+	final private double[] m_translation = new double[ 3 ];
+
+	/**
+	 * overlaps with triggers do not bring bodies into contact, so there are never
+	 * any potential pairs to report
+	 */
+	final private PairSet m_noPairs = new PairSet();
+
+	/**
+	 * notified of overlaps, or <code>null</code> if no one is listening
+	 */
+	private TriggerListener m_listener = null;
+
+	public TriggerSet() {
+		super();
+	}
+
+	/**
+	 * @param listener		the listener notified once per step, or <code>null</code> to stop notifications
+	 */
+	public void setTriggerListener( TriggerListener listener ) {
+		this.m_listener = listener;
+	}
+
+	/**
+	 * adds a trigger volume. the body of the trigger must already have its id, e.g.
+	 * from being added to a <code>RigidBodyWorld</code>
+	 *
+	 * @param trigger						a sphere or box
+	 * @throws IllegalArgumentException		if the primitive is not a sphere or box, or its body has no id
+	 */
+	public void addTrigger( Primitive trigger ) throws IllegalArgumentException {
+		checkPrimitive( trigger );
+		this.m_triggers.add( trigger );
+	}
+
+	public void removeTrigger( Primitive trigger ) {
+		this.m_triggers.remove( trigger );
+	}
+
+	/**
+	 * adds a primitive of a body that can enter the triggers. the body must already
+	 * have its id, e.g. from being added to a <code>RigidBodyWorld</code>
+	 *
+	 * @param primitive						a sphere or box
+	 * @throws IllegalArgumentException		if the primitive is not a sphere or box, or its body has no id
+	 */
+	public void addPrimitive( Primitive primitive ) throws IllegalArgumentException {
+		checkPrimitive( primitive );
+		this.m_primitives.add( primitive );
+	}
+
+	public void removePrimitive( Primitive primitive ) {
+		this.m_primitives.remove( primitive );
+	}
+
+	/**
+	 * @param key			the key of a trigger's body and another body, packed with <code>PairKey.packOrdered(int, int)</code>
+	 * @return				if the other body overlapped the trigger in the last step whose overlaps were given to the listener
+	 */
+	public boolean isOverlapping( long key ) {
+		return this.m_previousOverlaps.contains( key );
+	}
+
+	private static void checkPrimitive( Primitive primitive ) throws IllegalArgumentException {
+		if ( !( primitive instanceof PrimitiveSphere ) && !( primitive instanceof PrimitiveBox ) ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Trigger.UNSUPPORTED_PRIMITIVE );
+		}
+		if ( RigidBody.getId( primitive.getBody() ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Collision.Trigger.UNIDENTIFIED_BODY );
+		}
+	}
+
+	/**
+	 * finds the pairs of bodies overlapping the triggers in this step
+	 */
+	@Override
+	public void generatePotentialContacts() {
+		int numTriggers = this.m_triggers.size();
+		int numShapes = numTriggers + this.m_primitives.size();
+		if ( this.m_kinds.length < numShapes ) {
+			this.m_kinds = new int[ numShapes ];
+			this.m_shapes = new double[ SHAPE_SIZE * numShapes ];
+			this.m_nextSlot = new int[ numShapes ];
+		}
+		int numIds = 0;
+		for ( int slot = 0 ; slot < numShapes ; slot ++ ) {
+			Primitive primitive = getPrimitive( slot );
+			loadShape( primitive , slot );
+			numIds = Math.max( numIds , primitive.getBody().getId() + 1 );
+		}
+
+		//chain the triggers and the primitives of each body, in slot order, so
+		//the shapes of a pair of bodies can be found
+		if ( this.m_firstTrigger.length < numIds ) {
+			this.m_firstTrigger = new int[ numIds ];
+			this.m_firstPrimitive = new int[ numIds ];
+		}
+		Arrays.fill( this.m_firstTrigger , 0 , numIds , -1 );
+		Arrays.fill( this.m_firstPrimitive , 0 , numIds , -1 );
+		this.m_bodies.clear();
+		for ( int slot = numShapes - 1 ; slot >= 0 ; slot -- ) {
+			RigidBody body = getPrimitive( slot ).getBody();
+			int id = body.getId();
+			if ( this.m_firstTrigger[ id ] < 0 && this.m_firstPrimitive[ id ] < 0 ) {
+				this.m_bodies.add( body );
+			}
+			if ( slot < numTriggers ) {
+				this.m_nextSlot[ slot ] = this.m_firstTrigger[ id ];
+				this.m_firstTrigger[ id ] = slot;
+			} else {
+				this.m_nextSlot[ slot ] = this.m_firstPrimitive[ id ];
+				this.m_firstPrimitive[ id ] = slot;
+			}
+		}
+
+		//the tree finds the bodies whose bounding spheres touch
+		BoundingVolumeTree < BoundingSphere > tree = new BoundingVolumeTree < BoundingSphere > ();
+		for ( RigidBody body : this.m_bodies ) {
+			tree.insert( body , getBoundingSphere( body.getId() ) );
+		}
+
+		//only the pairs found in this step are kept
+		this.m_overlaps.clear();
+		for ( PotentialContact pair : tree.getPotentialContacts( Integer.MAX_VALUE ) ) {
+			RigidBody body1 = pair.getBody1();
+			RigidBody body2 = pair.getBody2();
+			if ( body1.isStatic() && body2.isStatic() ) {
+				continue;
+			}
+
+			//either body may have triggers the other enters
+			addOverlaps( body1.getId() , body2.getId() );
+			addOverlaps( body2.getId() , body1.getId() );
+		}
+	}
+
+	/**
+	 * @return			the trigger or primitive in the given slot
+	 */
+	private Primitive getPrimitive( int slot ) {
+		int numTriggers = this.m_triggers.size();
+		return slot < numTriggers ? this.m_triggers.get( slot ) : this.m_primitives.get( slot - numTriggers );
+	}
+
+	/**
+	 * @return			a sphere around the bounding spheres of all triggers and primitives of a body
+	 */
+	private BoundingSphere getBoundingSphere( int id ) {
+		BoundingSphere rtn = null;
+		for ( int pass = 0 ; pass < 2 ; pass ++ ) {
+			int slot = pass == 0 ? this.m_firstTrigger[ id ] : this.m_firstPrimitive[ id ];
+			for ( ; slot >= 0 ; slot = this.m_nextSlot[ slot ] ) {
+				int offset = SHAPE_SIZE * slot;
+				Vector3D center = new Vector3D( new Real( this.m_shapes[ offset + POSITION ] ) , new Real( this.m_shapes[ offset + POSITION + 1 ] ) , new Real( this.m_shapes[ offset + POSITION + 2 ] ) );
+				BoundingSphere sphere = new BoundingSphere( center , new Real( this.m_shapes[ offset + BOUNDING_RADIUS ] ) );
+				rtn = rtn == null ? sphere : rtn.calculateEnclosingShape( sphere );
+			}
+		}
+		return rtn;
+	}
+
+	/**
+	 * records an overlap if a primitive of one body overlaps a trigger of another
+	 *
+	 * @param triggerId			the id of the body whose triggers are tested
+	 * @param id				the id of the body whose primitives are tested
+	 */
+	private void addOverlaps( int triggerId , int id ) {
+		long key = PairKey.packOrdered( triggerId , id );
+		double[] shapes = this.m_shapes;
+		for ( int trigger = this.m_firstTrigger[ triggerId ] ; trigger >= 0 ; trigger = this.m_nextSlot[ trigger ] ) {
+			int triggerOffset = SHAPE_SIZE * trigger;
+			for ( int shape = this.m_firstPrimitive[ id ] ; shape >= 0 ; shape = this.m_nextSlot[ shape ] ) {
+
+				//the bounding spheres reject most pairs
+				int offset = SHAPE_SIZE * shape;
+				double dx = shapes[ offset + POSITION ] - shapes[ triggerOffset + POSITION ];
+				double dy = shapes[ offset + POSITION + 1 ] - shapes[ triggerOffset + POSITION + 1 ];
+				double dz = shapes[ offset + POSITION + 2 ] - shapes[ triggerOffset + POSITION + 2 ];
+				double reach = shapes[ offset + BOUNDING_RADIUS ] + shapes[ triggerOffset + BOUNDING_RADIUS ];
+				if ( dx * dx + dy * dy + dz * dz > reach * reach ) {
+					continue;
+				}
+				if ( overlaps( trigger , shape ) ) {
+					this.m_overlaps.add( key );
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * overlaps with triggers never make bodies step together
+	 *
+	 * @return			an empty set
+	 */
+	@Override
+	public PairSet getPotentialPairs() {
+		return this.m_noPairs;
+	}
+
+	/**
+	 * gives the listener the pairs that entered, stayed in and exited the triggers in
+	 * this step. no contacts are resolved
+	 *
+	 * @param duration			the duration of the step
+	 */
+	@Override
+	public void resolve( Real duration ) {
+		int numEntered = 0;
+		int numStayed = 0;
+		int numExited = 0;
+		if ( this.m_listener != null ) {
+			for ( int slot = 0 ; slot < this.m_overlaps.capacity() ; slot ++ ) {
+				if ( this.m_overlaps.isOccupied( slot ) ) {
+					long key = this.m_overlaps.keyAt( slot );
+					if ( this.m_previousOverlaps.contains( key ) ) {
+						this.m_stayed = append( this.m_stayed , numStayed , key );
+						numStayed ++;
+					} else {
+						this.m_entered = append( this.m_entered , numEntered , key );
+						numEntered ++;
+					}
+				}
+			}
+			for ( int slot = 0 ; slot < this.m_previousOverlaps.capacity() ; slot ++ ) {
+				if ( this.m_previousOverlaps.isOccupied( slot ) && !this.m_overlaps.contains( this.m_previousOverlaps.keyAt( slot ) ) ) {
+					this.m_exited = append( this.m_exited , numExited , this.m_previousOverlaps.keyAt( slot ) );
+					numExited ++;
+				}
+			}
+			if ( numEntered > 0 ) {
+				this.m_listener.triggersEntered( this.m_entered , numEntered );
+			}
+			if ( numStayed > 0 ) {
+				this.m_listener.triggersStayed( this.m_stayed , numStayed );
+			}
+			if ( numExited > 0 ) {
+				this.m_listener.triggersExited( this.m_exited , numExited );
+			}
+		}
+
+		//swap the sets so neither has to be reallocated
+		PairSet swap = this.m_previousOverlaps;
+		this.m_previousOverlaps = this.m_overlaps;
+		this.m_overlaps = swap;
+		this.m_overlaps.clear();
+	}
+
+	/**
+	 * stores the given key at the end of a batch, growing it if it is full
+	 *
+	 * @return			the batch
+	 */
+	private static long[] append( long[] batch , int count , long key ) {
+		long[] rtn = batch;
+		if ( count == rtn.length ) {
+			rtn = new long[ 2 * count ];
+			System.arraycopy( batch , 0 , rtn , 0 , count );
+		}
+		rtn[ count ] = key;
+		return rtn;
+	}
+
+	/**
+	 * stores the kind, pose and size of a primitive in the given slot
+	 */
+	private void loadShape( Primitive primitive , int slot ) {
+		int offset = SHAPE_SIZE * slot;
+		double[] shapes = this.m_shapes;
+		RigidBody body = primitive.getBody();
+		body.getOrientation().toOrientationData( shapes , offset );
+		Vector3D position = body.getPosition();
+		shapes[ offset + POSITION ] = position.getX().value();
+		shapes[ offset + POSITION + 1 ] = position.getY().value();
+		shapes[ offset + POSITION + 2 ] = position.getZ().value();
+		if ( primitive instanceof PrimitiveSphere ) {
+			double radius = ( ( PrimitiveSphere ) primitive ).getRadius().value();
+			this.m_kinds[ slot ] = SPHERE;
+			shapes[ offset + HALF_SIZE ] = radius;
+			shapes[ offset + BOUNDING_RADIUS ] = radius;
+		} else {
+			Vector3D halfSize = ( ( PrimitiveBox ) primitive ).getHalfSize();
+			double x = halfSize.getX().value();
+			double y = halfSize.getY().value();
+			double z = halfSize.getZ().value();
+			this.m_kinds[ slot ] = BOX;
+			shapes[ offset + HALF_SIZE ] = x;
+			shapes[ offset + HALF_SIZE + 1 ] = y;
+			shapes[ offset + HALF_SIZE + 2 ] = z;
+			shapes[ offset + BOUNDING_RADIUS ] = Math.sqrt( x * x + y * y + z * z );
+		}
+	}
+
+	/**
+	 * @return			if the shapes in the two given slots overlap
+	 */
+	private boolean overlaps( int slot1 , int slot2 ) {
+		int kind1 = this.m_kinds[ slot1 ];
+		int kind2 = this.m_kinds[ slot2 ];
+		if ( kind1 == SPHERE && kind2 == SPHERE ) {
+
+			//the bounding spheres are the spheres themselves
+			return true;
+		} else if ( kind1 == BOX && kind2 == BOX ) {
+			return boxesOverlap( SHAPE_SIZE * slot1 , SHAPE_SIZE * slot2 );
+		} else if ( kind1 == BOX ) {
+			return sphereOverlapsBox( SHAPE_SIZE * slot2 , SHAPE_SIZE * slot1 );
+		} else {
+			return sphereOverlapsBox( SHAPE_SIZE * slot1 , SHAPE_SIZE * slot2 );
+		}
+	}
+
+	/**
+	 * clamps the center of the sphere to the box, in the box's coordinates, and
+	 * compares the distance to the clamped point with the radius
+	 */
+	private boolean sphereOverlapsBox( int sphere , int box ) {
+		double[] shapes = this.m_shapes;
+		double dx = shapes[ sphere + POSITION ] - shapes[ box + POSITION ];
+		double dy = shapes[ sphere + POSITION + 1 ] - shapes[ box + POSITION + 1 ];
+		double dz = shapes[ sphere + POSITION + 2 ] - shapes[ box + POSITION + 2 ];
+		double distanceSquared = 0;
+		for ( int axis = 0 ; axis < 3 ; axis ++ ) {
+
+			//the axes of the box are the columns of its rotation
+			double local = dx * shapes[ box + axis ] + dy * shapes[ box + 3 + axis ] + dz * shapes[ box + 6 + axis ];
+			double halfSize = shapes[ box + HALF_SIZE + axis ];
+			double outside = Math.abs( local ) - halfSize;
+			if ( outside > 0 ) {
+				distanceSquared += outside * outside;
+			}
+		}
+		double radius = shapes[ sphere + HALF_SIZE ];
+		return distanceSquared <= radius * radius;
+	}
+
+	/**
+	 * tests the 15 separating axes of two boxes: the 3 axes of each box and the
+	 * 9 cross products of their axes, all in the coordinates of the first box
+	 */
+	private boolean boxesOverlap( int box1 , int box2 ) {
+		double[] shapes = this.m_shapes;
+		double[] rotation = this.m_rotation;
+		double[] absRotation = this.m_absRotation;
+		double[] translation = this.m_translation;
+		double dx = shapes[ box2 + POSITION ] - shapes[ box1 + POSITION ];
+		double dy = shapes[ box2 + POSITION + 1 ] - shapes[ box1 + POSITION + 1 ];
+		double dz = shapes[ box2 + POSITION + 2 ] - shapes[ box1 + POSITION + 2 ];
+		for ( int row = 0 ; row < 3 ; row ++ ) {
+			translation[ row ] = dx * shapes[ box1 + row ] + dy * shapes[ box1 + 3 + row ] + dz * shapes[ box1 + 6 + row ];
+			for ( int column = 0 ; column < 3 ; column ++ ) {
+				double product = shapes[ box1 + row ] * shapes[ box2 + column ] + shapes[ box1 + 3 + row ] * shapes[ box2 + 3 + column ] + shapes[ box1 + 6 + row ] * shapes[ box2 + 6 + column ];
+				rotation[ 3 * row + column ] = product;
+				absRotation[ 3 * row + column ] = Math.abs( product ) + PARALLEL_EPSILON;
+			}
+		}
+		int halfSize1 = box1 + HALF_SIZE;
+		int halfSize2 = box2 + HALF_SIZE;
+
+		//the axes of the first box
+		for ( int row = 0 ; row < 3 ; row ++ ) {
+			double reach = shapes[ halfSize1 + row ];
+			for ( int column = 0 ; column < 3 ; column ++ ) {
+				reach += shapes[ halfSize2 + column ] * absRotation[ 3 * row + column ];
+			}
+			if ( Math.abs( translation[ row ] ) > reach ) {
+				return false;
+			}
+		}
+
+		//the axes of the second box
+		for ( int column = 0 ; column < 3 ; column ++ ) {
+			double reach = shapes[ halfSize2 + column ];
+			double distance = 0;
+			for ( int row = 0 ; row < 3 ; row ++ ) {
+				reach += shapes[ halfSize1 + row ] * absRotation[ 3 * row + column ];
+				distance += translation[ row ] * rotation[ 3 * row + column ];
+			}
+			if ( Math.abs( distance ) > reach ) {
+				return false;
+			}
+		}
+
+		//the cross products of an axis of each box
+		for ( int row = 0 ; row < 3 ; row ++ ) {
+			int row1 = ( row + 1 ) % 3;
+			int row2 = ( row + 2 ) % 3;
+			for ( int column = 0 ; column < 3 ; column ++ ) {
+				int column1 = ( column + 1 ) % 3;
+				int column2 = ( column + 2 ) % 3;
+				double reach = shapes[ halfSize1 + row1 ] * absRotation[ 3 * row2 + column ] + shapes[ halfSize1 + row2 ] * absRotation[ 3 * row1 + column ]
+						+ shapes[ halfSize2 + column1 ] * absRotation[ 3 * row + column2 ] + shapes[ halfSize2 + column2 ] * absRotation[ 3 * row + column1 ];
+				double distance = translation[ row2 ] * rotation[ 3 * row1 + column ] - translation[ row1 ] * rotation[ 3 * row2 + column ];
+				if ( Math.abs( distance ) > reach ) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,121 @@
+package rigidbody.force;
+
+import java.util.Arrays;
+
+import rigidbody.RigidBody;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * collects the forces and torques added to <code>RigidBody</code>s by one thread of a
+ * <code>ParallelForceStage</code>, indexed by body id. while a thread has an accumulator,
+ * the forces and torques it adds to bodies go to the accumulator instead of the bodies,
+ * so that threads never write to the same body. the stage then adds the totals of all
+ * accumulators to the bodies
+ */
+public class ForceAccumulator {
+
+	/**
+	 * the accumulator of each thread of a <code>ParallelForceStage</code> while it runs generators
+	 */
+	final private static ThreadLocal < ForceAccumulator > CURRENT = new ThreadLocal < ForceAccumulator > ();
+
+	/**
+	 * the total force and torque on each body, indexed by id
+	 */
+	private double[] m_forces = new double[ 0 ];
+
+	private double[] m_torques = new double[ 0 ];
+
+	/**
+	 * if anything was added to each body
+	 */
+	private boolean[] m_isTouched = new boolean[ 0 ];
+
+	public ForceAccumulator() {
+
+	}
+
+	/**
+	 * @return			the accumulator of the current thread, or <code>null</code> if forces
+	 * 					should be added to bodies directly
+	 */
+	public static ForceAccumulator getCurrent() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @param accumulator		the accumulator of the current thread, or <code>null</code> to add
+	 * 							forces to bodies directly again
+	 */
+	static void setCurrent( ForceAccumulator accumulator ) {
+		if ( accumulator == null ) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set( accumulator );
+		}
+	}
+
+	/**
+	 * makes room for bodies with ids below the given number
+	 */
+	void ensureCapacity( int numBodies ) {
+		if ( this.m_isTouched.length < numBodies ) {
+			this.m_forces = Arrays.copyOf( this.m_forces , 3 * numBodies );
+			this.m_torques = Arrays.copyOf( this.m_torques , 3 * numBodies );
+			this.m_isTouched = Arrays.copyOf( this.m_isTouched , numBodies );
+		}
+	}
+
+	/**
+	 * @param id		the id of a body
+	 * @return			if any force or torque on the given body is in this accumulator
+	 */
+	boolean isTouched( int id ) {
+		return id < this.m_isTouched.length && this.m_isTouched[ id ];
+	}
+
+	/**
+	 * adds a force on the body with the given id
+	 *
+	 * @param id		the id of the body
+	 * @param force		the force, applied at the center of mass
+	 */
+	public void addForce( int id , Vector3D force ) {
+		int offset = 3 * id;
+		this.m_forces[ offset ] += force.getX().value();
+		this.m_forces[ offset + 1 ] += force.getY().value();
+		this.m_forces[ offset + 2 ] += force.getZ().value();
+		this.m_isTouched[ id ] = true;
+	}
+
+	/**
+	 * adds a torque on the body with the given id
+	 *
+	 * @param id		the id of the body
+	 * @param torque	the torque
+	 */
+	public void addTorque( int id , Vector3D torque ) {
+		int offset = 3 * id;
+		this.m_torques[ offset ] += torque.getX().value();
+		this.m_torques[ offset + 1 ] += torque.getY().value();
+		this.m_torques[ offset + 2 ] += torque.getZ().value();
+		this.m_isTouched[ id ] = true;
+	}
+
+	/**
+	 * adds the force and torque collected for a body to the body, then forgets them.
+	 * the current thread must not have an accumulator
+	 *
+	 * @param body		the body
+	 */
+	void flush( RigidBody body ) {
+		int id = body.getId();
+		int offset = 3 * id;
+		body.addForceVector( new Vector3D( new Real( this.m_forces[ offset ] ) , new Real( this.m_forces[ offset + 1 ] ) , new Real( this.m_forces[ offset + 2 ] ) ) );
+		body.addTorqueVector( new Vector3D( new Real( this.m_torques[ offset ] ) , new Real( this.m_torques[ offset + 1 ] ) , new Real( this.m_torques[ offset + 2 ] ) ) );
+		Arrays.fill( this.m_forces , offset , offset + 3 , 0 );
+		Arrays.fill( this.m_torques , offset , offset + 3 , 0 );
+		this.m_isTouched[ id ] = false;
+	}
+}
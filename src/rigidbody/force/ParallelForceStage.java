@@ -0,0 +1,209 @@
+package rigidbody.force;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _lib.LinkedList;
+
+/**
+ * runs <code>RigidBodyForceGenerator</code>s on several threads at once.
+ * <p>
+ * the generators are split into one contiguous block per worker. while a worker runs its
+ * block, every force and torque its generators add to a <code>RigidBody</code> goes to the
+ * worker's own <code>ForceAccumulator</code>, indexed by the body's id, rather than to the
+ * body. once every block is done, the bodies are split between the workers again, and each
+ * worker adds the totals of all accumulators to its bodies, in worker order. no two threads
+ * ever write to the same body, and the forces on a body are summed in the same order every
+ * step for a given number of threads.
+ * <p>
+ * generators may read any body, but must not change anything but the forces and torques of
+ * their bodies. every body written must be in the given list of bodies, indexed by id, e.g.
+ * the bodies of a <code>RigidBodyWorld</code>
+ */
+public class ParallelForceStage {
+
+	/**
+	 * with fewer generators than this, they are run on the calling thread,
+	 * since handing them to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_GENERATORS = 8;
+
+	/**
+	 * the generators being run in this step
+	 */
+	final private ArrayList < RigidBodyForceGenerator > m_generators = new ArrayList < RigidBodyForceGenerator > ();
+
+	/**
+	 * the bodies the generators may write, indexed by id
+	 */
+	private ArrayList < RigidBody > m_bodies;
+
+	/**
+	 * the accumulator of each worker
+	 */
+	final private ForceAccumulator[] m_accumulators;
+
+	/**
+	 * the tasks that run each worker's generators, and that add each worker's share
+	 * of the totals to the bodies
+	 */
+	final private ArrayList < Callable < Object > > m_generateTasks = new ArrayList < Callable < Object > > ();
+
+	final private ArrayList < Callable < Object > > m_reduceTasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates a force stage that runs generators on the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public ParallelForceStage( int numThreads ) throws IllegalArgumentException {
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Force.INVALID_THREAD_COUNT );
+		}
+		this.m_accumulators = new ForceAccumulator[ numThreads ];
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			final int worker = idx;
+			final int numWorkers = numThreads;
+			this.m_accumulators[ idx ] = new ForceAccumulator();
+			this.m_generateTasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					int numGenerators = ParallelForceStage.this.m_generators.size();
+					runGenerators( worker , share( numGenerators , worker , numWorkers ) , share( numGenerators , worker + 1 , numWorkers ) );
+					return null;
+				}
+			});
+			this.m_reduceTasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					int numBodies = ParallelForceStage.this.m_bodies.size();
+					reduce( share( numBodies , worker , numWorkers ) , share( numBodies , worker + 1 , numWorkers ) );
+					return null;
+				}
+			});
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "force stage" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @return			the number of workers
+	 */
+	public int getNumWorkers() {
+		return this.m_accumulators.length;
+	}
+
+	/**
+	 * runs the given generators, adding their forces and torques to the bodies. returns
+	 * once every force has been added
+	 *
+	 * @param generators		the generators to run
+	 * @param bodies			the bodies the generators may write, indexed by id
+	 */
+	public void generateForces( LinkedList < RigidBodyForceGenerator > generators , ArrayList < RigidBody > bodies ) {
+		this.m_generators.clear();
+		for ( RigidBodyForceGenerator generator : generators ) {
+			this.m_generators.add( generator );
+		}
+
+		//few generators are not worth the reduction
+		if ( this.m_generators.size() < MINIMUM_PARALLEL_GENERATORS ) {
+			for ( int idx = 0 ; idx < this.m_generators.size() ; idx ++ ) {
+				this.m_generators.get( idx ).generateForce();
+			}
+			this.m_generators.clear();
+			return;
+		}
+		this.m_bodies = bodies;
+		for ( int idx = 0 ; idx < this.m_accumulators.length ; idx ++ ) {
+			this.m_accumulators[ idx ].ensureCapacity( bodies.size() );
+		}
+		run( this.m_generateTasks );
+		run( this.m_reduceTasks );
+		this.m_generators.clear();
+		this.m_bodies = null;
+	}
+
+	/**
+	 * @return			the start of the given worker's share of a number of items
+	 */
+	private static int share( int numItems , int worker , int numWorkers ) {
+		return ( int ) ( ( long ) numItems * worker / numWorkers );
+	}
+
+	/**
+	 * runs a block of generators with the given worker's accumulator
+	 */
+	private void runGenerators( int worker , int start , int end ) {
+		ForceAccumulator.setCurrent( this.m_accumulators[ worker ] );
+		try {
+			for ( int idx = start ; idx < end ; idx ++ ) {
+				this.m_generators.get( idx ).generateForce();
+			}
+		} finally {
+			ForceAccumulator.setCurrent( null );
+		}
+	}
+
+	/**
+	 * adds the totals of every accumulator to a range of bodies, in worker order
+	 */
+	private void reduce( int start , int end ) {
+		for ( int id = start ; id < end ; id ++ ) {
+			for ( int worker = 0 ; worker < this.m_accumulators.length ; worker ++ ) {
+				if ( this.m_accumulators[ worker ].isTouched( id ) ) {
+					this.m_accumulators[ worker ].flush( this.m_bodies.get( id ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * runs the given tasks on the workers and waits for all of them
+	 */
+	private void run( ArrayList < Callable < Object > > tasks ) {
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( tasks ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * stops the worker threads. the force stage should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+}
@@ -20,7 +20,7 @@ public class RigidBodyGravityGenerator extends RigidBodyForceGenerator {
 		for ( RigidBody body : this.m_objects ) {
 			
 			//only apply forces to objects with finite mass
-			if ( !body.getInverseMass().equals( Real.ZERO ) ) {
+			if ( body.hasFiniteMass() ) {
 				body.addForceVector( body.getMass().multiply( g ) );
 			}
 		}
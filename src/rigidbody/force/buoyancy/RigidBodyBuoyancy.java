@@ -0,0 +1,397 @@
+package rigidbody.force.buoyancy;
+
+import java.util.ArrayList;
+
+import rigidbody.RigidBody;
+import rigidbody.collision.generate.Primitive;
+import rigidbody.collision.generate.PrimitiveBox;
+import rigidbody.collision.generate.PrimitiveHeightfield;
+import rigidbody.collision.generate.PrimitiveSphere;
+import rigidbody.force.RigidBodyForceGenerator;
+import rigidbody.force.RigidBodyGravityGenerator;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * <code>ForceGenerator</code> that floats <code>RigidBody</code> objects in a liquid, by
+ * the volume of their <code>PrimitiveSphere</code>s and <code>PrimitiveBox</code>es under
+ * the surface. the surface is either the horizontal plane at the water level, or the
+ * heights of a <code>PrimitiveHeightfield</code>, e.g. waves.
+ * <p>
+ * for each primitive, the submerged volume and its center, the center of buoyancy, are found.
+ * the buoyant force, the weight of the displaced liquid, is applied at the center of buoyancy,
+ * so a body that floats tilted is turned upright. the submerged part of a body is also slowed
+ * by the liquid, with the same drag law as <code>ParticleDragGenerator</code>, and its spin is
+ * damped.
+ * <p>
+ * spheres are solved exactly, as a cap cut off by the surface. boxes are split into a grid of
+ * smaller boxes whose centers are found once, in the box's local coordinates, and each of
+ * which is treated as cut by a level surface. boxes entirely above or below a water plane
+ * skip the samples
+ */
+public class RigidBodyBuoyancy extends RigidBodyForceGenerator {
+
+	/**
+	 * the default number of samples along each axis of a box
+	 */
+	final public static int DEFAULT_SAMPLES_PER_AXIS = 3;
+
+	/**
+	 * the height of the surface of the liquid, if there are no waves
+	 */
+	final private double m_waterLevel;
+
+	/**
+	 * the surface of the liquid, or <code>null</code> for a plane at the water level. there is
+	 * no liquid outside the heightfield
+	 */
+	final private PrimitiveHeightfield m_surface;
+
+	/**
+	 * density of the liquid
+	 */
+	final private double m_liquidDensity;
+
+	/**
+	 * the velocity and velocity-squared drag constants for the submerged part of a body
+	 */
+	private double m_k1 = 0;
+
+	private double m_k2 = 0;
+
+	/**
+	 * how strongly the spin of the submerged part of a body is damped
+	 */
+	private double m_angularDrag = 0;
+
+	/**
+	 * the number of samples along each axis of a box
+	 */
+	final private int m_samplesPerAxis;
+
+	/**
+	 * the floating spheres
+	 */
+	final private ArrayList < PrimitiveSphere > m_spheres = new ArrayList < PrimitiveSphere > ();
+
+	/**
+	 * the floating boxes, and the local x, y and z of the center of each of their samples
+	 */
+	final private ArrayList < PrimitiveBox > m_boxes = new ArrayList < PrimitiveBox > ();
+
+	final private ArrayList < double[] > m_boxSamples = new ArrayList < double[] > ();
+
+	/**
+	 * the orientation of the body being floated, and the normal of the surface above it
+	 */
+	final private double[] m_rotation = new double[ 9 ];
+
+	final private double[] m_normal = new double[ 3 ];
+
+	/**
+	 * the submerged volume of the primitive being floated, and the center of buoyancy
+	 */
+	private double m_volume;
+
+	private double m_centerX;
+
+	private double m_centerY;
+
+	private double m_centerZ;
+
+	/**
+	 * creates buoyancy in a liquid with a flat surface
+	 *
+	 * @param waterLevel					height of the surface of the liquid
+	 * @param liquidDensity					density of the liquid
+	 * @throws IllegalArgumentException		if the density is negative
+	 */
+	public RigidBodyBuoyancy( Real waterLevel , Real liquidDensity ) throws IllegalArgumentException {
+		this( waterLevel , null , liquidDensity , DEFAULT_SAMPLES_PER_AXIS );
+	}
+
+	/**
+	 * creates buoyancy in a liquid whose surface is given by a heightfield
+	 *
+	 * @param surface						the surface of the liquid
+	 * @param liquidDensity					density of the liquid
+	 * @throws IllegalArgumentException		if the density is negative
+	 */
+	public RigidBodyBuoyancy( PrimitiveHeightfield surface , Real liquidDensity ) throws IllegalArgumentException {
+		this( Real.ZERO , surface , liquidDensity , DEFAULT_SAMPLES_PER_AXIS );
+	}
+
+	/**
+	 * @param waterLevel					height of the surface of the liquid, if there is no heightfield
+	 * @param surface						the surface of the liquid, or <code>null</code> for a flat surface
+	 * @param liquidDensity					density of the liquid
+	 * @param samplesPerAxis				the number of samples along each axis of a box. more samples are
+	 * 										more accurate for boxes that are tilted or cut by waves
+	 * @throws IllegalArgumentException		if the density is negative or the number of samples is not positive
+	 */
+	public RigidBodyBuoyancy( Real waterLevel , PrimitiveHeightfield surface , Real liquidDensity , int samplesPerAxis ) throws IllegalArgumentException {
+		super();
+		if ( liquidDensity.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Force.INVALID_DENSITY );
+		}
+		if ( samplesPerAxis < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Force.INVALID_SAMPLE_COUNT );
+		}
+		this.m_waterLevel = waterLevel.value();
+		this.m_surface = surface;
+		this.m_liquidDensity = liquidDensity.value();
+		this.m_samplesPerAxis = samplesPerAxis;
+	}
+
+	/**
+	 * sets how the liquid slows down the submerged part of a body
+	 *
+	 * @param k1							the velocity drag constant
+	 * @param k2							the velocity-squared drag constant
+	 * @param angularDrag					how strongly the spin is damped
+	 * @throws IllegalArgumentException		if a constant is negative
+	 */
+	public void setDrag( Real k1 , Real k2 , Real angularDrag ) throws IllegalArgumentException {
+		if ( k1.compareTo( Real.ZERO ) < 0 || k2.compareTo( Real.ZERO ) < 0 || angularDrag.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Force.INVALID_DRAG );
+		}
+		this.m_k1 = k1.value();
+		this.m_k2 = k2.value();
+		this.m_angularDrag = angularDrag.value();
+	}
+
+	/**
+	 * floats the given sphere, and its body
+	 *
+	 * @param sphere			the sphere to float
+	 */
+	public void addPrimitive( PrimitiveSphere sphere ) {
+		this.m_spheres.add( sphere );
+	}
+
+	/**
+	 * floats the given box, and its body
+	 *
+	 * @param box				the box to float
+	 */
+	public void addPrimitive( PrimitiveBox box ) {
+		int numSamples = this.m_samplesPerAxis;
+		double halfX = box.getHalfSize().getX().value();
+		double halfY = box.getHalfSize().getY().value();
+		double halfZ = box.getHalfSize().getZ().value();
+
+		//the centers of a grid of equal smaller boxes filling the box
+		double[] samples = new double[ 3 * numSamples * numSamples * numSamples ];
+		int sample = 0;
+		for ( int i = 0 ; i < numSamples ; i ++ ) {
+			for ( int j = 0 ; j < numSamples ; j ++ ) {
+				for ( int k = 0 ; k < numSamples ; k ++ ) {
+					samples[ sample ++ ] = halfX * ( ( 2.0 * i + 1 ) / numSamples - 1 );
+					samples[ sample ++ ] = halfY * ( ( 2.0 * j + 1 ) / numSamples - 1 );
+					samples[ sample ++ ] = halfZ * ( ( 2.0 * k + 1 ) / numSamples - 1 );
+				}
+			}
+		}
+		this.m_boxes.add( box );
+		this.m_boxSamples.add( samples );
+	}
+
+	/**
+	 * stops floating the given primitive
+	 *
+	 * @param toRemove			the sphere or box to stop floating
+	 */
+	public void removePrimitive( Primitive toRemove ) {
+		this.m_spheres.remove( toRemove );
+		int idx = this.m_boxes.indexOf( toRemove );
+		if ( idx >= 0 ) {
+			this.m_boxes.remove( idx );
+			this.m_boxSamples.remove( idx );
+		}
+	}
+
+	@Override
+	public void generateForce() {
+		for ( int idx = 0 ; idx < this.m_spheres.size() ; idx ++ ) {
+			PrimitiveSphere sphere = this.m_spheres.get( idx );
+			if ( isFloating( sphere.getBody() ) && submergeSphere( sphere ) ) {
+				double radius = sphere.getRadius().value();
+				applyBuoyancy( sphere.getBody() , 4.0 / 3.0 * Math.PI * radius * radius * radius );
+			}
+		}
+		for ( int idx = 0 ; idx < this.m_boxes.size() ; idx ++ ) {
+			PrimitiveBox box = this.m_boxes.get( idx );
+			if ( isFloating( box.getBody() ) && submergeBox( box , this.m_boxSamples.get( idx ) ) ) {
+				Vector3D halfSize = box.getHalfSize();
+				applyBuoyancy( box.getBody() , 8 * halfSize.getX().value() * halfSize.getY().value() * halfSize.getZ().value() );
+			}
+		}
+	}
+
+	/**
+	 * @return			if the given body can be moved by the liquid
+	 */
+	private static boolean isFloating( RigidBody body ) {
+		return body.hasFiniteMass() && ( body.isAwake() || !body.isSleepable() );
+	}
+
+	/**
+	 * finds the submerged volume of a sphere and its center, treating the surface
+	 * above the sphere's center as a plane
+	 *
+	 * @return			if any of the sphere is submerged
+	 */
+	private boolean submergeSphere( PrimitiveSphere sphere ) {
+		Vector3D position = sphere.getPosition();
+		double x = position.getX().value();
+		double y = position.getY().value();
+		double z = position.getZ().value();
+		double radius = sphere.getRadius().value();
+
+		//the distance from the surface to the center, along the surface's normal
+		double[] normal = this.m_normal;
+		double height;
+		if ( this.m_surface == null ) {
+			height = this.m_waterLevel;
+			normal[ 0 ] = 0;
+			normal[ 1 ] = 1;
+			normal[ 2 ] = 0;
+		} else if ( this.m_surface.contains( x , z ) ) {
+			height = this.m_surface.getHeightAt( x , z , normal );
+		} else {
+			return false;
+		}
+		double distance = ( y - height ) * normal[ 1 ];
+		if ( distance >= radius ) {
+			return false;
+		}
+
+		//a cap of depth d has volume pi*d^2*(3r - d)/3, and its center is
+		//3*(2r - d)^2/(4*(3r - d)) from the sphere's center
+		double depth = Math.min( radius - distance , 2 * radius );
+		double offset = 3 * ( 2 * radius - depth ) * ( 2 * radius - depth ) / ( 4 * ( 3 * radius - depth ) );
+		this.m_volume = Math.PI * depth * depth * ( 3 * radius - depth ) / 3;
+		this.m_centerX = x - offset * normal[ 0 ];
+		this.m_centerY = y - offset * normal[ 1 ];
+		this.m_centerZ = z - offset * normal[ 2 ];
+		return true;
+	}
+
+	/**
+	 * finds the submerged volume of a box and its center from the box's samples
+	 *
+	 * @return			if any of the box is submerged
+	 */
+	private boolean submergeBox( PrimitiveBox box , double[] samples ) {
+		double[] rotation = this.m_rotation;
+		box.getBody().getOrientation().toOrientationData( rotation );
+		Vector3D position = box.getPosition();
+		double centerX = position.getX().value();
+		double centerY = position.getY().value();
+		double centerZ = position.getZ().value();
+		double halfX = box.getHalfSize().getX().value();
+		double halfY = box.getHalfSize().getY().value();
+		double halfZ = box.getHalfSize().getZ().value();
+		double extentY = Math.abs( rotation[ 3 ] ) * halfX + Math.abs( rotation[ 4 ] ) * halfY + Math.abs( rotation[ 5 ] ) * halfZ;
+
+		//a box entirely above or below a flat surface needs no samples
+		if ( this.m_surface == null ) {
+			if ( centerY - extentY >= this.m_waterLevel ) {
+				return false;
+			}
+			if ( centerY + extentY <= this.m_waterLevel ) {
+				this.m_volume = 8 * halfX * halfY * halfZ;
+				this.m_centerX = centerX;
+				this.m_centerY = centerY;
+				this.m_centerZ = centerZ;
+				return true;
+			}
+		}
+
+		//each sample is a smaller box with the same orientation, so they all reach
+		//equally far above and below their centers
+		int numSamples = samples.length / 3;
+		double sampleVolume = 8 * halfX * halfY * halfZ / numSamples;
+		double sampleExtentY = extentY / this.m_samplesPerAxis;
+		double volume = 0 , sumX = 0 , sumY = 0 , sumZ = 0;
+		for ( int idx = 0 ; idx < samples.length ; idx += 3 ) {
+			double localX = samples[ idx ];
+			double localY = samples[ idx + 1 ];
+			double localZ = samples[ idx + 2 ];
+			double x = rotation[ 0 ] * localX + rotation[ 1 ] * localY + rotation[ 2 ] * localZ + centerX;
+			double y = rotation[ 3 ] * localX + rotation[ 4 ] * localY + rotation[ 5 ] * localZ + centerY;
+			double z = rotation[ 6 ] * localX + rotation[ 7 ] * localY + rotation[ 8 ] * localZ + centerZ;
+			double height;
+			if ( this.m_surface == null ) {
+				height = this.m_waterLevel;
+			} else if ( this.m_surface.contains( x , z ) ) {
+				height = this.m_surface.getHeightAt( x , z , this.m_normal );
+			} else {
+				continue;
+			}
+
+			//the fraction of the sample under the surface, whose center is
+			//lowered by how much of the sample is above the surface
+			double fraction = Math.max( 0 , Math.min( 1 , ( height - y + sampleExtentY ) / ( 2 * sampleExtentY ) ) );
+			if ( fraction > 0 ) {
+				double submerged = fraction * sampleVolume;
+				volume += submerged;
+				sumX += submerged * x;
+				sumY += submerged * ( y - sampleExtentY * ( 1 - fraction ) );
+				sumZ += submerged * z;
+			}
+		}
+		if ( volume == 0 ) {
+			return false;
+		}
+		this.m_volume = volume;
+		this.m_centerX = sumX / volume;
+		this.m_centerY = sumY / volume;
+		this.m_centerZ = sumZ / volume;
+		return true;
+	}
+
+	/**
+	 * applies the buoyancy and drag of the submerged volume found last to the given body
+	 *
+	 * @param body				the body
+	 * @param totalVolume		the volume of the whole primitive
+	 */
+	private void applyBuoyancy( RigidBody body , double totalVolume ) {
+		Vector3D position = body.getPosition();
+		double relativeX = this.m_centerX - position.getX().value();
+		double relativeY = this.m_centerY - position.getY().value();
+		double relativeZ = this.m_centerZ - position.getZ().value();
+
+		//the buoyant force is the weight of the displaced liquid, against gravity
+		double displacedMass = this.m_liquidDensity * this.m_volume;
+		double forceX = -displacedMass * RigidBodyGravityGenerator.g.getX().value();
+		double forceY = -displacedMass * RigidBodyGravityGenerator.g.getY().value();
+		double forceZ = -displacedMass * RigidBodyGravityGenerator.g.getZ().value();
+
+		//f_drag = -unit( v )( k1*|v| + k2*|v|^2 ) = -v( k1 + k2*|v| ) on the velocity at
+		//the center of buoyancy, for the submerged part of the primitive
+		double submerged = this.m_volume / totalVolume;
+		Vector3D velocity = body.getVelocity();
+		Vector3D angularVelocity = body.getAngularVelocity();
+		double omegaX = angularVelocity.getX().value();
+		double omegaY = angularVelocity.getY().value();
+		double omegaZ = angularVelocity.getZ().value();
+		if ( this.m_k1 != 0 || this.m_k2 != 0 ) {
+			double velocityX = velocity.getX().value() + omegaY * relativeZ - omegaZ * relativeY;
+			double velocityY = velocity.getY().value() + omegaZ * relativeX - omegaX * relativeZ;
+			double velocityZ = velocity.getZ().value() + omegaX * relativeY - omegaY * relativeX;
+			double speed = Math.sqrt( velocityX * velocityX + velocityY * velocityY + velocityZ * velocityZ );
+			double dragCoefficient = submerged * ( this.m_k1 + this.m_k2 * speed );
+			forceX -= dragCoefficient * velocityX;
+			forceY -= dragCoefficient * velocityY;
+			forceZ -= dragCoefficient * velocityZ;
+		}
+		body.addForceAtPoint( new Vector3D( new Real( forceX ) , new Real( forceY ) , new Real( forceZ ) ) , new Vector3D( new Real( relativeX ) , new Real( relativeY ) , new Real( relativeZ ) ) );
+		if ( this.m_angularDrag != 0 ) {
+			double damping = -submerged * this.m_angularDrag;
+			body.addTorqueVector( new Vector3D( new Real( damping * omegaX ) , new Real( damping * omegaY ) , new Real( damping * omegaZ ) ) );
+		}
+	}
+}
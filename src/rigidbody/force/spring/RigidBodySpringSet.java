@@ -0,0 +1,581 @@
+package rigidbody.force.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import rigidbody.RigidBody;
+import rigidbody.force.RigidBodyForceGenerator;
+import util.ErrorMessages;
+import _math.Real;
+import _math.Vector3D;
+
+/**
+ * many damped springs between <code>RigidBody</code> objects, or between a body and a fixed
+ * anchor, evaluated together. a world with many springs can hold all of them in one set rather
+ * than one <code>RigidBodySpring</code> generator each.
+ * <p>
+ * the springs are kept in arrays, one per property, and the bodies they join are numbered as
+ * they are added. each step runs these passes, each spread over the worker threads:
+ * <ol>
+ * <li>the position, velocity and orientation of every body are copied into arrays</li>
+ * <li>the springs are split into one contiguous block per worker, and each worker sums the
+ * forces and torques of its springs into its own arrays, indexed by body</li>
+ * <li>the bodies are split between the workers, and each worker adds up the sums of all
+ * workers for its bodies, in worker order</li>
+ * </ol>
+ * each body then receives its total with a single <code>addForceVector()</code> and
+ * <code>addTorqueVector()</code>. the passes allocate nothing, and the forces on a body are
+ * summed in the same order every step for a given number of threads.
+ * <p>
+ * the attachment points are in the local coordinates of their bodies, and turn with them.
+ * the force of a spring on its first body is
+ * <p>
+ * F = -( k * ( l - l0 ) + c * v ) * d
+ * <p>
+ * where d is the direction from the second end to the first, l the distance between the
+ * ends, l0 the rest length, and v how fast the ends are moving apart. the second body
+ * receives the opposite force
+ */
+public class RigidBodySpringSet extends RigidBodyForceGenerator {
+
+	/**
+	 * with fewer springs than this, each pass runs on the calling thread,
+	 * since handing the work to the workers would cost more than it saves
+	 */
+	final public static int MINIMUM_PARALLEL_SPRINGS = 4096;
+
+	/**
+	 * the bodies joined by the springs, and the number of each body
+	 */
+	final private ArrayList < RigidBody > m_bodies = new ArrayList < RigidBody > ();
+
+	final private IdentityHashMap < RigidBody , Integer > m_bodyNumbers = new IdentityHashMap < RigidBody , Integer > ();
+
+	/**
+	 * the position, velocity, angular velocity and orientation of each body, copied at the
+	 * start of each step. the orientation takes nine entries per body
+	 */
+	private double[] m_x = new double[ 0 ];
+
+	private double[] m_y = new double[ 0 ];
+
+	private double[] m_z = new double[ 0 ];
+
+	private double[] m_vx = new double[ 0 ];
+
+	private double[] m_vy = new double[ 0 ];
+
+	private double[] m_vz = new double[ 0 ];
+
+	private double[] m_wx = new double[ 0 ];
+
+	private double[] m_wy = new double[ 0 ];
+
+	private double[] m_wz = new double[ 0 ];
+
+	private double[] m_rotation = new double[ 0 ];
+
+	/**
+	 * the force and torque of the springs on each body summed by each worker, six entries
+	 * per body, and the total of all workers
+	 */
+	private double[][] m_workerForces;
+
+	private double[] m_totalForces = new double[ 0 ];
+
+	/**
+	 * the number of springs in this set
+	 */
+	private int m_numSprings = 0;
+
+	/**
+	 * the body at each end of each spring. the second end of an anchored spring is -1
+	 */
+	private int[] m_first = new int[ 0 ];
+
+	private int[] m_second = new int[ 0 ];
+
+	/**
+	 * where each spring is attached to its first body, in the body's local coordinates
+	 */
+	private double[] m_firstX = new double[ 0 ];
+
+	private double[] m_firstY = new double[ 0 ];
+
+	private double[] m_firstZ = new double[ 0 ];
+
+	/**
+	 * where each spring is attached to its second body, in the body's local coordinates,
+	 * or its anchor, in world coordinates
+	 */
+	private double[] m_secondX = new double[ 0 ];
+
+	private double[] m_secondY = new double[ 0 ];
+
+	private double[] m_secondZ = new double[ 0 ];
+
+	/**
+	 * the spring constant, rest length and damping of each spring
+	 */
+	private double[] m_stiffness = new double[ 0 ];
+
+	private double[] m_restLength = new double[ 0 ];
+
+	private double[] m_damping = new double[ 0 ];
+
+	/**
+	 * the pass being run by the workers
+	 */
+	private int m_pass;
+
+	final private static int GATHER_PASS = 0;
+
+	final private static int SPRING_PASS = 1;
+
+	final private static int REDUCE_PASS = 2;
+
+	/**
+	 * the task run by each worker
+	 */
+	final private ArrayList < Callable < Object > > m_tasks = new ArrayList < Callable < Object > > ();
+
+	/**
+	 * the threads running the workers
+	 */
+	final private ExecutorService m_executor;
+
+	/**
+	 * creates an empty spring set whose passes run on the given number of threads
+	 *
+	 * @param numThreads					the number of threads
+	 * @throws IllegalArgumentException		if the number of threads is not positive
+	 */
+	public RigidBodySpringSet( int numThreads ) throws IllegalArgumentException {
+		super();
+		if ( numThreads < 1 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_THREAD_COUNT );
+		}
+		this.m_workerForces = new double[ numThreads ][ 0 ];
+		for ( int idx = 0 ; idx < numThreads ; idx ++ ) {
+			final int worker = idx;
+			this.m_tasks.add( new Callable < Object > () {
+
+				@Override
+				public Object call() {
+					runPass( worker , RigidBodySpringSet.this.m_tasks.size() );
+					return null;
+				}
+			});
+		}
+
+		//daemon threads, so that an idle pool does not keep the program running
+		this.m_executor = Executors.newFixedThreadPool( numThreads , new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task , "spring set" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * adds a spring between two bodies
+	 *
+	 * @param first							the body at the first end
+	 * @param firstPoint					where the spring is attached to the first body, in its local coordinates
+	 * @param second						the body at the second end
+	 * @param secondPoint					where the spring is attached to the second body, in its local coordinates
+	 * @param springConstant				the spring constant
+	 * @param restLength					the unstretched, uncompressed length
+	 * @param damping						the force per unit of speed at which the ends move apart
+	 * @return								the index of the spring
+	 * @throws IllegalArgumentException		if a body is <code>null</code>, the spring constant or rest length
+	 * 										is not positive, or the damping is negative
+	 */
+	public int addSpring( RigidBody first , Vector3D firstPoint , RigidBody second , Vector3D secondPoint , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		if ( second == null ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_REFERENCE );
+		}
+		return addSpring( first , firstPoint , number( second ) , secondPoint , springConstant , restLength , damping );
+	}
+
+	/**
+	 * adds a spring between a body and a fixed anchor
+	 *
+	 * @param body							the body at the first end
+	 * @param bodyPoint						where the spring is attached to the body, in its local coordinates
+	 * @param anchor						the anchor at the second end, in world coordinates
+	 * @param springConstant				the spring constant
+	 * @param restLength					the unstretched, uncompressed length
+	 * @param damping						the force per unit of speed at which the ends move apart
+	 * @return								the index of the spring
+	 * @throws IllegalArgumentException		if the body is <code>null</code>, the spring constant or rest length
+	 * 										is not positive, or the damping is negative
+	 */
+	public int addAnchoredSpring( RigidBody body , Vector3D bodyPoint , Vector3D anchor , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		return addSpring( body , bodyPoint , -1 , anchor , springConstant , restLength , damping );
+	}
+
+	/**
+	 * adds the springs of a <code>RigidBodySpring</code> generator, one for each body it acts on,
+	 * without damping. the generator should then no longer be run
+	 *
+	 * @param spring						the generator
+	 */
+	public void addSprings( RigidBodySpring spring ) {
+		for ( RigidBody body : spring.getObjects() ) {
+			if ( spring instanceof RigidBodyUnanchoredSpring ) {
+				RigidBodyUnanchoredSpring unanchored = ( RigidBodyUnanchoredSpring ) spring;
+				addSpring( body , spring.getConnectionPoint() , unanchored.getReference() , unanchored.m_referenceConnectionPoint , spring.getSpringConstant() , spring.getRestLength() , Real.ZERO );
+			} else {
+				addAnchoredSpring( body , spring.getConnectionPoint() , spring.getReferenceConnectionPoint() , spring.getSpringConstant() , spring.getRestLength() , Real.ZERO );
+			}
+		}
+	}
+
+	private int addSpring( RigidBody first , Vector3D firstPoint , int second , Vector3D secondPoint , Real springConstant , Real restLength , Real damping ) throws IllegalArgumentException {
+		if ( first == null ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_REFERENCE );
+		}
+		if ( springConstant.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_SPRING_CONSTANT );
+		}
+		if ( restLength.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_REST_LENGTH );
+		}
+		if ( damping.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_DAMPING );
+		}
+		int idx = this.m_numSprings;
+		if ( idx == this.m_first.length ) {
+			growSprings();
+		}
+		this.m_first[ idx ] = number( first );
+		this.m_second[ idx ] = second;
+		this.m_firstX[ idx ] = firstPoint.getX().value();
+		this.m_firstY[ idx ] = firstPoint.getY().value();
+		this.m_firstZ[ idx ] = firstPoint.getZ().value();
+		this.m_secondX[ idx ] = secondPoint.getX().value();
+		this.m_secondY[ idx ] = secondPoint.getY().value();
+		this.m_secondZ[ idx ] = secondPoint.getZ().value();
+		this.m_stiffness[ idx ] = springConstant.value();
+		this.m_restLength[ idx ] = restLength.value();
+		this.m_damping[ idx ] = damping.value();
+		this.m_numSprings ++;
+		return idx;
+	}
+
+	/**
+	 * @return			the number of the given body, numbering it if it is new
+	 */
+	private int number( RigidBody body ) {
+		Integer number = this.m_bodyNumbers.get( body );
+		if ( number == null ) {
+			number = Integer.valueOf( this.m_bodies.size() );
+			this.m_bodies.add( body );
+			this.m_bodyNumbers.put( body , number );
+		}
+		return number.intValue();
+	}
+
+	private void growSprings() {
+		int capacity = Math.max( 16 , 2 * this.m_first.length );
+		this.m_first = Arrays.copyOf( this.m_first , capacity );
+		this.m_second = Arrays.copyOf( this.m_second , capacity );
+		this.m_firstX = Arrays.copyOf( this.m_firstX , capacity );
+		this.m_firstY = Arrays.copyOf( this.m_firstY , capacity );
+		this.m_firstZ = Arrays.copyOf( this.m_firstZ , capacity );
+		this.m_secondX = Arrays.copyOf( this.m_secondX , capacity );
+		this.m_secondY = Arrays.copyOf( this.m_secondY , capacity );
+		this.m_secondZ = Arrays.copyOf( this.m_secondZ , capacity );
+		this.m_stiffness = Arrays.copyOf( this.m_stiffness , capacity );
+		this.m_restLength = Arrays.copyOf( this.m_restLength , capacity );
+		this.m_damping = Arrays.copyOf( this.m_damping , capacity );
+	}
+
+	/**
+	 * removes a spring. the last spring takes its index
+	 *
+	 * @param idx			the index of the spring to remove
+	 */
+	public void removeSpring( int idx ) {
+		int last = -- this.m_numSprings;
+		this.m_first[ idx ] = this.m_first[ last ];
+		this.m_second[ idx ] = this.m_second[ last ];
+		this.m_firstX[ idx ] = this.m_firstX[ last ];
+		this.m_firstY[ idx ] = this.m_firstY[ last ];
+		this.m_firstZ[ idx ] = this.m_firstZ[ last ];
+		this.m_secondX[ idx ] = this.m_secondX[ last ];
+		this.m_secondY[ idx ] = this.m_secondY[ last ];
+		this.m_secondZ[ idx ] = this.m_secondZ[ last ];
+		this.m_stiffness[ idx ] = this.m_stiffness[ last ];
+		this.m_restLength[ idx ] = this.m_restLength[ last ];
+		this.m_damping[ idx ] = this.m_damping[ last ];
+	}
+
+	/**
+	 * @return			the number of springs in this set
+	 */
+	public int getNumSprings() {
+		return this.m_numSprings;
+	}
+
+	public void setSpringConstant( int idx , Real springConstant ) throws IllegalArgumentException {
+		if ( springConstant.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_SPRING_CONSTANT );
+		}
+		this.m_stiffness[ idx ] = springConstant.value();
+	}
+
+	public Real getSpringConstant( int idx ) {
+		return new Real( this.m_stiffness[ idx ] );
+	}
+
+	public void setRestLength( int idx , Real restLength ) throws IllegalArgumentException {
+		if ( restLength.compareTo( Real.ZERO ) <= 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_REST_LENGTH );
+		}
+		this.m_restLength[ idx ] = restLength.value();
+	}
+
+	public Real getRestLength( int idx ) {
+		return new Real( this.m_restLength[ idx ] );
+	}
+
+	public void setDamping( int idx , Real damping ) throws IllegalArgumentException {
+		if ( damping.compareTo( Real.ZERO ) < 0 ) {
+			throw new IllegalArgumentException( ErrorMessages.RigidBody.Spring.INVALID_DAMPING );
+		}
+		this.m_damping[ idx ] = damping.value();
+	}
+
+	public Real getDamping( int idx ) {
+		return new Real( this.m_damping[ idx ] );
+	}
+
+	@Override
+	public void generateForce() {
+		if ( this.m_numSprings == 0 ) {
+			return;
+		}
+		ensureBodyCapacity();
+		runPass( GATHER_PASS );
+		runPass( SPRING_PASS );
+		runPass( REDUCE_PASS );
+
+		//the bodies are given their totals on the calling thread, which may be
+		//collecting forces for a parallel force stage
+		double[] total = this.m_totalForces;
+		for ( int body = 0 ; body < this.m_bodies.size() ; body ++ ) {
+			int offset = 6 * body;
+			RigidBody rigidBody = this.m_bodies.get( body );
+			if ( !rigidBody.hasFiniteMass() ) {
+				continue;
+			}
+			if ( total[ offset ] != 0 || total[ offset + 1 ] != 0 || total[ offset + 2 ] != 0 ) {
+				rigidBody.addForceVector( new Vector3D( new Real( total[ offset ] ) , new Real( total[ offset + 1 ] ) , new Real( total[ offset + 2 ] ) ) );
+			}
+			if ( total[ offset + 3 ] != 0 || total[ offset + 4 ] != 0 || total[ offset + 5 ] != 0 ) {
+				rigidBody.addTorqueVector( new Vector3D( new Real( total[ offset + 3 ] ) , new Real( total[ offset + 4 ] ) , new Real( total[ offset + 5 ] ) ) );
+			}
+		}
+	}
+
+	private void ensureBodyCapacity() {
+		int count = this.m_bodies.size();
+		if ( this.m_x.length >= count ) {
+			return;
+		}
+		this.m_x = new double[ count ];
+		this.m_y = new double[ count ];
+		this.m_z = new double[ count ];
+		this.m_vx = new double[ count ];
+		this.m_vy = new double[ count ];
+		this.m_vz = new double[ count ];
+		this.m_wx = new double[ count ];
+		this.m_wy = new double[ count ];
+		this.m_wz = new double[ count ];
+		this.m_rotation = new double[ 9 * count ];
+		this.m_totalForces = new double[ 6 * count ];
+		for ( int worker = 0 ; worker < this.m_workerForces.length ; worker ++ ) {
+			this.m_workerForces[ worker ] = new double[ 6 * count ];
+		}
+	}
+
+	/**
+	 * runs a pass, on the workers if there are enough springs
+	 */
+	private void runPass( int pass ) {
+		this.m_pass = pass;
+		if ( this.m_numSprings < MINIMUM_PARALLEL_SPRINGS ) {
+			runPass( 0 , 1 );
+			return;
+		}
+		try {
+			for ( Future < Object > result : this.m_executor.invokeAll( this.m_tasks ) ) {
+				result.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof RuntimeException ) {
+				throw ( RuntimeException ) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * runs the given worker's share of the current pass
+	 */
+	private void runPass( int worker , int numWorkers ) {
+		int numBodies = this.m_bodies.size();
+		if ( this.m_pass == GATHER_PASS ) {
+			gatherBodies( share( numBodies , worker , numWorkers ) , share( numBodies , worker + 1 , numWorkers ) );
+		} else if ( this.m_pass == SPRING_PASS ) {
+			double[] forces = this.m_workerForces[ worker ];
+			Arrays.fill( forces , 0 , 6 * numBodies , 0 );
+			evaluateSprings( share( this.m_numSprings , worker , numWorkers ) , share( this.m_numSprings , worker + 1 , numWorkers ) , forces );
+		} else {
+			reduce( share( numBodies , worker , numWorkers ) , share( numBodies , worker + 1 , numWorkers ) , numWorkers );
+		}
+	}
+
+	/**
+	 * @return			the start of the given worker's share of a number of items
+	 */
+	private static int share( int numItems , int worker , int numWorkers ) {
+		return ( int ) ( ( long ) numItems * worker / numWorkers );
+	}
+
+	/**
+	 * copies the state of a range of bodies
+	 */
+	private void gatherBodies( int start , int end ) {
+		for ( int body = start ; body < end ; body ++ ) {
+			RigidBody rigidBody = this.m_bodies.get( body );
+			Vector3D position = rigidBody.getPosition();
+			Vector3D velocity = rigidBody.getVelocity();
+			Vector3D angularVelocity = rigidBody.getAngularVelocity();
+			this.m_x[ body ] = position.getX().value();
+			this.m_y[ body ] = position.getY().value();
+			this.m_z[ body ] = position.getZ().value();
+			this.m_vx[ body ] = velocity.getX().value();
+			this.m_vy[ body ] = velocity.getY().value();
+			this.m_vz[ body ] = velocity.getZ().value();
+			this.m_wx[ body ] = angularVelocity.getX().value();
+			this.m_wy[ body ] = angularVelocity.getY().value();
+			this.m_wz[ body ] = angularVelocity.getZ().value();
+			rigidBody.getOrientation().toOrientationData( this.m_rotation , 9 * body );
+		}
+	}
+
+	/**
+	 * sums the forces and torques of a range of springs
+	 */
+	private void evaluateSprings( int start , int end , double[] forces ) {
+		double[] rotation = this.m_rotation;
+		for ( int idx = start ; idx < end ; idx ++ ) {
+
+			//the attachment point on the first body, relative to its center of mass
+			int first = this.m_first[ idx ];
+			int r = 9 * first;
+			double localX = this.m_firstX[ idx ] , localY = this.m_firstY[ idx ] , localZ = this.m_firstZ[ idx ];
+			double armX1 = rotation[ r ] * localX + rotation[ r + 1 ] * localY + rotation[ r + 2 ] * localZ;
+			double armY1 = rotation[ r + 3 ] * localX + rotation[ r + 4 ] * localY + rotation[ r + 5 ] * localZ;
+			double armZ1 = rotation[ r + 6 ] * localX + rotation[ r + 7 ] * localY + rotation[ r + 8 ] * localZ;
+
+			//the velocity of a point on a body is v + w x r
+			double vx = this.m_vx[ first ] + this.m_wy[ first ] * armZ1 - this.m_wz[ first ] * armY1;
+			double vy = this.m_vy[ first ] + this.m_wz[ first ] * armX1 - this.m_wx[ first ] * armZ1;
+			double vz = this.m_vz[ first ] + this.m_wx[ first ] * armY1 - this.m_wy[ first ] * armX1;
+			double dx = this.m_x[ first ] + armX1;
+			double dy = this.m_y[ first ] + armY1;
+			double dz = this.m_z[ first ] + armZ1;
+
+			//the other end is either an anchor or a point on the second body
+			int second = this.m_second[ idx ];
+			double armX2 = 0 , armY2 = 0 , armZ2 = 0;
+			if ( second < 0 ) {
+				dx -= this.m_secondX[ idx ];
+				dy -= this.m_secondY[ idx ];
+				dz -= this.m_secondZ[ idx ];
+			} else {
+				r = 9 * second;
+				localX = this.m_secondX[ idx ];
+				localY = this.m_secondY[ idx ];
+				localZ = this.m_secondZ[ idx ];
+				armX2 = rotation[ r ] * localX + rotation[ r + 1 ] * localY + rotation[ r + 2 ] * localZ;
+				armY2 = rotation[ r + 3 ] * localX + rotation[ r + 4 ] * localY + rotation[ r + 5 ] * localZ;
+				armZ2 = rotation[ r + 6 ] * localX + rotation[ r + 7 ] * localY + rotation[ r + 8 ] * localZ;
+				vx -= this.m_vx[ second ] + this.m_wy[ second ] * armZ2 - this.m_wz[ second ] * armY2;
+				vy -= this.m_vy[ second ] + this.m_wz[ second ] * armX2 - this.m_wx[ second ] * armZ2;
+				vz -= this.m_vz[ second ] + this.m_wx[ second ] * armY2 - this.m_wy[ second ] * armX2;
+				dx -= this.m_x[ second ] + armX2;
+				dy -= this.m_y[ second ] + armY2;
+				dz -= this.m_z[ second ] + armZ2;
+			}
+
+			//a spring of no length pulls in no direction
+			double length = Math.sqrt( dx * dx + dy * dy + dz * dz );
+			if ( length == 0 ) {
+				continue;
+			}
+			dx /= length;
+			dy /= length;
+			dz /= length;
+			double magnitude = -( this.m_stiffness[ idx ] * ( length - this.m_restLength[ idx ] ) + this.m_damping[ idx ] * ( vx * dx + vy * dy + vz * dz ) );
+			double fx = magnitude * dx;
+			double fy = magnitude * dy;
+			double fz = magnitude * dz;
+
+			//the torque is F x r, as in RigidBody.addForceAtPoint()
+			int offset = 6 * first;
+			forces[ offset ] += fx;
+			forces[ offset + 1 ] += fy;
+			forces[ offset + 2 ] += fz;
+			forces[ offset + 3 ] += fy * armZ1 - fz * armY1;
+			forces[ offset + 4 ] += fz * armX1 - fx * armZ1;
+			forces[ offset + 5 ] += fx * armY1 - fy * armX1;
+			if ( second >= 0 ) {
+				offset = 6 * second;
+				forces[ offset ] -= fx;
+				forces[ offset + 1 ] -= fy;
+				forces[ offset + 2 ] -= fz;
+				forces[ offset + 3 ] -= fy * armZ2 - fz * armY2;
+				forces[ offset + 4 ] -= fz * armX2 - fx * armZ2;
+				forces[ offset + 5 ] -= fx * armY2 - fy * armX2;
+			}
+		}
+	}
+
+	/**
+	 * adds up the sums of every worker for a range of bodies, in worker order
+	 */
+	private void reduce( int start , int end , int numWorkers ) {
+		double[] total = this.m_totalForces;
+		for ( int idx = 6 * start ; idx < 6 * end ; idx ++ ) {
+			double sum = 0;
+			for ( int worker = 0 ; worker < numWorkers ; worker ++ ) {
+				sum += this.m_workerForces[ worker ][ idx ];
+			}
+			total[ idx ] = sum;
+		}
+	}
+
+	/**
+	 * stops the worker threads. the spring set should not be used afterwards
+	 */
+	public void shutdown() {
+		this.m_executor.shutdown();
+	}
+}
@@ -0,0 +1,17 @@
+package rigidbody.lod;
+
+import rigidbody.RigidBody;
+import _math.Real;
+
+/**
+ * rates how closely a <code>RigidBody</code> needs to be simulated, e.g. by its
+ * distance to the nearest player or camera
+ */
+public interface ImportanceFunction {
+
+	/**
+	 * @param body			a <code>RigidBody</code>
+	 * @return				the importance of the body. more important bodies are stepped more often
+	 */
+	public Real getImportance( RigidBody body );
+}
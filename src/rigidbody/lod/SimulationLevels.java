@@ -0,0 +1,243 @@
+package rigidbody.lod;
+
+import java.util.ArrayList;
+
+import rigidbody.RigidBody;
+import util.ErrorMessages;
+import _lib.PairKey;
+import _lib.PairSet;
+import _math.Real;
+
+/**
+ * assigns the <code>RigidBody</code> objects of a world to simulation levels by their
+ * importance. bodies on level 0 are stepped every step, bodies on level 1 every 2nd
+ * step, bodies on level 2 every 4th step, and so on. a body that is not stepped
+ * accumulates the durations of the steps it skips, and moves by all of them at once
+ * the next time it is stepped.
+ * <p>
+ * bodies that may be touching are stepped together: pairs of bodies linked in one
+ * step form islands in the next, and every body in an island is moved to the
+ * level of the most important body in it. a body pulled onto a faster level first
+ * catches up on the duration it has accumulated, so bodies in contact are always
+ * at the same point in time
+ */
+public class SimulationLevels {
+
+	/**
+	 * rates the bodies
+	 */
+	final private ImportanceFunction m_importance;
+	
+	/**
+	 * the least importance of the bodies on each level but the last, in decreasing order
+	 */
+	final private double[] m_thresholds;
+	
+	/**
+	 * the number of steps begun
+	 */
+	private long m_step = 0;
+	
+	/**
+	 * the level of each body in the current step, indexed by id
+	 */
+	private int[] m_levels = new int[ 0 ];
+	
+	/**
+	 * if each body is stepped in the current step, indexed by id
+	 */
+	private boolean[] m_due = new boolean[ 0 ];
+	
+	/**
+	 * the duration each body has to move by the next time it is stepped, indexed by id
+	 */
+	private double[] m_durations = new double[ 0 ];
+	
+	/**
+	 * the parent of each body in the islands of the current step, indexed by id.
+	 * a body that is its own parent is the root of its island
+	 */
+	private int[] m_parents = new int[ 0 ];
+	
+	/**
+	 * the pairs of bodies linked since the current step began
+	 */
+	final private PairSet m_links = new PairSet();
+	
+	/**
+	 * creates simulation levels with the given thresholds. a body whose importance is at least
+	 * <code>thresholds[ 0 ]</code> is on level 0, a body whose importance is at least
+	 * <code>thresholds[ 1 ]</code> is on level 1, and so on. bodies less important than the
+	 * last threshold are on the last level, <code>thresholds.length</code>
+	 * 
+	 * @param importance						rates the bodies
+	 * @param thresholds						the least importance of the bodies on each level but the last
+	 * @throws IllegalArgumentException			if the thresholds are not in decreasing order
+	 */
+	public SimulationLevels( ImportanceFunction importance , Real[] thresholds ) throws IllegalArgumentException {
+		this.m_importance = importance;
+		this.m_thresholds = new double[ thresholds.length ];
+		for ( int idx = 0 ; idx < thresholds.length ; idx ++ ) {
+			this.m_thresholds[ idx ] = thresholds[ idx ].value();
+			if ( idx > 0 && this.m_thresholds[ idx ] >= this.m_thresholds[ idx - 1 ] ) {
+				throw new IllegalArgumentException( ErrorMessages.RigidBody.Levels.INVALID_THRESHOLDS );
+			}
+		}
+	}
+	
+	/**
+	 * @return			the number of levels
+	 */
+	public int getNumLevels() {
+		return this.m_thresholds.length + 1;
+	}
+	
+	/**
+	 * begins a step. each body is assigned to the level of its importance, or of the
+	 * most important body in its island, and is stepped if its level is due
+	 * 
+	 * @param bodies			the bodies of the world, indexed by id
+	 * @param duration			the duration of the step
+	 */
+	public void beginStep( ArrayList < RigidBody > bodies , Real duration ) {
+		int numBodies = bodies.size();
+		ensureCapacity( numBodies );
+		double stepDuration = duration.value();
+		for ( int idx = 0 ; idx < numBodies ; idx ++ ) {
+			if ( this.m_due[ idx ] ) {
+				this.m_durations[ idx ] = 0;
+			}
+			this.m_durations[ idx ] += stepDuration;
+			this.m_levels[ idx ] = getLevel( this.m_importance.getImportance( bodies.get( idx ) ).value() );
+			this.m_parents[ idx ] = idx;
+		}
+		
+		//join the linked bodies into islands
+		for ( int slot = 0 ; slot < this.m_links.capacity() ; slot ++ ) {
+			if ( this.m_links.isOccupied( slot ) ) {
+				long key = this.m_links.keyAt( slot );
+				int id1 = PairKey.getFirstId( key );
+				int id2 = PairKey.getSecondId( key );
+				if ( id1 >= 0 && id2 < numBodies ) {
+					this.m_parents[ findRoot( id1 ) ] = findRoot( id2 );
+				}
+			}
+		}
+		this.m_links.clear();
+		
+		//move every body of an island to the level of its most important body
+		for ( int idx = 0 ; idx < numBodies ; idx ++ ) {
+			int root = findRoot( idx );
+			this.m_levels[ root ] = Math.min( this.m_levels[ root ] , this.m_levels[ idx ] );
+		}
+		
+		//level n is due every 2^n steps
+		for ( int idx = 0 ; idx < numBodies ; idx ++ ) {
+			this.m_levels[ idx ] = this.m_levels[ findRoot( idx ) ];
+			long period = 1L << this.m_levels[ idx ];
+			this.m_due[ idx ] = ( ( this.m_step + 1 ) & ( period - 1 ) ) == 0;
+		}
+		this.m_step ++;
+	}
+	
+	/**
+	 * links the pair of bodies with the given ids, so that they are stepped together
+	 * from the next step on. scenery is ignored
+	 * 
+	 * @param id1			the id of a body
+	 * @param id2			the id of another body
+	 */
+	public void link( int id1 , int id2 ) {
+		if ( id1 >= 0 && id2 >= 0 ) {
+			this.m_links.add( id1 , id2 );
+		}
+	}
+	
+	/**
+	 * links every pair of bodies in the given set
+	 * 
+	 * @param pairs			pairs of bodies keyed by <code>PairKey.pack(int, int)</code>
+	 * @see					#link(int, int)
+	 */
+	public void link( PairSet pairs ) {
+		for ( int slot = 0 ; slot < pairs.capacity() ; slot ++ ) {
+			if ( pairs.isOccupied( slot ) ) {
+				long key = pairs.keyAt( slot );
+				link( PairKey.getFirstId( key ) , PairKey.getSecondId( key ) );
+			}
+		}
+	}
+	
+	/**
+	 * @param body			a body of the world
+	 * @return				if the body is stepped in the current step. bodies added since the
+	 * 						step began are not
+	 */
+	public boolean isDue( RigidBody body ) {
+		return body.getId() < this.m_due.length && this.m_due[ body.getId() ];
+	}
+	
+	/**
+	 * @param body			a body of the world
+	 * @return				the level of the body in the current step
+	 */
+	public int getLevel( RigidBody body ) {
+		return body.getId() < this.m_levels.length ? this.m_levels[ body.getId() ] : 0;
+	}
+	
+	/**
+	 * @param body			a body of the world
+	 * @return				the duration the body has accumulated since it was last stepped,
+	 * 						including the current step
+	 */
+	public Real getDuration( RigidBody body ) {
+		return new Real( body.getId() < this.m_durations.length ? this.m_durations[ body.getId() ] : 0 );
+	}
+	
+	/**
+	 * @param importance		the importance of a body
+	 * @return					the level of the body, before it is joined to an island
+	 */
+	private int getLevel( double importance ) {
+		int level = 0;
+		while ( level < this.m_thresholds.length && importance < this.m_thresholds[ level ] ) {
+			level ++;
+		}
+		return level;
+	}
+	
+	/**
+	 * @param id			the id of a body
+	 * @return				the root of the body's island
+	 */
+	private int findRoot( int id ) {
+		int root = id;
+		while ( this.m_parents[ root ] != root ) {
+			root = this.m_parents[ root ];
+		}
+		
+		//point the bodies on the way straight at the root
+		while ( this.m_parents[ id ] != root ) {
+			int next = this.m_parents[ id ];
+			this.m_parents[ id ] = root;
+			id = next;
+		}
+		return root;
+	}
+	
+	private void ensureCapacity( int numBodies ) {
+		if ( this.m_levels.length < numBodies ) {
+			int capacity = Math.max( numBodies , this.m_levels.length * 2 );
+			int[] levels = new int[ capacity ];
+			boolean[] due = new boolean[ capacity ];
+			double[] durations = new double[ capacity ];
+			System.arraycopy( this.m_levels , 0 , levels , 0 , this.m_levels.length );
+			System.arraycopy( this.m_due , 0 , due , 0 , this.m_due.length );
+			System.arraycopy( this.m_durations , 0 , durations , 0 , this.m_durations.length );
+			this.m_levels = levels;
+			this.m_due = due;
+			this.m_durations = durations;
+			this.m_parents = new int[ capacity ];
+		}
+	}
+}
@@ -3,10 +3,19 @@ package rigidbody.run;
 import java.util.ArrayList;
 
 import rigidbody.RigidBody;
+import rigidbody.collision.broad.ContinuousCollisionDetector;
 import rigidbody.collision.broad.PotentialContactGenerator;
+import rigidbody.collision.resolve.ContactResolver;
+import rigidbody.force.ParallelForceStage;
 import rigidbody.force.RigidBodyForceGenerator;
+import rigidbody.lod.SimulationLevels;
 import _lib.LinkedList;
 import _math.Real;
+import _math.Vector3D;
+import force.field.ForceField;
+import force.field.ForceFieldSet;
+import force.integrate.ForceEvaluator;
+import force.integrate.Integrator;
 
 public class RigidBodyWorld {
 	
@@ -20,27 +29,230 @@ public class RigidBodyWorld {
 	 */
 	final private LinkedList < RigidBodyForceGenerator > m_forceGenerators = new LinkedList < RigidBodyForceGenerator > ();
 	
+	/**
+	 * the <code>ForceField</code>s acting on every awake <code>RigidBody</code> in this <code>RigidBodyWorld</code>
+	 */
+	final private ForceFieldSet m_forceFields = new ForceFieldSet();
+	
+	/**
+	 * runs the force generators on several threads, or <code>null</code> if they
+	 * are run one at a time on the calling thread
+	 */
+	private ParallelForceStage m_forceStage = null;
+	
+	/**
+	 * moves the bodies that are not bullets, or <code>null</code> if each body is
+	 * moved by <code>RigidBody.act()</code>
+	 */
+	private Integrator m_integrator = null;
+	
+	/**
+	 * the bodies moved in the current step
+	 */
+	final private ArrayList < RigidBody > m_integratedBodies = new ArrayList < RigidBody > ();
+	
+	/**
+	 * the bodies moved together by the same duration
+	 */
+	final private ArrayList < RigidBody > m_levelBodies = new ArrayList < RigidBody > ();
+	
+	/**
+	 * decides how often each body is stepped, or <code>null</code> if every body
+	 * is stepped every step
+	 */
+	private SimulationLevels m_simulationLevels = null;
+	
+	/**
+	 * the net force and net torque on each body before any body was moved in the
+	 * current step, indexed by id
+	 */
+	final private ArrayList < Vector3D > m_stepForces = new ArrayList < Vector3D > ();
+	final private ArrayList < Vector3D > m_stepTorques = new ArrayList < Vector3D > ();
+	
+	/**
+	 * if each body is being moved by the integrator, indexed by id
+	 */
+	private boolean[] m_isMoving = new boolean[ 0 ];
+	
+	/**
+	 * recomputes the forces on the bodies being moved for integrators that evaluate
+	 * them more than once per step. the force generators act on every body they hold,
+	 * so all other bodies get back the forces they had at the start of the step
+	 */
+	final private ForceEvaluator m_forceEvaluator = new ForceEvaluator() {
+		
+		@Override
+		public void evaluateForces( Real duration ) {
+			for ( int idx = 0 ; idx < RigidBodyWorld.this.m_rigidBodies.size() ; idx ++ ) {
+				RigidBodyWorld.this.m_rigidBodies.get( idx ).clearAccumulators();
+			}
+			applyForces( duration , false );
+			for ( int idx = 0 ; idx < RigidBodyWorld.this.m_rigidBodies.size() ; idx ++ ) {
+				RigidBody body = RigidBodyWorld.this.m_rigidBodies.get( idx );
+				if ( !RigidBodyWorld.this.m_isMoving[ idx ] ) {
+					body.clearAccumulators();
+					body.addForceVector( RigidBodyWorld.this.m_stepForces.get( idx ) );
+					body.addTorqueVector( RigidBodyWorld.this.m_stepTorques.get( idx ) );
+				}
+			}
+		}
+	};
+	
 	/**
 	 * the list of <code>PotentialContactGenerator</code>s in this <code>RigidBodyWorld</code>
 	 */
 	final private LinkedList < PotentialContactGenerator > m_potentialContactGenerators = new LinkedList < PotentialContactGenerator > ();
 	
+	/**
+	 * the default maximum number of extra steps taken by bullets in a frame
+	 */
+	final public static int DEFAULT_MAXIMUM_SUBSTEPS = 4;
+	
+	/**
+	 * finds the impacts of bullets within a step, or <code>null</code> if bullets
+	 * move like any other <code>RigidBody</code>
+	 */
+	private ContinuousCollisionDetector m_continuousCollisionDetector = null;
+	
+	/**
+	 * the duration each bullet has left to move in the current frame after it was
+	 * stopped at an impact, indexed by id
+	 */
+	final private ArrayList < Real > m_remainingDurations = new ArrayList < Real > ();
+	
+	/**
+	 * the maximum number of extra steps taken by bullets in a frame
+	 */
+	private int m_maximumSubsteps = DEFAULT_MAXIMUM_SUBSTEPS;
+	
+	/**
+	 * the bullets moved in the current extra step
+	 */
+	final private ArrayList < RigidBody > m_substepBullets = new ArrayList < RigidBody > ();
+	
+	/**
+	 * resolves the contacts of the bullets in extra steps, apart from the contacts
+	 * of the frame, so that contact listeners and caches only see the frame
+	 */
+	final private ContactResolver m_bulletResolver = new ContactResolver();
+	
 	public RigidBodyWorld() {
 		
 	}
 	
+	/**
+	 * adds the given <code>RigidBody</code> to this <code>RigidBodyWorld</code> and
+	 * assigns it a stable id. ids are never reused, so a body's id is also its
+	 * index in this world
+	 * 
+	 * @param toAdd
+	 */
 	public void addRigidBody( RigidBody toAdd ) {
+		toAdd.setId( this.m_rigidBodies.size() );
 		this.m_rigidBodies.add( toAdd );
+		this.m_remainingDurations.add( Real.ZERO );
+		this.m_stepForces.add( Vector3D.ZERO );
+		this.m_stepTorques.add( Vector3D.ZERO );
+	}
+	
+	/**
+	 * @param id		the id of a <code>RigidBody</code> in this <code>RigidBodyWorld</code>
+	 * @return			the <code>RigidBody</code> with the given id
+	 */
+	public RigidBody getRigidBody( int id ) {
+		return this.m_rigidBodies.get( id );
+	}
+	
+	/**
+	 * @return			the number of <code>RigidBody</code> objects in this <code>RigidBodyWorld</code>
+	 */
+	public int getNumRigidBodies() {
+		return this.m_rigidBodies.size();
 	}
 	
 	public void addRigidBodyForceGenerator( RigidBodyForceGenerator toAdd ) {
 		this.m_forceGenerators.add( toAdd );
 	}
 	
+	/**
+	 * adds a <code>ForceField</code> that acts on every awake <code>RigidBody</code> in this
+	 * <code>RigidBodyWorld</code> with finite mass, without registering the bodies
+	 * 
+	 * @param toAdd
+	 */
+	public void addForceField( ForceField toAdd ) {
+		this.m_forceFields.addField( toAdd );
+	}
+	
+	public void removeForceField( ForceField toRemove ) {
+		this.m_forceFields.removeField( toRemove );
+	}
+	
+	/**
+	 * sets the <code>ParallelForceStage</code> that runs the force generators of this
+	 * <code>RigidBodyWorld</code> on several threads
+	 * 
+	 * @param forceStage		the force stage, or <code>null</code> to run the generators one at a time
+	 */
+	public void setForceStage( ParallelForceStage forceStage ) {
+		this.m_forceStage = forceStage;
+	}
+	
+	/**
+	 * sets the integrator that moves the bodies of this <code>RigidBodyWorld</code>. bullets
+	 * swept by a <code>ContinuousCollisionDetector</code> are still moved by <code>act()</code>.
+	 * integrators that evaluate the forces more than once per step run the force fields and
+	 * force generators again for each evaluation, and only the bodies being moved take the
+	 * new forces
+	 * 
+	 * @param integrator		the integrator, or <code>null</code> to move each body with <code>RigidBody.act()</code>
+	 */
+	public void setIntegrator( Integrator integrator ) {
+		this.m_integrator = integrator;
+	}
+	
+	/**
+	 * sets the <code>SimulationLevels</code> that decide how often each body of this
+	 * <code>RigidBodyWorld</code> is stepped. bodies that are not stepped are not moved and
+	 * are skipped by the force fields, and bodies in the same <code>PotentialContact</code>
+	 * are stepped together from the next step on. bullets swept by a
+	 * <code>ContinuousCollisionDetector</code> are stepped every step
+	 * 
+	 * @param levels			the levels, or <code>null</code> to step every body every step
+	 */
+	public void setSimulationLevels( SimulationLevels levels ) {
+		this.m_simulationLevels = levels;
+	}
+	
 	public void addRigidBodyCollisionGenerator( PotentialContactGenerator toAdd ) {
 		this.m_potentialContactGenerators.add( toAdd );
 	}
 	
+	/**
+	 * sets the <code>ContinuousCollisionDetector</code> that finds the impacts of bullets
+	 * within a step. bullets are stopped at their first impact, and after contacts are
+	 * resolved, they move for the rest of the frame in extra steps taken by the bullets
+	 * alone. in these steps only the contacts of the bullets with the obstacles of the
+	 * detector are resolved. all other bodies take a single step per frame
+	 * 
+	 * @param detector		the detector, or <code>null</code> to move bullets like any other body
+	 * @see					RigidBody#setBullet(Real)
+	 */
+	public void setContinuousCollisionDetector( ContinuousCollisionDetector detector ) {
+		this.m_continuousCollisionDetector = detector;
+	}
+	
+	/**
+	 * sets the maximum number of extra steps bullets may take in a frame. a bullet
+	 * that is still stopped at an impact after the last extra step loses the rest
+	 * of its motion for that frame
+	 * 
+	 * @param maximumSubsteps
+	 */
+	public void setMaximumSubsteps( int maximumSubsteps ) {
+		this.m_maximumSubsteps = maximumSubsteps;
+	}
+	
 	public void startFrame() {
 		for ( RigidBody body : this.m_rigidBodies ) {
 			body.clearAccumulators();
@@ -48,11 +260,160 @@ public class RigidBodyWorld {
 	}
 	
 	public void integrate( Real duration ) {
+		
+		//move the bullets last, so that they are swept against the
+		//other bodies in their new positions
+		boolean sweepBullets = this.m_continuousCollisionDetector != null;
+		this.m_integratedBodies.clear();
 		for ( RigidBody body : this.m_rigidBodies ) {
-			body.act( duration );
+			
+			//static bodies never move, and kinematic bodies follow their targets every step
+			if ( body.isStatic() ) {
+				continue;
+			} else if ( body.isKinematic() ) {
+				body.act( duration );
+			} else if ( ( !sweepBullets || !body.isBullet() ) && isStepped( body ) ) {
+				this.m_integratedBodies.add( body );
+			}
+		}
+		
+		//integrators may evaluate the forces again, so remember the forces of this
+		//step for the bodies that are not in the group being moved
+		if ( this.m_integrator != null ) {
+			if ( this.m_isMoving.length < this.m_rigidBodies.size() ) {
+				this.m_isMoving = new boolean[ this.m_rigidBodies.size() ];
+			}
+			for ( int idx = 0 ; idx < this.m_rigidBodies.size() ; idx ++ ) {
+				RigidBody body = this.m_rigidBodies.get( idx );
+				this.m_stepForces.set( idx , body.getNetForce() );
+				this.m_stepTorques.set( idx , body.getNetTorque() );
+			}
+		}
+		if ( this.m_simulationLevels == null ) {
+			moveBodies( this.m_integratedBodies , duration );
+		} else {
+			
+			//each body moves by the duration it has accumulated since it was last
+			//stepped, so bodies are moved in groups with the same duration
+			while ( this.m_integratedBodies.size() > 0 ) {
+				Real levelDuration = this.m_simulationLevels.getDuration( this.m_integratedBodies.get( 0 ) );
+				this.m_levelBodies.clear();
+				int numRemaining = 0;
+				for ( int idx = 0 ; idx < this.m_integratedBodies.size() ; idx ++ ) {
+					RigidBody body = this.m_integratedBodies.get( idx );
+					if ( this.m_simulationLevels.getDuration( body ).equals( levelDuration ) ) {
+						this.m_levelBodies.add( body );
+					} else {
+						this.m_integratedBodies.set( numRemaining , body );
+						numRemaining ++;
+					}
+				}
+				this.m_integratedBodies.subList( numRemaining , this.m_integratedBodies.size() ).clear();
+				moveBodies( this.m_levelBodies , levelDuration );
+			}
+		}
+		if ( sweepBullets ) {
+			for ( RigidBody body : this.m_rigidBodies ) {
+				if ( body.isBullet() && body.isDynamic() ) {
+					advanceBullet( body , duration );
+				}
+			}
 		}
 	}
 	
+	/**
+	 * moves the given bodies with the integrator, or with <code>act()</code> if there is none
+	 * 
+	 * @param bodies
+	 * @param duration
+	 */
+	private void moveBodies( ArrayList < RigidBody > bodies , Real duration ) {
+		if ( this.m_integrator != null ) {
+			for ( int idx = 0 ; idx < bodies.size() ; idx ++ ) {
+				this.m_isMoving[ bodies.get( idx ).getId() ] = true;
+			}
+			this.m_integrator.integrate( bodies , this.m_forceEvaluator , duration );
+			for ( int idx = 0 ; idx < bodies.size() ; idx ++ ) {
+				this.m_isMoving[ bodies.get( idx ).getId() ] = false;
+			}
+		} else {
+			for ( int idx = 0 ; idx < bodies.size() ; idx ++ ) {
+				bodies.get( idx ).act( duration );
+			}
+		}
+	}
+	
+	/**
+	 * @param body
+	 * @return			if the given body is stepped in the current step
+	 */
+	private boolean isStepped( RigidBody body ) {
+		if ( this.m_simulationLevels == null ) {
+			return true;
+		}
+		return this.m_simulationLevels.isDue( body ) || ( this.m_continuousCollisionDetector != null && body.isBullet() );
+	}
+	
+	/**
+	 * moves a bullet for the given duration, stopping it at its first impact. the
+	 * duration it did not get to move for is remembered for the next substep, and
+	 * the bullet keeps the forces of the frame for it
+	 * 
+	 * @param bullet
+	 * @param duration
+	 */
+	private void advanceBullet( RigidBody bullet , Real duration ) {
+		Vector3D force = bullet.getNetForce();
+		Vector3D torque = bullet.getNetTorque();
+		Vector3D start = bullet.getPosition();
+		Vector3D end = bullet.predictPosition( duration );
+		Real timeOfImpact = this.m_continuousCollisionDetector.getTimeOfImpact( bullet , start , end );
+		
+		//the detector moves the bullet while sampling its path, so the whole
+		//state is stepped from the start by the duration up to the impact
+		bullet.setPosition( start );
+		bullet.act( duration.multiply( timeOfImpact ) );
+		bullet.addForceVector( force );
+		bullet.addTorqueVector( torque );
+		this.m_remainingDurations.set( bullet.getId() , duration.multiply( Real.ONE.subtract( timeOfImpact ) ) );
+	}
+	
+	/**
+	 * moves the bullets that were stopped at an impact for the rest of their duration
+	 * 
+	 * @return			the longest duration moved by a bullet, or <code>Real.ZERO</code> if no
+	 * 					bullet had any duration left
+	 */
+	private Real advanceStoppedBullets() {
+		Real longestDuration = Real.ZERO;
+		this.m_substepBullets.clear();
+		for ( RigidBody body : this.m_rigidBodies ) {
+			Real remainingDuration = this.m_remainingDurations.get( body.getId() );
+			if ( body.isBullet() && body.isDynamic() && remainingDuration.compareTo( Real.ZERO ) > 0 ) {
+				this.m_substepBullets.add( body );
+				advanceBullet( body , remainingDuration );
+				if ( remainingDuration.compareTo( longestDuration ) > 0 ) {
+					longestDuration = remainingDuration;
+				}
+			}
+		}
+		return longestDuration;
+	}
+	
+	/**
+	 * resolves the contacts of the bullets moved in the current extra step with the
+	 * obstacles of the <code>ContinuousCollisionDetector</code>. the contacts of other
+	 * bodies were already resolved for the frame and are left alone
+	 * 
+	 * @param duration		the duration of the extra step
+	 */
+	private void resolveBulletContacts( Real duration ) {
+		for ( int idx = 0 ; idx < this.m_substepBullets.size() ; idx ++ ) {
+			this.m_continuousCollisionDetector.generateContacts( this.m_substepBullets.get( idx ) , this.m_bulletResolver );
+		}
+		this.m_bulletResolver.resolve( duration );
+	}
+	
 	public void generateContacts( Real duration ) {
 		/*//DEBUG
 		PotentialContactResolver pcr = new PotentialContactResolver();
@@ -62,22 +423,78 @@ public class RigidBodyWorld {
 		for ( PotentialContactGenerator contactGenerator : this.m_potentialContactGenerators ) {
 			contactGenerator.generatePotentialContacts();
 		}
+		
+		//bodies that may be touching are stepped together from the next step on
+		if ( this.m_simulationLevels != null ) {
+			for ( PotentialContactGenerator contactGenerator : this.m_potentialContactGenerators ) {
+				this.m_simulationLevels.link( contactGenerator.getPotentialPairs() );
+			}
+		}
 		for ( PotentialContactGenerator contactGenerator : this.m_potentialContactGenerators ) {
 			contactGenerator.resolve( duration );
 		}
 	}
 	
-	public void runPhysics( Real duration ) {
+	/**
+	 * adds the forces of the force fields and force generators to the bodies
+	 * 
+	 * @param duration			the duration of the step
+	 * @param newStep			if this is the first evaluation of the step, which moves the fields forward in time
+	 */
+	private void applyForces( Real duration , boolean newStep ) {
+		
+		//apply force fields to every awake body in one pass
+		if ( this.m_forceFields.getNumFields() > 0 ) {
+			for ( int idx = 0 ; idx < this.m_rigidBodies.size() ; idx ++ ) {
+				RigidBody body = this.m_rigidBodies.get( idx );
+				if ( ( body.isAwake() || !body.isSleepable() ) && isStepped( body ) ) {
+					this.m_forceFields.gather( body );
+				}
+			}
+			this.m_forceFields.apply( newStep ? duration : Real.ZERO );
+		}
 		
 		//apply force generators
-		for ( RigidBodyForceGenerator generator : this.m_forceGenerators ) {
-			generator.generateForce();
+		if ( this.m_forceStage != null ) {
+			this.m_forceStage.generateForces( this.m_forceGenerators , this.m_rigidBodies );
+		} else {
+			for ( RigidBodyForceGenerator generator : this.m_forceGenerators ) {
+				generator.generateForce();
+			}
 		}
+	}
+	
+	public void runPhysics( Real duration ) {
+		if ( this.m_simulationLevels != null ) {
+			this.m_simulationLevels.beginStep( this.m_rigidBodies , duration );
+		}
+		applyForces( duration , true );
 		
 		//have all rigidbodies act
 		integrate( duration );
 		
 		//generate contacts
 		generateContacts( duration );
+		
+		//let bullets stopped at an impact finish the frame, now that the
+		//contacts of the impacts have been resolved
+		if ( this.m_continuousCollisionDetector != null ) {
+			for ( int substep = 0 ; substep < this.m_maximumSubsteps ; substep ++ ) {
+				Real substepDuration = advanceStoppedBullets();
+				if ( substepDuration.equals( Real.ZERO ) ) {
+					break;
+				}
+				resolveBulletContacts( substepDuration );
+			}
+			
+			//bullets still stopped lose the rest of their motion, and the
+			//forces they kept for it
+			for ( int idx = 0 ; idx < this.m_remainingDurations.size() ; idx ++ ) {
+				this.m_remainingDurations.set( idx , Real.ZERO );
+				if ( this.m_rigidBodies.get( idx ).isBullet() ) {
+					this.m_rigidBodies.get( idx ).clearAccumulators();
+				}
+			}
+		}
 	}
 }
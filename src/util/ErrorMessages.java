@@ -4,6 +4,10 @@ import _math.Real;
 
 public class ErrorMessages {
 	
+	final public static class Lib {
+		final public static String INVALID_PAIR_KEY = "The empty pair key cannot be stored";
+	}
+	
 	final public static class Math {
 		
 		final public static class Matrix {
@@ -23,12 +27,36 @@ public class ErrorMessages {
 		}
 	}
 
+	final public static class Field {
+		final public static String INVALID_GRID = "Zero or negative grid spacing or number of nodes";
+		final public static String INVALID_GRID_DATA = "Grid data does not hold three floats per node";
+		final public static String NO_FRAMES = "No grids given";
+		final public static String INVALID_FRAME_DURATION = "Zero or negative frame duration";
+		final public static String INVALID_MODE = "Unknown grid force field mode";
+	}
+	
 	final public static class Particle {
 		final public static String INVALID_DURATION = "Zero or negative duration";
 		
 		final public static class COLLISION {
 			final public static String INVALID_REFERENCE = "Null reference object";
 			final public static String INVALID_ITERATION_QUANTITY = "Negative number of iterations";
+			final public static String INVALID_THREAD_COUNT = "Zero or negative number of threads";
+			final public static String INVALID_STIFFNESS = "Stiffness must be between 0 and 1";
+			final public static String UNSUPPORTED_LINK = "Only rods and cables can be solved as position constraints";
+		}
+		
+		final public static class Fluid {
+			final public static String INVALID_SMOOTHING_RADIUS = "Zero or negative smoothing radius";
+			final public static String INVALID_REST_DENSITY = "Zero or negative rest density";
+			final public static String INVALID_COEFFICIENT = "Negative stiffness or viscosity";
+			final public static String INVALID_THREAD_COUNT = COLLISION.INVALID_THREAD_COUNT;
+		}
+		
+		final public static class Gravity {
+			final public static String INVALID_THREAD_COUNT = COLLISION.INVALID_THREAD_COUNT;
+			final public static String INVALID_OPENING_ANGLE = "Negative opening angle";
+			final public static String INVALID_SOFTENING = "Negative softening length";
 		}
 		
 		final public static class Spring {
@@ -36,22 +64,48 @@ public class ErrorMessages {
 			final public static String INVALID_REST_LENGTH = "Zero or negative rest uncompressed/unstretched length";
 			final public static String INVALID_REFERENCE = "Null reference object";
 			final public static String INVALID_MASS = "Infinite, zero, or negative mass.";
+			final public static String INVALID_DAMPING = "Negative spring damping";
+			final public static String INVALID_THREAD_COUNT = COLLISION.INVALID_THREAD_COUNT;
 		}
 	}
 	
 	final public static class RigidBody {
 		
 		final public static String CANNOT_SLEEP = "The specified RigidBody cannot be put to sleep";
+		final public static String INVALID_BULLET_RADIUS = "Zero or negative swept radius";
+		final public static String INVALID_BODY_TYPE = "Unknown rigid body type";
+		final public static String NOT_KINEMATIC = "Only kinematic RigidBody objects can be given target poses";
+		
+		final public static class Force {
+			final public static String INVALID_THREAD_COUNT = Particle.COLLISION.INVALID_THREAD_COUNT;
+			final public static String INVALID_DENSITY = "Negative liquid density";
+			final public static String INVALID_SAMPLE_COUNT = "Zero or negative number of samples";
+			final public static String INVALID_DRAG = "Negative drag constant";
+		}
+		
+		final public static class Levels {
+			final public static String INVALID_THRESHOLDS = "Level thresholds are not in decreasing order";
+		}
 		
 		final public static class Spring {
 			final public static String INVALID_SPRING_CONSTANT = Particle.Spring.INVALID_SPRING_CONSTANT;
 			final public static String INVALID_REST_LENGTH = Particle.Spring.INVALID_REST_LENGTH;
 			final public static String INVALID_REFERENCE = Particle.Spring.INVALID_REFERENCE;
 			final public static String INVALID_MASS = Particle.Spring.INVALID_MASS;
+			final public static String INVALID_DAMPING = Particle.Spring.INVALID_DAMPING;
+			final public static String INVALID_THREAD_COUNT = Particle.Spring.INVALID_THREAD_COUNT;
 		}
 		
 		final public static class Collision {
 			
+			final public static class Primitive {
+				final public static String EMPTY_HULL = "A convex hull needs at least one vertex";
+				final public static String INVALID_MESH = "Triangle indices must come in threes and refer to existing vertices";
+				final public static String INVALID_MESH_CACHE = "The file is not a triangle mesh cache of a supported version";
+				final public static String CANNOT_REPLACE_MESH_CACHE = "The triangle mesh cache file could not be replaced";
+				final public static String INVALID_HEIGHTFIELD = "A heightfield needs at least 2 by 2 heights and a positive cell size";
+			}
+			
 			final public static class BVH {
 				
 				final public static class BoundingShape {
@@ -74,6 +128,23 @@ public class ErrorMessages {
 				final public static String INVALID_PRIMITIVE_PARAMETER( String expectedPrimitiveType , String detectedPrimitiveType ) {
 					return "Expected parameter(s) of type " + expectedPrimitiveType + ", but found parameter(s) of type " + detectedPrimitiveType;
 				}
+				final public static String NO_GENERATOR( String primitiveType1 , String primitiveType2 ) {
+					return "No contact generator is registered for " + primitiveType1 + " and " + primitiveType2;
+				}
+			}
+			
+			final public static class NarrowPhase {
+				final public static String NO_GENERATORS = "A narrow phase needs at least one contact generator";
+				final public static String UNIDENTIFIED_BODY = "The primitive's body has no id";
+			}
+			
+			final public static class Trigger {
+				final public static String UNSUPPORTED_PRIMITIVE = "Only spheres and boxes can be triggers or enter them";
+				final public static String UNIDENTIFIED_BODY = NarrowPhase.UNIDENTIFIED_BODY;
+			}
+			
+			final public static class ContactSolver {
+				final public static String INVALID_THREAD_COUNT = "Zero or negative number of threads";
 			}
 
 		}